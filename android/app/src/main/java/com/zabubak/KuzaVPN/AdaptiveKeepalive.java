@@ -0,0 +1,66 @@
+package com.zabubak.KuzaVPN;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+/**
+ * Persistent keepalive per underlying network, learned by KeepaliveTuner and persisted
+ * Keyed by the same network identity as PathMtuDiscovery, so a carrier NAT that drops
+ * idle bindings after 30 s and a home router that keeps them for minutes each get
+ * their own interval, and returning to a network starts from what was learned there.
+ * Only touched on the tunnel thread
+ */
+public final class AdaptiveKeepalive {
+    private static final String TAG = "AdaptiveKeepalive";
+    private static final String PREFS = "kuzavpn_keepalive";
+
+    private final SharedPreferences prefs;
+    // Tuner of the network the tunnel is on, loaded on first use there
+    private String networkKey;
+    private KeepaliveTuner tuner;
+
+    public AdaptiveKeepalive(Context context) {
+        prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Interval to configure on this network, in seconds
+     * @param configured the config's persistent keepalive; 0 (off) stays off
+     */
+    public int intervalFor(String networkKey, int configured) {
+        if (configured <= 0 || networkKey == null) {
+            return configured;
+        }
+        return tunerFor(networkKey, configured).interval();
+    }
+
+    /**
+     * Feed a health check of the tunnel on this network
+     * @param failed data went unanswered or a handshake never completed; keepalive-only sends must not count
+     * @return the interval to configure now, or -1 if nothing is learned here yet
+     */
+    public int observe(String networkKey, long rxBytes, long txBytes, boolean failed) {
+        if (networkKey == null || !networkKey.equals(this.networkKey) || tuner == null) {
+            // Keepalive is off, or the tunnel has not been configured on this network
+            return -1;
+        }
+        int before = tuner.interval();
+        if (tuner.observe(System.currentTimeMillis(), rxBytes, txBytes, failed)) {
+            prefs.edit().putString(networkKey, tuner.encode()).apply();
+            if (tuner.interval() != before && KuzaLog.isLoggable(Log.DEBUG)) {
+                Log.d(TAG, "Keepalive on " + networkKey + ": " + before + " s → " + tuner.interval()
+                    + " s (good up to " + tuner.floor() + " s, failed at " + tuner.ceiling() + " s)");
+            }
+        }
+        return tuner.interval();
+    }
+
+    private KeepaliveTuner tunerFor(String networkKey, int configured) {
+        if (!networkKey.equals(this.networkKey) || tuner == null) {
+            this.networkKey = networkKey;
+            tuner = KeepaliveTuner.restore(prefs.getString(networkKey, null), configured, System.currentTimeMillis());
+        }
+        return tuner;
+    }
+}
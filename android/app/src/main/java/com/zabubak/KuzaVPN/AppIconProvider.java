@@ -0,0 +1,234 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Serves launcher icons as content://<package>.appicons/<packageName>?v=<lastUpdateTime>
+ * The RN image pipeline loads them lazily; rendered PNGs are kept in a memory LRU
+ * and on disk, keyed by package name and lastUpdateTime so app updates invalidate them
+ */
+public class AppIconProvider extends ContentProvider {
+    private static final String TAG = "AppIconProvider";
+    private static final String AUTHORITY_SUFFIX = ".appicons";
+    private static final String MIME_TYPE = "image/png";
+    private static final String CACHE_DIR = "app-icons";
+    private static final String PARAM_VERSION = "v";
+    private static final int ICON_SIZE_PX = 96;
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private final LruCache<String, byte[]> memoryCache = new LruCache<String, byte[]>(MEMORY_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, byte[] value) {
+            return value.length;
+        }
+    };
+
+    private File diskCacheDir;
+
+    /**
+     * Build the icon URI handed to JS in place of inline icon data
+     */
+    public static String iconUri(Context context, String packageName, long lastUpdateTime) {
+        return new Uri.Builder()
+            .scheme("content")
+            .authority(context.getPackageName() + AUTHORITY_SUFFIX)
+            .appendPath(packageName)
+            .appendQueryParameter(PARAM_VERSION, String.valueOf(lastUpdateTime))
+            .build()
+            .toString();
+    }
+
+    @Override
+    public boolean onCreate() {
+        diskCacheDir = new File(getContext().getCacheDir(), CACHE_DIR);
+        return true;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("App icons are read-only");
+        }
+
+        String packageName = uri.getLastPathSegment();
+        if (packageName == null || packageName.isEmpty()) {
+            throw new FileNotFoundException("Missing package name: " + uri);
+        }
+
+        String version = uri.getQueryParameter(PARAM_VERSION);
+        if (version == null) {
+            version = String.valueOf(resolveLastUpdateTime(packageName));
+        }
+
+        byte[] png = loadIcon(packageName, version);
+        if (png == null) {
+            throw new FileNotFoundException("No icon for " + packageName);
+        }
+
+        return openPipeHelper(uri, MIME_TYPE, null, png, (output, pipeUri, mimeType, opts, bytes) -> {
+            try (OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(output)) {
+                out.write(bytes);
+            } catch (IOException e) {
+                // The reader went away (e.g. the row scrolled off screen)
+                TraceBuffer.getInstance().record(TraceEvent.ICON_PIPE_CLOSED);
+            }
+        });
+    }
+
+    private byte[] loadIcon(String packageName, String version) {
+        String key = cacheKey(packageName, version);
+
+        byte[] png = memoryCache.get(key);
+        if (png != null) {
+            return png;
+        }
+
+        File cached = new File(diskCacheDir, key + ".png");
+        png = readFile(cached);
+        if (png == null) {
+            png = renderIcon(packageName);
+            if (png == null) {
+                return null;
+            }
+            writeToDisk(packageName, cached, png);
+        }
+
+        memoryCache.put(key, png);
+        return png;
+    }
+
+    private byte[] renderIcon(String packageName) {
+        try {
+            Drawable icon = getContext().getPackageManager().getApplicationIcon(packageName);
+
+            Bitmap bitmap;
+            if (icon instanceof BitmapDrawable && ((BitmapDrawable) icon).getBitmap() != null) {
+                bitmap = ((BitmapDrawable) icon).getBitmap();
+            } else {
+                bitmap = Bitmap.createBitmap(ICON_SIZE_PX, ICON_SIZE_PX, Bitmap.Config.ARGB_8888);
+                Canvas canvas = new Canvas(bitmap);
+                icon.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
+                icon.draw(canvas);
+            }
+
+            if (bitmap.getWidth() > ICON_SIZE_PX || bitmap.getHeight() > ICON_SIZE_PX) {
+                bitmap = Bitmap.createScaledBitmap(bitmap, ICON_SIZE_PX, ICON_SIZE_PX, true);
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            // PNG is lossless, the quality argument is ignored
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
+            return baos.toByteArray();
+
+        } catch (PackageManager.NameNotFoundException e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "App not found: " + packageName);
+            }
+        } catch (Exception e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Failed to render icon for " + packageName, e);
+            }
+        }
+        return null;
+    }
+
+    private void writeToDisk(String packageName, File target, byte[] png) {
+        if (!diskCacheDir.isDirectory() && !diskCacheDir.mkdirs()) {
+            return;
+        }
+
+        // Drop icons cached for older versions of this package
+        String prefix = cacheKey(packageName, "");
+        File[] existing = diskCacheDir.listFiles((dir, name) -> name.startsWith(prefix));
+        if (existing != null) {
+            for (File stale : existing) {
+                stale.delete();
+            }
+        }
+
+        File temp = new File(diskCacheDir, target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(png);
+        } catch (IOException e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Failed to cache icon for " + packageName, e);
+            }
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+        }
+    }
+
+    private static byte[] readFile(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private long resolveLastUpdateTime(String packageName) {
+        try {
+            return getContext().getPackageManager().getPackageInfo(packageName, 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    private static String cacheKey(String packageName, String version) {
+        return packageName + "@" + version;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
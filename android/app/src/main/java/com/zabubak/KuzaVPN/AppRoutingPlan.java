@@ -0,0 +1,132 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.content.pm.PackageManager;
+import android.net.VpnService;
+import android.util.Log;
+
+/**
+ * Which apps the VPN interface carries, precomputed from the user's selection
+ * Android allows either an allow-list or a deny-list per interface, never both,
+ * so the plan picks whichever is shorter: the selected apps, or every other
+ * installed package plus ourselves. Selections are validated against
+ * InstalledPackageIndex, and the last plan is reused until the selection or
+ * the installed packages change. In deny-list mode, apps installed after the
+ * interface was established are carried too, until the next reconnect
+ */
+public final class AppRoutingPlan {
+    private static final String TAG = "AppRoutingPlan";
+
+    public enum Mode {
+        ALL,    // no per-app restriction
+        ALLOW,  // addAllowedApplication for each package
+        DENY    // addDisallowedApplication for each package
+    }
+
+    private static AppRoutingPlan lastPlan;
+
+    public final Mode mode;
+    public final List<String> packages;
+    private final Set<String> selection;
+    private final long indexVersion;
+
+    private AppRoutingPlan(Mode mode, List<String> packages, Set<String> selection, long indexVersion) {
+        this.mode = mode;
+        this.packages = Collections.unmodifiableList(packages);
+        this.selection = selection;
+        this.indexVersion = indexVersion;
+    }
+
+    /**
+     * The plan for this selection, reusing the previous one when nothing changed
+     * @param selectedApps packages the user wants routed; empty means every app
+     * @param ownPackage   our own package, always kept off the tunnel when restricting
+     */
+    public static synchronized AppRoutingPlan resolve(Collection<String> selectedApps,
+                                                      InstalledPackageIndex index, String ownPackage) {
+        Set<String> selection = new HashSet<>(selectedApps);
+        if (lastPlan != null && lastPlan.selection.equals(selection) && lastPlan.indexVersion == index.getVersion()) {
+            return lastPlan;
+        }
+        lastPlan = compute(selection, index, ownPackage);
+        return lastPlan;
+    }
+
+    private static AppRoutingPlan compute(Set<String> selection, InstalledPackageIndex index, String ownPackage) {
+        // Read the version before the snapshot: a change in between only causes one extra recompute
+        long version = index.getVersion();
+        if (selection.isEmpty()) {
+            return new AppRoutingPlan(Mode.ALL, new ArrayList<>(), selection, version);
+        }
+
+        Set<String> installed = index.snapshot();
+        List<String> allowed = new ArrayList<>();
+        for (String packageName : selection) {
+            if (packageName.equals(ownPackage)) {
+                continue;
+            }
+            if (installed.contains(packageName)) {
+                allowed.add(packageName);
+            } else if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Selected app not installed: " + packageName);
+            }
+        }
+
+        if (allowed.isEmpty()) {
+            // An empty allow-list would mean "every app" anyway
+            KuzaLog.w(TAG, "No selected app is installed - routing all traffic");
+            return new AppRoutingPlan(Mode.ALL, new ArrayList<>(), selection, version);
+        }
+
+        // Deny-list: everything installed except the selection; we are never in the selection
+        int denyCount = installed.size() - allowed.size();
+        if (allowed.size() <= denyCount) {
+            Collections.sort(allowed);
+            return new AppRoutingPlan(Mode.ALLOW, allowed, selection, version);
+        }
+
+        Set<String> allowedSet = new HashSet<>(allowed);
+        List<String> denied = new ArrayList<>(denyCount);
+        for (String packageName : installed) {
+            if (!allowedSet.contains(packageName)) {
+                denied.add(packageName);
+            }
+        }
+        if (!installed.contains(ownPackage)) {
+            denied.add(ownPackage);
+        }
+        Collections.sort(denied);
+        return new AppRoutingPlan(Mode.DENY, denied, selection, version);
+    }
+
+    /**
+     * Apply the plan to an interface builder
+     */
+    public void apply(VpnService.Builder builder) {
+        int applied = 0;
+        for (String packageName : packages) {
+            try {
+                if (mode == Mode.ALLOW) {
+                    builder.addAllowedApplication(packageName);
+                } else {
+                    builder.addDisallowedApplication(packageName);
+                }
+                applied++;
+            } catch (PackageManager.NameNotFoundException e) {
+                // Uninstalled after the plan was computed
+                if (KuzaLog.isLoggable(Log.WARN)) {
+                    Log.w(TAG, "App not found: " + packageName);
+                }
+            }
+        }
+        if (KuzaLog.isLoggable(Log.DEBUG)) {
+            Log.d(TAG, "App routing " + mode + ": " + applied + " packages");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.zabubak.KuzaVPN;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.VpnService;
+import android.util.Log;
+
+/**
+ * Brings the tunnel back after a reboot or an app update, if it was on and never turned off
+ * Always-on VPN is started by the system itself; KuzaVpnService ignores the second start
+ */
+public class BootReceiver extends BroadcastReceiver {
+    private static final String TAG = "BootReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (!Intent.ACTION_BOOT_COMPLETED.equals(action) && !Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            return;
+        }
+
+        LastTunnelStore.Saved saved = LastTunnelStore.getInstance(context).load();
+        if (saved == null || !saved.autoConnect) {
+            return;
+        }
+        if (VpnService.prepare(context) != null) {
+            // Consent was revoked; only the app can ask for it again
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "VPN permission missing, not reconnecting after " + action);
+            }
+            return;
+        }
+        KuzaVpnService.connectLast(context);
+    }
+}
@@ -0,0 +1,150 @@
+package com.zabubak.KuzaVPN;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+/**
+ * Keeps the addresses behind the config's domain rules off the tunnel
+ * Rules compile into a DomainMatcher; their names are resolved on a background
+ * thread and kept in a DomainRouteTable for their TTL. Each refresh pass looks up
+ * only the names that expired and tells the listener once if the prefix set
+ * changed; the service then reinstalls routes, which on Android means
+ * re-establishing the interface, so nothing happens while answers stay the same.
+ * Wildcard rules are rejected: the VPN does not see which names under them apps
+ * look up, so it has nothing to resolve for them
+ */
+public final class DomainRoutes {
+    private static final String TAG = "DomainRoutes";
+    // Floor on the gap between passes, whatever expires next
+    private static final long MIN_REFRESH_DELAY_MS = 1_000;
+
+    /**
+     * Called on the resolver thread after a pass that changed prefixes()
+     */
+    public interface Listener {
+        void onDomainRoutesChanged();
+    }
+
+    private final EndpointResolver resolver;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "KuzaVPN-domains");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private List<String> rules = Collections.emptyList();
+    private volatile DomainRouteTable table;
+    private Listener listener;
+    private ScheduledFuture<?> nextRefresh;
+
+    public DomainRoutes(EndpointResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Compile the config's rules; the same rules again keep the table and its answers
+     * @throws IllegalArgumentException if a rule is not a valid domain name or is a wildcard
+     */
+    public synchronized void setRules(List<String> rules) {
+        if (rules.equals(this.rules)) {
+            return;
+        }
+        for (String rule : rules) {
+            if (rule.trim().startsWith("*.")) {
+                throw new IllegalArgumentException("Wildcard domain rules are not supported on Android: " + rule);
+            }
+        }
+        table = rules.isEmpty() ? null : new DomainRouteTable(DomainMatcher.compile(rules));
+        this.rules = new ArrayList<>(rules);
+        if (listener != null) {
+            schedule(0);
+        }
+    }
+
+    /**
+     * Resolve due names now and keep refreshing them as they expire
+     */
+    public synchronized void start(Listener listener) {
+        this.listener = listener;
+        schedule(0);
+    }
+
+    public synchronized void stop() {
+        listener = null;
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+            nextRefresh = null;
+        }
+    }
+
+    public void shutdown() {
+        stop();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Host prefixes to keep off the tunnel right now, sorted
+     */
+    public List<String> prefixes() {
+        DomainRouteTable current = table;
+        return current != null ? current.prefixes() : Collections.emptyList();
+    }
+
+    private synchronized void schedule(long delayMs) {
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+            nextRefresh = null;
+        }
+        DomainRouteTable current = table;
+        if (current == null || listener == null || executor.isShutdown()) {
+            return;
+        }
+        nextRefresh = executor.schedule(() -> refresh(current), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh(DomainRouteTable current) {
+        boolean changed = false;
+        List<String> due = current.dueNames(System.currentTimeMillis());
+        for (String name : due) {
+            if (current != table) {
+                // New rules came in; their own pass is already queued
+                return;
+            }
+            try {
+                DnsAnswer answer = resolver.lookupUncached(name);
+                changed |= current.update(name, answer.addresses, answer.ttlSeconds * 1000,
+                    System.currentTimeMillis());
+            } catch (UnknownHostException e) {
+                changed |= current.failed(name, System.currentTimeMillis());
+            }
+        }
+        changed |= current.expire(System.currentTimeMillis());
+
+        Listener notify;
+        synchronized (this) {
+            if (current != table || listener == null) {
+                return;
+            }
+            notify = listener;
+            long next = current.nextRefreshAtMs();
+            if (next != Long.MAX_VALUE) {
+                schedule(Math.max(next - System.currentTimeMillis(), MIN_REFRESH_DELAY_MS));
+            }
+        }
+        if (changed) {
+            if (KuzaLog.isLoggable(Log.DEBUG)) {
+                Log.d(TAG, current.prefixes().size() + " addresses of " + current.matcher().size()
+                    + " domain rules kept off the tunnel (" + due.size() + " names resolved)");
+            }
+            notify.onDomainRoutesChanged();
+        }
+    }
+}
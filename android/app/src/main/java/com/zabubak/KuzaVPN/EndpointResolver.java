@@ -0,0 +1,350 @@
+package com.zabubak.KuzaVPN;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.DnsResolver;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Resolves WireGuard endpoint hostnames ahead of the connect that needs them
+ * Answers are kept for their DNS TTL and persisted, so a connect after a restart
+ * starts on the last address that completed a handshake while a refresh runs in the
+ * background. A and AAAA are queried in parallel; an AAAA answer is used at once and
+ * an A answer waits briefly for it (RFC 8305 resolution delay)
+ */
+public final class EndpointResolver {
+    private static final String TAG = "EndpointResolver";
+    private static final String PREFS = "kuzavpn_endpoints";
+
+    // The system resolver does not report TTLs
+    static final long FALLBACK_TTL_MS = 5 * 60 * 1000L;
+    static final long RESOLUTION_DELAY_MS = 50;
+    static final long LOOKUP_TIMEOUT_MS = 5_000;
+
+    private static final class Resolution {
+        final List<InetAddress> addresses;
+        final long ttlMs;
+
+        Resolution(List<InetAddress> addresses, long ttlMs) {
+            this.addresses = addresses;
+            this.ttlMs = ttlMs;
+        }
+    }
+
+    private static volatile EndpointResolver instance;
+
+    private final ConnectivityManager connectivityManager;
+    private final EndpointCache cache;
+    private final Set<String> refreshing = new HashSet<>();
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "KuzaVPN-dns");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private EndpointResolver(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        connectivityManager = context.getSystemService(ConnectivityManager.class);
+        cache = new EndpointCache((host, encoded) -> prefs.edit().putString(host, encoded).apply());
+        for (Map.Entry<String, ?> stored : prefs.getAll().entrySet()) {
+            cache.restore(stored.getKey(), String.valueOf(stored.getValue()));
+        }
+    }
+
+    public static EndpointResolver getInstance(Context context) {
+        if (instance == null) {
+            synchronized (EndpointResolver.class) {
+                if (instance == null) {
+                    instance = new EndpointResolver(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Address to dial for host; blocks on DNS only when the host was never resolved
+     * @throws UnknownHostException if a first lookup finds nothing
+     */
+    public InetAddress resolve(String host) throws UnknownHostException {
+        if (isIpLiteral(host)) {
+            return InetAddress.getByName(host);
+        }
+
+        long now = System.currentTimeMillis();
+        InetAddress cached = cache.preferred(host, now);
+        if (cached != null) {
+            if (!cache.isFresh(host, now)) {
+                refreshAsync(host);
+            }
+            return cached;
+        }
+
+        if (KuzaLog.isLoggable(Log.DEBUG)) {
+            Log.d(TAG, "Resolving " + host);
+        }
+        InetAddress address = store(host, lookup(host));
+        if (address == null) {
+            throw new UnknownHostException("No address for " + host);
+        }
+        return address;
+    }
+
+    /**
+     * Resolve in the background every endpoint ("host:port" or a bare host) not cached or expired
+     */
+    public void prefetch(Collection<String> endpoints) {
+        long now = System.currentTimeMillis();
+        for (String endpoint : endpoints) {
+            String host = hostOf(endpoint);
+            if (!host.isEmpty() && !isIpLiteral(host) && !cache.isFresh(host, now)) {
+                refreshAsync(host);
+            }
+        }
+    }
+
+    /**
+     * Remember the address a handshake completed on, so it is tried first next time
+     */
+    public void markGood(String host, InetAddress address) {
+        if (!isIpLiteral(host)) {
+            cache.markGood(host, address);
+        }
+    }
+
+    /**
+     * Try host's other addresses before this one and look the host up again
+     * For a connect that got no handshake on it
+     */
+    public void markFailed(String host, InetAddress address) {
+        if (isIpLiteral(host)) {
+            return;
+        }
+        cache.markFailed(host, address);
+        refreshAsync(host);
+    }
+
+    /**
+     * Every address of host and the answer's TTL, straight from DNS; nothing is cached here
+     * For DomainRoutes, which keeps its own table
+     * @throws UnknownHostException if the lookup finds nothing
+     */
+    public DnsAnswer lookupUncached(String host) throws UnknownHostException {
+        Resolution resolution = lookup(host);
+        return new DnsAnswer(0, resolution.addresses, resolution.ttlMs / 1000);
+    }
+
+    private void refreshAsync(String host) {
+        synchronized (this) {
+            if (!refreshing.add(host)) {
+                return;
+            }
+        }
+        refreshExecutor.execute(() -> {
+            try {
+                store(host, lookup(host));
+            } catch (UnknownHostException e) {
+                if (KuzaLog.isLoggable(Log.WARN)) {
+                    Log.w(TAG, "Refresh of " + host + " failed: " + e.getMessage());
+                }
+            } finally {
+                synchronized (this) {
+                    refreshing.remove(host);
+                }
+            }
+        });
+    }
+
+    private InetAddress store(String host, Resolution resolution) {
+        return cache.put(host, resolution.addresses, resolution.ttlMs, System.currentTimeMillis());
+    }
+
+    private Resolution lookup(String host) throws UnknownHostException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            try {
+                Resolution raced = race(host);
+                if (raced != null) {
+                    return raced;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UnknownHostException("Lookup of " + host + " interrupted");
+            }
+        }
+        // The system resolver orders the families itself (RFC 6724) but hides the TTL
+        return new Resolution(Arrays.asList(InetAddress.getAllByName(host)), FALLBACK_TTL_MS);
+    }
+
+    /**
+     * Query A and AAAA on the default network in parallel
+     * @return null when neither query produced an address in time
+     */
+    private Resolution race(String host) throws InterruptedException {
+        Race race = new Race(hasIpv6Connectivity());
+        CancellationSignal cancel = new CancellationSignal();
+        DnsResolver resolver = DnsResolver.getInstance();
+        try {
+            resolver.rawQuery(null, host, DnsResolver.CLASS_IN, DnsResolver.TYPE_A, DnsResolver.FLAG_EMPTY,
+                Runnable::run, cancel, race.callback(DnsAnswer.TYPE_A));
+            if (race.expectIpv6) {
+                resolver.rawQuery(null, host, DnsResolver.CLASS_IN, DnsResolver.TYPE_AAAA, DnsResolver.FLAG_EMPTY,
+                    Runnable::run, cancel, race.callback(DnsAnswer.TYPE_AAAA));
+            }
+            return race.await(LOOKUP_TIMEOUT_MS);
+        } finally {
+            cancel.cancel();
+        }
+    }
+
+    /**
+     * The A and AAAA answers of one lookup as they arrive
+     */
+    private static final class Race {
+        final boolean expectIpv6;
+        private DnsAnswer ipv4;
+        private DnsAnswer ipv6;
+        private boolean ipv4Done;
+        private boolean ipv6Done;
+        private long ipv4AnsweredAt = -1;
+
+        Race(boolean expectIpv6) {
+            this.expectIpv6 = expectIpv6;
+            ipv6Done = !expectIpv6;
+        }
+
+        DnsResolver.Callback<byte[]> callback(int type) {
+            return new DnsResolver.Callback<byte[]>() {
+                @Override
+                public void onAnswer(byte[] answer, int rcode) {
+                    DnsAnswer parsed = null;
+                    try {
+                        parsed = DnsAnswer.parse(answer);
+                    } catch (IllegalArgumentException e) {
+                        if (KuzaLog.isLoggable(Log.WARN)) {
+                            Log.w(TAG, "Unreadable DNS answer: " + e.getMessage());
+                        }
+                    }
+                    complete(type, parsed);
+                }
+
+                @Override
+                public void onError(DnsResolver.DnsException error) {
+                    complete(type, null);
+                }
+            };
+        }
+
+        private synchronized void complete(int type, DnsAnswer answer) {
+            if (type == DnsAnswer.TYPE_A) {
+                ipv4 = answer;
+                ipv4Done = true;
+                ipv4AnsweredAt = SystemClock.elapsedRealtime();
+            } else {
+                ipv6 = answer;
+                ipv6Done = true;
+            }
+            notifyAll();
+        }
+
+        synchronized Resolution await(long timeoutMs) throws InterruptedException {
+            long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+            while (!hasAddresses(ipv6) && !(ipv4Done && ipv6Done)) {
+                long now = SystemClock.elapsedRealtime();
+                long until = deadline;
+                if (hasAddresses(ipv4)) {
+                    until = Math.min(until, ipv4AnsweredAt + RESOLUTION_DELAY_MS);
+                }
+                if (now >= until) {
+                    break;
+                }
+                wait(until - now);
+            }
+
+            boolean ipv6First = hasAddresses(ipv6);
+            List<InetAddress> addresses = interleave(ipv6First ? ipv6 : ipv4, ipv6First ? ipv4 : ipv6);
+            if (addresses.isEmpty()) {
+                return null;
+            }
+            long ttlSeconds = Long.MAX_VALUE;
+            for (DnsAnswer answer : new DnsAnswer[] {ipv4, ipv6}) {
+                if (hasAddresses(answer) && answer.ttlSeconds >= 0) {
+                    ttlSeconds = Math.min(ttlSeconds, answer.ttlSeconds);
+                }
+            }
+            long ttlMs = ttlSeconds == Long.MAX_VALUE ? FALLBACK_TTL_MS : ttlSeconds * 1000;
+            return new Resolution(addresses, ttlMs);
+        }
+
+        private static boolean hasAddresses(DnsAnswer answer) {
+            return answer != null && !answer.addresses.isEmpty();
+        }
+
+        /**
+         * Alternate the families, starting with the one that won (RFC 8305 section 4)
+         */
+        private static List<InetAddress> interleave(DnsAnswer first, DnsAnswer second) {
+            List<InetAddress> a = hasAddresses(first) ? first.addresses : new ArrayList<>();
+            List<InetAddress> b = hasAddresses(second) ? second.addresses : new ArrayList<>();
+            List<InetAddress> merged = new ArrayList<>(a.size() + b.size());
+            for (int i = 0; i < Math.max(a.size(), b.size()); i++) {
+                if (i < a.size()) {
+                    merged.add(a.get(i));
+                }
+                if (i < b.size()) {
+                    merged.add(b.get(i));
+                }
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Whether the default network has a global IPv6 address; without one AAAA answers are useless
+     */
+    private boolean hasIpv6Connectivity() {
+        if (connectivityManager == null) {
+            return true;
+        }
+        Network network = connectivityManager.getActiveNetwork();
+        LinkProperties properties = network != null ? connectivityManager.getLinkProperties(network) : null;
+        if (properties == null) {
+            return true;
+        }
+        for (LinkAddress linkAddress : properties.getLinkAddresses()) {
+            InetAddress address = linkAddress.getAddress();
+            if (address instanceof Inet6Address && !address.isLinkLocalAddress() && !address.isLoopbackAddress()
+                    && (address.getAddress()[0] & 0xfe) != 0xfc) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String hostOf(String endpoint) {
+        return EndpointCache.hostOf(endpoint);
+    }
+
+    static boolean isIpLiteral(String host) {
+        return EndpointCache.isIpLiteral(host);
+    }
+}
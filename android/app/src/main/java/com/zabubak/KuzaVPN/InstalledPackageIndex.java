@@ -0,0 +1,124 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * In-memory set of installed package names, loaded once and then kept current
+ * from PACKAGE_ADDED/REMOVED broadcasts instead of re-querying PackageManager
+ * Every change bumps a version so cached routing plans know when to recompute
+ */
+public final class InstalledPackageIndex {
+    private static final String TAG = "InstalledPackageIndex";
+
+    private static volatile InstalledPackageIndex instance;
+
+    private final Context context;
+    private final Set<String> packages = new HashSet<>();
+    private final AtomicLong version = new AtomicLong();
+    private boolean loaded;
+
+    private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            String packageName = data != null ? data.getSchemeSpecificPart() : null;
+            if (packageName == null) {
+                return;
+            }
+            // An update is sent as REMOVED + ADDED with EXTRA_REPLACING; the package never left
+            if (intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+                return;
+            }
+
+            synchronized (InstalledPackageIndex.this) {
+                boolean changed = Intent.ACTION_PACKAGE_ADDED.equals(intent.getAction())
+                    ? packages.add(packageName)
+                    : packages.remove(packageName);
+                if (changed) {
+                    version.incrementAndGet();
+                }
+            }
+        }
+    };
+
+    private InstalledPackageIndex(Context context) {
+        this.context = context;
+
+        // Listen before the first load so nothing installed in between is missed
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(packageReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(packageReceiver, filter);
+        }
+    }
+
+    public static InstalledPackageIndex getInstance(Context context) {
+        if (instance == null) {
+            synchronized (InstalledPackageIndex.class) {
+                if (instance == null) {
+                    instance = new InstalledPackageIndex(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    public synchronized boolean contains(String packageName) {
+        ensureLoaded();
+        return packages.contains(packageName);
+    }
+
+    /**
+     * Copy of the installed packages at this version
+     */
+    public synchronized Set<String> snapshot() {
+        ensureLoaded();
+        return Collections.unmodifiableSet(new HashSet<>(packages));
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return packages.size();
+    }
+
+    /**
+     * Changes every time a package is installed or removed
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        try {
+            for (ApplicationInfo app : context.getPackageManager().getInstalledApplications(0)) {
+                packages.add(app.packageName);
+            }
+            loaded = true;
+            version.incrementAndGet();
+            if (KuzaLog.isLoggable(Log.DEBUG)) {
+                Log.d(TAG, "Indexed " + packages.size() + " installed packages");
+            }
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to load installed packages", e);
+        }
+    }
+}
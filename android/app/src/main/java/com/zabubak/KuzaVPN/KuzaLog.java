@@ -0,0 +1,65 @@
+package com.zabubak.KuzaVPN;
+
+import android.util.Log;
+
+/**
+ * Level gate in front of logcat
+ * Warnings and errors go out by default; debug output is opt-in through
+ * KuzaVpnModule.setLogLevel. Constant messages go through d/w/e; call sites that
+ * concatenate a message check isLoggable() first and call Log directly, so a
+ * disabled level costs no string building. TraceBuffer records what happened either way
+ */
+public final class KuzaLog {
+    // Log.ASSERT + 1 silences everything
+    public static final int SILENT = Log.ASSERT + 1;
+
+    private static volatile int minPriority = Log.WARN;
+
+    private KuzaLog() {
+    }
+
+    /**
+     * @param priority Log.VERBOSE to Log.ERROR, or SILENT
+     */
+    public static void setLevel(int priority) {
+        minPriority = priority;
+    }
+
+    public static int getLevel() {
+        return minPriority;
+    }
+
+    public static boolean isLoggable(int priority) {
+        return priority >= minPriority;
+    }
+
+    public static void d(String tag, String message) {
+        if (Log.DEBUG >= minPriority) {
+            Log.d(tag, message);
+        }
+    }
+
+    public static void w(String tag, String message) {
+        if (Log.WARN >= minPriority) {
+            Log.w(tag, message);
+        }
+    }
+
+    public static void w(String tag, String message, Throwable error) {
+        if (Log.WARN >= minPriority) {
+            Log.w(tag, message, error);
+        }
+    }
+
+    public static void e(String tag, String message) {
+        if (Log.ERROR >= minPriority) {
+            Log.e(tag, message);
+        }
+    }
+
+    public static void e(String tag, String message, Throwable error) {
+        if (Log.ERROR >= minPriority) {
+            Log.e(tag, message, error);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.zabubak.KuzaVPN;
+
+import android.app.PendingIntent;
+import android.content.Intent;
+import android.net.VpnService;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.service.quicksettings.Tile;
+import android.service.quicksettings.TileService;
+
+/**
+ * Quick Settings tile that toggles the tunnel without starting React
+ * Connecting replays the last config that completed a handshake (LastTunnelStore);
+ * the app only opens when VPN consent or a first connect is still needed
+ */
+public class KuzaTileService extends TileService implements TunnelStateChannel.Listener {
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void onStartListening() {
+        TunnelStateChannel.addListener(this);
+        render(TunnelStateChannel.getState());
+    }
+
+    @Override
+    public void onStopListening() {
+        TunnelStateChannel.removeListener(this);
+    }
+
+    @Override
+    public void onTunnelStateChanged(TunnelState state, String detail) {
+        mainHandler.post(() -> render(state));
+    }
+
+    @Override
+    public void onClick() {
+        TunnelState state = TunnelStateChannel.getState();
+        if (state != TunnelState.DOWN && state != TunnelState.FAILED) {
+            Intent intent = new Intent(this, KuzaVpnService.class);
+            intent.setAction(KuzaVpnService.ACTION_DISCONNECT);
+            startService(intent);
+            return;
+        }
+
+        if (VpnService.prepare(this) != null) {
+            openApp();
+            return;
+        }
+        // The saved tunnel comes from a file; read it off the main thread
+        LastTunnelStore.getInstance(this).loadAsync(saved -> {
+            if (saved == null) {
+                openApp();
+                return;
+            }
+            render(TunnelState.ESTABLISHING);
+            KuzaVpnService.connectLast(this);
+        });
+    }
+
+    private void render(TunnelState state) {
+        Tile tile = getQsTile();
+        if (tile == null) {
+            return;
+        }
+        boolean on = state == TunnelState.UP || state == TunnelState.PAUSED;
+        boolean pending = state == TunnelState.ESTABLISHING || state == TunnelState.HANDSHAKING;
+        tile.setState(on || pending ? Tile.STATE_ACTIVE : Tile.STATE_INACTIVE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            tile.setSubtitle(on ? (state == TunnelState.PAUSED ? "Paused" : "Connected")
+                : pending ? "Connecting..." : "Off");
+        }
+        tile.updateTile();
+    }
+
+    private void openApp() {
+        Intent launch = getPackageManager().getLaunchIntentForPackage(getPackageName());
+        if (launch == null) {
+            return;
+        }
+        launch.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            startActivityAndCollapse(PendingIntent.getActivity(this, 0, launch, PendingIntent.FLAG_IMMUTABLE));
+        } else {
+            startActivityAndCollapse(launch);
+        }
+    }
+}
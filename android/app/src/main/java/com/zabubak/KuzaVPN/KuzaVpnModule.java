@@ -1,10 +1,17 @@
 package com.zabubak.KuzaVPN;
 
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
-import java.io.ByteArrayOutputStream;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -14,48 +21,70 @@ import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.BaseActivityEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.bridge.ReactContextBaseJavaModule;
-import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.wireguard.crypto.Key;
 
 import android.app.Activity;
-import android.app.ActivityManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.ResolveInfo;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
-import android.net.TrafficStats;
 import android.net.VpnService;
-import android.util.Base64;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
-import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
-import android.net.TrafficStats;
-import android.net.VpnService;
-import android.util.Base64;
-import android.util.Log;
-import java.io.ByteArrayOutputStream;
-import java.util.List;
 
 /**
  * React Native module for KuzaVPN
  * Bridges JavaScript and native Android VPN functionality
+ * Implements the codegen spec from specs/NativeKuzaVPN.ts, so it runs as a TurboModule
+ * on the new architecture and as a bridge module otherwise
  */
-public class KuzaVpnModule extends ReactContextBaseJavaModule {
+public class KuzaVpnModule extends NativeKuzaVPNSpec {
     private static final String TAG = "KuzaVpnModule";
     private static final int VPN_REQUEST_CODE = 1001;
 
+    private static final String EVENT_APPS_PAGE = "KuzaVpnAppsPage";
+    private static final String EVENT_APP_LABELS = "KuzaVpnAppLabels";
+    private static final int DEFAULT_APP_PAGE_SIZE = 30;
+
+    private static final int LATENCY_HISTORY_SIZE = 8;
+    private static final long LATENCY_CACHE_TTL_MS = 30_000;
+    private static final long DEFAULT_PROBE_TIMEOUT_MS = 1_500;
+
     private final ReactApplicationContext reactContext;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService appListingExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "KuzaVPN-apps");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Only the most recent listing streams; starting or cancelling one bumps this
+    private final AtomicInteger activeListingId = new AtomicInteger();
+    private final ExecutorService probeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "KuzaVPN-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ServerLatencyProber latencyProber =
+        new ServerLatencyProber(LATENCY_HISTORY_SIZE, LATENCY_CACHE_TTL_MS);
+    private final SecureRandom probeRandom = new SecureRandom();
+    private final TunnelStatusPublisher statusPublisher;
     private Promise vpnPermissionPromise;
+    private final QuotaEnforcer.Listener quotaListener = (level, usedBytes, limitBytes, action) -> {
+        WritableMap event = Arguments.createMap();
+        event.putString("level", level.name().toLowerCase(java.util.Locale.ROOT));
+        event.putDouble("usedBytes", usedBytes);
+        event.putDouble("limitBytes", limitBytes);
+        event.putString("action", action.name().toLowerCase(java.util.Locale.ROOT));
+        emitEvent("KuzaVpnQuota", event);
+    };
 
     private final ActivityEventListener activityEventListener = new BaseActivityEventListener() {
         @Override
@@ -73,17 +102,24 @@ public class KuzaVpnModule extends ReactContextBaseJavaModule {
         super(reactContext);
         this.reactContext = reactContext;
         reactContext.addActivityEventListener(activityEventListener);
+        QuotaEnforcer.getInstance(reactContext).addListener(quotaListener);
+        statusPublisher = new TunnelStatusPublisher(reactContext, this::emitEvent);
     }
 
     @Override
-    public String getName() {
-        return "KuzaVPN";
+    public void invalidate() {
+        activeListingId.incrementAndGet();
+        appListingExecutor.shutdownNow();
+        probeExecutor.shutdownNow();
+        QuotaEnforcer.getInstance(reactContext).removeListener(quotaListener);
+        statusPublisher.release();
+        super.invalidate();
     }
 
     /**
      * Request VPN permission from user
      */
-    @ReactMethod
+    @Override
     public void requestVpnPermission(Promise promise) {
         Intent intent = VpnService.prepare(reactContext);
         if (intent != null) {
@@ -103,11 +139,9 @@ public class KuzaVpnModule extends ReactContextBaseJavaModule {
     /**
      * Start VPN with WireGuard configuration and selected apps
      */
-    @ReactMethod
+    @Override
     public void startVPN(String configJson, ReadableArray selectedApps, Promise promise) {
         try {
-            Log.d(TAG, "Starting VPN with config: " + configJson);
-
             // Validate input
             if (configJson == null || configJson.isEmpty()) {
                 promise.reject("INVALID_CONFIG", "VPN configuration is null or empty");
@@ -125,7 +159,9 @@ public class KuzaVpnModule extends ReactContextBaseJavaModule {
                 }
             }
 
-            Log.d(TAG, "Selected apps count: " + appPackages.size());
+            // Settle the promise on the service's state events instead of polling
+            final long budgetMs = KuzaVpnService.connectBudgetMs(configJson);
+            final Runnable cancelWait = awaitTunnelUp(promise, budgetMs, () -> true);
 
             // Start VPN service with error handling
             try {
@@ -135,50 +171,127 @@ public class KuzaVpnModule extends ReactContextBaseJavaModule {
                 serviceIntent.putStringArrayListExtra(KuzaVpnService.EXTRA_SELECTED_APPS, appPackages);
 
                 reactContext.startService(serviceIntent);
-                Log.d(TAG, "✅ VPN service intent sent successfully");
-
-                // Wait for service to confirm connection with timeout
-                new Thread(() -> {
-                    try {
-                        // Wait up to 10 seconds for connection confirmation
-                        int attempts = 0;
-                        boolean connected = false;
-
-                        while (attempts < 20 && !connected) { // 20 attempts * 500ms = 10 seconds
-                            Thread.sleep(500);
-                            connected = isServiceRunning();
-                            attempts++;
-                        }
-
-                        if (connected) {
-                            promise.resolve(true);
-                            Log.d(TAG, "✅ VPN service confirmed connected");
-                        } else {
-                            promise.reject("TIMEOUT_ERROR", "VPN service failed to start within timeout");
-                            Log.e(TAG, "❌ VPN service connection timeout");
-                        }
-                    } catch (InterruptedException e) {
-                        promise.reject("INTERRUPTED_ERROR", "Connection wait interrupted");
-                    }
-                }).start();
-
-                Log.d(TAG, "VPN start initiated with " + appPackages.size() + " apps");
+                if (KuzaLog.isLoggable(Log.DEBUG)) {
+                    Log.d(TAG, "VPN start initiated with " + appPackages.size() + " apps");
+                }
 
             } catch (Exception serviceError) {
-                Log.e(TAG, "Failed to start VPN service", serviceError);
+                KuzaLog.e(TAG, "Failed to start VPN service", serviceError);
+                cancelWait.run();
                 promise.reject("SERVICE_START_ERROR", "Failed to start VPN service: " + serviceError.getMessage());
             }
 
         } catch (Exception e) {
-            Log.e(TAG, "Failed to start VPN", e);
+            KuzaLog.e(TAG, "Failed to start VPN", e);
             promise.reject("START_VPN_ERROR", "VPN start failed: " + e.getMessage());
         }
     }
 
+    /**
+     * Switch the running tunnel to another server, reusing the VPN interface when possible
+     * Resolves with { mode: "hot" | "rebuild", gapMs, endpoint } once the new tunnel is up
+     */
+    @Override
+    public void switchServer(String configJson, Promise promise) {
+        if (configJson == null || configJson.isEmpty()) {
+            promise.reject("INVALID_CONFIG", "VPN configuration is null or empty");
+            return;
+        }
+
+        final long requestedAt = System.currentTimeMillis();
+        final Runnable cancelWait = awaitTunnelUp(promise, KuzaVpnService.connectBudgetMs(configJson), () -> {
+            ServerSwitchReport report = KuzaVpnService.getLastSwitchReport();
+            WritableMap result = Arguments.createMap();
+            if (report != null && report.completedAtMs >= requestedAt) {
+                result.putString("mode", report.mode);
+                result.putDouble("gapMs", report.gapMs);
+                result.putString("endpoint", report.endpoint);
+            }
+            return result;
+        });
+
+        try {
+            Intent serviceIntent = new Intent(reactContext, KuzaVpnService.class);
+            serviceIntent.setAction(KuzaVpnService.ACTION_SWITCH_SERVER);
+            serviceIntent.putExtra(KuzaVpnService.EXTRA_CONFIG, configJson);
+            reactContext.startService(serviceIntent);
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to switch server", e);
+            cancelWait.run();
+            promise.reject("SWITCH_SERVER_ERROR", "Failed to switch server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Listen for the outcome of a connect or switch the service is about to run
+     * Resolves with onUp's value on UP, rejects on FAILED/DOWN, on a rejected request
+     * (the tunnel is left as it was) or after timeoutMs
+     * @param timeoutMs the service's budget for the request, see KuzaVpnService.connectBudgetMs
+     * @return a canceller for when the request never reached the service
+     */
+    private Runnable awaitTunnelUp(Promise promise, long timeoutMs, Supplier<Object> onUp) {
+        final AtomicBoolean settled = new AtomicBoolean(false);
+        final AtomicBoolean attemptSeen = new AtomicBoolean(false);
+        final TunnelStateChannel.Listener[] listenerRef = new TunnelStateChannel.Listener[1];
+        final TunnelStateChannel.RejectionListener[] rejectionRef = new TunnelStateChannel.RejectionListener[1];
+        final Runnable timeout = () -> {
+            if (settled.compareAndSet(false, true)) {
+                TunnelStateChannel.removeListener(listenerRef[0]);
+                TunnelStateChannel.removeRejectionListener(rejectionRef[0]);
+                promise.reject("TIMEOUT_ERROR", "VPN tunnel did not come up within timeout");
+                KuzaLog.e(TAG, "VPN connection timeout");
+            }
+        };
+        listenerRef[0] = (state, detail) -> {
+            // Ignore a DOWN left over from a previous session until our attempt starts
+            if (state == TunnelState.ESTABLISHING || state == TunnelState.HANDSHAKING) {
+                attemptSeen.set(true);
+            }
+            if (!attemptSeen.get() || (state != TunnelState.UP && state != TunnelState.FAILED && state != TunnelState.DOWN)) {
+                return;
+            }
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            TunnelStateChannel.removeListener(listenerRef[0]);
+            TunnelStateChannel.removeRejectionListener(rejectionRef[0]);
+            mainHandler.removeCallbacks(timeout);
+
+            if (state == TunnelState.UP) {
+                promise.resolve(onUp.get());
+                KuzaLog.d(TAG, "VPN tunnel confirmed up");
+            } else {
+                promise.reject("CONNECT_FAILED", detail != null ? detail : "VPN tunnel went down while connecting");
+                if (KuzaLog.isLoggable(Log.ERROR)) {
+                    Log.e(TAG, "VPN tunnel failed: " + detail);
+                }
+            }
+        };
+        rejectionRef[0] = detail -> {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            TunnelStateChannel.removeListener(listenerRef[0]);
+            TunnelStateChannel.removeRejectionListener(rejectionRef[0]);
+            mainHandler.removeCallbacks(timeout);
+            promise.reject("REQUEST_REJECTED", detail);
+        };
+        TunnelStateChannel.addListener(listenerRef[0]);
+        TunnelStateChannel.addRejectionListener(rejectionRef[0]);
+        mainHandler.postDelayed(timeout, timeoutMs);
+
+        return () -> {
+            settled.set(true);
+            TunnelStateChannel.removeListener(listenerRef[0]);
+            TunnelStateChannel.removeRejectionListener(rejectionRef[0]);
+            mainHandler.removeCallbacks(timeout);
+        };
+    }
+
     /**
      * Stop VPN service
      */
-    @ReactMethod
+    @Override
     public void stopVPN(Promise promise) {
         try {
             Intent serviceIntent = new Intent(reactContext, KuzaVpnService.class);
@@ -186,211 +299,727 @@ public class KuzaVpnModule extends ReactContextBaseJavaModule {
             reactContext.startService(serviceIntent);
 
             promise.resolve(true);
-            Log.d(TAG, "VPN stop initiated");
+            KuzaLog.d(TAG, "VPN stop initiated");
 
         } catch (Exception e) {
-            Log.e(TAG, "Failed to stop VPN", e);
+            KuzaLog.e(TAG, "Failed to stop VPN", e);
             promise.reject("STOP_VPN_ERROR", e.getMessage());
         }
     }
 
+    /**
+     * Configure the monthly data quota enforced by KuzaVpnService
+     * @param limitBytes   0 disables the quota
+     * @param softFraction share of the limit that fires the soft threshold
+     * @param action       "none", "pause" or "disconnect" at the hard limit
+     */
+    @Override
+    public void setQuota(double limitBytes, double softFraction, String action, Promise promise) {
+        try {
+            QuotaEnforcer quota = QuotaEnforcer.getInstance(reactContext);
+            quota.configure((long) limitBytes, softFraction, QuotaEnforcer.parseAction(action));
+            resumeIfQuotaAllows(quota);
+            promise.resolve(quotaStatus(quota));
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to set quota", e);
+            promise.reject("SET_QUOTA_ERROR", e.getMessage());
+        }
+    }
+
+    @Override
+    public void getQuotaStatus(Promise promise) {
+        try {
+            promise.resolve(quotaStatus(QuotaEnforcer.getInstance(reactContext)));
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to get quota status", e);
+            promise.reject("GET_QUOTA_ERROR", e.getMessage());
+        }
+    }
+
+    /**
+     * Start the quota period over; a tunnel paused at the limit comes back up
+     */
+    @Override
+    public void resetQuota(Promise promise) {
+        try {
+            QuotaEnforcer quota = QuotaEnforcer.getInstance(reactContext);
+            quota.resetUsage();
+            resumeIfQuotaAllows(quota);
+            promise.resolve(quotaStatus(quota));
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to reset quota", e);
+            promise.reject("RESET_QUOTA_ERROR", e.getMessage());
+        }
+    }
+
+    private void resumeIfQuotaAllows(QuotaEnforcer quota) {
+        if (TunnelStateChannel.getState() == TunnelState.PAUSED && !quota.isExhausted()) {
+            Intent serviceIntent = new Intent(reactContext, KuzaVpnService.class);
+            serviceIntent.setAction(KuzaVpnService.ACTION_RESUME);
+            reactContext.startService(serviceIntent);
+        }
+    }
+
+    private static WritableMap quotaStatus(QuotaEnforcer quota) {
+        WritableMap status = Arguments.createMap();
+        status.putDouble("usedBytes", quota.getUsedBytes());
+        status.putDouble("limitBytes", quota.getLimitBytes());
+        status.putDouble("softFraction", quota.getSoftFraction());
+        status.putString("action", quota.getAction().name().toLowerCase(java.util.Locale.ROOT));
+        status.putDouble("periodEndsAt", quota.getPeriodEndMs());
+        status.putBoolean("exhausted", quota.isExhausted());
+        status.putBoolean("paused", TunnelStateChannel.getState() == TunnelState.PAUSED);
+        return status;
+    }
+
     /**
      * Check current VPN connection status
      */
-    @ReactMethod
+    @Override
     public void getVpnStatus(Promise promise) {
         try {
-            // Check if VPN service is running
-            boolean isRunning = isServiceRunning();
+            // Same state the status events carry, so the polling fallback matches them
+            TunnelState state = TunnelStateChannel.getState();
+            WritableMap result = TunnelStatusPublisher.statusToMap(state, null);
+            result.putBoolean("isConnected", state == TunnelState.UP);
 
-            WritableMap result = Arguments.createMap();
-            result.putString("status", isRunning ? "connected" : "disconnected");
-            result.putBoolean("isConnected", isRunning);
-
-            if (isRunning) {
-                result.putString("server", "152.53.146.237:51820");
+            String server = KuzaVpnService.getConnectedEndpoint();
+            if (server != null) {
+                result.putString("server", server);
                 result.putString("protocol", "WireGuard");
             }
 
+            ConnectTiming lastConnect = ConnectTimingHistory.getInstance().getLast();
+            if (lastConnect != null) {
+                result.putMap("lastConnect", connectTimingToMap(lastConnect));
+            }
+
             promise.resolve(result);
 
         } catch (Exception e) {
-            Log.e(TAG, "Failed to get VPN status", e);
+            KuzaLog.e(TAG, "Failed to get VPN status", e);
             promise.reject("GET_STATUS_ERROR", e.getMessage());
         }
     }
 
+    /**
+     * Tunnel state and throughput as of the last sample, read synchronously
+     * Nothing here touches the system: the state comes from TunnelStateChannel and the
+     * numbers from one TunnelStatsEngine snapshot, so screens can call it every render
+     */
+    @Override
+    public WritableMap getSnapshot() {
+        TunnelStatsEngine.Snapshot stats = TunnelStatsEngine.getInstance().snapshot();
+        long now = System.currentTimeMillis();
+
+        WritableMap snapshot = TunnelStatusPublisher.statusToMap(TunnelStateChannel.getState(), null);
+        snapshot.putBoolean("isActive", stats.active);
+        snapshot.putDouble("bytesReceived", stats.rxBytes);
+        snapshot.putDouble("bytesSent", stats.txBytes);
+        snapshot.putDouble("rxBytesPerSecond", stats.rxRate);
+        snapshot.putDouble("txBytesPerSecond", stats.txRate);
+        snapshot.putDouble("rxBytesPerSecondSmoothed", stats.smoothedRxRate);
+        snapshot.putDouble("txBytesPerSecondSmoothed", stats.smoothedTxRate);
+        snapshot.putDouble("sessionStartedAt", stats.sessionStartMs);
+        snapshot.putDouble("lastSampleAt", stats.lastSampleMs);
+        snapshot.putDouble("handshakeAgeMs", stats.latestHandshakeMs > 0 ? now - stats.latestHandshakeMs : -1);
+        return snapshot;
+    }
+
     /**
      * Get list of installed apps for per-app VPN
+     * Icons are not inlined; each app carries an iconUri served lazily by AppIconProvider
      */
-    @ReactMethod
+    @Override
     public void getInstalledApps(Promise promise) {
         try {
+            PackageManager pm = reactContext.getPackageManager();
             WritableArray apps = Arguments.createArray();
 
-            // Get real installed apps
-            android.content.pm.PackageManager pm = reactContext.getPackageManager();
-            java.util.List<android.content.pm.ApplicationInfo> installedApps =
-                pm.getInstalledApplications(android.content.pm.PackageManager.GET_META_DATA);
-
-            for (android.content.pm.ApplicationInfo app : installedApps) {
-                // Skip system apps and this VPN app
-                Intent launchIntent = pm.getLaunchIntentForPackage(app.packageName);
-                if (launchIntent != null && !app.packageName.equals(reactContext.getPackageName())) {
+            for (PackageInfo packageInfo : listLaunchableApps()) {
+                apps.pushMap(toAppInfo(packageInfo, resolveLabel(pm, packageInfo)));
+            }
 
-                    WritableMap appInfo = Arguments.createMap();
-                    appInfo.putString("packageName", app.packageName);
+            promise.resolve(apps);
 
-                    try {
-                        String appName = pm.getApplicationLabel(app).toString();
-                        appInfo.putString("appName", appName);
-                    } catch (Exception e) {
-                        appInfo.putString("appName", app.packageName);
-                    }
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to get installed apps", e);
+            promise.reject("GET_APPS_ERROR", e.getMessage());
+        }
+    }
 
-                    // Get app icon as base64 - using correct key name
-                    String iconBase64 = getAppIconBase64(app.packageName);
-                    if (iconBase64 != null) {
-                        appInfo.putString("iconBase64", iconBase64);
-                    }
+    /**
+     * Paged variant of getInstalledApps for the app selector
+     * Resolves with the first page (labels included) right away; later pages follow as
+     * KuzaVpnAppsPage events without labels, then labels arrive as KuzaVpnAppLabels events
+     */
+    @Override
+    public void startAppListing(double requestedPageSize, Promise promise) {
+        try {
+            final int listingId = activeListingId.incrementAndGet();
+            final int pageSize = requestedPageSize >= 1 ? (int) requestedPageSize : DEFAULT_APP_PAGE_SIZE;
+            final List<PackageInfo> packages = listLaunchableApps();
+            final int firstPageEnd = Math.min(pageSize, packages.size());
 
-                    apps.pushMap(appInfo);
-                }
+            PackageManager pm = reactContext.getPackageManager();
+            WritableArray firstPage = Arguments.createArray();
+            for (int i = 0; i < firstPageEnd; i++) {
+                firstPage.pushMap(toAppInfo(packages.get(i), resolveLabel(pm, packages.get(i))));
             }
 
-            promise.resolve(apps);
+            WritableMap result = Arguments.createMap();
+            result.putInt("listingId", listingId);
+            result.putInt("total", packages.size());
+            result.putArray("apps", firstPage);
+            result.putBoolean("done", firstPageEnd == packages.size());
+            promise.resolve(result);
+
+            if (firstPageEnd < packages.size()) {
+                appListingExecutor.execute(() -> streamRemainingApps(listingId, packages, firstPageEnd, pageSize));
+            }
 
         } catch (Exception e) {
-            Log.e(TAG, "Failed to get installed apps", e);
+            KuzaLog.e(TAG, "Failed to start app listing", e);
             promise.reject("GET_APPS_ERROR", e.getMessage());
         }
     }
 
     /**
-     * Get current bandwidth statistics
+     * Stop streaming pages and labels for a listing, e.g. when the selector closes
      */
-    @ReactMethod
-    public void getBandwidthStats(Promise promise) {
-        try {
-            WritableMap stats = Arguments.createMap();
+    @Override
+    public void cancelAppListing(double listingId) {
+        activeListingId.compareAndSet((int) listingId, (int) listingId + 1);
+    }
+
+    private void streamRemainingApps(int listingId, List<PackageInfo> packages, int from, int pageSize) {
+        // Pages first, with the package name standing in for the label...
+        for (int offset = from; offset < packages.size(); offset += pageSize) {
+            if (listingId != activeListingId.get()) {
+                return;
+            }
+            int end = Math.min(offset + pageSize, packages.size());
+            WritableArray page = Arguments.createArray();
+            for (int i = offset; i < end; i++) {
+                WritableMap appInfo = toAppInfo(packages.get(i), packages.get(i).packageName);
+                appInfo.putBoolean("labelPending", true);
+                page.pushMap(appInfo);
+            }
 
-            // Get system-wide traffic statistics
-            long mobileRx = TrafficStats.getMobileRxBytes();
-            long mobileTx = TrafficStats.getMobileTxBytes();
-            long totalRx = TrafficStats.getTotalRxBytes();
-            long totalTx = TrafficStats.getTotalTxBytes();
+            WritableMap event = Arguments.createMap();
+            event.putInt("listingId", listingId);
+            event.putInt("offset", offset);
+            event.putArray("apps", page);
+            event.putBoolean("done", end == packages.size());
+            emitEvent(EVENT_APPS_PAGE, event);
+        }
 
-            // Handle unsupported values (-1) and convert to reasonable defaults
-            if (mobileRx == TrafficStats.UNSUPPORTED || mobileRx < 0) {
-                mobileRx = 0;
+        // ...then the expensive labels, in batches
+        PackageManager pm = reactContext.getPackageManager();
+        for (int offset = from; offset < packages.size(); offset += pageSize) {
+            if (listingId != activeListingId.get()) {
+                return;
             }
-            if (mobileTx == TrafficStats.UNSUPPORTED || mobileTx < 0) {
-                mobileTx = 0;
+            int end = Math.min(offset + pageSize, packages.size());
+            WritableArray labels = Arguments.createArray();
+            for (int i = offset; i < end; i++) {
+                WritableMap label = Arguments.createMap();
+                label.putString("packageName", packages.get(i).packageName);
+                label.putString("appName", resolveLabel(pm, packages.get(i)));
+                labels.pushMap(label);
             }
-            if (totalRx == TrafficStats.UNSUPPORTED || totalRx < 0) {
-                totalRx = 0;
+
+            WritableMap event = Arguments.createMap();
+            event.putInt("listingId", listingId);
+            event.putArray("labels", labels);
+            event.putBoolean("done", end == packages.size());
+            emitEvent(EVENT_APP_LABELS, event);
+        }
+    }
+
+    /**
+     * Launchable apps other than ours, from two PackageManager calls in total
+     */
+    private List<PackageInfo> listLaunchableApps() {
+        PackageManager pm = reactContext.getPackageManager();
+
+        Intent launcherIntent = new Intent(Intent.ACTION_MAIN);
+        launcherIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        Set<String> launchable = new HashSet<>();
+        for (ResolveInfo resolveInfo : pm.queryIntentActivities(launcherIntent, 0)) {
+            if (resolveInfo.activityInfo != null) {
+                launchable.add(resolveInfo.activityInfo.packageName);
             }
-            if (totalTx == TrafficStats.UNSUPPORTED || totalTx < 0) {
-                totalTx = 0;
+        }
+        launchable.remove(reactContext.getPackageName());
+
+        List<PackageInfo> apps = new ArrayList<>(launchable.size());
+        for (PackageInfo packageInfo : pm.getInstalledPackages(0)) {
+            if (packageInfo.applicationInfo != null && launchable.contains(packageInfo.packageName)) {
+                apps.add(packageInfo);
             }
+        }
+        return apps;
+    }
+
+    private WritableMap toAppInfo(PackageInfo packageInfo, String appName) {
+        ApplicationInfo app = packageInfo.applicationInfo;
+        WritableMap appInfo = Arguments.createMap();
+        appInfo.putString("packageName", packageInfo.packageName);
+        appInfo.putString("appName", appName);
+        appInfo.putBoolean("isSystemApp", (app.flags & ApplicationInfo.FLAG_SYSTEM) != 0);
+        appInfo.putString("iconUri",
+            AppIconProvider.iconUri(reactContext, packageInfo.packageName, packageInfo.lastUpdateTime));
+        return appInfo;
+    }
 
-            boolean isConnected = isServiceRunning();
-            long vpnUpload = 0;
-            long vpnDownload = 0;
-
-            if (isConnected) {
-                // Get our app's UID for more accurate tracking
-                int uid = android.os.Process.myUid();
-                long appRx = TrafficStats.getUidRxBytes(uid);
-                long appTx = TrafficStats.getUidTxBytes(uid);
-
-                if (appRx != TrafficStats.UNSUPPORTED && appRx > 0) {
-                    vpnDownload = appRx;
-                } else {
-                    // Fallback: use a portion of mobile data when VPN is connected
-                    vpnDownload = Math.min(mobileRx / 4, 100 * 1024 * 1024); // Max 100MB
+    private static String resolveLabel(PackageManager pm, PackageInfo packageInfo) {
+        try {
+            return pm.getApplicationLabel(packageInfo.applicationInfo).toString();
+        } catch (Exception e) {
+            return packageInfo.packageName;
+        }
+    }
+
+    private static String resolveLabel(PackageManager pm, String packageName) {
+        try {
+            return pm.getApplicationLabel(pm.getApplicationInfo(packageName, 0)).toString();
+        } catch (Exception e) {
+            return packageName;
+        }
+    }
+
+    private void emitEvent(String eventName, WritableMap payload) {
+        if (!reactContext.hasActiveReactInstance()) {
+            return;
+        }
+        reactContext
+            .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+            .emit(eventName, payload);
+    }
+
+    /**
+     * Required by NativeEventEmitter on the JS side
+     * The counts also tell the status publisher when nobody is listening any more
+     */
+    @Override
+    public void addListener(String eventName) {
+        statusPublisher.onJsListenersChanged(1);
+    }
+
+    @Override
+    public void removeListeners(double count) {
+        statusPublisher.onJsListenersChanged(-(int) count);
+    }
+
+    /**
+     * Push status changes and coalesced bandwidth stats instead of being polled
+     * Emits KuzaVpnStatus on every tunnel state change and KuzaVpnStats with only the
+     * changed fields at most every intervalMs (1s to 60s), starting with a full snapshot.
+     * Calling it again changes the interval
+     */
+    @Override
+    public void subscribeStatus(double intervalMs, Promise promise) {
+        try {
+            statusPublisher.subscribe((long) intervalMs);
+            promise.resolve(true);
+
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to subscribe to status", e);
+            promise.reject("SUBSCRIBE_STATUS_ERROR", e.getMessage());
+        }
+    }
+
+    @Override
+    public void unsubscribeStatus() {
+        statusPublisher.unsubscribe();
+    }
+
+    /**
+     * Resolve the catalogue's endpoints ("host:port") in the background
+     * Connects then start from cached addresses instead of waiting on DNS
+     */
+    @Override
+    public void prefetchEndpoints(ReadableArray endpoints, Promise promise) {
+        try {
+            List<String> targets = new ArrayList<>();
+            if (endpoints != null) {
+                for (int i = 0; i < endpoints.size(); i++) {
+                    String endpoint = endpoints.getString(i);
+                    if (endpoint != null && !endpoint.isEmpty()) {
+                        targets.add(endpoint);
+                    }
+                }
+            }
+            EndpointResolver.getInstance(reactContext).prefetch(targets);
+            promise.resolve(true);
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to prefetch endpoints", e);
+            promise.reject("PREFETCH_ERROR", e.getMessage());
+        }
+    }
+
+    /**
+     * Measure RTT to a batch of WireGuard servers concurrently, with handshake initiations
+     * from the client's key; a server only answers a client it knows
+     * Resolves with one entry per server, in order; fresh results are served from cache.
+     * The server the tunnel is up with is not probed: a handshake from another socket
+     * would move the server's return path for the tunnel onto it
+     * @param servers { serverEndpoint, publicKey } each
+     */
+    @Override
+    public void probeServers(ReadableArray servers, String privateKey, double timeoutMs, Promise promise) {
+        final byte[] clientKey;
+        try {
+            clientKey = Key.fromBase64(privateKey).getBytes();
+        } catch (Exception e) {
+            promise.reject("INVALID_KEY", "Invalid client private key");
+            return;
+        }
+
+        final List<String> targets = new ArrayList<>();
+        final Map<String, byte[]> serverKeys = new HashMap<>();
+        if (servers != null) {
+            for (int i = 0; i < servers.size(); i++) {
+                ReadableMap server = servers.getMap(i);
+                String endpoint = server != null && server.hasKey("serverEndpoint")
+                    ? server.getString("serverEndpoint") : null;
+                if (endpoint == null || endpoint.isEmpty()) {
+                    continue;
+                }
+                targets.add(endpoint);
+                try {
+                    serverKeys.put(endpoint, Key.fromBase64(server.getString("publicKey")).getBytes());
+                } catch (Exception e) {
+                    // Without a valid key nothing would answer; the server comes back unmeasured
+                    if (KuzaLog.isLoggable(Log.WARN)) {
+                        Log.w(TAG, "No usable public key for " + endpoint);
+                    }
                 }
+            }
+        }
+        final long timeout = timeoutMs > 0 ? (long) timeoutMs : DEFAULT_PROBE_TIMEOUT_MS;
 
-                if (appTx != TrafficStats.UNSUPPORTED && appTx > 0) {
-                    vpnUpload = appTx;
-                } else {
-                    // Fallback: use a portion of mobile data when VPN is connected
-                    vpnUpload = Math.min(mobileTx / 4, 25 * 1024 * 1024); // Max 25MB
+        probeExecutor.execute(() -> {
+            try {
+                WritableArray results = Arguments.createArray();
+                String connected = KuzaVpnService.getConnectedEndpoint();
+                long timestampMs = System.currentTimeMillis() - HandshakeRace.TIMESTAMP_BACKDATE_MS;
+                ServerLatencyProber.PayloadFactory initiations = (endpoint, senderIndex) -> {
+                    byte[] serverKey = serverKeys.get(endpoint);
+                    if (serverKey == null || endpoint.equals(connected)) {
+                        return null;
+                    }
+                    byte[] ephemeral = new byte[HandshakeInitiation.KEY_SIZE];
+                    probeRandom.nextBytes(ephemeral);
+                    return HandshakeInitiation.create(ServerRacer.CURVE, clientKey, serverKey, senderIndex, ephemeral,
+                        timestampMs);
+                };
+                for (ServerLatencyProber.Result result : latencyProber.probe(targets, initiations, timeout)) {
+                    WritableMap entry = Arguments.createMap();
+                    entry.putString("endpoint", result.endpoint);
+                    entry.putBoolean("reachable", result.reachable);
+                    entry.putDouble("rttMs", result.lastRttMs);
+                    entry.putDouble("medianRttMs", result.medianRttMs);
+                    entry.putDouble("jitterMs", result.jitterMs);
+                    entry.putInt("samples", result.samples);
+                    entry.putDouble("lossRate", result.lossRate);
+                    entry.putDouble("measuredAt", result.measuredAtMs);
+                    entry.putBoolean("cached", result.cached);
+                    results.pushMap(entry);
                 }
+                promise.resolve(results);
+            } catch (Exception e) {
+                KuzaLog.e(TAG, "Failed to probe servers", e);
+                promise.reject("PROBE_ERROR", e.getMessage());
             }
+        });
+    }
 
-            long vpnTotal = vpnUpload + vpnDownload;
+    /**
+     * Get current bandwidth statistics for the tunnel session
+     * Totals and rates come from the WireGuard backend's counters, sampled natively
+     */
+    @Override
+    public void getBandwidthStats(Promise promise) {
+        try {
+            TunnelStatsEngine engine = TunnelStatsEngine.getInstance();
+            WritableMap stats = Arguments.createMap();
+
+            long bytesSent = engine.getSessionTxBytes();
+            long bytesReceived = engine.getSessionRxBytes();
+
+            stats.putDouble("bytesSent", bytesSent);
+            stats.putDouble("bytesReceived", bytesReceived);
+            stats.putDouble("totalBytes", bytesSent + bytesReceived);
+            stats.putDouble("rxBytesPerSecond", engine.getRxRate());
+            stats.putDouble("txBytesPerSecond", engine.getTxRate());
+            stats.putDouble("rxBytesPerSecondSmoothed", engine.getSmoothedRxRate());
+            stats.putDouble("txBytesPerSecondSmoothed", engine.getSmoothedTxRate());
+            stats.putDouble("sessionStartedAt", engine.getSessionStartMs());
+            stats.putBoolean("isActive", engine.isActive());
 
-            stats.putDouble("bytesSent", vpnUpload);
-            stats.putDouble("bytesReceived", vpnDownload);
-            stats.putDouble("totalBytes", vpnTotal);
-            stats.putDouble("totalSystemRx", totalRx);
-            stats.putDouble("totalSystemTx", totalTx);
-            stats.putString("lastUpdated", String.valueOf(System.currentTimeMillis()));
+            long lastSample = engine.getLastSampleMs();
+            stats.putString("lastUpdated", String.valueOf(lastSample > 0 ? lastSample : System.currentTimeMillis()));
 
-            Log.d(TAG, "Bandwidth stats - VPN Total: " + vpnTotal + " bytes (" + (vpnTotal / (1024*1024)) + " MB)");
             promise.resolve(stats);
 
         } catch (Exception e) {
-            Log.e(TAG, "Failed to get bandwidth stats", e);
+            KuzaLog.e(TAG, "Failed to get bandwidth stats", e);
             promise.reject("GET_BANDWIDTH_ERROR", e.getMessage());
         }
     }
 
-    private boolean isServiceRunning() {
+    /**
+     * The session's throughput samples as flat [timeMs, rxBytes, txBytes] triples, oldest first
+     * One numeric array instead of a map per sample; JS reads it into typed arrays
+     */
+    @Override
+    public void getThroughputHistory(Promise promise) {
         try {
-            android.app.ActivityManager manager = (android.app.ActivityManager) reactContext.getSystemService(android.content.Context.ACTIVITY_SERVICE);
-            for (android.app.ActivityManager.RunningServiceInfo service : manager.getRunningServices(Integer.MAX_VALUE)) {
-                if (KuzaVpnService.class.getName().equals(service.service.getClassName())) {
-                    return true;
-                }
+            TunnelStatsEngine engine = TunnelStatsEngine.getInstance();
+            int capacity = engine.getCapacity();
+            long[] times = new long[capacity];
+            long[] rx = new long[capacity];
+            long[] tx = new long[capacity];
+            int count = engine.copySamples(times, rx, tx);
+
+            WritableArray history = Arguments.createArray();
+            for (int i = 0; i < count; i++) {
+                history.pushDouble(times[i]);
+                history.pushDouble(rx[i]);
+                history.pushDouble(tx[i]);
             }
+            promise.resolve(history);
+
         } catch (Exception e) {
-            Log.e(TAG, "Error checking service status", e);
+            KuzaLog.e(TAG, "Failed to get throughput history", e);
+            promise.reject("GET_THROUGHPUT_HISTORY_ERROR", e.getMessage());
         }
-        return false;
     }
 
     /**
-     * Helper method to convert app icon to base64 string
+     * Apps ranked by VPN traffic between two instants, from the on-device usage history
+     * Needs usage access (PACKAGE_USAGE_STATS) for anything to have been recorded
      */
-    private String getAppIconBase64(String packageName) {
+    @Override
+    public void getTopApps(double fromMs, double toMs, double limit, Promise promise) {
         try {
+            List<VpnUsageStore.AppUsage> usage = VpnUsageStore.getInstance(reactContext)
+                .topApps((long) fromMs, (long) toMs, Math.max(1, (int) limit));
             PackageManager pm = reactContext.getPackageManager();
-            Drawable icon = pm.getApplicationIcon(packageName);
 
-            Log.d(TAG, "Getting icon for package: " + packageName);
+            WritableArray apps = Arguments.createArray();
+            for (VpnUsageStore.AppUsage app : usage) {
+                WritableMap entry = Arguments.createMap();
+                String[] packages = pm.getPackagesForUid(app.uid);
+                String packageName = packages != null && packages.length > 0 ? packages[0] : pm.getNameForUid(app.uid);
+                entry.putInt("uid", app.uid);
+                entry.putString("packageName", packageName);
+                entry.putString("appName", packageName != null ? resolveLabel(pm, packageName) : String.valueOf(app.uid));
+                entry.putDouble("rxBytes", app.rxBytes);
+                entry.putDouble("txBytes", app.txBytes);
+                entry.putDouble("totalBytes", app.getTotalBytes());
+                apps.pushMap(entry);
+            }
+            promise.resolve(apps);
 
-            Bitmap bitmap;
-            if (icon instanceof BitmapDrawable) {
-                bitmap = ((BitmapDrawable) icon).getBitmap();
-            } else {
-                int width = icon.getIntrinsicWidth() > 0 ? icon.getIntrinsicWidth() : 96;
-                int height = icon.getIntrinsicHeight() > 0 ? icon.getIntrinsicHeight() : 96;
-                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-                Canvas canvas = new Canvas(bitmap);
-                icon.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-                icon.draw(canvas);
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to get top apps", e);
+            promise.reject("GET_TOP_APPS_ERROR", e.getMessage());
+        }
+    }
+
+    /**
+     * How quickly the tunnel recovered after recent Wi-Fi/cellular switches: the last roam plus percentiles
+     */
+    @Override
+    public void getRoamingStats(Promise promise) {
+        try {
+            RoamingHistory history = RoamingHistory.getInstance();
+            WritableMap result = Arguments.createMap();
+            result.putInt("count", history.size());
+            result.putInt("recoveredCount", history.recoveredCount());
+            result.putDouble("p50Ms", history.percentile(50));
+            result.putDouble("p90Ms", history.percentile(90));
+            result.putDouble("p99Ms", history.percentile(99));
+
+            RoamingReport last = history.getLast();
+            if (last != null) {
+                WritableMap lastMap = Arguments.createMap();
+                lastMap.putString("fromNetwork", last.fromNetwork);
+                lastMap.putString("toNetwork", last.toNetwork);
+                lastMap.putString("mode", last.mode);
+                lastMap.putBoolean("recovered", last.recovered);
+                lastMap.putDouble("recoveryMs", last.recoveryMs);
+                lastMap.putDouble("completedAt", last.completedAtMs);
+                result.putMap("last", lastMap);
             }
+            promise.resolve(result);
+
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to get roaming stats", e);
+            promise.reject("GET_ROAMING_ERROR", e.getMessage());
+        }
+    }
 
-            // Scale down to a max size (optional, avoids memory issues)
-            int maxSize = 128;
-            if (bitmap.getWidth() > maxSize || bitmap.getHeight() > maxSize) {
-                bitmap = Bitmap.createScaledBitmap(bitmap, maxSize, maxSize, true);
+    /**
+     * The last connect or switch that raced candidate servers: who won and by how much
+     * Resolves with null until a race has run in this process
+     */
+    @Override
+    public void getLastServerRace(Promise promise) {
+        ServerRaceReport report = KuzaVpnService.getLastRaceReport();
+        if (report == null) {
+            promise.resolve(null);
+            return;
+        }
+        WritableMap result = Arguments.createMap();
+        if (report.winner != null) {
+            result.putString("winner", report.winner);
+        }
+        result.putInt("winnerRank", report.winnerRank);
+        result.putDouble("winnerMs", report.winnerMs);
+        if (report.runnerUp != null) {
+            result.putString("runnerUp", report.runnerUp);
+        }
+        result.putDouble("marginMs", report.marginMs);
+        result.putInt("contenders", report.contenders);
+        result.putInt("started", report.started);
+        result.putDouble("completedAt", report.completedAtMs);
+        promise.resolve(result);
+    }
+
+    /**
+     * Dump the trace ring buffer, oldest event first
+     * Resolves with { capacity, recorded, events: [{ seq, event, at, a, b, c }] }
+     */
+    @Override
+    public void getTrace(Promise promise) {
+        try {
+            TraceBuffer trace = TraceBuffer.getInstance();
+            // Events carry System.nanoTime(); shift them onto the wall clock
+            final long offsetMs = System.currentTimeMillis() - System.nanoTime() / 1_000_000;
+            final WritableArray events = Arguments.createArray();
+            trace.dump((sequence, event, timeNanos, a, b, c) -> {
+                WritableMap map = Arguments.createMap();
+                map.putDouble("seq", sequence);
+                map.putString("event", TraceEvent.name(event));
+                map.putDouble("at", offsetMs + timeNanos / 1_000_000);
+                map.putDouble("a", a);
+                map.putDouble("b", b);
+                map.putDouble("c", c);
+                events.pushMap(map);
+            });
+
+            WritableMap result = Arguments.createMap();
+            result.putInt("capacity", trace.capacity());
+            result.putDouble("recorded", trace.recorded());
+            result.putArray("events", events);
+            promise.resolve(result);
+
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to dump trace", e);
+            promise.reject("GET_TRACE_ERROR", e.getMessage());
+        }
+    }
+
+    @Override
+    public void clearTrace(Promise promise) {
+        TraceBuffer.getInstance().clear();
+        promise.resolve(true);
+    }
+
+    /**
+     * Lowest logcat level the native side writes: "debug", "info", "warn", "error" or "silent"
+     */
+    @Override
+    public void setLogLevel(String level, Promise promise) {
+        int priority;
+        switch (level != null ? level : "") {
+            case "verbose":
+                priority = Log.VERBOSE;
+                break;
+            case "debug":
+                priority = Log.DEBUG;
+                break;
+            case "info":
+                priority = Log.INFO;
+                break;
+            case "warn":
+                priority = Log.WARN;
+                break;
+            case "error":
+                priority = Log.ERROR;
+                break;
+            case "silent":
+                priority = KuzaLog.SILENT;
+                break;
+            default:
+                promise.reject("INVALID_LOG_LEVEL", "Unknown log level: " + level);
+                return;
+        }
+        KuzaLog.setLevel(priority);
+        promise.resolve(true);
+    }
+
+    /**
+     * Per-phase timings of recent connects: the last one plus p50/p90/p99 over the history
+     */
+    @Override
+    public void getConnectTimings(Promise promise) {
+        try {
+            ConnectTimingHistory history = ConnectTimingHistory.getInstance();
+            WritableMap result = Arguments.createMap();
+            result.putInt("count", history.size());
+            result.putInt("successCount", history.successCount());
+
+            ConnectTiming last = history.getLast();
+            if (last != null) {
+                result.putMap("last", connectTimingToMap(last));
             }
 
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-            byte[] bytes = baos.toByteArray();
-            baos.close();
+            WritableMap percentiles = Arguments.createMap();
+            for (ConnectTiming.Phase phase : ConnectTiming.Phase.values()) {
+                WritableMap phasePercentiles = Arguments.createMap();
+                phasePercentiles.putDouble("p50", history.percentile(phase, 50));
+                phasePercentiles.putDouble("p90", history.percentile(phase, 90));
+                phasePercentiles.putDouble("p99", history.percentile(phase, 99));
+                percentiles.putMap(phaseKey(phase), phasePercentiles);
+            }
+            result.putMap("percentiles", percentiles);
 
-            String base64Icon = Base64.encodeToString(bytes, Base64.NO_WRAP);
-            Log.d(TAG, "Generated icon base64 for " + packageName + ", length: " + base64Icon.length());
-            return base64Icon;
+            promise.resolve(result);
 
         } catch (Exception e) {
-            Log.w(TAG, "Failed to get icon for package: " + packageName, e);
-            return null; // null is clearer than ""
+            KuzaLog.e(TAG, "Failed to get connect timings", e);
+            promise.reject("GET_TIMINGS_ERROR", e.getMessage());
+        }
+    }
+
+    private WritableMap connectTimingToMap(ConnectTiming timing) {
+        WritableMap map = Arguments.createMap();
+        map.putDouble("startedAt", timing.startedAtMs);
+        map.putBoolean("success", timing.isSuccess());
+        map.putInt("attempts", timing.getAttempts());
+        if (timing.getFailure() != null) {
+            map.putString("failure", timing.getFailure());
+        }
+        for (ConnectTiming.Phase phase : ConnectTiming.Phase.values()) {
+            map.putDouble(phaseKey(phase) + "Ms", timing.get(phase));
+        }
+        map.putDouble("localMs", timing.getLocalMs());
+        map.putDouble("networkMs", timing.getNetworkMs());
+        return map;
+    }
+
+    // PARSE -> "parse", SET_STATE -> "setState"
+    private static String phaseKey(ConnectTiming.Phase phase) {
+        String[] words = phase.name().toLowerCase(java.util.Locale.ROOT).split("_");
+        StringBuilder key = new StringBuilder(words[0]);
+        for (int i = 1; i < words.length; i++) {
+            key.append(Character.toUpperCase(words[i].charAt(0))).append(words[i].substring(1));
         }
+        return key.toString();
     }
 }
@@ -1,28 +1,42 @@
 package com.zabubak.KuzaVPN;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.BaseReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * React Native package for KuzaVPN module
+ * The module is created on first use from JS rather than at startup
  */
-public class KuzaVpnPackage implements ReactPackage {
+public class KuzaVpnPackage extends BaseReactPackage {
 
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        modules.add(new KuzaVpnModule(reactContext));
-        return modules;
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        if (KuzaVpnModule.NAME.equals(name)) {
+            return new KuzaVpnModule(reactContext);
+        }
+        return null;
     }
 
     @Override
-    public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> {
+            Map<String, ReactModuleInfo> modules = new HashMap<>();
+            modules.put(KuzaVpnModule.NAME, new ReactModuleInfo(
+                KuzaVpnModule.NAME,
+                KuzaVpnModule.class.getName(),
+                false, // canOverrideExistingModule
+                false, // needsEagerInit
+                false, // isCxxModule
+                // Served by the TurboModule registry only when the new architecture is on
+                BuildConfig.IS_NEW_ARCHITECTURE_ENABLED
+            ));
+            return modules;
+        };
     }
 }
@@ -1,13 +1,23 @@
 package com.zabubak.KuzaVPN;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.wireguard.android.backend.Backend;
 import com.wireguard.android.backend.GoBackend;
+import com.wireguard.android.backend.Statistics;
 import com.wireguard.android.backend.Tunnel;
 import com.wireguard.android.backend.Tunnel.State;
 import com.wireguard.config.Interface;
@@ -23,12 +33,17 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Intent;
-import android.content.pm.PackageManager;
+import android.net.IpPrefix;
+import android.net.Network;
 import android.net.VpnService;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
 
 /**
  * KuzaVPN Service - Real WireGuard VPN with per-app functionality
@@ -38,18 +53,95 @@ public class KuzaVpnService extends VpnService {
     private static final String TAG = "KuzaVpnService";
     private static final String CHANNEL_ID = "KuzaVPN_Channel";
     private static final int NOTIFICATION_ID = 1001;
+    private static final int CONNECT_ATTEMPTS = 3;
+    // Failed setState(UP) calls are retried after a short jittered backoff
+    private static final long RETRY_BASE_DELAY_MS = 250;
+    private static final long RETRY_MAX_DELAY_MS = 1_000;
+    // Generous upper bounds on one setState(UP), and on parsing, resolving endpoints and
+    // establishing the interface for one server; only used to size the caller's wait
+    private static final long SET_STATE_BUDGET_MS = 5_000;
+    private static final long SETUP_BUDGET_MS = 5_000;
+    private static final int DEFAULT_MTU = 1420; // Standard WireGuard MTU
+    // How long after UP to keep looking for the first handshake, and how often
+    private static final long HANDSHAKE_WAIT_MS = 10_000;
+    private static final long HANDSHAKE_POLL_MS = 100;
+    // After a network change the handshake is expected within an RTT, so look closely
+    private static final long ROAM_HANDSHAKE_WAIT_MS = 10_000;
+    private static final long ROAM_POLL_MS = 20;
+    // Answers behind a CDN can change every few seconds; route changes are batched so the
+    // interface is rebuilt at most this often
+    private static final long DOMAIN_REBUILD_MIN_INTERVAL_MS = 15_000;
 
     public static final String ACTION_CONNECT = "com.kuzavpn.CONNECT";
     public static final String ACTION_DISCONNECT = "com.kuzavpn.DISCONNECT";
+    public static final String ACTION_SWITCH_SERVER = "com.kuzavpn.SWITCH_SERVER";
+    public static final String ACTION_RESUME = "com.kuzavpn.RESUME";
+    // Reconnect the last config that completed a handshake, without React
+    public static final String ACTION_CONNECT_LAST = "com.kuzavpn.CONNECT_LAST";
     public static final String EXTRA_CONFIG = "vpn_config";
     public static final String EXTRA_SELECTED_APPS = "selected_apps";
 
     private ParcelFileDescriptor vpnInterface;
     private Backend wireguardBackend;
-    private boolean isConnected = false;
     private List<String> selectedApps = new ArrayList<>();
+    // As handed to the backend, and as compiled before endpoints were resolved and the MTU applied
     private Config wireguardConfig;
+    private Config sourceConfig;
+    private String wireguardConfigJson;
     private Tunnel currentTunnel;
+    // Owns every tunnel operation below; fields from here on are only touched on its thread
+    private TunnelExecutor tunnelExecutor;
+    private TunnelHealthMonitor healthMonitor;
+    private TunnelStatsSampler statsSampler;
+    private VpnUsageCollector usageCollector;
+    private QuotaEnforcer quotaEnforcer;
+    private EndpointResolver endpointResolver;
+    private DomainRoutes domainRoutes;
+    private ServerRacer serverRacer;
+    private PathMtuDiscovery mtuDiscovery;
+    private AdaptiveKeepalive adaptiveKeepalive;
+    // Keepalive the tuner wants on this network, whether or not the backend has it yet
+    private int keepaliveTarget;
+    private UnderlyingNetworkMonitor networkMonitor;
+    // Physical network the tunnel rides on, and the identity the interface was sized for
+    private Network underlyingNetwork;
+    private String networkKey;
+    // When the previous underlying network went away (wall clock), -1 if it was not lost
+    private long networkLostAtMs = -1;
+    // Bumped per roam so handshake polls of an earlier roam stop
+    private int roamGeneration;
+    private final QuotaEnforcer.Listener quotaListener = this::onQuotaThreshold;
+    // Addresses, DNS, MTU and routes the current interface was established with
+    private String interfaceSignature;
+    // A domain route rebuild is queued, and when the last one ran (elapsed realtime)
+    private boolean domainRebuildPending;
+    private long lastDomainRebuildAt = -DOMAIN_REBUILD_MIN_INTERVAL_MS;
+    // Set while a server switch is in flight so the UP that completes it is measured
+    private long switchStartedAt = -1;
+    private String switchMode;
+    // Phase timings of the connect in flight, and when its successful setState(UP) began
+    private ConnectTiming connectTiming;
+    private long setStateStartedAtMs;
+    private final TraceBuffer trace = TraceBuffer.getInstance();
+    private LastTunnelStore lastTunnelStore;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Main thread only: a connect has been queued since this service instance started
+    private boolean tunnelRequested;
+
+    private static volatile ServerSwitchReport lastSwitchReport;
+    private static volatile ServerRaceReport lastRaceReport;
+    // Server of the tunnel last brought up, null once it is torn down
+    private static volatile String connectedEndpoint;
+
+    /**
+     * Bring the last good tunnel back from outside the app (boot, Quick Settings)
+     * Started in the foreground, since the caller may be in the background
+     */
+    public static void connectLast(android.content.Context context) {
+        Intent intent = new Intent(context, KuzaVpnService.class);
+        intent.setAction(ACTION_CONNECT_LAST);
+        ContextCompat.startForegroundService(context, intent);
+    }
 
     @Override
     public void onCreate() {
@@ -57,86 +149,393 @@ public class KuzaVpnService extends VpnService {
         createNotificationChannel();
         // Initialize WireGuard backend
         wireguardBackend = new GoBackend(getApplicationContext());
-        Log.d(TAG, "KuzaVPN Service created with WireGuard backend");
+        tunnelExecutor = new TunnelExecutor();
+        healthMonitor = new TunnelHealthMonitor(wireguardBackend, new TunnelHealthMonitor.Actions() {
+            @Override
+            public boolean rehandshake() {
+                return rehandshakeTunnel();
+            }
+
+            @Override
+            public boolean reconnect() {
+                return reconnectTunnel();
+            }
+        }, tunnelExecutor.scheduler(), () -> wireguardConfig != null ? configuredKeepalive(wireguardConfig) : 0);
+        healthMonitor.setCheckListener(this::onHealthCheck);
+        statsSampler = new TunnelStatsSampler(wireguardBackend, TunnelStatsEngine.getInstance(),
+            tunnelExecutor.scheduler());
+        usageCollector = new VpnUsageCollector(this, tunnelExecutor.scheduler());
+        quotaEnforcer = QuotaEnforcer.getInstance(this);
+        quotaEnforcer.addListener(quotaListener);
+        statsSampler.setCounterListener(quotaEnforcer);
+        endpointResolver = EndpointResolver.getInstance(this);
+        domainRoutes = new DomainRoutes(endpointResolver);
+        serverRacer = new ServerRacer(this, endpointResolver);
+        lastTunnelStore = LastTunnelStore.getInstance(this);
+        mtuDiscovery = new PathMtuDiscovery(this);
+        adaptiveKeepalive = new AdaptiveKeepalive(this);
+        networkMonitor = new UnderlyingNetworkMonitor(this, network -> {
+            if (!tunnelExecutor.scheduler().isShutdown()) {
+                tunnelExecutor.scheduler().execute(() -> onUnderlyingNetworkChanged(network));
+            }
+        });
+        networkMonitor.start();
+        KuzaLog.d(TAG, "KuzaVPN Service created with WireGuard backend");
+    }
+
+    @Override
+    public void onDestroy() {
+        // Queue a final teardown; shutdown() lets it run and then releases the thread
+        networkMonitor.stop();
+        healthMonitor.stop();
+        statsSampler.stop();
+        usageCollector.stop();
+        tunnelExecutor.submit(token -> {
+            if (tunnelExecutor.getPhase() != TunnelPhase.IDLE) {
+                disconnectVPN();
+            }
+        });
+        tunnelExecutor.shutdown();
+        mtuDiscovery.shutdown();
+        domainRoutes.shutdown();
+        quotaEnforcer.removeListener(quotaListener);
+        quotaEnforcer.flush();
+        super.onDestroy();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null) {
+        if (intent == null) {
+            // Sticky restart after the process was killed: the intent that connected is gone
+            connectLastTunnel(true);
+
+        } else {
             String action = intent.getAction();
-            Log.d(TAG, "Service action: " + action);
+            if (KuzaLog.isLoggable(Log.DEBUG)) {
+                Log.d(TAG, "Service action: " + action);
+            }
+
+            if (ACTION_CONNECT_LAST.equals(action) || VpnService.SERVICE_INTERFACE.equals(action)) {
+                // Quick Settings tile, boot, or the system starting an always-on VPN
+                connectLastTunnel(false);
 
-            if (ACTION_CONNECT.equals(action)) {
+            } else if (ACTION_CONNECT.equals(action)) {
                 String configJson = intent.getStringExtra(EXTRA_CONFIG);
                 ArrayList<String> apps = intent.getStringArrayListExtra(EXTRA_SELECTED_APPS);
+                tunnelRequested = true;
 
-                if (apps != null) {
-                    selectedApps = apps;
-                }
+                tunnelExecutor.submit(token -> {
+                    lastTunnelStore.setAutoConnect(true);
+                    if (apps != null) {
+                        selectedApps = apps;
+                    }
+                    connectVPN(token, configJson);
+                });
+
+            } else if (ACTION_SWITCH_SERVER.equals(action)) {
+                String configJson = intent.getStringExtra(EXTRA_CONFIG);
+                tunnelExecutor.submit(token -> switchServer(token, configJson));
 
-                connectVPN(configJson);
+            } else if (ACTION_RESUME.equals(action)) {
+                tunnelExecutor.submit(token -> resumeTunnel());
 
             } else if (ACTION_DISCONNECT.equals(action)) {
-                disconnectVPN();
+                tunnelRequested = false;
+                // Checks already queued for the old tunnel must not start a reconnect
+                healthMonitor.stop();
+                statsSampler.stop();
+                usageCollector.stop();
+                tunnelExecutor.submit(token -> {
+                    // The user turned it off: do not bring it back on the next restart or boot
+                    lastTunnelStore.setAutoConnect(false);
+                    disconnectVPN();
+                });
             }
         }
 
         return START_STICKY;
     }
 
-    private void connectVPN(String configJson) {
+    @Override
+    public void onRevoke() {
+        // Another VPN took over or the user revoked the permission; stay off until asked again
+        if (!tunnelExecutor.scheduler().isShutdown()) {
+            tunnelExecutor.scheduler().execute(() -> lastTunnelStore.setAutoConnect(false));
+        }
+        super.onRevoke();
+    }
+
+    /**
+     * Connect the saved tunnel straight from its persisted wg-quick form
+     * @param onlyIfWanted skip it when the user's last action was a disconnect (sticky restarts)
+     */
+    private void connectLastTunnel(boolean onlyIfWanted) {
+        if (tunnelRequested) {
+            // Already connecting or up: boot and always-on can both fire
+            return;
+        }
+        // Started with startForegroundService(), which must be answered even if nothing is saved
+        startForeground(NOTIFICATION_ID, createNotification("Connecting..."));
+        tunnelRequested = true;
+        // The saved tunnel is read from disk on the tunnel thread, where the connect runs anyway
+        tunnelExecutor.submit(token -> {
+            LastTunnelStore.Saved saved = lastTunnelStore.load();
+            if (saved == null || (onlyIfWanted && !saved.autoConnect)) {
+                mainHandler.post(() -> onNothingToReconnect(token));
+                return;
+            }
+            KuzaLog.d(TAG, "Reconnecting last tunnel without React");
+            selectedApps = new ArrayList<>(saved.selectedApps);
+            connectVPN(token, saved.config);
+        });
+    }
+
+    /**
+     * Stop the foreground service connectLastTunnel() started, unless a connect or
+     * disconnect queued since then owns it now
+     */
+    private void onNothingToReconnect(int token) {
+        if (tunnelExecutor.isCancelled(token)) {
+            return;
+        }
+        tunnelRequested = false;
+        stopForeground(true);
+        stopSelf();
+    }
+
+    /**
+     * Longest a connect of this config may take before it publishes UP or FAILED: the
+     * race, one setState per raced server that falls through, and CONNECT_ATTEMPTS with
+     * backoff on the last one
+     */
+    public static long connectBudgetMs(String configJson) {
+        int servers = 1;
+        long raceMs = 0;
         try {
-            Log.d(TAG, "Connecting VPN with WireGuard config: " + configJson);
+            ServerRace race = ServerRace.parse(configJson);
+            if (race != null) {
+                servers = race.contenders().size();
+                raceMs = SETUP_BUDGET_MS + ServerRacer.budgetMs(race);
+            }
+        } catch (IllegalArgumentException e) {
+            // An unparseable config fails fast on its own
+        }
+        return raceMs + servers * SETUP_BUDGET_MS + (servers - 1) * SET_STATE_BUDGET_MS
+            + CONNECT_ATTEMPTS * SET_STATE_BUDGET_MS + (CONNECT_ATTEMPTS - 1) * RETRY_MAX_DELAY_MS;
+    }
 
-            // Parse WireGuard configuration
-            wireguardConfig = parseWireGuardConfig(configJson);
+    private void connectVPN(int token, String configJson) {
+        connectVPN(token, configJson, Collections.emptyList(), new ConnectTiming(System.currentTimeMillis()),
+            SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Establish the interface and bring the tunnel up; runs on the tunnel thread
+     * A config with candidate servers races them first and connects to the winner
+     * @param token     operation token, checked between steps so a disconnect can cancel it
+     * @param fallbacks    configs of raced servers to try, in order, if this one does not come up
+     * @param timing       timing of the whole connect, carried over to the fallbacks so the race
+     *                     and failed servers stay in the record
+     * @param connectStart when the connect was requested (elapsed realtime)
+     */
+    private void connectVPN(int token, String configJson, List<String> fallbacks, ConnectTiming timing,
+            long connectStart) {
+        connectTiming = timing;
+        try {
+            trace.record(TraceEvent.CONNECT_START, token);
 
-            // Create VPN interface with proper routing to change IP
-            VpnService.Builder builder = new Builder()
-                .setSession("KuzaVPN")
-                .addAddress("10.0.0.2", 24)  // VPN client IP
-                .addDnsServer("1.1.1.1")     // Cloudflare DNS
-                .addDnsServer("8.8.8.8")     // Google DNS
-                .addRoute("0.0.0.0", 0)      // Route ALL traffic through VPN
-                .setMtu(1420);               // Standard WireGuard MTU
+            tunnelExecutor.moveTo(TunnelPhase.ESTABLISHING);
+            TunnelStateChannel.publish(TunnelState.ESTABLISHING, null);
+            healthMonitor.stop();
+            statsSampler.stop();
+            usageCollector.stop();
+
+            if (quotaEnforcer.isExhausted() && quotaEnforcer.getAction() != QuotaEnforcer.Action.NONE) {
+                throw new Exception("Data limit reached");
+            }
+
+            long phaseStart = SystemClock.elapsedRealtime();
+            ServerRace race = ServerRace.parse(configJson);
+            if (race != null) {
+                List<String> ranked = raceServers(race);
+                timing.add(ConnectTiming.Phase.RACE, SystemClock.elapsedRealtime() - phaseStart);
+                configJson = ranked.get(0);
+                fallbacks = ranked.subList(1, ranked.size());
+                throwIfCancelled(token);
+            }
+
+            // Parse WireGuard configuration
+            phaseStart = SystemClock.elapsedRealtime();
+            sourceConfig = parseWireGuardConfig(configJson);
+            wireguardConfigJson = configJson;
+            domainRoutes.setRules(TunnelSpec.excludedDomains(configJson));
+            timing.add(ConnectTiming.Phase.PARSE, SystemClock.elapsedRealtime() - phaseStart);
+            trace.record(TraceEvent.CONFIG_PARSED, timing.get(ConnectTiming.Phase.PARSE), sourceConfig.getPeers().size());
+            throwIfCancelled(token);
+
+            // Dial cached endpoint addresses and size the interface for the network we are on
+            phaseStart = SystemClock.elapsedRealtime();
+            networkKey = underlyingNetwork != null
+                ? mtuDiscovery.networkKey(underlyingNetwork) : mtuDiscovery.currentNetworkKey();
+            wireguardConfig = prepareConfig(sourceConfig);
+            timing.add(ConnectTiming.Phase.RESOLVE, SystemClock.elapsedRealtime() - phaseStart);
+            int mtu = wireguardConfig.getInterface().getMtu().orElse(DEFAULT_MTU);
+            trace.record(TraceEvent.ENDPOINTS_RESOLVED, timing.get(ConnectTiming.Phase.RESOLVE), mtu);
+            throwIfCancelled(token);
+
+            // Create VPN interface with the config's addresses, DNS and routes
+            VpnService.Builder builder = new Builder().setSession("KuzaVPN");
+            List<String> domainPrefixes = domainRoutes.prefixes();
+            int routes = configureInterface(builder, wireguardConfig, domainPrefixes);
 
             // Configure per-app VPN routing
             configureAppRouting(builder);
 
-            // Establish VPN interface
+            // Establish VPN interface; a previous one stays up until the new one exists
+            ParcelFileDescriptor previousInterface = vpnInterface;
+            phaseStart = SystemClock.elapsedRealtime();
             vpnInterface = builder.establish();
+            timing.add(ConnectTiming.Phase.ESTABLISH, SystemClock.elapsedRealtime() - phaseStart);
+            trace.record(TraceEvent.INTERFACE_UP, timing.get(ConnectTiming.Phase.ESTABLISH), routes, mtu);
+            if (previousInterface != null && vpnInterface != null) {
+                previousInterface.close();
+            }
+            interfaceSignature = interfaceSignature(wireguardConfig, domainPrefixes);
 
             if (vpnInterface != null) {
-                // Start real WireGuard tunnel
-                startWireGuardTunnel();
-                isConnected = true;
+                // Lets the system attribute metering and connectivity to the right network
+                setUnderlyingNetworks(underlyingNetwork != null ? new Network[] {underlyingNetwork} : null);
+                networkLostAtMs = -1;
+                throwIfCancelled(token);
+
+                // Start real WireGuard tunnel; with raced servers left, one attempt each
+                if (!startWireGuardTunnel(token, fallbacks.isEmpty() ? CONNECT_ATTEMPTS : 1)) {
+                    throw new Exception("WireGuard tunnel did not come up");
+                }
+                throwIfCancelled(token);
+                tunnelExecutor.moveTo(TunnelPhase.UP);
+                healthMonitor.start(currentTunnel);
+                statsSampler.start(currentTunnel);
+                usageCollector.start(selectedApps);
+                refreshPathMtu();
+                domainRoutes.start(this::onDomainRoutesChanged);
 
                 // Create comprehensive notification
                 String serverInfo = getServerEndpoint();
                 startForeground(NOTIFICATION_ID, createNotification("Connected to " + serverInfo));
 
-                Log.d(TAG, "✅ WireGuard VPN connected!");
-                Log.d(TAG, "🌐 Server: " + serverInfo);
-                Log.d(TAG, "📱 Apps: " + selectedApps.size() + " selected");
-                Log.d(TAG, "🔒 All traffic now routing through VPN tunnel");
+                if (KuzaLog.isLoggable(Log.DEBUG)) {
+                    Log.d(TAG, "WireGuard VPN connected to " + serverInfo + " (" + selectedApps.size()
+                        + " apps selected)");
+                }
+                publishUp(serverInfo);
+
+                timing.add(ConnectTiming.Phase.TOTAL, SystemClock.elapsedRealtime() - connectStart);
+                timing.succeeded();
+                trace.record(TraceEvent.CONNECTED, timing.get(ConnectTiming.Phase.TOTAL), timing.getAttempts());
+                awaitFirstHandshake(token, timing, currentTunnel, SystemClock.elapsedRealtime() + HANDSHAKE_WAIT_MS);
 
             } else {
-                Log.e(TAG, "❌ Failed to establish VPN interface");
+                KuzaLog.e(TAG, "Failed to establish VPN interface");
                 throw new Exception("VPN interface establishment failed");
             }
 
         } catch (Exception e) {
-            Log.e(TAG, "❌ Failed to connect VPN", e);
+            if (e instanceof CancellationException || tunnelExecutor.isCancelled(token)) {
+                // Whatever superseded this connect (a disconnect or another connect) takes it from here
+                trace.record(TraceEvent.CONNECT_CANCELLED, token);
+                return;
+            }
+            if (!fallbacks.isEmpty()) {
+                if (KuzaLog.isLoggable(Log.WARN)) {
+                    Log.w(TAG, "Raced server did not come up (" + e.getMessage() + ") - trying the next one");
+                }
+                connectVPN(token, fallbacks.get(0), fallbacks.subList(1, fallbacks.size()), timing, connectStart);
+                return;
+            }
+            KuzaLog.e(TAG, "Failed to connect VPN", e);
+            timing.add(ConnectTiming.Phase.TOTAL, SystemClock.elapsedRealtime() - connectStart);
+            timing.failed(e.getMessage());
+            trace.record(TraceEvent.CONNECT_FAILED, timing.get(ConnectTiming.Phase.TOTAL), timing.getAttempts());
+            ConnectTimingHistory.getInstance().add(timing);
+            // Report the failure to listeners before the teardown publishes DOWN
+            TunnelStateChannel.publish(TunnelState.FAILED, e.getMessage());
             disconnectVPN();
-            throw new RuntimeException("VPN connection failed: " + e.getMessage());
         }
     }
 
-    private void startWireGuardTunnel() {
+    /**
+     * Poll the backend for the first completed handshake, then file the connect's timing
+     * Runs as short scheduled checks so the tunnel thread stays free in between
+     */
+    private void awaitFirstHandshake(int token, ConnectTiming timing, Tunnel tunnel, long deadline) {
+        long handshakeAt = latestHandshakeMs(tunnel);
+
+        if (handshakeAt > 0) {
+            timing.add(ConnectTiming.Phase.HANDSHAKE, handshakeAt - setStateStartedAtMs);
+            if (!tunnelExecutor.isCancelled(token)) {
+                reportEndpoints(true);
+                // Known good: this is what a headless reconnect will use
+                lastTunnelStore.saveGood(headlessConfig(), selectedApps);
+            }
+        } else if (!tunnelExecutor.isCancelled(token) && SystemClock.elapsedRealtime() < deadline
+                && !tunnelExecutor.scheduler().isShutdown()) {
+            tunnelExecutor.scheduler().schedule(() -> awaitFirstHandshake(token, timing, tunnel, deadline),
+                HANDSHAKE_POLL_MS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        if (handshakeAt <= 0 && !tunnelExecutor.isCancelled(token)) {
+            reportEndpoints(false);
+        }
+        ConnectTimingHistory.getInstance().add(timing);
+        trace.record(TraceEvent.FIRST_HANDSHAKE, timing.get(ConnectTiming.Phase.HANDSHAKE));
+        if (KuzaLog.isLoggable(Log.DEBUG)) {
+            Log.d(TAG, "Connect took " + timing.get(ConnectTiming.Phase.TOTAL) + " ms"
+                + " (parse " + timing.get(ConnectTiming.Phase.PARSE)
+                + ", resolve " + timing.get(ConnectTiming.Phase.RESOLVE)
+                + ", establish " + timing.get(ConnectTiming.Phase.ESTABLISH)
+                + ", setState " + timing.get(ConnectTiming.Phase.SET_STATE)
+                + ", retry wait " + timing.get(ConnectTiming.Phase.RETRY_WAIT)
+                + ", handshake " + timing.get(ConnectTiming.Phase.HANDSHAKE) + ")");
+        }
+    }
+
+    /**
+     * Wall-clock time of the most recent handshake with any peer, 0 if none yet
+     */
+    private long latestHandshakeMs(Tunnel tunnel) {
+        long handshakeAt = 0;
         try {
-            if (wireguardConfig != null && vpnInterface != null) {
-                Log.d(TAG, "Starting WireGuard tunnel with server handshake...");
+            Statistics stats = wireguardBackend.getStatistics(tunnel);
+            for (Key key : stats.peers()) {
+                Statistics.PeerStats peerStats = stats.peer(key);
+                if (peerStats != null) {
+                    handshakeAt = Math.max(handshakeAt, peerStats.latestHandshakeEpochMillis());
+                }
+            }
+        } catch (Exception e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Failed to read handshake time: " + e.getMessage());
+            }
+        }
+        return handshakeAt;
+    }
 
+    private void throwIfCancelled(int token) {
+        if (tunnelExecutor.isCancelled(token)) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Brings the WireGuard tunnel up on the established interface
+     * @param attempts setState(UP) tries before giving up
+     * @return true once the backend reports the tunnel UP
+     */
+    private boolean startWireGuardTunnel(int token, int attempts) {
+        try {
+            if (wireguardConfig != null && vpnInterface != null) {
                 // Use WireGuard backend to establish real tunnel connection
                 try {
                     // Create a tunnel object for WireGuard backend
@@ -148,182 +547,816 @@ public class KuzaVpnService extends VpnService {
 
                         @Override
                         public void onStateChange(State newState) {
-                            Log.d(TAG, "WireGuard tunnel state: " + newState);
-                            if (newState == State.UP) {
-                                Log.d(TAG, "🔐 WireGuard handshake successful!");
+                            if (KuzaLog.isLoggable(Log.DEBUG)) {
+                                Log.d(TAG, "WireGuard tunnel state: " + newState);
                             }
                         }
                     };
 
-                    // Start the WireGuard tunnel
-                    Log.d(TAG, "Connecting to WireGuard server 152.53.146.237:51820...");
-
-                    // Log the file descriptor for debugging
-                    Log.d(TAG, "VPN interface FD: " + vpnInterface.getFd());
-
-                    State state = wireguardBackend.setState(tunnel, State.UP, wireguardConfig);
-
-                    if (state == State.UP) {
-                        Log.d(TAG, "✅ WireGuard tunnel established successfully");
-                        Log.d(TAG, "🌐 Handshake with server completed");
-                        Log.d(TAG, "🔐 Traffic now encrypted and routing through WireGuard");
-                        currentTunnel = tunnel;
-
-                        // Start tunnel monitoring
-                        startTunnelHealthCheck();
-
-                    } else {
-                        Log.w(TAG, "⚠️ WireGuard tunnel state: " + state);
-                        Log.w(TAG, "Attempting tunnel restart...");
-
-                        // Try to restart the tunnel once
-                        try {
-                            Thread.sleep(2000);
-                            state = wireguardBackend.setState(tunnel, State.UP, wireguardConfig);
-                            if (state == State.UP) {
-                                Log.d(TAG, "✅ WireGuard tunnel established on retry");
-                                currentTunnel = tunnel;
-                                startTunnelHealthCheck();
-                            } else {
-                                Log.e(TAG, "❌ WireGuard tunnel failed on retry: " + state);
-                                Log.w(TAG, "📡 VPN interface active but encryption may not work");
+                    tunnelExecutor.moveTo(TunnelPhase.HANDSHAKING);
+                    TunnelStateChannel.publish(TunnelState.HANDSHAKING, null);
+
+                    // Retry a failed bring-up a couple of times, spaced by short jittered backoff
+                    ReconnectBackoff retryBackoff = new ReconnectBackoff(RETRY_BASE_DELAY_MS, RETRY_MAX_DELAY_MS);
+                    // Recorded up front so a teardown can find it even if this connect is cancelled
+                    currentTunnel = tunnel;
+                    for (int attempt = 1; attempt <= attempts; attempt++) {
+                        throwIfCancelled(token);
+                        connectTiming.countAttempt();
+                        setStateStartedAtMs = System.currentTimeMillis();
+                        long phaseStart = SystemClock.elapsedRealtime();
+                        State state = wireguardBackend.setState(tunnel, State.UP, wireguardConfig);
+                        long setStateMs = SystemClock.elapsedRealtime() - phaseStart;
+                        connectTiming.add(ConnectTiming.Phase.SET_STATE, setStateMs);
+                        trace.record(TraceEvent.SET_STATE, attempt, setStateMs, state == State.UP ? 1 : 0);
+
+                        if (state == State.UP) {
+                            return true;
+                        }
+
+                        if (KuzaLog.isLoggable(Log.WARN)) {
+                            Log.w(TAG, "WireGuard tunnel state: " + state + " (attempt " + attempt + ")");
+                        }
+                        if (attempt < attempts) {
+                            long waitStart = SystemClock.elapsedRealtime();
+                            try {
+                                Thread.sleep(retryBackoff.nextDelayMs());
+                            } catch (InterruptedException ie) {
+                                KuzaLog.w(TAG, "Tunnel restart interrupted");
+                                throw new CancellationException();
+                            } finally {
+                                connectTiming.add(ConnectTiming.Phase.RETRY_WAIT, SystemClock.elapsedRealtime() - waitStart);
                             }
-                        } catch (InterruptedException ie) {
-                            Log.w(TAG, "Tunnel restart interrupted");
                         }
                     }
+                    if (KuzaLog.isLoggable(Log.ERROR)) {
+                        Log.e(TAG, "WireGuard tunnel failed after " + attempts + " attempts");
+                    }
 
+                } catch (CancellationException cancelled) {
+                    throw cancelled;
                 } catch (Exception backendError) {
-                    Log.w(TAG, "WireGuard backend error: " + backendError.getMessage());
-                    Log.d(TAG, "📡 Continuing with VPN interface routing");
-                    // VPN interface is still established, so basic routing works
+                    if (KuzaLog.isLoggable(Log.WARN)) {
+                        Log.w(TAG, "WireGuard backend error: " + backendError.getMessage());
+                    }
                 }
+                return false;
 
             } else {
-                Log.e(TAG, "❌ Cannot start tunnel - missing config or interface");
+                KuzaLog.e(TAG, "Cannot start tunnel - missing config or interface");
                 throw new Exception("WireGuard config or VPN interface not available");
             }
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
-            Log.e(TAG, "❌ Failed to start VPN tunnel", e);
+            KuzaLog.e(TAG, "Failed to start VPN tunnel", e);
             throw new RuntimeException("VPN tunnel startup failed: " + e.getMessage());
         }
     }
 
-    private void startTunnelHealthCheck() {
-        // Start a background thread to monitor tunnel health
-        new Thread(() -> {
-            try {
-                Log.d(TAG, "🔍 Starting WireGuard tunnel health monitoring...");
+    /**
+     * Most recent server switch, for KuzaVpnModule to report back to JS
+     */
+    public static ServerSwitchReport getLastSwitchReport() {
+        return lastSwitchReport;
+    }
+
+    /**
+     * Server the tunnel is up with (or paused on), as configured; null while disconnected
+     */
+    public static String getConnectedEndpoint() {
+        return connectedEndpoint;
+    }
+
+    /**
+     * Most recent server race, for KuzaVpnModule to report back to JS
+     */
+    public static ServerRaceReport getLastRaceReport() {
+        return lastRaceReport;
+    }
 
-                // Wait a bit after connection establishment
-                Thread.sleep(3000);
+    /**
+     * Race the config's candidate servers; runs on the tunnel thread
+     * @return single-server configs to connect with, the winner first
+     */
+    private List<String> raceServers(ServerRace race) throws Exception {
+        List<String> configs = new ArrayList<>();
+        if (race.contenders().size() > 1) {
+            // Compiling the best-ranked config checks the client's key before anything is sent
+            Config best = parseWireGuardConfig(race.configFor(0));
+            ServerRaceReport report = serverRacer.race(race, best.getInterface().getKeyPair().getPrivateKey(),
+                underlyingNetwork);
+            lastRaceReport = report;
+            trace.record(TraceEvent.SERVER_RACE, report.winnerRank, report.winnerMs, report.marginMs);
+            if (report.winner != null) {
+                if (KuzaLog.isLoggable(Log.DEBUG)) {
+                    String margin = report.runnerUp != null ? report.marginMs + " ms ahead of " + report.runnerUp
+                        : report.marginMs >= 0 ? "at least " + report.marginMs + " ms ahead" : "uncontested";
+                    Log.d(TAG, report.winner + " (rank " + report.winnerRank + ") answered first after "
+                        + report.winnerMs + " ms, " + margin + " (" + report.started + "/" + report.contenders
+                        + " started)");
+                }
+            } else {
+                KuzaLog.w(TAG, "No raced server answered - connecting in rank order");
+            }
+            for (int rank : report.order) {
+                configs.add(race.configFor(rank));
+            }
+        }
+        if (configs.isEmpty()) {
+            configs.add(race.configFor(0));
+        }
+        return configs;
+    }
 
-                if (currentTunnel != null && wireguardBackend != null) {
-                    Log.d(TAG, "🩺 Checking WireGuard tunnel health...");
+    /**
+     * Move the tunnel to another server without tearing down the VPN interface
+     * Only the peer config goes to the backend; the interface is rebuilt only when
+     * addresses, DNS, MTU or routes differ from what it was established with
+     */
+    private void switchServer(int token, String configJson) {
+        try {
+            switchStartedAt = SystemClock.elapsedRealtime();
+            switchMode = ServerSwitchReport.MODE_REBUILD;
 
-                    // Basic health check - verify tunnel is still up
-                    // Note: More sophisticated monitoring could check actual traffic flow
-                    boolean isHealthy = true; // Placeholder for health check logic
+            if (tunnelExecutor.getPhase() != TunnelPhase.UP || vpnInterface == null || currentTunnel == null) {
+                KuzaLog.d(TAG, "Not connected - switching by connecting");
+                connectVPN(token, configJson);
+                return;
+            }
 
-                    if (isHealthy) {
-                        Log.d(TAG, "✅ WireGuard tunnel is healthy");
-                    } else {
-                        Log.w(TAG, "⚠️ WireGuard tunnel health check failed");
-                    }
-                } else {
-                    Log.w(TAG, "⚠️ Cannot check tunnel health - tunnel or backend is null");
+            Config newSourceConfig;
+            Config newConfig;
+            try {
+                ServerRace race = ServerRace.parse(configJson);
+                if (race != null) {
+                    // Only the winner is switched to; a failed hot switch rebuilds with it
+                    configJson = raceServers(race).get(0);
+                    // The old tunnel carried traffic while the race ran
+                    switchStartedAt = SystemClock.elapsedRealtime();
                 }
+                newSourceConfig = parseWireGuardConfig(configJson);
+                domainRoutes.setRules(TunnelSpec.excludedDomains(configJson));
+                newConfig = prepareConfig(newSourceConfig);
+            } catch (Exception e) {
+                KuzaLog.e(TAG, "Invalid config for server switch", e);
+                // The old tunnel is still up and carrying traffic; only the request failed
+                TunnelStateChannel.publishRejection("Invalid server config: " + e.getMessage());
+                return;
+            }
+
+            if (!interfaceSignature(newConfig, domainRoutes.prefixes()).equals(interfaceSignature)) {
+                KuzaLog.d(TAG, "Interface settings changed - rebuilding VPN interface");
+                connectVPN(token, configJson);
+                return;
+            }
+
+            KuzaLog.d(TAG, "Hot-switching WireGuard peer on the existing interface");
+            healthMonitor.stop();
+            statsSampler.stop();
+            tunnelExecutor.moveTo(TunnelPhase.HANDSHAKING);
+            TunnelStateChannel.publish(TunnelState.HANDSHAKING, "switch");
 
-            } catch (InterruptedException e) {
-                Log.d(TAG, "Tunnel health monitoring interrupted");
+            boolean switched = false;
+            try {
+                switched = wireguardBackend.setState(currentTunnel, State.UP, newConfig) == State.UP;
             } catch (Exception e) {
-                Log.w(TAG, "Error during tunnel health check: " + e.getMessage());
+                if (KuzaLog.isLoggable(Log.WARN)) {
+                    Log.w(TAG, "Hot switch failed: " + e.getMessage());
+                }
+            }
+            if (switched) {
+                wireguardConfig = newConfig;
+                sourceConfig = newSourceConfig;
+                wireguardConfigJson = configJson;
             }
-        }).start();
+
+            if (!switched) {
+                KuzaLog.w(TAG, "Hot switch failed - falling back to a full rebuild");
+                connectVPN(token, configJson);
+                return;
+            }
+            if (tunnelExecutor.isCancelled(token)) {
+                return;
+            }
+
+            switchMode = ServerSwitchReport.MODE_HOT;
+            tunnelExecutor.moveTo(TunnelPhase.UP);
+            healthMonitor.start(currentTunnel);
+            statsSampler.start(currentTunnel);
+            refreshPathMtu();
+            String serverInfo = getServerEndpoint();
+            startForeground(NOTIFICATION_ID, createNotification("Connected to " + serverInfo));
+            publishUp(serverInfo);
+
+        } finally {
+            switchStartedAt = -1;
+        }
     }
 
-    private Config parseWireGuardConfig(String configJson) {
+    private void publishUp(String serverInfo) {
+        if (switchStartedAt >= 0) {
+            long gapMs = SystemClock.elapsedRealtime() - switchStartedAt;
+            lastSwitchReport = new ServerSwitchReport(switchMode, gapMs, serverInfo, System.currentTimeMillis());
+            trace.record(TraceEvent.SERVER_SWITCH, ServerSwitchReport.MODE_HOT.equals(switchMode) ? 1 : 0, gapMs);
+            switchStartedAt = -1;
+        }
+        connectedEndpoint = serverInfo;
+        TunnelStateChannel.publish(TunnelState.UP, serverInfo);
+    }
+
+    /**
+     * Everything VpnService.Builder consumes from a config and the domain routes; equal
+     * signatures can share an interface
+     */
+    private static String interfaceSignature(Config config, List<String> domainPrefixes) {
+        TreeSet<String> addresses = new TreeSet<>();
+        for (InetNetwork address : config.getInterface().getAddresses()) {
+            addresses.add(address.toString());
+        }
+        TreeSet<String> dnsServers = new TreeSet<>();
+        for (InetAddress dns : config.getInterface().getDnsServers()) {
+            dnsServers.add(dns.getHostAddress());
+        }
+        TreeSet<String> routes = new TreeSet<>();
+        for (Peer peer : config.getPeers()) {
+            for (InetNetwork allowedIp : peer.getAllowedIps()) {
+                routes.add(allowedIp.toString());
+            }
+        }
+        return addresses + "|" + dnsServers + "|" + config.getInterface().getMtu().orElse(0) + "|" + routes
+            + "|" + domainPrefixes;
+    }
+
+    /**
+     * Follow the phone onto a new network without a full reconnect; runs on the tunnel thread
+     * Points the interface at the new network and re-applies a fresh config, which gives
+     * wireguard-go a new socket and the re-resolved endpoint and makes it handshake at
+     * once instead of after the next keepalive. The interface is rebuilt only when the
+     * new network needs a different MTU
+     */
+    private void onUnderlyingNetworkChanged(Network network) {
+        Network previous = underlyingNetwork;
+        underlyingNetwork = network;
+        if (network == null) {
+            if (networkLostAtMs < 0) {
+                networkLostAtMs = System.currentTimeMillis();
+            }
+            trace.record(TraceEvent.NETWORK_LOST);
+            KuzaLog.w(TAG, "No underlying network");
+            return;
+        }
+        if (network.equals(previous) || vpnInterface == null || currentTunnel == null
+                || tunnelExecutor.getPhase() != TunnelPhase.UP) {
+            // A connect in flight, or the next one, picks the network up by itself
+            return;
+        }
+
+        setUnderlyingNetworks(new Network[] {network});
+        final long startedAtMs = networkLostAtMs >= 0 ? networkLostAtMs : System.currentTimeMillis();
+        networkLostAtMs = -1;
+        final String fromNetwork = networkKey;
+        final String toNetwork = mtuDiscovery.networkKey(network);
+        networkKey = toNetwork;
+        if (KuzaLog.isLoggable(Log.DEBUG)) {
+            Log.d(TAG, "Roaming " + fromNetwork + " → " + toNetwork);
+        }
+
+        String mode = RoamingReport.MODE_REHANDSHAKE;
+        boolean up = false;
+        try {
+            Config roamed = prepareConfig(sourceConfig);
+            if (interfaceSignature(roamed, domainRoutes.prefixes()).equals(interfaceSignature)) {
+                tunnelExecutor.moveTo(TunnelPhase.HANDSHAKING);
+                TunnelStateChannel.publish(TunnelState.HANDSHAKING, "roam");
+                up = wireguardBackend.setState(currentTunnel, State.UP, roamed) == State.UP;
+                if (up) {
+                    wireguardConfig = roamed;
+                    tunnelExecutor.moveTo(TunnelPhase.UP);
+                    publishUp(getServerEndpoint());
+                }
+            }
+        } catch (Exception e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Roaming re-handshake failed: " + e.getMessage());
+            }
+        }
+        if (!up) {
+            mode = RoamingReport.MODE_REBUILD;
+            KuzaLog.d(TAG, "Rebuilding the tunnel for the new network");
+            connectVPN(tunnelExecutor.currentToken(), wireguardConfigJson);
+            if (tunnelExecutor.getPhase() != TunnelPhase.UP) {
+                trace.record(TraceEvent.ROAM, 0, -1);
+                RoamingHistory.getInstance().add(new RoamingReport(fromNetwork, toNetwork, mode, false, -1,
+                    System.currentTimeMillis()));
+                return;
+            }
+        } else {
+            refreshPathMtu();
+        }
+
+        final int roam = ++roamGeneration;
+        awaitRoamHandshake(roam, fromNetwork, toNetwork, mode, startedAtMs,
+            SystemClock.elapsedRealtime() + ROAM_HANDSHAKE_WAIT_MS);
+    }
+
+    /**
+     * Poll for the first handshake after a roam and file how long recovery took
+     */
+    private void awaitRoamHandshake(int roam, String fromNetwork, String toNetwork, String mode,
+                                    long startedAtMs, long deadline) {
+        if (roam != roamGeneration || currentTunnel == null) {
+            return;
+        }
+        long handshakeAt = latestHandshakeMs(currentTunnel);
+        if (handshakeAt < startedAtMs && SystemClock.elapsedRealtime() < deadline
+                && tunnelExecutor.getPhase() == TunnelPhase.UP && !tunnelExecutor.scheduler().isShutdown()) {
+            tunnelExecutor.scheduler().schedule(() -> awaitRoamHandshake(roam, fromNetwork, toNetwork, mode,
+                startedAtMs, deadline), ROAM_POLL_MS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        boolean recovered = handshakeAt >= startedAtMs;
+        long recoveryMs = recovered ? handshakeAt - startedAtMs : -1;
+        trace.record(TraceEvent.ROAM, RoamingReport.MODE_REHANDSHAKE.equals(mode) ? 1 : 0, recoveryMs);
+        RoamingHistory.getInstance().add(new RoamingReport(fromNetwork, toNetwork, mode, recovered, recoveryMs,
+            System.currentTimeMillis()));
+        if (recovered) {
+            if (KuzaLog.isLoggable(Log.DEBUG)) {
+                Log.d(TAG, "Roaming recovered in " + recoveryMs + " ms (" + mode + ")");
+            }
+        } else {
+            // The health monitor keeps escalating from here
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "No handshake within " + ROAM_HANDSHAKE_WAIT_MS + " ms of roaming");
+            }
+        }
+    }
+
+    /**
+     * Soft threshold: tell the user; hard threshold: apply the configured action
+     * Runs on the tunnel thread, from the stats sample that crossed the threshold
+     */
+    private void onQuotaThreshold(QuotaEnforcer.Level level, long usedBytes, long limitBytes,
+                                  QuotaEnforcer.Action action) {
+        trace.record(TraceEvent.QUOTA, level == QuotaEnforcer.Level.SOFT ? 1 : 2, usedBytes, limitBytes);
+        if (level == QuotaEnforcer.Level.SOFT) {
+            long percent = limitBytes > 0 ? usedBytes * 100 / limitBytes : 0;
+            updateNotification("Connected to " + getServerEndpoint() + " - " + percent + "% of data limit used");
+            return;
+        }
+
+        switch (action) {
+            case PAUSE:
+                pauseTunnel();
+                break;
+            case DISCONNECT:
+                KuzaLog.w(TAG, "Data limit reached - disconnecting");
+                TunnelStateChannel.publish(TunnelState.FAILED, "Data limit reached");
+                disconnectVPN();
+                break;
+            default:
+                updateNotification("Connected to " + getServerEndpoint() + " - data limit reached");
+                break;
+        }
+    }
+
+    /**
+     * Hold the tunnel down but keep the interface, so routed apps go offline instead of leaking
+     */
+    private void pauseTunnel() {
+        if (tunnelExecutor.getPhase() != TunnelPhase.UP || currentTunnel == null) {
+            return;
+        }
+        KuzaLog.w(TAG, "Data limit reached - pausing tunnel");
+        trace.record(TraceEvent.PAUSED);
+        healthMonitor.stop();
+        statsSampler.stop();
+        usageCollector.stop();
+        tunnelExecutor.moveTo(TunnelPhase.PAUSED);
         try {
-            // Parse JSON config from React Native
-            JSONObject json = new JSONObject(configJson);
-
-            String privateKeyStr = json.getString("privateKey");
-            String publicKeyStr = json.getString("publicKey");
-            String serverEndpoint = json.getString("serverEndpoint");
-
-            // Create WireGuard interface
-            Interface.Builder interfaceBuilder = new Interface.Builder()
-                .parsePrivateKey(privateKeyStr)
-                .parseAddresses("10.0.0.2/24")
-                .parseDnsServers("1.1.1.1, 8.8.8.8");
-
-            // Create WireGuard peer (your server)
-            Peer.Builder peerBuilder = new Peer.Builder()
-                .parsePublicKey(publicKeyStr)
-                .parseEndpoint(serverEndpoint)
-                .parseAllowedIPs("0.0.0.0/0, ::/0")
-                .parsePersistentKeepalive("25");
-
-            // Build complete config
-            return new Config.Builder()
-                .setInterface(interfaceBuilder.build())
-                .addPeer(peerBuilder.build())
-                .build();
+            wireguardBackend.setState(currentTunnel, State.DOWN, null);
+        } catch (Exception e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Error pausing WireGuard tunnel: " + e.getMessage());
+            }
+        }
+        updateNotification("Paused - data limit reached");
+        TunnelStateChannel.publish(TunnelState.PAUSED, "Data limit reached");
+    }
 
+    /**
+     * Bring a paused tunnel back up on the interface it kept
+     */
+    private void resumeTunnel() {
+        if (tunnelExecutor.getPhase() != TunnelPhase.PAUSED || currentTunnel == null || wireguardConfig == null) {
+            return;
+        }
+        KuzaLog.d(TAG, "Resuming tunnel");
+        tunnelExecutor.moveTo(TunnelPhase.HANDSHAKING);
+        TunnelStateChannel.publish(TunnelState.HANDSHAKING, "resume");
+        boolean resumed = false;
+        try {
+            resumed = wireguardBackend.setState(currentTunnel, State.UP, wireguardConfig) == State.UP;
         } catch (Exception e) {
-            Log.e(TAG, "Failed to parse WireGuard config", e);
-            throw new RuntimeException(e);
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Resume failed: " + e.getMessage());
+            }
+        }
+        trace.record(TraceEvent.RESUMED, resumed ? 1 : 0);
+        if (!resumed) {
+            TunnelStateChannel.publish(TunnelState.FAILED, "Resume failed");
+            disconnectVPN();
+            return;
         }
+
+        tunnelExecutor.moveTo(TunnelPhase.UP);
+        healthMonitor.start(currentTunnel);
+        statsSampler.start(currentTunnel);
+        usageCollector.start(selectedApps);
+        String serverInfo = getServerEndpoint();
+        updateNotification("Connected to " + serverInfo);
+        publishUp(serverInfo);
     }
 
-    private String getServerEndpoint() {
+    private void updateNotification(String status) {
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.notify(NOTIFICATION_ID, createNotification(status));
+        }
+    }
+
+    /**
+     * Re-apply a fresh copy of the current config so the backend re-handshakes
+     * The copy re-resolves the endpoints, so a server that moved is followed
+     */
+    private boolean rehandshakeTunnel() {
+        if (tunnelExecutor.getPhase() != TunnelPhase.UP || currentTunnel == null || sourceConfig == null) {
+            return false;
+        }
+        try {
+            KuzaLog.d(TAG, "Forcing WireGuard re-handshake");
+            wireguardConfig = prepareConfig(sourceConfig);
+            return wireguardBackend.setState(currentTunnel, State.UP, wireguardConfig) == State.UP;
+        } catch (Exception e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Re-handshake failed: " + e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Full backend reconnect on the existing VPN interface
+     */
+    private boolean reconnectTunnel() {
+        TunnelPhase phase = tunnelExecutor.getPhase();
+        if ((phase != TunnelPhase.UP && phase != TunnelPhase.HANDSHAKING)
+                || currentTunnel == null || wireguardConfig == null) {
+            return false;
+        }
         try {
-            if (wireguardConfig != null && !wireguardConfig.getPeers().isEmpty()) {
-                return wireguardConfig.getPeers().get(0).getEndpoint().toString();
+            KuzaLog.d(TAG, "Reconnecting WireGuard tunnel");
+            tunnelExecutor.moveTo(TunnelPhase.HANDSHAKING);
+            TunnelStateChannel.publish(TunnelState.HANDSHAKING, "reconnect");
+            wireguardBackend.setState(currentTunnel, State.DOWN, null);
+            if (wireguardBackend.setState(currentTunnel, State.UP, wireguardConfig) == State.UP) {
+                tunnelExecutor.moveTo(TunnelPhase.UP);
+                publishUp(getServerEndpoint());
+                return true;
             }
         } catch (Exception e) {
-            Log.e(TAG, "Failed to get server endpoint", e);
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Reconnect failed: " + e.getMessage());
+            }
         }
-        return "Server";
+        return false;
     }
 
-    private void configureAppRouting(VpnService.Builder builder) {
+    /**
+     * The config as the backend and the interface get it: each endpoint replaced by the
+     * address EndpointResolver picks, the MTU measured on this network unless the config
+     * sets its own, and the keepalive learned on this network for peers that keep alive
+     */
+    private Config prepareConfig(Config source) throws Exception {
+        List<InetEndpoint> endpoints = new ArrayList<>();
+        InetAddress firstAddress = null;
+        for (Peer peer : source.getPeers()) {
+            Optional<InetEndpoint> endpoint = peer.getEndpoint();
+            if (!endpoint.isPresent()) {
+                endpoints.add(null);
+                continue;
+            }
+            InetAddress address = endpointResolver.resolve(endpoint.get().getHost());
+            if (firstAddress == null) {
+                firstAddress = address;
+            }
+            String host = address.getHostAddress();
+            endpoints.add(InetEndpoint.parse((address instanceof Inet6Address ? "[" + host + "]" : host)
+                + ":" + endpoint.get().getPort()));
+        }
+
+        int mtu = source.getInterface().getMtu().orElse(0);
+        if (mtu <= 0) {
+            mtu = mtuDiscovery.getTunnelMtu(networkKey, firstAddress);
+        }
+        int keepalive = adaptiveKeepalive.intervalFor(networkKey, configuredKeepalive(source));
+        keepaliveTarget = keepalive;
+        return WireGuardConfigCompiler.rewrite(source, mtu > 0 ? mtu : DEFAULT_MTU, keepalive, endpoints);
+    }
+
+    /**
+     * The first persistent keepalive a config sets, 0 if every peer has it off
+     */
+    private static int configuredKeepalive(Config config) {
+        for (Peer peer : config.getPeers()) {
+            if (peer.getPersistentKeepalive().isPresent() && peer.getPersistentKeepalive().get() > 0) {
+                return peer.getPersistentKeepalive().get();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Teach the keepalive tuner from a health check; runs on the tunnel thread
+     * A narrower interval reaches the backend with the re-handshake the health monitor
+     * makes next. A wider one waits for a quiet check, since applying it re-handshakes
+     */
+    private void onHealthCheck(long rxBytes, long txBytes, boolean receiveStalled, boolean handshakeStale) {
+        // Replies stopped after real data went out, or a handshake never completed: both are what
+        // an expired NAT binding looks like. Keepalive-only sends never stall (see PeerHealth)
+        boolean unhealthy = receiveStalled || handshakeStale;
+        int interval = adaptiveKeepalive.observe(networkKey, rxBytes, txBytes, unhealthy);
+        if (interval <= 0) {
+            return;
+        }
+        if (interval != keepaliveTarget) {
+            trace.record(TraceEvent.KEEPALIVE, interval, keepaliveTarget, unhealthy ? 1 : 0);
+            keepaliveTarget = interval;
+        }
+        int applied = wireguardConfig != null ? configuredKeepalive(wireguardConfig) : 0;
+        if (!unhealthy && applied > 0 && interval > applied && KeepaliveTuner.isQuiet(rxBytes, txBytes)) {
+            rehandshakeTunnel();
+        }
+    }
+
+    /**
+     * Tell EndpointResolver whether the addresses of this connect completed a handshake
+     */
+    private void reportEndpoints(boolean handshook) {
+        if (sourceConfig == null || wireguardConfig == null) {
+            return;
+        }
+        List<Peer> sourcePeers = sourceConfig.getPeers();
+        List<Peer> peers = wireguardConfig.getPeers();
+        for (int i = 0; i < Math.min(sourcePeers.size(), peers.size()); i++) {
+            Optional<InetEndpoint> configured = sourcePeers.get(i).getEndpoint();
+            Optional<InetEndpoint> dialed = peers.get(i).getEndpoint();
+            if (!configured.isPresent() || !dialed.isPresent()) {
+                continue;
+            }
+            try {
+                if (handshook) {
+                    // The dialed host is a literal, so this does no lookup
+                    endpointResolver.markGood(configured.get().getHost(), InetAddress.getByName(dialed.get().getHost()));
+                } else {
+                    if (KuzaLog.isLoggable(Log.WARN)) {
+                        Log.w(TAG, "No handshake with " + dialed.get().getHost() + " - trying another address of "
+                            + configured.get().getHost());
+                    }
+                    endpointResolver.markFailed(configured.get().getHost(), InetAddress.getByName(dialed.get().getHost()));
+                }
+            } catch (Exception e) {
+                if (KuzaLog.isLoggable(Log.WARN)) {
+                    Log.w(TAG, "Failed to report endpoint: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Measure the path MTU to the first peer in the background; the result sizes the
+     * next connect on this network, and a path narrower than the interface rebuilds it now
+     */
+    private void refreshPathMtu() {
+        if (sourceConfig == null || sourceConfig.getInterface().getMtu().isPresent()
+                || wireguardConfig.getPeers().isEmpty()) {
+            return;
+        }
+        Optional<InetEndpoint> endpoint = wireguardConfig.getPeers().get(0).getEndpoint();
+        if (!endpoint.isPresent()) {
+            return;
+        }
+        final InetSocketAddress target;
+        try {
+            target = new InetSocketAddress(InetAddress.getByName(endpoint.get().getHost()), endpoint.get().getPort());
+        } catch (Exception e) {
+            return;
+        }
+        final String configJson = wireguardConfigJson;
+        final int interfaceMtu = wireguardConfig.getInterface().getMtu().orElse(DEFAULT_MTU);
+
+        mtuDiscovery.refresh(networkKey, target, (measuredOn, address, tunnelMtu) -> {
+            if (tunnelMtu >= interfaceMtu || tunnelExecutor.scheduler().isShutdown()) {
+                return;
+            }
+            tunnelExecutor.scheduler().execute(() -> {
+                // Only if nothing has moved on while the probe ran
+                if (tunnelExecutor.getPhase() == TunnelPhase.UP && configJson.equals(wireguardConfigJson)
+                        && measuredOn.equals(networkKey)) {
+                    trace.record(TraceEvent.MTU_REBUILD, tunnelMtu, interfaceMtu);
+                    connectVPN(tunnelExecutor.currentToken(), configJson);
+                }
+            });
+        });
+    }
+
+    /**
+     * Reinstall routes when the addresses behind the domain rules changed
+     * Changes are batched to one rebuild per DOMAIN_REBUILD_MIN_INTERVAL_MS, which then
+     * applies the latest prefixes
+     */
+    private void onDomainRoutesChanged() {
+        if (tunnelExecutor.scheduler().isShutdown()) {
+            return;
+        }
+        tunnelExecutor.scheduler().execute(() -> {
+            if (domainRebuildPending || tunnelExecutor.scheduler().isShutdown()) {
+                return;
+            }
+            domainRebuildPending = true;
+            long delayMs = Math.max(0,
+                lastDomainRebuildAt + DOMAIN_REBUILD_MIN_INTERVAL_MS - SystemClock.elapsedRealtime());
+            tunnelExecutor.scheduler().schedule(this::rebuildForDomainRoutes, delayMs, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Re-establish only the VPN interface with the current domain prefixes; the WireGuard
+     * tunnel, its monitors and the published state are left alone
+     */
+    private void rebuildForDomainRoutes() {
+        domainRebuildPending = false;
+        List<String> domainPrefixes = domainRoutes.prefixes();
+        if (tunnelExecutor.getPhase() != TunnelPhase.UP || vpnInterface == null || wireguardConfig == null
+                || interfaceSignature(wireguardConfig, domainPrefixes).equals(interfaceSignature)) {
+            return;
+        }
+        lastDomainRebuildAt = SystemClock.elapsedRealtime();
+        trace.record(TraceEvent.DOMAIN_ROUTES, domainPrefixes.size());
+        KuzaLog.d(TAG, "Domain routes changed - rebuilding VPN interface");
         try {
-            if (selectedApps.isEmpty()) {
-                Log.d(TAG, "Encrypting all traffic - no app restrictions");
+            VpnService.Builder builder = new Builder().setSession("KuzaVPN");
+            configureInterface(builder, wireguardConfig, domainPrefixes);
+            configureAppRouting(builder);
+
+            // The old interface carries traffic until the new one exists
+            ParcelFileDescriptor rebuilt = builder.establish();
+            if (rebuilt == null) {
+                KuzaLog.w(TAG, "VPN permission revoked - keeping the current interface");
                 return;
             }
+            ParcelFileDescriptor previousInterface = vpnInterface;
+            vpnInterface = rebuilt;
+            interfaceSignature = interfaceSignature(wireguardConfig, domainPrefixes);
+            setUnderlyingNetworks(underlyingNetwork != null ? new Network[] {underlyingNetwork} : null);
+            previousInterface.close();
+        } catch (Exception e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Domain route rebuild failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The current config as a headless reconnect reads it back: wg-quick text, in the
+     * JSON form when domain rules have to come along
+     */
+    private String headlessConfig() {
+        String wgQuick = sourceConfig.toWgQuickString();
+        List<String> domains = TunnelSpec.excludedDomains(wireguardConfigJson);
+        if (domains.isEmpty()) {
+            return wgQuick;
+        }
+        try {
+            return new JSONObject().put("config", wgQuick).put("excludedDomains", new JSONArray(domains)).toString();
+        } catch (JSONException e) {
+            return wgQuick;
+        }
+    }
 
-            // Add selected apps to VPN routing
-            for (String packageName : selectedApps) {
+    /**
+     * Compile the JSON or wg-quick config from React Native; repeated configs come from the cache
+     */
+    private Config parseWireGuardConfig(String configJson) {
+        try {
+            return WireGuardConfigCompiler.getInstance().compile(configJson);
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to parse WireGuard config", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Addresses, DNS, MTU and routes for the VPN interface, all taken from the config
+     * Routes are the union of every peer's allowed IPs, minimised by RouteCompiler,
+     * less the addresses of excluded domains. Android 13 excludes those itself; before
+     * that RouteCompiler cuts them out, at up to a route per prefix bit
+     * @return the number of routes added
+     */
+    private int configureInterface(VpnService.Builder builder, Config config, List<String> domainPrefixes) {
+        Interface wgInterface = config.getInterface();
+        for (InetNetwork address : wgInterface.getAddresses()) {
+            builder.addAddress(address.getAddress(), address.getMask());
+        }
+        for (InetAddress dns : wgInterface.getDnsServers()) {
+            builder.addDnsServer(dns);
+        }
+        for (String searchDomain : wgInterface.getDnsSearchDomains()) {
+            builder.addSearchDomain(searchDomain);
+        }
+
+        RouteCompiler routeCompiler = new RouteCompiler();
+        for (Peer peer : config.getPeers()) {
+            for (InetNetwork allowedIp : peer.getAllowedIps()) {
+                routeCompiler.include(allowedIp.getAddress().getHostAddress() + "/" + allowedIp.getMask());
+            }
+        }
+        boolean platformExcludes = Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU;
+        if (!platformExcludes) {
+            routeCompiler.excludeAll(domainPrefixes);
+        }
+        List<RouteCompiler.Route> routes = routeCompiler.compile();
+        for (RouteCompiler.Route route : routes) {
+            builder.addRoute(route.address, route.prefixLength);
+        }
+        if (platformExcludes) {
+            for (String prefix : domainPrefixes) {
+                int slash = prefix.indexOf('/');
                 try {
-                    builder.addAllowedApplication(packageName);
-                    Log.d(TAG, "Added app to VPN: " + packageName);
-                } catch (PackageManager.NameNotFoundException e) {
-                    Log.w(TAG, "App not found: " + packageName);
+                    // Literal addresses, so this does no lookup
+                    builder.excludeRoute(new IpPrefix(InetAddress.getByName(prefix.substring(0, slash)),
+                        Integer.parseInt(prefix.substring(slash + 1))));
+                } catch (Exception e) {
+                    if (KuzaLog.isLoggable(Log.WARN)) {
+                        Log.w(TAG, "Skipping domain route " + prefix + ": " + e.getMessage());
+                    }
                 }
             }
+        }
+
+        // prepareConfig() always sets one: the config's own, the measured one, or the default
+        builder.setMtu(wgInterface.getMtu().orElse(DEFAULT_MTU));
+        return routes.size();
+    }
+
+    private String getServerEndpoint() {
+        try {
+            // The endpoint as configured, hostname included, not the address it resolved to
+            if (sourceConfig != null && !sourceConfig.getPeers().isEmpty()) {
+                Optional<InetEndpoint> endpoint = sourceConfig.getPeers().get(0).getEndpoint();
+                if (endpoint.isPresent()) {
+                    return endpoint.get().getHost() + ":" + endpoint.get().getPort();
+                }
+            }
+        } catch (Exception e) {
+            KuzaLog.e(TAG, "Failed to get server endpoint", e);
+        }
+        return "Server";
+    }
 
-            // Exclude this VPN app itself to prevent loops
-            builder.addDisallowedApplication(getPackageName());
+    private void configureAppRouting(VpnService.Builder builder) {
+        try {
+            AppRoutingPlan plan = AppRoutingPlan.resolve(selectedApps,
+                InstalledPackageIndex.getInstance(this), getPackageName());
+            if (plan.mode == AppRoutingPlan.Mode.ALL) {
+                KuzaLog.d(TAG, "Encrypting all traffic - no app restrictions");
+            }
+            plan.apply(builder);
 
         } catch (Exception e) {
-            Log.e(TAG, "Failed to configure app routing", e);
+            KuzaLog.e(TAG, "Failed to configure app routing", e);
         }
     }
 
     private void disconnectVPN() {
+        long teardownStart = SystemClock.elapsedRealtime();
         try {
-            isConnected = false;
+            tunnelExecutor.moveTo(TunnelPhase.TEARING_DOWN);
+            healthMonitor.stop();
+            statsSampler.stop();
+            usageCollector.stop();
+            domainRoutes.stop();
+            quotaEnforcer.flush();
 
             // Stop WireGuard tunnel first
             if (wireguardBackend != null && currentTunnel != null) {
-                Log.d(TAG, "Shutting down WireGuard tunnel...");
                 try {
                     wireguardBackend.setState(currentTunnel, State.DOWN, null);
-                    Log.d(TAG, "✅ WireGuard tunnel shut down");
                 } catch (Exception e) {
-                    Log.w(TAG, "Error shutting down WireGuard tunnel: " + e.getMessage());
+                    if (KuzaLog.isLoggable(Log.WARN)) {
+                        Log.w(TAG, "Error shutting down WireGuard tunnel: " + e.getMessage());
+                    }
                 }
                 currentTunnel = null;
             }
@@ -332,20 +1365,28 @@ public class KuzaVpnService extends VpnService {
             if (vpnInterface != null) {
                 vpnInterface.close();
                 vpnInterface = null;
-                Log.d(TAG, "VPN interface closed");
             }
 
             // Clear configurations
+            interfaceSignature = null;
             wireguardConfig = null;
+            sourceConfig = null;
+            wireguardConfigJson = null;
+            networkKey = null;
             selectedApps.clear();
+            connectedEndpoint = null;
 
             stopForeground(true);
             stopSelf();
 
-            Log.d(TAG, "✅ VPN completely disconnected");
+            trace.record(TraceEvent.DISCONNECTED, SystemClock.elapsedRealtime() - teardownStart);
+            KuzaLog.d(TAG, "VPN completely disconnected");
+            TunnelStateChannel.publish(TunnelState.DOWN, null);
 
         } catch (Exception e) {
-            Log.e(TAG, "❌ Error disconnecting VPN", e);
+            KuzaLog.e(TAG, "Error disconnecting VPN", e);
+        } finally {
+            tunnelExecutor.moveTo(TunnelPhase.IDLE);
         }
     }
 
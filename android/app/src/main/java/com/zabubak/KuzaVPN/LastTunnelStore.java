@@ -0,0 +1,178 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AtomicFile;
+
+/**
+ * The last config that completed a handshake, with its app selection and whether the
+ * user wants the tunnel up
+ * Lets KuzaVpnService reconnect on a sticky restart, at boot, under always-on VPN or
+ * from the Quick Settings tile without starting React. The config is kept as wg-quick
+ * text (in the JSON form when domain rules ride along) in one small binary file in
+ * no-backup storage (it holds the private key), so a headless connect costs one read
+ * and a TunnelSpec parse. That read is still disk I/O, so callers on the main thread
+ * use loadAsync()
+ */
+public final class LastTunnelStore {
+    private static final String TAG = "LastTunnelStore";
+    private static final String FILE_NAME = "last_tunnel";
+    private static final int VERSION = 1;
+
+    /**
+     * What a headless connect needs
+     */
+    public static final class Saved {
+        public final String config;
+        public final List<String> selectedApps;
+        public final boolean autoConnect;
+
+        Saved(String config, List<String> selectedApps, boolean autoConnect) {
+            this.config = config;
+            this.selectedApps = selectedApps;
+            this.autoConnect = autoConnect;
+        }
+    }
+
+    /**
+     * Receives the saved tunnel, or null, on the main thread
+     */
+    public interface LoadCallback {
+        void onLoaded(Saved saved);
+    }
+
+    private static volatile LastTunnelStore instance;
+
+    private final AtomicFile file;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "KuzaVPN-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Saved saved;
+    private boolean loaded;
+
+    private LastTunnelStore(Context context) {
+        file = new AtomicFile(new File(context.getNoBackupFilesDir(), FILE_NAME));
+    }
+
+    public static LastTunnelStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (LastTunnelStore.class) {
+                if (instance == null) {
+                    instance = new LastTunnelStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return the saved tunnel, or null if none has come up yet
+     */
+    public synchronized Saved load() {
+        if (!loaded) {
+            saved = read();
+            loaded = true;
+        }
+        return saved;
+    }
+
+    /**
+     * load() off the calling thread, for callers on the main thread
+     */
+    public void loadAsync(LoadCallback callback) {
+        loadExecutor.execute(() -> {
+            Saved loaded = load();
+            mainHandler.post(() -> callback.onLoaded(loaded));
+        });
+    }
+
+    /**
+     * Remember a config that just completed a handshake; the file is only rewritten when it changed
+     */
+    public synchronized void saveGood(String config, List<String> selectedApps) {
+        Saved current = load();
+        if (current != null && current.autoConnect && current.config.equals(config)
+                && current.selectedApps.equals(selectedApps)) {
+            return;
+        }
+        write(new Saved(config, Collections.unmodifiableList(new ArrayList<>(selectedApps)), true));
+    }
+
+    /**
+     * Whether sticky restarts and boot should bring the saved tunnel back
+     * Set when the user connects, cleared when they disconnect
+     */
+    public synchronized void setAutoConnect(boolean autoConnect) {
+        Saved current = load();
+        if (current != null && current.autoConnect != autoConnect) {
+            write(new Saved(current.config, current.selectedApps, autoConnect));
+        }
+    }
+
+    private Saved read() {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(file.readFully()));
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            boolean autoConnect = in.readBoolean();
+            byte[] config = new byte[in.readInt()];
+            in.readFully(config);
+            int appCount = in.readInt();
+            List<String> apps = new ArrayList<>(appCount);
+            for (int i = 0; i < appCount; i++) {
+                apps.add(in.readUTF());
+            }
+            return new Saved(new String(config, StandardCharsets.UTF_8), Collections.unmodifiableList(apps), autoConnect);
+        } catch (IOException e) {
+            // Missing on first run; a truncated file is treated the same
+            return null;
+        }
+    }
+
+    private void write(Saved next) {
+        FileOutputStream stream = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            byte[] config = next.config.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(VERSION);
+            out.writeBoolean(next.autoConnect);
+            out.writeInt(config.length);
+            out.write(config);
+            out.writeInt(next.selectedApps.size());
+            for (String app : next.selectedApps) {
+                out.writeUTF(app);
+            }
+            out.flush();
+
+            stream = file.startWrite();
+            stream.write(bytes.toByteArray());
+            file.finishWrite(stream);
+            saved = next;
+        } catch (IOException e) {
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+            KuzaLog.w(TAG, "Failed to save last tunnel", e);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.VpnService;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+/**
+ * Tunnel MTU per underlying network, found with PathMtuProber and persisted
+ * Keyed by the network's identity (transport, interface, DNS servers) and the peer
+ * address, so returning to a known network reuses its MTU without probing. Probes
+ * go out on the underlying network even while the tunnel is up, and only ever
+ * lower the MTU below WireGuard's default
+ */
+public final class PathMtuDiscovery {
+    private static final String TAG = "PathMtuDiscovery";
+    private static final String PREFS = "kuzavpn_mtu";
+
+    // Re-probe a known network after this long
+    static final long CACHE_TTL_MS = 24 * 60 * 60 * 1000L;
+    static final int DEFAULT_LINK_MTU = 1500;
+    // Below this the interface could not carry IPv6 at all
+    static final int MIN_TUNNEL_MTU = 1280;
+    // The server doesn't echo probes, so one only fails on EMSGSIZE from the local link or an
+    // ICMP that made it back; a router that drops silently goes unseen. Probing can lower the
+    // MTU but never confirm one above WireGuard's default
+    static final int MAX_UNCONFIRMED_TUNNEL_MTU = 1420;
+    private static final long PROBE_TIMEOUT_MS = 200;
+
+    // Don't Fragment and fail with EMSGSIZE past the path MTU (<linux/in.h>, <linux/in6.h>)
+    private static final int IP_MTU_DISCOVER = 10;
+    private static final int IPV6_MTU_DISCOVER = 23;
+    private static final int PMTUDISC_DO = 2;
+
+    /**
+     * Called on the probe thread with a newly measured tunnel MTU
+     */
+    public interface Listener {
+        void onTunnelMtu(String networkKey, InetAddress endpoint, int tunnelMtu);
+    }
+
+    private final ConnectivityManager connectivityManager;
+    private final SharedPreferences prefs;
+    private final PathMtuProber prober = new PathMtuProber(PROBE_TIMEOUT_MS, 1, false);
+    private final ExecutorService probeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "KuzaVPN-mtu");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PathMtuDiscovery(VpnService vpnService) {
+        connectivityManager = vpnService.getSystemService(ConnectivityManager.class);
+        prefs = vpnService.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        prober.setSocketPreparer(socket -> prepareSocket(vpnService, socket));
+    }
+
+    /**
+     * Identity of the current non-VPN default network, or null when offline
+     */
+    public String currentNetworkKey() {
+        return networkKey(underlyingNetwork());
+    }
+
+    /**
+     * Identity of a network that survives reconnecting to it, unlike the Network handle
+     */
+    public String networkKey(Network network) {
+        if (network == null || connectivityManager == null) {
+            return null;
+        }
+        LinkProperties properties = connectivityManager.getLinkProperties(network);
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        String transport = "other";
+        if (capabilities != null) {
+            if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+                transport = "wifi";
+            } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+                transport = "cell";
+            } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+                transport = "eth";
+            }
+        }
+        TreeSet<String> dnsServers = new TreeSet<>();
+        if (properties != null) {
+            for (InetAddress dns : properties.getDnsServers()) {
+                dnsServers.add(dns.getHostAddress());
+            }
+        }
+        return transport + "/" + (properties != null ? properties.getInterfaceName() : "?") + "/" + dnsServers;
+    }
+
+    /**
+     * Last tunnel MTU measured on this network towards this endpoint, or -1
+     * An expired value is still returned; refresh() replaces it
+     */
+    public int getTunnelMtu(String networkKey, InetAddress endpoint) {
+        if (networkKey == null || endpoint == null) {
+            return -1;
+        }
+        String[] stored = prefs.getString(cacheKey(networkKey, endpoint), "").split("\\|");
+        try {
+            // Entries stored before the cap may be above it
+            return stored.length == 2 ? Math.min(Integer.parseInt(stored[1]), MAX_UNCONFIRMED_TUNNEL_MTU) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Probe in the background unless a fresh measurement exists
+     */
+    public void refresh(String networkKey, InetSocketAddress endpoint, Listener listener) {
+        if (networkKey == null || endpoint == null || endpoint.isUnresolved()) {
+            return;
+        }
+        String key = cacheKey(networkKey, endpoint.getAddress());
+        String[] stored = prefs.getString(key, "").split("\\|");
+        try {
+            if (stored.length == 2 && System.currentTimeMillis() - Long.parseLong(stored[0]) < CACHE_TTL_MS) {
+                return;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+
+        probeExecutor.execute(() -> {
+            try {
+                if (!networkKey.equals(currentNetworkKey())) {
+                    // Moved on before the probe ran; this result would describe the wrong network
+                    return;
+                }
+                PathMtuProber.Result result = prober.probe(endpoint, linkMtu());
+                int tunnelMtu = Math.min(Math.max(result.tunnelMtu, MIN_TUNNEL_MTU), MAX_UNCONFIRMED_TUNNEL_MTU);
+                prefs.edit().putString(key, System.currentTimeMillis() + "|" + tunnelMtu).apply();
+                if (KuzaLog.isLoggable(Log.DEBUG)) {
+                    Log.d(TAG, "Path MTU to " + endpoint + " on " + networkKey + ": " + result.pathMtu
+                        + " (tunnel " + tunnelMtu + ", " + result.probes + " probes)");
+                }
+                listener.onTunnelMtu(networkKey, endpoint.getAddress(), tunnelMtu);
+            } catch (IOException e) {
+                if (KuzaLog.isLoggable(Log.WARN)) {
+                    Log.w(TAG, "Path MTU probe failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    public void shutdown() {
+        probeExecutor.shutdownNow();
+    }
+
+    private static String cacheKey(String networkKey, InetAddress endpoint) {
+        return networkKey + "|" + endpoint.getHostAddress();
+    }
+
+    /**
+     * The default network if it is not a VPN, else the first non-VPN network with internet
+     */
+    private Network underlyingNetwork() {
+        if (connectivityManager == null) {
+            return null;
+        }
+        Network active = connectivityManager.getActiveNetwork();
+        if (active != null && !isVpn(active)) {
+            return active;
+        }
+        for (Network network : connectivityManager.getAllNetworks()) {
+            NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+            if (capabilities != null && !isVpn(network)
+                    && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) {
+                return network;
+            }
+        }
+        return null;
+    }
+
+    private boolean isVpn(Network network) {
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        return capabilities != null && capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN);
+    }
+
+    private int linkMtu() {
+        Network network = underlyingNetwork();
+        LinkProperties properties = network != null ? connectivityManager.getLinkProperties(network) : null;
+        int mtu = properties != null ? properties.getMtu() : 0;
+        return mtu > 0 ? mtu : DEFAULT_LINK_MTU;
+    }
+
+    /**
+     * Keep probes off the tunnel and on the underlying network, with Don't Fragment set
+     */
+    private void prepareSocket(VpnService vpnService, DatagramSocket socket) throws IOException {
+        vpnService.protect(socket);
+        Network network = underlyingNetwork();
+        if (network != null) {
+            network.bindSocket(socket);
+        }
+
+        // Sockets are dual-stack, so set both families; one of them may not apply
+        try (ParcelFileDescriptor descriptor = ParcelFileDescriptor.fromDatagramSocket(socket)) {
+            boolean set = false;
+            try {
+                Os.setsockoptInt(descriptor.getFileDescriptor(), OsConstants.IPPROTO_IP, IP_MTU_DISCOVER, PMTUDISC_DO);
+                set = true;
+            } catch (ErrnoException ignored) {
+            }
+            try {
+                Os.setsockoptInt(descriptor.getFileDescriptor(), OsConstants.IPPROTO_IPV6, IPV6_MTU_DISCOVER,
+                    PMTUDISC_DO);
+                set = true;
+            } catch (ErrnoException ignored) {
+            }
+            if (!set) {
+                throw new IOException("Cannot set Don't Fragment on probe socket");
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.Calendar;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+/**
+ * Monthly data quota tracked natively from the backend's tunnel counters
+ * TunnelStatsSampler feeds it the cumulative rx/tx of the running tunnel; only the
+ * delta since the previous sample is added, so accounting is a subtraction per
+ * second. Usage and the fired thresholds are persisted, throttled, so the quota
+ * survives process death and is enforced without the JS runtime
+ */
+public final class QuotaEnforcer implements TunnelStatsSampler.CounterListener {
+    private static final String TAG = "QuotaEnforcer";
+    private static final String PREFS = "kuzavpn_quota";
+    private static final double DEFAULT_SOFT_FRACTION = 0.8;
+
+    // Persist after this much new usage or this much time, whichever comes first
+    private static final long PERSIST_BYTES = 1024 * 1024;
+    private static final long PERSIST_INTERVAL_MS = 30_000;
+
+    public enum Action {
+        NONE,       // only report the thresholds
+        PAUSE,      // keep the interface, stop the tunnel: routed apps lose connectivity, nothing leaks
+        DISCONNECT  // tear the VPN down
+    }
+
+    public enum Level {
+        SOFT,
+        HARD
+    }
+
+    /**
+     * Called once per threshold per period, on the tunnel thread
+     */
+    public interface Listener {
+        void onQuotaThreshold(Level level, long usedBytes, long limitBytes, Action action);
+    }
+
+    private static volatile QuotaEnforcer instance;
+
+    private final SharedPreferences prefs;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private long limitBytes;
+    private double softFraction;
+    private Action action;
+    private long usedBytes;
+    private long periodEndMs;
+    private boolean softFired;
+    private boolean hardFired;
+
+    private long lastCounter;
+    private long persistedBytes;
+    private long persistedAtMs;
+
+    private QuotaEnforcer(Context context) {
+        prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        limitBytes = prefs.getLong("limitBytes", 0);
+        softFraction = prefs.getFloat("softFraction", (float) DEFAULT_SOFT_FRACTION);
+        action = parseAction(prefs.getString("action", Action.NONE.name()));
+        usedBytes = prefs.getLong("usedBytes", 0);
+        periodEndMs = prefs.getLong("periodEndMs", 0);
+        softFired = prefs.getBoolean("softFired", false);
+        hardFired = prefs.getBoolean("hardFired", false);
+        persistedBytes = usedBytes;
+    }
+
+    public static QuotaEnforcer getInstance(Context context) {
+        if (instance == null) {
+            synchronized (QuotaEnforcer.class) {
+                if (instance == null) {
+                    instance = new QuotaEnforcer(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param limitBytes   monthly limit; 0 disables the quota
+     * @param softFraction share of the limit that fires the soft threshold, 0-1
+     * @param action       what to do with the tunnel at the hard limit
+     */
+    public synchronized void configure(long limitBytes, double softFraction, Action action) {
+        this.limitBytes = Math.max(limitBytes, 0);
+        this.softFraction = Math.min(Math.max(softFraction, 0), 1);
+        this.action = action;
+        // A raised limit re-arms the thresholds that usage no longer crosses
+        softFired = softFired && usedBytes >= softLimit();
+        hardFired = hardFired && usedBytes >= this.limitBytes;
+        persist(System.currentTimeMillis());
+    }
+
+    /**
+     * Start counting a new tunnel, whose counters start at zero
+     */
+    @Override
+    public synchronized void onSessionStart(long nowMs) {
+        lastCounter = 0;
+    }
+
+    @Override
+    public void onCounters(long nowMs, long rxBytes, long txBytes) {
+        Level crossed = null;
+        long used;
+        long limit;
+        Action limitAction;
+        synchronized (this) {
+            long counter = rxBytes + txBytes;
+            // Counters only go back when the backend recreated the tunnel
+            long delta = counter >= lastCounter ? counter - lastCounter : counter;
+            lastCounter = counter;
+
+            rollPeriod(nowMs);
+            usedBytes += delta;
+
+            if (limitBytes > 0) {
+                if (!hardFired && usedBytes >= limitBytes) {
+                    hardFired = true;
+                    softFired = true;
+                    crossed = Level.HARD;
+                } else if (!softFired && usedBytes >= softLimit()) {
+                    softFired = true;
+                    crossed = Level.SOFT;
+                }
+            }
+
+            if (crossed != null || usedBytes - persistedBytes >= PERSIST_BYTES
+                    || nowMs - persistedAtMs >= PERSIST_INTERVAL_MS) {
+                persist(nowMs);
+            }
+            used = usedBytes;
+            limit = limitBytes;
+            limitAction = action;
+        }
+
+        if (crossed != null) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Data quota " + crossed + " threshold crossed: " + used + " / " + limit + " bytes");
+            }
+            for (Listener listener : listeners) {
+                listener.onQuotaThreshold(crossed, used, limit, crossed == Level.HARD ? limitAction : Action.NONE);
+            }
+        }
+    }
+
+    /**
+     * Start the period over, e.g. after the user bought more data
+     */
+    public synchronized void resetUsage() {
+        usedBytes = 0;
+        softFired = false;
+        hardFired = false;
+        persist(System.currentTimeMillis());
+    }
+
+    /**
+     * Write the counters now; called when a session ends
+     */
+    public synchronized void flush() {
+        persist(System.currentTimeMillis());
+    }
+
+    public synchronized long getUsedBytes() {
+        rollPeriod(System.currentTimeMillis());
+        return usedBytes;
+    }
+
+    public synchronized long getLimitBytes() {
+        return limitBytes;
+    }
+
+    public synchronized double getSoftFraction() {
+        return softFraction;
+    }
+
+    public synchronized Action getAction() {
+        return action;
+    }
+
+    public synchronized long getPeriodEndMs() {
+        rollPeriod(System.currentTimeMillis());
+        return periodEndMs;
+    }
+
+    /**
+     * Whether the hard limit has been reached this period
+     */
+    public synchronized boolean isExhausted() {
+        rollPeriod(System.currentTimeMillis());
+        return limitBytes > 0 && usedBytes >= limitBytes;
+    }
+
+    public static Action parseAction(String name) {
+        try {
+            return Action.valueOf(name.toUpperCase(java.util.Locale.ROOT));
+        } catch (Exception e) {
+            return Action.NONE;
+        }
+    }
+
+    private long softLimit() {
+        return (long) (limitBytes * softFraction);
+    }
+
+    private void rollPeriod(long nowMs) {
+        if (nowMs < periodEndMs) {
+            return;
+        }
+        if (periodEndMs > 0) {
+            if (KuzaLog.isLoggable(Log.DEBUG)) {
+                Log.d(TAG, "New quota period; last one used " + usedBytes + " bytes");
+            }
+        }
+        usedBytes = 0;
+        softFired = false;
+        hardFired = false;
+        periodEndMs = nextMonthStartMs(nowMs);
+        persist(nowMs);
+    }
+
+    private void persist(long nowMs) {
+        prefs.edit()
+            .putLong("limitBytes", limitBytes)
+            .putFloat("softFraction", (float) softFraction)
+            .putString("action", action.name())
+            .putLong("usedBytes", usedBytes)
+            .putLong("periodEndMs", periodEndMs)
+            .putBoolean("softFired", softFired)
+            .putBoolean("hardFired", hardFired)
+            .apply();
+        persistedBytes = usedBytes;
+        persistedAtMs = nowMs;
+    }
+
+    private static long nextMonthStartMs(long nowMs) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(nowMs);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,101 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wireguard.config.InetEndpoint;
+import com.wireguard.crypto.Curve25519;
+import com.wireguard.crypto.Key;
+
+import android.net.Network;
+import android.net.VpnService;
+import android.util.Log;
+
+/**
+ * Runs a ServerRace with real handshake initiations from the client's key
+ * Candidate hosts resolve through EndpointResolver's cache, and the race sockets are
+ * protected and bound to the underlying network, so a rebuild that races while the
+ * old tunnel is still up goes over the physical path
+ */
+public final class ServerRacer {
+    private static final String TAG = "ServerRacer";
+    // How long answers are waited for once the last contender has started
+    static final long ANSWER_WAIT_MS = 1_000;
+
+    // X25519 from the WireGuard library, shared with the latency probes
+    static final HandshakeInitiation.Curve CURVE = new HandshakeInitiation.Curve() {
+        @Override
+        public byte[] publicKey(byte[] privateKey) {
+            byte[] publicKey = new byte[HandshakeInitiation.KEY_SIZE];
+            Curve25519.eval(publicKey, 0, privateKey, null);
+            return publicKey;
+        }
+
+        @Override
+        public byte[] sharedSecret(byte[] privateKey, byte[] publicKey) {
+            byte[] secret = new byte[HandshakeInitiation.KEY_SIZE];
+            Curve25519.eval(secret, 0, privateKey, publicKey);
+            return secret;
+        }
+    };
+
+    private final VpnService vpnService;
+    private final EndpointResolver resolver;
+    private final SecureRandom random = new SecureRandom();
+
+    public ServerRacer(VpnService vpnService, EndpointResolver resolver) {
+        this.vpnService = vpnService;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Longest race() waits for answers once every contender is resolved
+     */
+    static long budgetMs(ServerRace race) {
+        return race.staggerMs() * (race.contenders().size() - 1) + ANSWER_WAIT_MS;
+    }
+
+    /**
+     * Race the contenders; blocks the calling thread until the race is decided
+     * @param network underlying network to race on, null for the default one
+     */
+    public ServerRaceReport race(ServerRace race, Key privateKey, Network network) throws IOException {
+        List<ServerRace.Candidate> contenders = race.contenders();
+        List<String> endpoints = new ArrayList<>(contenders.size());
+        List<InetSocketAddress> targets = new ArrayList<>(contenders.size());
+        byte[][] serverKeys = new byte[contenders.size()][];
+        for (int i = 0; i < contenders.size(); i++) {
+            ServerRace.Candidate candidate = contenders.get(i);
+            endpoints.add(candidate.endpoint);
+            try {
+                serverKeys[i] = Key.fromBase64(candidate.publicKey).getBytes();
+                InetEndpoint endpoint = InetEndpoint.parse(candidate.endpoint);
+                targets.add(new InetSocketAddress(resolver.resolve(endpoint.getHost()), endpoint.getPort()));
+            } catch (Exception e) {
+                // Sits the race out, like a server that refused
+                if (KuzaLog.isLoggable(Log.WARN)) {
+                    Log.w(TAG, "Cannot race " + candidate.endpoint + ": " + e.getMessage());
+                }
+                targets.add(null);
+            }
+        }
+
+        byte[] staticPrivate = privateKey.getBytes();
+        long timestampMs = System.currentTimeMillis() - HandshakeRace.TIMESTAMP_BACKDATE_MS;
+        HandshakeRace handshakeRace = new HandshakeRace(channel -> {
+            vpnService.protect(channel.socket());
+            if (network != null) {
+                network.bindSocket(channel.socket());
+            }
+        });
+        return handshakeRace.run(endpoints, targets, (rank, senderIndex) -> {
+            byte[] ephemeral = new byte[HandshakeInitiation.KEY_SIZE];
+            random.nextBytes(ephemeral);
+            return HandshakeInitiation.create(CURVE, staticPrivate, serverKeys[rank], senderIndex, ephemeral,
+                timestampMs);
+        }, race.staggerMs(), budgetMs(race));
+    }
+}
@@ -0,0 +1,117 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+/**
+ * The single thread that owns every tunnel operation of KuzaVpnService
+ * Connects, switches, teardowns, health checks and stats sampling are all
+ * serialized here, so none of them block the main thread or race each other.
+ * Each user-initiated operation gets a token; starting a new one supersedes
+ * (and interrupts) whatever operation is still in flight
+ */
+public class TunnelExecutor {
+    private static final String TAG = "TunnelExecutor";
+
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "KuzaVPN-tunnel");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger generation = new AtomicInteger();
+    private Future<?> inFlight;
+
+    // Only read and written on the tunnel thread
+    private TunnelPhase phase = TunnelPhase.IDLE;
+
+    public TunnelExecutor() {
+        // Delayed health checks must not hold a shut-down service's thread alive
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Scheduler for periodic tunnel work (health checks, stats sampling)
+     */
+    public ScheduledExecutorService scheduler() {
+        return executor;
+    }
+
+    /**
+     * Supersede the operation in flight and queue a new one
+     * @return the new operation's token, for isCancelled checks along the way
+     */
+    public synchronized int submit(Operation operation) {
+        final int token = generation.incrementAndGet();
+        if (inFlight != null) {
+            // Interrupts backoff sleeps; a backend call already running finishes first
+            inFlight.cancel(true);
+        }
+        if (executor.isShutdown()) {
+            return token;
+        }
+        inFlight = executor.submit(() -> {
+            if (isCancelled(token)) {
+                return;
+            }
+            try {
+                operation.run(token);
+            } catch (Exception e) {
+                TraceBuffer.getInstance().record(TraceEvent.OPERATION_FAILED, token);
+                KuzaLog.e(TAG, "Tunnel operation failed", e);
+            }
+        });
+        return token;
+    }
+
+    /**
+     * Whether a newer operation has superseded the one holding this token
+     */
+    public boolean isCancelled(int token) {
+        return token != generation.get() || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Token of the latest operation, for scheduled work that continues it
+     */
+    public int currentToken() {
+        return generation.get();
+    }
+
+    public TunnelPhase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Move the state machine on; call from the tunnel thread only
+     * @throws IllegalStateException if the transition is not allowed from the current phase
+     */
+    public void moveTo(TunnelPhase next) {
+        if (!phase.canMoveTo(next)) {
+            throw new IllegalStateException("Illegal tunnel transition " + phase + " → " + next);
+        }
+        TraceBuffer.getInstance().record(TraceEvent.PHASE, phase.ordinal(), next.ordinal());
+        if (KuzaLog.isLoggable(Log.DEBUG)) {
+            Log.d(TAG, "Tunnel phase " + phase + " → " + next);
+        }
+        phase = next;
+    }
+
+    /**
+     * Let queued operations drain, drop scheduled checks and release the thread
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * A cancellable unit of tunnel work
+     */
+    public interface Operation {
+        void run(int token) throws Exception;
+    }
+}
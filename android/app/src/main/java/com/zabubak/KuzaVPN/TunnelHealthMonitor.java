@@ -0,0 +1,244 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import com.wireguard.android.backend.Backend;
+import com.wireguard.android.backend.Statistics;
+import com.wireguard.android.backend.Tunnel;
+import com.wireguard.crypto.Key;
+
+import android.util.Log;
+
+/**
+ * Watches a running WireGuard tunnel through the backend's per-peer statistics
+ * Detects stale handshakes and stalled receive paths, then escalates from a
+ * re-handshake to full reconnects spaced by jittered exponential backoff
+ */
+public class TunnelHealthMonitor {
+    private static final String TAG = "TunnelHealthMonitor";
+
+    // Check often while traffic flows so stalls surface quickly, rarely when idle
+    private static final long ACTIVE_INTERVAL_MS = 5_000;
+    private static final long IDLE_INTERVAL_MS = 20_000;
+
+    private static final long RECONNECT_BASE_DELAY_MS = 1_000;
+    private static final long RECONNECT_MAX_DELAY_MS = 60_000;
+
+    /**
+     * Recovery actions the monitor asks its owner to perform
+     */
+    public interface Actions {
+        /**
+         * Re-apply the current config so the backend starts a fresh handshake
+         * @return true if the backend accepted it
+         */
+        boolean rehandshake();
+
+        /**
+         * Tear the backend tunnel down and bring it back up
+         * @return true once the tunnel is UP again
+         */
+        boolean reconnect();
+    }
+
+    /**
+     * Receives what each check saw, on the scheduler thread, before any recovery runs
+     */
+    public interface CheckListener {
+        /**
+         * @param rxBytes        received since the previous check, all peers together
+         * @param txBytes        sent since the previous check
+         * @param receiveStalled data went out, beyond keepalives and handshakes, and nothing came back
+         * @param handshakeStale no handshake completed for longer than a session lives
+         */
+        void onCheck(long rxBytes, long txBytes, boolean receiveStalled, boolean handshakeStale);
+    }
+
+    private final Backend backend;
+    private final Actions actions;
+    private final ReconnectBackoff backoff =
+        new ReconnectBackoff(RECONNECT_BASE_DELAY_MS, RECONNECT_MAX_DELAY_MS);
+    private final Map<Key, PeerHealth> peerSamples = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final IntSupplier keepaliveSeconds;
+    private final TraceBuffer trace = TraceBuffer.getInstance();
+    private volatile CheckListener checkListener;
+
+    // Bumped on every start/stop so checks queued for an older session drop out;
+    // everything below it is only touched on the scheduler thread
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile ScheduledFuture<?> nextCheck;
+
+    private Tunnel tunnel;
+    private long monitoringSinceMs;
+    private int unhealthyChecks;
+
+    /**
+     * @param scheduler        single-threaded scheduler shared with the tunnel operations,
+     *                         so recovery actions never run concurrently with a connect
+     * @param keepaliveSeconds persistent keepalive the backend runs with, 0 when off; read
+     *                         on the scheduler thread
+     */
+    public TunnelHealthMonitor(Backend backend, Actions actions, ScheduledExecutorService scheduler,
+            IntSupplier keepaliveSeconds) {
+        this.backend = backend;
+        this.actions = actions;
+        this.scheduler = scheduler;
+        this.keepaliveSeconds = keepaliveSeconds;
+    }
+
+    public void setCheckListener(CheckListener listener) {
+        checkListener = listener;
+    }
+
+    /**
+     * Start (or restart) monitoring the given tunnel
+     */
+    public void start(Tunnel tunnel) {
+        final int session = generation.incrementAndGet();
+        cancelNextCheck();
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        scheduler.execute(() -> {
+            if (session != generation.get()) {
+                return;
+            }
+            this.tunnel = tunnel;
+            resetSamples();
+            backoff.reset();
+            KuzaLog.d(TAG, "Starting WireGuard tunnel health monitoring...");
+            schedule(session, this::checkHealth, ACTIVE_INTERVAL_MS);
+        });
+    }
+
+    public void stop() {
+        generation.incrementAndGet();
+        cancelNextCheck();
+    }
+
+    private void schedule(int session, Runnable task, long delayMs) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        nextCheck = scheduler.schedule(() -> {
+            if (session == generation.get()) {
+                task.run();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelNextCheck() {
+        if (nextCheck != null) {
+            nextCheck.cancel(false);
+            nextCheck = null;
+        }
+    }
+
+    private void resetSamples() {
+        peerSamples.clear();
+        monitoringSinceMs = System.currentTimeMillis();
+        unhealthyChecks = 0;
+    }
+
+    private void checkHealth() {
+        final int session = generation.get();
+        long now = System.currentTimeMillis();
+        boolean trafficFlowing = false;
+        boolean receiveStalled = false;
+        boolean handshakeStale = false;
+        boolean sampled = false;
+        long rxTotal = 0;
+        long txTotal = 0;
+        int keepalive = keepaliveSeconds.getAsInt();
+
+        try {
+            Statistics stats = backend.getStatistics(tunnel);
+            for (Key key : stats.peers()) {
+                Statistics.PeerStats peerStats = stats.peer(key);
+                if (peerStats == null) {
+                    continue;
+                }
+
+                PeerHealth sample = peerSamples.get(key);
+                if (sample == null) {
+                    sample = new PeerHealth(now, peerStats.rxBytes(), peerStats.txBytes());
+                    peerSamples.put(key, sample);
+                }
+                sample.update(now, peerStats.rxBytes(), peerStats.txBytes(),
+                    peerStats.latestHandshakeEpochMillis(), monitoringSinceMs, keepalive);
+                rxTotal += sample.rxDelta();
+                txTotal += sample.txDelta();
+                trafficFlowing |= sample.isFlowing();
+                receiveStalled |= sample.isReceiveStalled();
+                handshakeStale |= sample.isHandshakeStale();
+            }
+            sampled = true;
+        } catch (Exception e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Failed to read tunnel statistics: " + e.getMessage());
+            }
+            handshakeStale = true;
+        }
+
+        CheckListener listener = checkListener;
+        if (listener != null && sampled) {
+            listener.onCheck(rxTotal, txTotal, receiveStalled, handshakeStale);
+        }
+
+        if (!receiveStalled && !handshakeStale) {
+            if (unhealthyChecks > 0) {
+                trace.record(TraceEvent.RECOVERED, unhealthyChecks);
+                KuzaLog.d(TAG, "WireGuard tunnel recovered");
+            }
+            unhealthyChecks = 0;
+            backoff.reset();
+            schedule(session, this::checkHealth, trafficFlowing ? ACTIVE_INTERVAL_MS : IDLE_INTERVAL_MS);
+            return;
+        }
+
+        unhealthyChecks++;
+        trace.record(TraceEvent.UNHEALTHY, receiveStalled ? 1 : 0, handshakeStale ? 1 : 0, unhealthyChecks);
+        if (KuzaLog.isLoggable(Log.WARN)) {
+            Log.w(TAG, "WireGuard tunnel unhealthy (stalled=" + receiveStalled
+                + ", staleHandshake=" + handshakeStale + ", checks=" + unhealthyChecks + ")");
+        }
+
+        if (unhealthyChecks == 1) {
+            // Cheapest fix first: a fresh handshake on the same tunnel
+            trace.record(TraceEvent.REHANDSHAKE, actions.rehandshake() ? 1 : 0);
+            schedule(session, this::checkHealth, ACTIVE_INTERVAL_MS);
+            return;
+        }
+
+        long delayMs = backoff.nextDelayMs();
+        if (KuzaLog.isLoggable(Log.WARN)) {
+            Log.w(TAG, "Reconnecting in " + delayMs + " ms (attempt " + backoff.getAttempt() + ")");
+        }
+        schedule(session, this::attemptReconnect, delayMs);
+    }
+
+    private void attemptReconnect() {
+        final int session = generation.get();
+
+        boolean reconnected = actions.reconnect();
+        trace.record(TraceEvent.RECONNECT, reconnected ? 1 : 0, backoff.getAttempt());
+        if (reconnected) {
+            KuzaLog.d(TAG, "WireGuard tunnel reconnected");
+            resetSamples();
+            schedule(session, this::checkHealth, ACTIVE_INTERVAL_MS);
+        } else {
+            long delayMs = backoff.nextDelayMs();
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Reconnect failed, retrying in " + delayMs + " ms (attempt " + backoff.getAttempt() + ")");
+            }
+            schedule(session, this::attemptReconnect, delayMs);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.util.Log;
+
+/**
+ * In-process channel for tunnel state transitions
+ * KuzaVpnService publishes, KuzaVpnModule (or anything else in the app process) listens.
+ * Requests the service turns down without touching the tunnel are published as
+ * rejections, so the state stays what the tunnel is actually in
+ */
+public final class TunnelStateChannel {
+    private static final String TAG = "TunnelStateChannel";
+
+    /**
+     * Receives every state transition, on the thread that published it
+     */
+    public interface Listener {
+        void onTunnelStateChanged(TunnelState state, String detail);
+    }
+
+    /**
+     * Receives requests the service turned down, on the thread that published them
+     */
+    public interface RejectionListener {
+        void onRequestRejected(String detail);
+    }
+
+    private static final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private static final CopyOnWriteArrayList<RejectionListener> rejectionListeners = new CopyOnWriteArrayList<>();
+    private static volatile TunnelState currentState = TunnelState.DOWN;
+
+    private TunnelStateChannel() {
+    }
+
+    public static void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public static void addRejectionListener(RejectionListener listener) {
+        rejectionListeners.addIfAbsent(listener);
+    }
+
+    public static void removeRejectionListener(RejectionListener listener) {
+        rejectionListeners.remove(listener);
+    }
+
+    public static TunnelState getState() {
+        return currentState;
+    }
+
+    static void publish(TunnelState state, String detail) {
+        currentState = state;
+        if (KuzaLog.isLoggable(Log.DEBUG)) {
+            Log.d(TAG, "Tunnel state: " + state + (detail != null ? " (" + detail + ")" : ""));
+        }
+
+        for (Listener listener : listeners) {
+            try {
+                listener.onTunnelStateChanged(state, detail);
+            } catch (Exception e) {
+                KuzaLog.w(TAG, "Tunnel state listener failed", e);
+            }
+        }
+    }
+
+    static void publishRejection(String detail) {
+        if (KuzaLog.isLoggable(Log.WARN)) {
+            Log.w(TAG, "Request rejected: " + detail);
+        }
+        for (RejectionListener listener : rejectionListeners) {
+            try {
+                listener.onRequestRejected(detail);
+            } catch (Exception e) {
+                KuzaLog.w(TAG, "Rejection listener failed", e);
+            }
+        }
+    }
+}
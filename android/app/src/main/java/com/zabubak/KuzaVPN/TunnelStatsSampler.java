@@ -0,0 +1,94 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.wireguard.android.backend.Backend;
+import com.wireguard.android.backend.Statistics;
+import com.wireguard.android.backend.Tunnel;
+import com.wireguard.crypto.Key;
+
+import android.util.Log;
+
+/**
+ * Samples the backend's tunnel counters into TunnelStatsEngine at a fixed cadence
+ */
+public class TunnelStatsSampler {
+    private static final String TAG = "TunnelStatsSampler";
+    static final long SAMPLE_INTERVAL_MS = 1_000;
+
+    /**
+     * Receives the raw cumulative counters of each sample, on the sampling thread
+     */
+    public interface CounterListener {
+        void onSessionStart(long nowMs);
+
+        void onCounters(long nowMs, long rxBytes, long txBytes);
+    }
+
+    private final Backend backend;
+    private final TunnelStatsEngine engine;
+    private final ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> sampling;
+    private volatile CounterListener counterListener;
+
+    public TunnelStatsSampler(Backend backend, TunnelStatsEngine engine, ScheduledExecutorService scheduler) {
+        this.backend = backend;
+        this.engine = engine;
+        this.scheduler = scheduler;
+    }
+
+    public void setCounterListener(CounterListener listener) {
+        counterListener = listener;
+    }
+
+    public synchronized void start(Tunnel tunnel) {
+        stop();
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        engine.startSession(now);
+        CounterListener listener = counterListener;
+        if (listener != null) {
+            listener.onSessionStart(now);
+        }
+        sampling = scheduler.scheduleAtFixedRate(() -> sample(tunnel),
+            0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+        }
+        engine.endSession();
+    }
+
+    private void sample(Tunnel tunnel) {
+        try {
+            Statistics stats = backend.getStatistics(tunnel);
+            long now = System.currentTimeMillis();
+            engine.record(now, stats.totalRx(), stats.totalTx());
+            long latestHandshake = 0;
+            for (Key key : stats.peers()) {
+                Statistics.PeerStats peer = stats.peer(key);
+                if (peer != null) {
+                    latestHandshake = Math.max(latestHandshake, peer.latestHandshakeEpochMillis());
+                }
+            }
+            engine.recordHandshake(latestHandshake);
+            CounterListener listener = counterListener;
+            if (listener != null) {
+                listener.onCounters(now, stats.totalRx(), stats.totalTx());
+            }
+        } catch (Exception e) {
+            TraceBuffer.getInstance().record(TraceEvent.STATS_FAILED);
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Failed to sample tunnel statistics: " + e.getMessage());
+            }
+        }
+    }
+}
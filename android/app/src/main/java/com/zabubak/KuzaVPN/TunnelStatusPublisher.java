@@ -0,0 +1,258 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.LifecycleEventListener;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.common.LifecycleState;
+
+/**
+ * Pushes tunnel status and bandwidth stats to JS so the UI does not poll the bridge
+ * Status changes go out as TunnelStateChannel publishes them. Stats are read from
+ * TunnelStatsEngine at the subscriber's interval and carry only the fields that changed
+ * since the previous event. Nothing is emitted, and no timer runs, while there is no
+ * subscriber, no JS listener on the module, or the app is in the background
+ */
+public class TunnelStatusPublisher implements TunnelStateChannel.Listener, LifecycleEventListener {
+    static final String EVENT_STATUS = "KuzaVpnStatus";
+    static final String EVENT_STATS = "KuzaVpnStats";
+
+    // The sampler refreshes the engine once a second; polling it faster finds nothing new
+    private static final long MIN_INTERVAL_MS = TunnelStatsSampler.SAMPLE_INTERVAL_MS;
+    private static final long MAX_INTERVAL_MS = 60_000;
+
+    private static final String[] STAT_FIELDS = {
+        "bytesSent",
+        "bytesReceived",
+        "totalBytes",
+        "rxBytesPerSecond",
+        "txBytesPerSecond",
+        "rxBytesPerSecondSmoothed",
+        "txBytesPerSecondSmoothed",
+        "sessionStartedAt"
+    };
+
+    /**
+     * Delivers an event to JS; KuzaVpnModule routes it through RCTDeviceEventEmitter
+     */
+    public interface Emitter {
+        void emit(String eventName, WritableMap payload);
+    }
+
+    private final ReactApplicationContext reactContext;
+    private final Emitter emitter;
+    private final TunnelStatsEngine engine = TunnelStatsEngine.getInstance();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "KuzaVPN-status");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private boolean subscribed;
+    private long intervalMs = MIN_INTERVAL_MS;
+    private int jsListeners;
+    private boolean foreground;
+    private ScheduledFuture<?> ticking;
+
+    // Last values sent, so each stats event only carries what changed; reset for a full snapshot
+    private final double[] sentStats = new double[STAT_FIELDS.length];
+    private boolean sentActive;
+    private boolean statsSent;
+
+    public TunnelStatusPublisher(ReactApplicationContext reactContext, Emitter emitter) {
+        this.reactContext = reactContext;
+        this.emitter = emitter;
+        this.foreground = reactContext.getLifecycleState() == LifecycleState.RESUMED;
+        reactContext.addLifecycleEventListener(this);
+        TunnelStateChannel.addListener(this);
+    }
+
+    /**
+     * Start pushing to JS, or change the stats interval of the running subscription
+     * A full status and stats snapshot is emitted right away
+     */
+    public synchronized void subscribe(long requestedIntervalMs) {
+        subscribed = true;
+        intervalMs = Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, requestedIntervalMs));
+        restart();
+    }
+
+    public synchronized void unsubscribe() {
+        subscribed = false;
+        stopTicking();
+    }
+
+    /**
+     * Mirror the module's addListener/removeListeners calls; emitting stops at zero
+     */
+    public synchronized void onJsListenersChanged(int delta) {
+        int before = jsListeners;
+        jsListeners = Math.max(0, jsListeners + delta);
+        if (jsListeners == 0) {
+            stopTicking();
+        } else if (before == 0) {
+            restart();
+        }
+    }
+
+    public synchronized void release() {
+        unsubscribe();
+        TunnelStateChannel.removeListener(this);
+        reactContext.removeLifecycleEventListener(this);
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public synchronized void onTunnelStateChanged(TunnelState state, String detail) {
+        if (!isEmitting()) {
+            return;
+        }
+        emitter.emit(EVENT_STATUS, statusToMap(state, detail));
+        if (isLive(state)) {
+            if (ticking == null) {
+                startTicking();
+            }
+        } else {
+            stopTicking();
+            // The final counters of a session that just ended, read off the publishing thread
+            scheduleStatsFlush();
+        }
+    }
+
+    @Override
+    public synchronized void onHostResume() {
+        foreground = true;
+        // Changes made while backgrounded were not sent; start over from a full snapshot
+        restart();
+    }
+
+    @Override
+    public synchronized void onHostPause() {
+        foreground = false;
+        stopTicking();
+    }
+
+    @Override
+    public synchronized void onHostDestroy() {
+        onHostPause();
+    }
+
+    private boolean isEmitting() {
+        return subscribed && foreground && jsListeners > 0 && !scheduler.isShutdown();
+    }
+
+    // Only a tunnel carrying traffic moves the counters
+    private static boolean isLive(TunnelState state) {
+        return state == TunnelState.UP || state == TunnelState.HANDSHAKING;
+    }
+
+    private void restart() {
+        stopTicking();
+        if (!isEmitting()) {
+            return;
+        }
+        statsSent = false;
+        TunnelState state = TunnelStateChannel.getState();
+        emitter.emit(EVENT_STATUS, statusToMap(state, null));
+        if (isLive(state)) {
+            startTicking();
+        } else {
+            scheduleStatsFlush();
+        }
+    }
+
+    private void startTicking() {
+        ticking = scheduler.scheduleWithFixedDelay(this::emitStats, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopTicking() {
+        if (ticking != null) {
+            ticking.cancel(false);
+            ticking = null;
+        }
+    }
+
+    private void scheduleStatsFlush() {
+        try {
+            scheduler.execute(this::emitStats);
+        } catch (RejectedExecutionException e) {
+            // Released
+        }
+    }
+
+    private synchronized void emitStats() {
+        if (!isEmitting()) {
+            return;
+        }
+        long bytesSent = engine.getSessionTxBytes();
+        long bytesReceived = engine.getSessionRxBytes();
+        double[] values = {
+            bytesSent,
+            bytesReceived,
+            bytesSent + bytesReceived,
+            engine.getRxRate(),
+            engine.getTxRate(),
+            engine.getSmoothedRxRate(),
+            engine.getSmoothedTxRate(),
+            engine.getSessionStartMs()
+        };
+        boolean active = engine.isActive();
+
+        WritableMap changes = Arguments.createMap();
+        boolean changed = false;
+        for (int i = 0; i < values.length; i++) {
+            if (!statsSent || values[i] != sentStats[i]) {
+                changes.putDouble(STAT_FIELDS[i], values[i]);
+                sentStats[i] = values[i];
+                changed = true;
+            }
+        }
+        if (!statsSent || active != sentActive) {
+            changes.putBoolean("isActive", active);
+            sentActive = active;
+            changed = true;
+        }
+        if (!changed) {
+            return;
+        }
+        long lastSample = engine.getLastSampleMs();
+        changes.putString("lastUpdated", String.valueOf(lastSample > 0 ? lastSample : System.currentTimeMillis()));
+        statsSent = true;
+        emitter.emit(EVENT_STATS, changes);
+    }
+
+    /**
+     * { status: "connected" | "connecting" | "disconnected", state, detail? }
+     * A quota pause keeps the interface up, so it reports as connected with state "paused"
+     */
+    static WritableMap statusToMap(TunnelState state, String detail) {
+        WritableMap map = Arguments.createMap();
+        String status;
+        switch (state) {
+            case UP:
+            case PAUSED:
+                status = "connected";
+                break;
+            case ESTABLISHING:
+            case HANDSHAKING:
+                status = "connecting";
+                break;
+            default:
+                status = "disconnected";
+                break;
+        }
+        map.putString("status", status);
+        map.putString("state", state.name().toLowerCase(Locale.ROOT));
+        if (detail != null) {
+            map.putString("detail", detail);
+        }
+        return map;
+    }
+}
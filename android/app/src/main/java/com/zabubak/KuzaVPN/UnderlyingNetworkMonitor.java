@@ -0,0 +1,187 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Follows the physical network the tunnel should ride on (never a VPN)
+ * On Android 12+ the system picks it via a best-matching callback; before that the
+ * monitor keeps every non-VPN internet network and prefers validated Wi-Fi or
+ * Ethernet over cellular, which is what the system's default network does
+ */
+public final class UnderlyingNetworkMonitor {
+    private static final String TAG = "UnderlyingNetworkMonitor";
+
+    /**
+     * Called on the main thread whenever the chosen network changes
+     * @param network the new underlying network, or null when there is none
+     */
+    public interface Listener {
+        void onUnderlyingNetworkChanged(Network network);
+    }
+
+    private final ConnectivityManager connectivityManager;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final boolean systemChoosesBest = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S;
+    // Candidates and their latest capabilities, in the order they appeared
+    private final Map<Network, NetworkCapabilities> networks = new LinkedHashMap<>();
+    private Network current;
+    private boolean registered;
+
+    private final ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(Network network) {
+            update(network, null, false);
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            update(network, capabilities, false);
+        }
+
+        @Override
+        public void onLost(Network network) {
+            update(network, null, true);
+        }
+    };
+
+    public UnderlyingNetworkMonitor(Context context, Listener listener) {
+        this.connectivityManager = context.getSystemService(ConnectivityManager.class);
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (registered || connectivityManager == null) {
+            return;
+        }
+        NetworkRequest request = new NetworkRequest.Builder()
+            .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+            .addCapability(NetworkCapabilities.NET_CAPABILITY_NOT_VPN)
+            .build();
+        try {
+            if (systemChoosesBest) {
+                connectivityManager.registerBestMatchingNetworkCallback(request, callback, handler);
+            } else {
+                connectivityManager.registerNetworkCallback(request, callback, handler);
+            }
+            registered = true;
+        } catch (RuntimeException e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Cannot watch networks: " + e.getMessage());
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        if (!registered) {
+            return;
+        }
+        try {
+            connectivityManager.unregisterNetworkCallback(callback);
+        } catch (RuntimeException e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Failed to stop watching networks: " + e.getMessage());
+            }
+        }
+        registered = false;
+        networks.clear();
+        current = null;
+    }
+
+    /**
+     * The network the tunnel should use right now, or null
+     */
+    public synchronized Network getCurrent() {
+        return current;
+    }
+
+    private void update(Network network, NetworkCapabilities capabilities, boolean lost) {
+        Network chosen;
+        String description;
+        synchronized (this) {
+            if (!registered) {
+                return;
+            }
+            if (systemChoosesBest) {
+                // Every callback is about the best network; onLost means there is none
+                if (lost) {
+                    networks.clear();
+                } else if (!networks.containsKey(network) || capabilities != null) {
+                    networks.clear();
+                    networks.put(network, capabilities);
+                }
+            } else if (lost) {
+                networks.remove(network);
+            } else if (capabilities != null || !networks.containsKey(network)) {
+                networks.put(network, capabilities);
+            }
+
+            chosen = pickBest();
+            if (chosen == null ? current == null : chosen.equals(current)) {
+                return;
+            }
+            current = chosen;
+            description = chosen != null ? describe(chosen) : "none";
+        }
+        if (KuzaLog.isLoggable(Log.DEBUG)) {
+            Log.d(TAG, "Underlying network: " + description);
+        }
+        listener.onUnderlyingNetworkChanged(chosen);
+    }
+
+    /**
+     * Validated beats unvalidated; then Ethernet, Wi-Fi, cellular; then whichever came first
+     */
+    private Network pickBest() {
+        Network best = null;
+        int bestScore = -1;
+        for (Map.Entry<Network, NetworkCapabilities> entry : networks.entrySet()) {
+            int score = score(entry.getValue());
+            if (score > bestScore) {
+                best = entry.getKey();
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private static int score(NetworkCapabilities capabilities) {
+        if (capabilities == null) {
+            return 0;
+        }
+        int score = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED) ? 10 : 0;
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            score += 3;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            score += 2;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            score += 1;
+        }
+        return score;
+    }
+
+    private String describe(Network network) {
+        NetworkCapabilities capabilities = networks.get(network);
+        if (capabilities == null) {
+            return network.toString();
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            return "Wi-Fi " + network;
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            return "cellular " + network;
+        }
+        return network.toString();
+    }
+}
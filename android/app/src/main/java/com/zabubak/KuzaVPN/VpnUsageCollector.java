@@ -0,0 +1,183 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.app.usage.NetworkStats;
+import android.app.usage.NetworkStatsManager;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Periodically reads per-UID usage from NetworkStatsManager while the tunnel is
+ * up and appends each routed app's deltas to VpnUsageStore
+ * Android attributes tunnelled traffic to the originating app on the underlying
+ * Wi-Fi/mobile network, so the usage of routed apps during a session is their
+ * VPN usage. Reading other apps' stats needs the PACKAGE_USAGE_STATS grant;
+ * without it the collector logs once and records nothing
+ */
+public class VpnUsageCollector {
+    private static final String TAG = "VpnUsageCollector";
+    private static final long COLLECT_INTERVAL_MS = 60_000;
+    private static final int[] NETWORK_TYPES = {ConnectivityManager.TYPE_WIFI, ConnectivityManager.TYPE_MOBILE};
+
+    private final Context context;
+    private final ScheduledExecutorService scheduler;
+    // Everything below is only touched on the scheduler thread
+    private final Map<Integer, long[]> lastTotals = new HashMap<>();
+    // Null when nothing is to be recorded
+    private Set<Integer> routedUids;
+    // No app selection: every UID is routed, and routedUids is empty
+    private boolean allApps;
+    private long sessionStartMs;
+    private boolean baselineTaken;
+    private ScheduledFuture<?> collecting;
+
+    public VpnUsageCollector(Context context, ScheduledExecutorService scheduler) {
+        this.context = context.getApplicationContext();
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Start a collection session for the apps routed through the tunnel
+     * @param routedPackages selected apps; empty means every app
+     */
+    public synchronized void start(Collection<String> routedPackages) {
+        stop();
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        final Set<String> packages = new HashSet<>(routedPackages);
+        scheduler.execute(() -> {
+            sessionStartMs = System.currentTimeMillis();
+            allApps = packages.isEmpty();
+            routedUids = resolveUids(packages);
+            if (!allApps && routedUids.isEmpty()) {
+                // Selected apps that are all gone must not fall back to counting every app
+                KuzaLog.w(TAG, "No selected app is installed - recording no usage this session");
+                routedUids = null;
+            }
+            lastTotals.clear();
+            baselineTaken = false;
+        });
+        collecting = scheduler.scheduleWithFixedDelay(this::collect, 0, COLLECT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * End the session, recording what the routed apps used since the last collection
+     */
+    public synchronized void stop() {
+        if (collecting == null) {
+            return;
+        }
+        collecting.cancel(false);
+        collecting = null;
+        if (!scheduler.isShutdown()) {
+            scheduler.execute(() -> {
+                collect();
+                routedUids = null;
+            });
+        }
+    }
+
+    private void collect() {
+        if (routedUids == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<Integer, long[]> totals = readTotals(sessionStartMs, now);
+        if (totals == null) {
+            return;
+        }
+
+        try {
+            VpnUsageStore store = VpnUsageStore.getInstance(context);
+            for (Map.Entry<Integer, long[]> entry : totals.entrySet()) {
+                long[] previous = lastTotals.get(entry.getKey());
+                long[] current = entry.getValue();
+                // The first read covers whole stats buckets that started before the session: baseline only
+                if (baselineTaken) {
+                    long rx = current[0] - (previous != null ? previous[0] : 0);
+                    long tx = current[1] - (previous != null ? previous[1] : 0);
+                    store.record(now, entry.getKey(), rx, tx);
+                }
+                lastTotals.put(entry.getKey(), current);
+            }
+            baselineTaken = true;
+            store.flush();
+        } catch (Exception e) {
+            if (KuzaLog.isLoggable(Log.WARN)) {
+                Log.w(TAG, "Failed to record app usage: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Cumulative rx/tx per routed UID across Wi-Fi and mobile since the session started
+     */
+    private Map<Integer, long[]> readTotals(long fromMs, long toMs) {
+        NetworkStatsManager statsManager =
+            (NetworkStatsManager) context.getSystemService(Context.NETWORK_STATS_SERVICE);
+        if (statsManager == null) {
+            return null;
+        }
+
+        Map<Integer, long[]> totals = new HashMap<>();
+        int ownUid = Process.myUid();
+        NetworkStats.Bucket bucket = new NetworkStats.Bucket();
+        for (int networkType : NETWORK_TYPES) {
+            try (NetworkStats stats = statsManager.querySummary(networkType, null, fromMs, toMs)) {
+                if (stats == null) {
+                    continue;
+                }
+                while (stats.hasNextBucket() && stats.getNextBucket(bucket)) {
+                    int uid = bucket.getUid();
+                    // Our own UID carries the encrypted tunnel itself, not app traffic
+                    if (uid == ownUid || (!allApps && !routedUids.contains(uid))) {
+                        continue;
+                    }
+                    long[] total = totals.get(uid);
+                    if (total == null) {
+                        total = new long[2];
+                        totals.put(uid, total);
+                    }
+                    total[0] += bucket.getRxBytes();
+                    total[1] += bucket.getTxBytes();
+                }
+            } catch (SecurityException e) {
+                KuzaLog.w(TAG, "Usage access not granted - per-app accounting disabled");
+                routedUids = null;
+                return null;
+            } catch (Exception e) {
+                if (KuzaLog.isLoggable(Log.WARN)) {
+                    Log.w(TAG, "Failed to query network stats: " + e.getMessage());
+                }
+            }
+        }
+        return totals;
+    }
+
+    private Set<Integer> resolveUids(Set<String> packages) {
+        Set<Integer> uids = new HashSet<>();
+        PackageManager pm = context.getPackageManager();
+        for (String packageName : packages) {
+            try {
+                uids.add(pm.getApplicationInfo(packageName, 0).uid);
+            } catch (PackageManager.NameNotFoundException e) {
+                if (KuzaLog.isLoggable(Log.WARN)) {
+                    Log.w(TAG, "App not found: " + packageName);
+                }
+            }
+        }
+        return uids;
+    }
+}
@@ -0,0 +1,209 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Per-app VPN traffic history on disk
+ * Usage deltas accumulate in memory for the current hour, then land in an
+ * hourly TimeSeriesFile; finished local days are rolled up into a daily file.
+ * Queries read whole days from the daily file and only the days not rolled up
+ * yet from the hourly one, aggregating per app, so memory stays bounded by the
+ * number of apps no matter how many months of history there are
+ */
+public final class VpnUsageStore {
+    private static final String TAG = "VpnUsageStore";
+    private static final long HOUR_MS = 3_600_000L;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    // Hourly detail is kept a little longer than a month; daily rollups are kept for good
+    private static final int HOURLY_RETENTION_DAYS = 35;
+
+    private static volatile VpnUsageStore instance;
+
+    /**
+     * Bytes one app moved through the tunnel over a query range
+     */
+    public static final class AppUsage {
+        public final int uid;
+        public long rxBytes;
+        public long txBytes;
+
+        AppUsage(int uid) {
+            this.uid = uid;
+        }
+
+        public long getTotalBytes() {
+            return rxBytes + txBytes;
+        }
+    }
+
+    private final TimeSeriesFile hourly;
+    private final TimeSeriesFile daily;
+    private final Map<Integer, long[]> pending = new HashMap<>();
+    private int pendingHour = Integer.MIN_VALUE;
+
+    public VpnUsageStore(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        hourly = new TimeSeriesFile(new File(directory, "usage-hourly.bin"));
+        daily = new TimeSeriesFile(new File(directory, "usage-daily.bin"));
+    }
+
+    public static VpnUsageStore getInstance(Context context) throws IOException {
+        if (instance == null) {
+            synchronized (VpnUsageStore.class) {
+                if (instance == null) {
+                    instance = new VpnUsageStore(new File(context.getFilesDir(), "usage"));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Add traffic an app moved since its previous sample
+     */
+    public synchronized void record(long nowMs, int uid, long rxBytes, long txBytes) throws IOException {
+        if (rxBytes <= 0 && txBytes <= 0) {
+            return;
+        }
+        int hour = (int) (nowMs / HOUR_MS);
+        if (hour != pendingHour) {
+            flushPending();
+            pendingHour = hour;
+            rollUp(nowMs);
+        }
+        long[] usage = pending.get(uid);
+        if (usage == null) {
+            usage = new long[2];
+            pending.put(uid, usage);
+        }
+        usage[0] += Math.max(rxBytes, 0);
+        usage[1] += Math.max(txBytes, 0);
+    }
+
+    /**
+     * Persist the current hour so far; later samples for the same hour append more records
+     */
+    public synchronized void flush() throws IOException {
+        flushPending();
+        hourly.force();
+        daily.force();
+    }
+
+    /**
+     * Apps ranked by total tunnel traffic between two instants, at day granularity
+     * for days already rolled up and hour granularity after that
+     */
+    public synchronized List<AppUsage> topApps(long fromMs, long toMs, int limit) {
+        final Map<Integer, AppUsage> totals = new HashMap<>();
+        TimeSeriesFile.Visitor add = (bucket, uid, rx, tx) -> {
+            AppUsage usage = totals.get(uid);
+            if (usage == null) {
+                usage = new AppUsage(uid);
+                totals.put(uid, usage);
+            }
+            usage.rxBytes += rx;
+            usage.txBytes += tx;
+        };
+
+        int lastRolledDay = daily.lastBucket();
+        daily.scan(localDay(fromMs), Math.min(localDay(toMs), lastRolledDay) + 1, add);
+
+        // Hours of days that have not been rolled up yet
+        int fromHour = (int) (fromMs / HOUR_MS);
+        if (lastRolledDay != Integer.MIN_VALUE) {
+            fromHour = Math.max(fromHour, (int) (localDayStartMs(lastRolledDay + 1) / HOUR_MS));
+        }
+        int toHour = (int) (toMs / HOUR_MS) + 1;
+        hourly.scan(fromHour, toHour, add);
+        if (pendingHour >= fromHour && pendingHour < toHour) {
+            for (Map.Entry<Integer, long[]> entry : pending.entrySet()) {
+                add.visit(pendingHour, entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+            }
+        }
+
+        List<AppUsage> ranked = new ArrayList<>(totals.values());
+        Collections.sort(ranked, (a, b) -> Long.compare(b.getTotalBytes(), a.getTotalBytes()));
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+
+    private void flushPending() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Integer, long[]> entry : pending.entrySet()) {
+            hourly.append(pendingHour, entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Roll every finished local day still only in the hourly file up into the daily file
+     */
+    private void rollUp(long nowMs) throws IOException {
+        final int today = localDay(nowMs);
+        int lastRolledDay = daily.lastBucket();
+        int fromHour = lastRolledDay == Integer.MIN_VALUE
+            ? Integer.MIN_VALUE
+            : (int) (localDayStartMs(lastRolledDay + 1) / HOUR_MS);
+        int toHour = (int) (localDayStartMs(today) / HOUR_MS);
+        if (fromHour >= toHour) {
+            return;
+        }
+
+        // Hourly records are in time order, so one day is aggregated at a time
+        final Map<Integer, long[]> dayTotals = new HashMap<>();
+        final int[] currentDay = {Integer.MIN_VALUE};
+        final List<long[]> rollups = new ArrayList<>();
+        hourly.scan(fromHour, toHour, (hour, uid, rx, tx) -> {
+            int day = localDay(hour * HOUR_MS);
+            if (day != currentDay[0]) {
+                drain(currentDay[0], dayTotals, rollups);
+                currentDay[0] = day;
+            }
+            long[] usage = dayTotals.get(uid);
+            if (usage == null) {
+                usage = new long[2];
+                dayTotals.put(uid, usage);
+            }
+            usage[0] += rx;
+            usage[1] += tx;
+        });
+        drain(currentDay[0], dayTotals, rollups);
+
+        for (long[] rollup : rollups) {
+            daily.append((int) rollup[0], (int) rollup[1], rollup[2], rollup[3]);
+        }
+        hourly.retainFrom((int) (localDayStartMs(today - HOURLY_RETENTION_DAYS) / HOUR_MS));
+        if (KuzaLog.isLoggable(Log.DEBUG)) {
+            Log.d(TAG, "Rolled up " + rollups.size() + " daily app records");
+        }
+    }
+
+    private static void drain(int day, Map<Integer, long[]> dayTotals, List<long[]> rollups) {
+        for (Map.Entry<Integer, long[]> entry : dayTotals.entrySet()) {
+            rollups.add(new long[] {day, entry.getKey(), entry.getValue()[0], entry.getValue()[1]});
+        }
+        dayTotals.clear();
+    }
+
+    private static int localDay(long ms) {
+        return (int) Math.floorDiv(ms + TimeZone.getDefault().getOffset(ms), DAY_MS);
+    }
+
+    private static long localDayStartMs(int day) {
+        long utcStart = day * DAY_MS;
+        return utcStart - TimeZone.getDefault().getOffset(utcStart);
+    }
+}
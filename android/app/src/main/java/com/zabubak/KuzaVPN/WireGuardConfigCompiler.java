@@ -0,0 +1,184 @@
+package com.zabubak.KuzaVPN;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wireguard.config.BadConfigException;
+import com.wireguard.config.Config;
+import com.wireguard.config.InetEndpoint;
+import com.wireguard.config.Interface;
+import com.wireguard.config.Peer;
+
+/**
+ * Turns the tunnel config handed over by React Native into a WireGuard Config
+ * TunnelSpec parses the wg-quick or JSON source and applies route exclusions; this
+ * class decodes keys and validates through WireGuard's builders. Configs are
+ * immutable, so compiled ones are cached under a SHA-256 of their source and a
+ * reconnect to a known server skips parsing, key decoding and builder validation
+ */
+public final class WireGuardConfigCompiler {
+    private static final int CACHE_SIZE = 16;
+
+    private static final WireGuardConfigCompiler INSTANCE = new WireGuardConfigCompiler();
+
+    private final Map<String, Config> cache = new LinkedHashMap<String, Config>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Config> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Process-wide compiler, so the cache outlives a single service instance
+     */
+    public static WireGuardConfigCompiler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param source wg-quick text or the JSON config form
+     * @throws IllegalArgumentException if the config cannot be parsed or is invalid
+     */
+    public Config compile(String source) {
+        if (source == null || source.trim().isEmpty()) {
+            throw new IllegalArgumentException("VPN configuration is null or empty");
+        }
+
+        String key = contentHash(source);
+        synchronized (cache) {
+            Config cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Config config = compileUncached(source);
+        synchronized (cache) {
+            cache.put(key, config);
+        }
+        return config;
+    }
+
+    /**
+     * Parse and validate the source; callers that need a fresh Config instance
+     * (forced re-handshakes) get one from rewrite instead
+     */
+    private Config compileUncached(String source) {
+        TunnelSpec spec = TunnelSpec.parse(source);
+        try {
+            return toConfig(spec);
+        } catch (BadConfigException e) {
+            throw new IllegalArgumentException("Invalid WireGuard config: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Build the WireGuard Config, decoding keys and validating every field
+     */
+    static Config toConfig(TunnelSpec spec) throws BadConfigException {
+        Interface.Builder interfaceBuilder = new Interface.Builder()
+            .parsePrivateKey(spec.privateKey)
+            .includeApplications(spec.includedApplications)
+            .excludeApplications(spec.excludedApplications);
+        if (!spec.addresses.isEmpty()) {
+            interfaceBuilder.parseAddresses(String.join(", ", spec.addresses));
+        }
+        if (!spec.dnsServers.isEmpty()) {
+            interfaceBuilder.parseDnsServers(String.join(", ", spec.dnsServers));
+        }
+        if (spec.mtu > 0) {
+            interfaceBuilder.setMtu(spec.mtu);
+        }
+        if (spec.listenPort > 0) {
+            interfaceBuilder.setListenPort(spec.listenPort);
+        }
+
+        Config.Builder configBuilder = new Config.Builder().setInterface(interfaceBuilder.build());
+        for (TunnelSpec.Peer peer : spec.peers) {
+            Peer.Builder peerBuilder = new Peer.Builder().parsePublicKey(peer.publicKey);
+            if (!peer.allowedIps.isEmpty()) {
+                peerBuilder.parseAllowedIPs(String.join(", ", peer.allowedIps));
+            }
+            if (peer.endpoint != null) {
+                peerBuilder.parseEndpoint(peer.endpoint);
+            }
+            if (peer.persistentKeepalive > 0) {
+                peerBuilder.setPersistentKeepalive(peer.persistentKeepalive);
+            }
+            if (peer.presharedKey != null) {
+                peerBuilder.parsePreSharedKey(peer.presharedKey);
+            }
+            configBuilder.addPeer(peerBuilder.build());
+        }
+        return configBuilder.build();
+    }
+
+    /**
+     * Copy of a config with the interface MTU set, peer endpoints replaced and keepalives retuned
+     * Always a new Config instance, even when nothing changes
+     * @param keepalive persistent keepalive for every peer that has one, or 0 to keep their own
+     * @param endpoints one entry per peer, in order; null keeps the peer's own endpoint
+     */
+    public static Config rewrite(Config config, int mtu, int keepalive, List<InetEndpoint> endpoints)
+            throws BadConfigException {
+        Interface source = config.getInterface();
+        Interface.Builder interfaceBuilder = new Interface.Builder()
+            .setKeyPair(source.getKeyPair())
+            .addAddresses(source.getAddresses())
+            .addDnsServers(source.getDnsServers())
+            .addDnsSearchDomains(source.getDnsSearchDomains())
+            .includeApplications(source.getIncludedApplications())
+            .excludeApplications(source.getExcludedApplications())
+            .setMtu(mtu);
+        if (source.getListenPort().isPresent()) {
+            interfaceBuilder.setListenPort(source.getListenPort().get());
+        }
+
+        Config.Builder configBuilder = new Config.Builder().setInterface(interfaceBuilder.build());
+        List<Peer> peers = config.getPeers();
+        for (int i = 0; i < peers.size(); i++) {
+            Peer peer = peers.get(i);
+            InetEndpoint endpoint = i < endpoints.size() && endpoints.get(i) != null
+                ? endpoints.get(i) : peer.getEndpoint().orElse(null);
+            Peer.Builder peerBuilder = copyPeer(peer, endpoint);
+            if (keepalive > 0 && peer.getPersistentKeepalive().isPresent()) {
+                peerBuilder.setPersistentKeepalive(keepalive);
+            }
+            configBuilder.addPeer(peerBuilder.build());
+        }
+        return configBuilder.build();
+    }
+
+    private static Peer.Builder copyPeer(Peer peer, InetEndpoint endpoint) throws BadConfigException {
+        Peer.Builder peerBuilder = new Peer.Builder()
+            .setPublicKey(peer.getPublicKey())
+            .addAllowedIps(peer.getAllowedIps());
+        if (endpoint != null) {
+            peerBuilder.setEndpoint(endpoint);
+        }
+        if (peer.getPersistentKeepalive().isPresent()) {
+            peerBuilder.setPersistentKeepalive(peer.getPersistentKeepalive().get());
+        }
+        if (peer.getPreSharedKey().isPresent()) {
+            peerBuilder.setPreSharedKey(peer.getPreSharedKey().get());
+        }
+        return peerBuilder;
+    }
+
+    private static String contentHash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            // SHA-256 is always available; fall back to the text itself rather than fail a connect
+            return source;
+        }
+    }
+}
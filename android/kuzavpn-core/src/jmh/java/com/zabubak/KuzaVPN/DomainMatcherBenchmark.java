@@ -0,0 +1,97 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Domain rule matching against large rule lists, next to the suffix scan it replaces
+ * Hosts alternate between names under a rule and names under no rule, with three to
+ * five labels; lookups should stay flat as the rule count grows while the scan does not
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DomainMatcherBenchmark {
+    private static final int HOSTS = 1024;
+    private static final String[] TLDS = {"com", "net", "org", "io", "co.uk", "tv"};
+
+    @Param({"1000", "10000", "100000"})
+    public int rules;
+
+    private List<String> ruleList;
+    private DomainMatcher matcher;
+    private String[] hosts;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // Fixed seed, so every run matches against the same rules
+        Random random = new Random(42);
+        ruleList = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            String domain = word(random) + i + "." + TLDS[random.nextInt(TLDS.length)];
+            ruleList.add(i % 3 == 0 ? "*." + domain : domain);
+        }
+        matcher = DomainMatcher.compile(ruleList);
+
+        hosts = new String[HOSTS];
+        for (int i = 0; i < HOSTS; i++) {
+            String rule = ruleList.get(random.nextInt(rules));
+            String domain = i % 2 == 0
+                ? (rule.startsWith("*.") ? rule.substring(2) : rule)
+                : word(random) + "-unlisted." + TLDS[random.nextInt(TLDS.length)];
+            hosts[i] = random.nextBoolean() ? "cdn-" + word(random) + "." + domain : "www." + domain;
+        }
+    }
+
+    @Benchmark
+    public int match() {
+        next = (next + 1) & (HOSTS - 1);
+        return matcher.match(hosts[next]);
+    }
+
+    @Benchmark
+    public int suffixScan() {
+        next = (next + 1) & (HOSTS - 1);
+        String host = hosts[next];
+        for (int i = 0; i < ruleList.size(); i++) {
+            String rule = ruleList.get(i);
+            String domain = rule.startsWith("*.") ? rule.substring(1) : rule;
+            if (host.equals(domain) || host.endsWith(domain.startsWith(".") ? domain : "." + domain)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public DomainMatcher compile() {
+        return DomainMatcher.compile(ruleList);
+    }
+
+    private static String word(Random random) {
+        char[] letters = new char[4 + random.nextInt(6)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+}
@@ -0,0 +1,117 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Endpoint cache lookups on the connect path, storing answers, and reading raw DNS responses
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndpointCacheBenchmark {
+    private static final int HOSTS = 64;
+
+    private EndpointCache cache;
+    private String[] hosts;
+    private List<InetAddress> answer;
+    private byte[] dnsResponse;
+    private int next;
+
+    @Setup
+    public void setUp() throws UnknownHostException {
+        // Persisting is the resolver's job; keep the benchmark off SharedPreferences' costs
+        cache = new EndpointCache(null);
+        hosts = new String[HOSTS];
+        answer = Arrays.asList(
+            InetAddress.getByName("2001:db8::10"),
+            InetAddress.getByName("198.51.100.10"),
+            InetAddress.getByName("2001:db8::11"),
+            InetAddress.getByName("198.51.100.11"));
+        for (int i = 0; i < HOSTS; i++) {
+            hosts[i] = "node" + i + ".vpn.example.com";
+            cache.put(hosts[i], answer, 300_000, 0);
+        }
+        cache.markGood(hosts[0], answer.get(1));
+        dnsResponse = response("vpn.example.com", 4);
+    }
+
+    @Benchmark
+    public InetAddress preferred() {
+        next = (next + 1) % HOSTS;
+        return cache.preferred(hosts[next], 60_000);
+    }
+
+    @Benchmark
+    public InetAddress put() {
+        next = (next + 1) % HOSTS;
+        return cache.put(hosts[next], answer, 300_000, 60_000);
+    }
+
+    @Benchmark
+    public String hostOf() {
+        return EndpointCache.hostOf("node7.vpn.example.com:51820");
+    }
+
+    @Benchmark
+    public DnsAnswer parseDnsAnswer() {
+        return DnsAnswer.parse(dnsResponse);
+    }
+
+    /**
+     * A response to an A query for name with a CNAME and then the given number of A records
+     */
+    private static byte[] response(String name, int addresses) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeShort(out, 0x1234);
+        writeShort(out, 0x8180);
+        writeShort(out, 1);
+        writeShort(out, addresses + 1);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        for (String label : name.split("\\.")) {
+            out.write(label.length());
+            out.write(label.getBytes(), 0, label.length());
+        }
+        out.write(0);
+        writeShort(out, DnsAnswer.TYPE_A);
+        writeShort(out, 1);
+
+        List<byte[]> records = new ArrayList<>();
+        // CNAME to "edge" under the question name, via a compression pointer to offset 12
+        records.add(new byte[] {(byte) 0xc0, 12, 0, 5, 0, 1, 0, 0, 0x0e, 0x10, 0, 7,
+            4, 'e', 'd', 'g', 'e', (byte) 0xc0, 12});
+        for (int i = 0; i < addresses; i++) {
+            records.add(new byte[] {(byte) 0xc0, 12, 0, 1, 0, 1, 0, 0, 0x01, 0x2c, 0, 4,
+                (byte) 198, 51, 100, (byte) (10 + i)});
+        }
+        for (byte[] record : records) {
+            out.write(record, 0, record.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+}
@@ -0,0 +1,477 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Tunnel throughput and latency against a userspace WireGuard stand-in (StandInPeer)
+ * Every run starts from the JSON config lib/VPNModule.ts sends and goes through
+ * TunnelSpec.parse, the same path as the service's parseWireGuardConfig; its MTU sizes
+ * the inner packets and its persistent keepalive drives a keepalive timer. For each
+ * MTU x keepalive pair it runs:
+ *
+ *   bulk  one-way transfer with a window of unacknowledged packets; throughput, loss,
+ *         latency under load (from the peer's acks) and CPU per GB
+ *   rr    request/response round trips; requests per second, p50/p99 and CPU per request
+ *
+ * Peer and client share one process on loopback by default. For a network namespace,
+ * run the peer on one side and the client on the other with the same --seed:
+ *
+ *   ./gradlew :kuzavpn-core:loopbackBench
+ *   ./gradlew :kuzavpn-core:loopbackBench -Ploopback.args="--mtu 1280,1420 --baseline base.json"
+ *   ip netns exec peer java ... LoopbackBench --role peer --listen 10.200.0.1:51820
+ *   java ... LoopbackBench --role client --peer 10.200.0.1:51820
+ *
+ * Results are written as JSON (--out). With --baseline, each result is compared
+ * with the one of the same name and the exit code is 1 if any metric regressed by
+ * more than --threshold percent. Per-app routing is enforced by Android's VpnService
+ * per uid, outside anything a JVM can run, so it is not an axis here
+ */
+public final class LoopbackBench {
+    private static final int WINDOW_PACKETS = 512;
+    private static final long STALL_NS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long REPLY_TIMEOUT_MS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String seed = options.getOrDefault("seed", "kuzavpn");
+        String role = options.getOrDefault("role", "all");
+        String clientKey = StandInSession.privateKeyFromSeed(seed, "client");
+        String peerKey = StandInSession.privateKeyFromSeed(seed, "peer");
+
+        if (role.equals("peer")) {
+            StandInSession session = new StandInSession(peerKey, StandInSession.publicKey(clientKey), false);
+            try (StandInPeer peer = new StandInPeer(session, address(options.getOrDefault("listen", "0.0.0.0:51820")))) {
+                System.out.println("Stand-in peer listening on port " + peer.port());
+                peer.run();
+            }
+            return;
+        }
+
+        StandInPeer localPeer = null;
+        String endpoint = options.get("peer");
+        if (role.equals("all")) {
+            StandInSession session = new StandInSession(peerKey, StandInSession.publicKey(clientKey), false);
+            localPeer = new StandInPeer(session, new InetSocketAddress("127.0.0.1", 0)).start();
+            endpoint = "127.0.0.1:" + localPeer.port();
+        } else if (!role.equals("client") || endpoint == null) {
+            throw new IllegalArgumentException("--role all, peer, or client with --peer host:port");
+        }
+
+        List<JSONObject> results = new ArrayList<>();
+        try {
+            for (int mtu : intList(options.getOrDefault("mtu", "1280,1420"))) {
+                for (int keepalive : intList(options.getOrDefault("keepalive", "0,25"))) {
+                    TunnelSpec spec = TunnelSpec.parse(configJson(clientKey, StandInSession.publicKey(peerKey),
+                        endpoint, mtu, keepalive));
+                    try (Client client = new Client(spec)) {
+                        for (String workload : options.getOrDefault("workloads", "bulk,rr").split(",")) {
+                            JSONObject result = workload.trim().equals("bulk")
+                                ? client.bulk(Long.parseLong(options.getOrDefault("duration", "5")) * 1000)
+                                : client.requestResponse(Integer.parseInt(options.getOrDefault("requests", "20000")),
+                                    Integer.parseInt(options.getOrDefault("request", "64")),
+                                    Integer.parseInt(options.getOrDefault("response", "1024")));
+                            result.put("name", result.getString("workload") + "/mtu" + mtu + "/keepalive" + keepalive);
+                            result.put("mtu", spec.mtu);
+                            result.put("keepalive", spec.peers.get(0).persistentKeepalive);
+                            System.out.println(result);
+                            results.add(result);
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (localPeer != null) {
+                localPeer.close();
+            }
+        }
+
+        JSONObject report = new JSONObject();
+        report.put("harness", "loopback");
+        report.put("timestamp", System.currentTimeMillis());
+        report.put("java", System.getProperty("java.version"));
+        report.put("processors", Runtime.getRuntime().availableProcessors());
+        report.put("results", new JSONArray(results));
+        File out = new File(options.getOrDefault("out", "build/reports/loopback/results.json"));
+        if (out.getParentFile() != null) {
+            out.getParentFile().mkdirs();
+        }
+        Files.write(out.toPath(), report.toString(2).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + out.getAbsolutePath());
+
+        String baseline = options.get("baseline");
+        if (baseline != null) {
+            double threshold = Double.parseDouble(options.getOrDefault("threshold", "10"));
+            JSONObject base = new JSONObject(new String(Files.readAllBytes(new File(baseline).toPath()), StandardCharsets.UTF_8));
+            if (compare(base, results, threshold) > 0) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * The single-server form of lib/VPNModule.ts's config, pointed at the stand-in
+     */
+    static String configJson(String privateKey, String publicKey, String endpoint, int mtu, int keepalive) {
+        JSONObject config = new JSONObject();
+        config.put("privateKey", privateKey);
+        config.put("publicKey", publicKey);
+        config.put("serverEndpoint", endpoint);
+        config.put("allowedIPs", new JSONArray(Arrays.asList("0.0.0.0/0", "::/0")));
+        config.put("dns", new JSONArray(Arrays.asList("1.1.1.1", "8.8.8.8")));
+        config.put("mtu", mtu);
+        config.put("persistentKeepalive", keepalive);
+        return config.toString();
+    }
+
+    /**
+     * Print regressions against a baseline report
+     * @return how many metrics regressed by more than threshold percent
+     */
+    static int compare(JSONObject baseline, List<JSONObject> results, double threshold) {
+        Map<String, JSONObject> byName = new HashMap<>();
+        JSONArray baseResults = baseline.getJSONArray("results");
+        for (int i = 0; i < baseResults.length(); i++) {
+            byName.put(baseResults.getJSONObject(i).getString("name"), baseResults.getJSONObject(i));
+        }
+
+        // Metric, and whether higher is better
+        Object[][] metrics = {
+            {"throughputMbps", true},
+            {"requestsPerSecond", true},
+            {"p50Us", false},
+            {"p99Us", false},
+            {"cpuSecondsPerGB", false},
+            {"cpuUsPerRequest", false}
+        };
+        int regressions = 0;
+        for (JSONObject result : results) {
+            JSONObject base = byName.get(result.getString("name"));
+            if (base == null) {
+                continue;
+            }
+            for (Object[] metric : metrics) {
+                String key = (String) metric[0];
+                if (!result.has(key) || !base.has(key) || base.getDouble(key) <= 0) {
+                    continue;
+                }
+                double change = (result.getDouble(key) - base.getDouble(key)) / base.getDouble(key) * 100;
+                boolean worse = (Boolean) metric[1] ? change < -threshold : change > threshold;
+                if (worse) {
+                    regressions++;
+                }
+                System.out.printf("%s %-32s %-18s %12.1f -> %12.1f (%+.1f%%)%n", worse ? "REGRESSED" : "ok       ",
+                    result.getString("name"), key, base.getDouble(key), result.getDouble(key), change);
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * The tunnel end: seals inner packets for the stand-in and times what comes back
+     */
+    static final class Client implements AutoCloseable {
+        private final StandInSession session;
+        private final DatagramSocket socket;
+        private final InetSocketAddress peer;
+        private final int mtu;
+        private final ScheduledExecutorService keepaliveTimer;
+        private final Thread receiver;
+
+        private final byte[] inner = new byte[StandInPeer.MAX_DATAGRAM];
+        private final byte[] sealed = new byte[StandInPeer.MAX_DATAGRAM];
+        private final BlockingQueue<long[]> replies = new LinkedBlockingQueue<>();
+        private final AtomicLong keepalivesSent = new AtomicLong();
+        private volatile long lastSendNanos = System.nanoTime();
+
+        // Bulk acks, written by the receiver thread
+        private volatile long ackedSequence = -1;
+        private long[] ackLatencies = new long[1024];
+        private int ackCount;
+
+        Client(TunnelSpec spec) throws Exception {
+            TunnelSpec.Peer server = spec.peers.get(0);
+            session = new StandInSession(spec.privateKey, server.publicKey, true);
+            peer = address(server.endpoint);
+            mtu = spec.mtu > 0 ? spec.mtu : 1420;
+            socket = new DatagramSocket();
+            socket.setReceiveBufferSize(StandInPeer.SOCKET_BUFFER);
+            socket.setSendBufferSize(StandInPeer.SOCKET_BUFFER);
+
+            receiver = new Thread(this::receive, "loopback-client");
+            receiver.setDaemon(true);
+            receiver.start();
+
+            keepaliveTimer = Executors.newSingleThreadScheduledExecutor();
+            int keepalive = server.persistentKeepalive;
+            if (keepalive > 0) {
+                // Like WireGuard, only when nothing else went out for a whole interval
+                keepaliveTimer.scheduleAtFixedRate(() -> {
+                    if (System.nanoTime() - lastSendNanos >= TimeUnit.SECONDS.toNanos(keepalive)) {
+                        sendKeepalive();
+                    }
+                }, keepalive, keepalive, TimeUnit.SECONDS);
+            }
+        }
+
+        JSONObject bulk(long durationMs) throws Exception {
+            reset();
+            synchronized (this) {
+                ackCount = 0;
+            }
+            ackedSequence = -1;
+            long keepalivesBefore = keepalivesSent.get();
+            long cpuStart = processCpuNanos();
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMs);
+
+            int sequence = 0;
+            int stalls = 0;
+            while (System.nanoTime() < deadline) {
+                long waitStart = System.nanoTime();
+                while (sequence - ackedSequence > WINDOW_PACKETS) {
+                    if (System.nanoTime() - waitStart > STALL_NS) {
+                        // The packet carrying the next ack was lost; count what is in flight as gone
+                        ackedSequence = sequence - 1;
+                        stalls++;
+                        break;
+                    }
+                    LockSupport.parkNanos(20_000);
+                }
+                send(StandInPeer.DATA, mtu, sequence++, System.nanoTime(), 0);
+            }
+
+            long[] totals = exchange(StandInPeer.END, StandInPeer.FINAL);
+            long elapsed = System.nanoTime() - start;
+            long cpu = processCpuNanos() - cpuStart;
+            long deliveredPackets = totals[1];
+            long deliveredBytes = totals[3];
+
+            long[] latencies;
+            synchronized (this) {
+                latencies = Arrays.copyOf(ackLatencies, ackCount);
+            }
+            JSONObject result = new JSONObject();
+            result.put("workload", "bulk");
+            result.put("durationMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+            result.put("packetsSent", sequence);
+            result.put("packetsDelivered", deliveredPackets);
+            result.put("lossRate", sequence > 0 ? 1 - (double) deliveredPackets / sequence : 0);
+            result.put("windowStalls", stalls);
+            result.put("throughputMbps", deliveredBytes * 8 / (elapsed / 1e9) / 1e6);
+            result.put("p50Us", percentile(latencies, 50) / 1_000.0);
+            result.put("p99Us", percentile(latencies, 99) / 1_000.0);
+            result.put("cpuSecondsPerGB", deliveredBytes > 0 ? (cpu / 1e9) / (deliveredBytes / 1e9) : 0);
+            result.put("keepalivesSent", keepalivesSent.get() - keepalivesBefore);
+            return result;
+        }
+
+        JSONObject requestResponse(int requests, int requestSize, int responseSize) throws Exception {
+            int size = Math.max(StandInPeer.INNER_HEADER, Math.min(requestSize, mtu));
+            int warmup = Math.min(1_000, requests / 10);
+            reset();
+            long keepalivesBefore = keepalivesSent.get();
+            long[] latencies = new long[requests];
+            int answered = 0;
+            int lost = 0;
+            long cpuStart = 0;
+            long start = 0;
+
+            for (int i = 0; i < warmup + requests; i++) {
+                if (i == warmup) {
+                    cpuStart = processCpuNanos();
+                    start = System.nanoTime();
+                }
+                long sentAt = System.nanoTime();
+                send(StandInPeer.REQUEST, size, i, sentAt, responseSize);
+                long[] reply = await(StandInPeer.RESPONSE, i);
+                if (reply == null) {
+                    lost += i >= warmup ? 1 : 0;
+                } else if (i >= warmup) {
+                    latencies[answered++] = reply[4] - sentAt;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            long cpu = processCpuNanos() - cpuStart;
+            long[] measured = Arrays.copyOf(latencies, answered);
+            long bytes = (long) answered * (size + responseSize);
+
+            JSONObject result = new JSONObject();
+            result.put("workload", "rr");
+            result.put("requests", requests);
+            result.put("requestBytes", size);
+            result.put("responseBytes", responseSize);
+            result.put("lost", lost);
+            result.put("requestsPerSecond", answered / (elapsed / 1e9));
+            result.put("p50Us", percentile(measured, 50) / 1_000.0);
+            result.put("p99Us", percentile(measured, 99) / 1_000.0);
+            result.put("cpuUsPerRequest", answered > 0 ? cpu / 1_000.0 / answered : 0);
+            result.put("cpuSecondsPerGB", bytes > 0 ? (cpu / 1e9) / (bytes / 1e9) : 0);
+            result.put("keepalivesSent", keepalivesSent.get() - keepalivesBefore);
+            return result;
+        }
+
+        /**
+         * Zero the peer's counters so each run reports its own totals
+         */
+        private void reset() throws Exception {
+            exchange(StandInPeer.RESET, StandInPeer.RESET);
+        }
+
+        /**
+         * Send a control message until its reply comes back
+         * @return the reply as {kind, sequence, nanos, argument, receivedAtNanos}
+         */
+        private long[] exchange(byte kind, byte replyKind) throws Exception {
+            for (int attempt = 0; attempt < 3; attempt++) {
+                send(kind, StandInPeer.INNER_HEADER, -1, System.nanoTime(), 0);
+                long[] reply = await(replyKind, -1);
+                if (reply != null) {
+                    return reply;
+                }
+            }
+            throw new IllegalStateException("Stand-in peer at " + peer + " does not answer");
+        }
+
+        private long[] await(byte kind, int sequence) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + REPLY_TIMEOUT_MS;
+            long remaining;
+            while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+                long[] reply = replies.poll(remaining, TimeUnit.MILLISECONDS);
+                // Replies to control messages carry no sequence of their own worth checking
+                if (reply != null && reply[0] == kind && (sequence < 0 || reply[1] == sequence)) {
+                    return reply;
+                }
+            }
+            return null;
+        }
+
+        private void send(byte kind, int length, int sequence, long nanos, long argument) throws Exception {
+            StandInPeer.writeHeader(ByteBuffer.wrap(inner), kind, length, sequence, nanos, argument);
+            int sealedLength = session.seal(inner, length, sealed);
+            socket.send(new DatagramPacket(sealed, sealedLength, peer));
+            lastSendNanos = System.nanoTime();
+        }
+
+        private void sendKeepalive() {
+            try {
+                byte[] empty = new byte[16];
+                byte[] message = new byte[StandInSession.OVERHEAD];
+                int length = session.seal(empty, 0, message);
+                socket.send(new DatagramPacket(message, length, peer));
+                keepalivesSent.incrementAndGet();
+                lastSendNanos = System.nanoTime();
+            } catch (Exception e) {
+                // The socket is closing
+            }
+        }
+
+        private void receive() {
+            byte[] message = new byte[StandInPeer.MAX_DATAGRAM];
+            byte[] plain = new byte[StandInPeer.MAX_DATAGRAM];
+            DatagramPacket packet = new DatagramPacket(message, message.length);
+            while (!socket.isClosed()) {
+                try {
+                    packet.setLength(message.length);
+                    socket.receive(packet);
+                    long receivedAt = System.nanoTime();
+                    if (session.open(message, packet.getLength(), plain) < StandInPeer.INNER_HEADER) {
+                        continue;
+                    }
+                    ByteBuffer in = ByteBuffer.wrap(plain);
+                    byte kind = in.get(0);
+                    int sequence = in.getInt(5);
+                    long nanos = in.getLong(9);
+                    if (kind == StandInPeer.ACK) {
+                        recordAck(sequence, receivedAt - nanos);
+                    } else {
+                        replies.add(new long[] {kind, sequence, nanos, in.getLong(17), receivedAt});
+                    }
+                } catch (Exception e) {
+                    // Closed; the loop condition ends it
+                }
+            }
+        }
+
+        private synchronized void recordAck(int sequence, long latencyNanos) {
+            if (sequence > ackedSequence) {
+                ackedSequence = sequence;
+            }
+            if (ackCount == ackLatencies.length) {
+                ackLatencies = Arrays.copyOf(ackLatencies, ackCount * 2);
+            }
+            ackLatencies[ackCount++] = latencyNanos;
+        }
+
+        @Override
+        public void close() {
+            keepaliveTimer.shutdownNow();
+            socket.close();
+        }
+    }
+
+    /**
+     * Nearest-rank percentile, the same one the connect and roaming histories report
+     * @param percentile 0-100
+     * @return 0 when there are no values
+     */
+    static long percentile(long[] values, double percentile) {
+        if (values.length == 0) {
+            return 0;
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return BoundedHistory.nearestRank(sorted, sorted.length, percentile);
+    }
+
+    private static long processCpuNanos() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    private static InetSocketAddress address(String hostPort) {
+        String host = EndpointCache.hostOf(hostPort);
+        int port = Integer.parseInt(hostPort.substring(hostPort.lastIndexOf(':') + 1));
+        return new InetSocketAddress(host, port);
+    }
+
+    private static int[] intList(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,73 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Split-tunnel route compilation over a growing list of prefixes: full tunnel minus the
+ * LAN and the list, and the list alone as the tunnel's routes. The list mixes IPv4 and
+ * IPv6 prefixes of varied lengths, so at the larger sizes many nest or overlap and the
+ * merge has real work to do, as with country or ASN block lists
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouteCompilerBenchmark {
+    @Param({"0", "32", "512", "10000", "50000"})
+    public int prefixes;
+
+    private List<String> excluded;
+    private List<String> listed;
+
+    @Setup
+    public void setUp() {
+        // Fixed seed, so every run compiles the same table
+        Random random = new Random(42);
+        listed = new ArrayList<>(prefixes);
+        for (int i = 0; i < prefixes; i++) {
+            if (i % 4 == 3) {
+                listed.add(String.format("2001:db8:%x:%x::/%d", random.nextInt(0x100), random.nextInt(0x10000),
+                    40 + random.nextInt(25)));
+            } else {
+                listed.add((random.nextInt(223) + 1) + "." + random.nextInt(256) + "." + random.nextInt(256)
+                    + ".0/" + (12 + random.nextInt(13)));
+            }
+        }
+        excluded = new ArrayList<>(RouteCompiler.LOCAL_NETWORKS);
+        excluded.addAll(listed);
+    }
+
+    @Benchmark
+    public List<RouteCompiler.Route> excludeList() {
+        return new RouteCompiler()
+            .include("0.0.0.0/0")
+            .include("::/0")
+            .excludeAll(excluded)
+            .compile();
+    }
+
+    @Benchmark
+    public List<RouteCompiler.Route> includeList() {
+        return new RouteCompiler()
+            .includeAll(listed)
+            .excludeAll(RouteCompiler.LOCAL_NETWORKS)
+            .compile();
+    }
+}
@@ -0,0 +1,141 @@
+package com.zabubak.KuzaVPN;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+
+/**
+ * The server end of LoopbackBench: a userspace WireGuard stand-in on a UDP socket
+ * Counts bulk data and acknowledges it every ACK_EVERY packets, answers requests with
+ * a response of the asked-for size, and replies to whichever address wrote last, as
+ * a real peer follows a roaming endpoint. Inner packets start with a small header:
+ * kind (1 byte), length (4), sequence (4), client nanoTime (8), argument (8)
+ */
+final class StandInPeer implements Runnable, AutoCloseable {
+    static final byte DATA = 1;
+    static final byte ACK = 2;
+    static final byte REQUEST = 3;
+    static final byte RESPONSE = 4;
+    static final byte END = 5;
+    static final byte FINAL = 6;
+    static final byte RESET = 7;
+
+    static final int INNER_HEADER = 25;
+    static final int ACK_EVERY = 16;
+    static final int MAX_DATAGRAM = 65_535;
+    // Largest inner packet that still fits one UDP datagram once padded and sealed
+    static final int MAX_INNER = 65_000;
+    static final int SOCKET_BUFFER = 4 * 1024 * 1024;
+
+    private final StandInSession session;
+    private final DatagramSocket socket;
+    private final Thread thread;
+
+    // Only touched on the peer thread
+    private long receivedPackets;
+    private long receivedBytes;
+    private long keepalives;
+
+    StandInPeer(StandInSession session, InetSocketAddress bind) throws SocketException {
+        this.session = session;
+        socket = new DatagramSocket(bind);
+        socket.setReceiveBufferSize(SOCKET_BUFFER);
+        socket.setSendBufferSize(SOCKET_BUFFER);
+        thread = new Thread(this, "stand-in-peer");
+        thread.setDaemon(true);
+    }
+
+    StandInPeer start() {
+        thread.start();
+        return this;
+    }
+
+    int port() {
+        return socket.getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        byte[] message = new byte[MAX_DATAGRAM];
+        byte[] inner = new byte[MAX_DATAGRAM];
+        byte[] reply = new byte[MAX_DATAGRAM];
+        byte[] sealed = new byte[MAX_DATAGRAM];
+        DatagramPacket packet = new DatagramPacket(message, message.length);
+
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(message.length);
+                socket.receive(packet);
+                int length = session.open(message, packet.getLength(), inner);
+                if (length < 0) {
+                    // Not a message of this session
+                    continue;
+                }
+                if (length == 0) {
+                    keepalives++;
+                    continue;
+                }
+                handle(ByteBuffer.wrap(inner, 0, length), packet.getSocketAddress(), reply, sealed);
+            } catch (Exception e) {
+                // A failed reply is a lost packet to the client, which is what it measures
+            }
+        }
+    }
+
+    private void handle(ByteBuffer in, SocketAddress from, byte[] reply, byte[] sealed) throws Exception {
+        byte kind = in.get(0);
+        int length = in.getInt(1);
+        int sequence = in.getInt(5);
+        long sentNanos = in.getLong(9);
+        long argument = in.getLong(17);
+
+        switch (kind) {
+            case DATA:
+                receivedPackets++;
+                receivedBytes += length;
+                if (sequence % ACK_EVERY == ACK_EVERY - 1) {
+                    // Echo the acked packet's timestamp: the client reads latency under load from it
+                    send(reply, sealed, INNER_HEADER, ACK, sequence, sentNanos, receivedBytes, from);
+                }
+                break;
+            case REQUEST:
+                send(reply, sealed, (int) Math.min(MAX_INNER, Math.max(INNER_HEADER, argument)), RESPONSE, sequence, sentNanos, 0, from);
+                break;
+            case END:
+                // Totals in one reply: packets in the sequence, keepalives in the timestamp, bytes in the argument
+                send(reply, sealed, INNER_HEADER, FINAL, (int) receivedPackets, keepalives, receivedBytes, from);
+                break;
+            case RESET:
+                receivedPackets = 0;
+                receivedBytes = 0;
+                keepalives = 0;
+                send(reply, sealed, INNER_HEADER, RESET, sequence, sentNanos, 0, from);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void send(byte[] reply, byte[] sealed, int length, byte kind, int sequence, long nanos, long argument,
+            SocketAddress to) throws Exception {
+        writeHeader(ByteBuffer.wrap(reply), kind, length, sequence, nanos, argument);
+        int sealedLength = session.seal(reply, length, sealed);
+        socket.send(new DatagramPacket(sealed, sealedLength, to));
+    }
+
+    static void writeHeader(ByteBuffer out, byte kind, int length, int sequence, long nanos, long argument) {
+        out.put(0, kind);
+        out.putInt(1, length);
+        out.putInt(5, sequence);
+        out.putLong(9, nanos);
+        out.putLong(17, argument);
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
@@ -0,0 +1,170 @@
+package com.zabubak.KuzaVPN;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.NamedParameterSpec;
+import java.security.spec.XECPrivateKeySpec;
+import java.security.spec.XECPublicKeySpec;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * One side of a stand-in WireGuard session, for LoopbackBench
+ * Packets use WireGuard's transport data framing: type 4, the receiver's index, a
+ * 64-bit counter that is also the ChaCha20-Poly1305 nonce, and a payload padded to
+ * 16 bytes, so per-packet size and crypto cost match the real tunnel. The Noise
+ * handshake is replaced by static X25519 between the two configured keys; session
+ * keys are fixed for a run, which leaves only data-path work to measure
+ */
+final class StandInSession {
+    static final int HEADER_BYTES = 16;
+    static final int TAG_BYTES = 16;
+    static final int OVERHEAD = HEADER_BYTES + TAG_BYTES;
+
+    private static final byte TYPE_DATA = 4;
+    private static final byte[] BASEPOINT = new byte[32];
+
+    static {
+        BASEPOINT[0] = 9;
+    }
+
+    private final Cipher sealer;
+    private final Cipher opener;
+    private final SecretKeySpec sendKey;
+    private final SecretKeySpec receiveKey;
+    private final int remoteIndex;
+    private final byte[] nonce = new byte[12];
+    private final byte[] openNonce = new byte[12];
+    private long sendCounter;
+
+    /**
+     * @param privateKey  this side's WireGuard private key, base64
+     * @param peerPublicKey the other side's public key, base64
+     * @param initiator   true for the client; the two sides derive mirrored keys
+     */
+    StandInSession(String privateKey, String peerPublicKey, boolean initiator) throws GeneralSecurityException {
+        byte[] shared = x25519(decodeKey(privateKey), decodeKey(peerPublicKey));
+        byte[] toResponder = kdf(shared, (byte) 1);
+        byte[] toInitiator = kdf(shared, (byte) 2);
+        sendKey = new SecretKeySpec(initiator ? toResponder : toInitiator, "ChaCha20");
+        receiveKey = new SecretKeySpec(initiator ? toInitiator : toResponder, "ChaCha20");
+        // Fixed receiver indices stand in for the ones the handshake would assign
+        remoteIndex = initiator ? 2 : 1;
+        sealer = Cipher.getInstance("ChaCha20-Poly1305");
+        opener = Cipher.getInstance("ChaCha20-Poly1305");
+    }
+
+    /**
+     * Encrypt an inner packet into a transport data message; an empty one is a keepalive
+     * @return the message length in out, which needs room for length padded to 16 plus OVERHEAD
+     */
+    synchronized int seal(byte[] inner, int length, byte[] out) throws GeneralSecurityException {
+        int padded = (length + 15) & ~15;
+        for (int i = length; i < padded; i++) {
+            inner[i] = 0;
+        }
+        long counter = sendCounter++;
+        out[0] = TYPE_DATA;
+        out[1] = 0;
+        out[2] = 0;
+        out[3] = 0;
+        writeIntLe(out, 4, remoteIndex);
+        writeLongLe(out, 8, counter);
+        writeLongLe(nonce, 4, counter);
+        sealer.init(Cipher.ENCRYPT_MODE, sendKey, new IvParameterSpec(nonce));
+        return HEADER_BYTES + sealer.doFinal(inner, 0, padded, out, HEADER_BYTES);
+    }
+
+    /**
+     * Decrypt a transport data message; only the receiving thread may call this
+     * @return the padded inner length, 0 for a keepalive, or -1 if the message is not ours or fails authentication
+     */
+    int open(byte[] message, int length, byte[] inner) {
+        if (length < OVERHEAD || message[0] != TYPE_DATA) {
+            return -1;
+        }
+        System.arraycopy(message, 8, openNonce, 4, 8);
+        try {
+            opener.init(Cipher.DECRYPT_MODE, receiveKey, new IvParameterSpec(openNonce));
+            return opener.doFinal(message, HEADER_BYTES, length - HEADER_BYTES, inner, 0);
+        } catch (GeneralSecurityException e) {
+            return -1;
+        }
+    }
+
+    long packetsSealed() {
+        return sendCounter;
+    }
+
+    /**
+     * Private key derived from a seed, so split peer and client processes agree without exchanging keys
+     */
+    static String privateKeyFromSeed(String seed, String role) throws GeneralSecurityException {
+        byte[] scalar = MessageDigest.getInstance("SHA-256").digest((seed + "/" + role).getBytes(StandardCharsets.UTF_8));
+        // X25519 clamping, as wg genkey does
+        scalar[0] &= (byte) 248;
+        scalar[31] &= 127;
+        scalar[31] |= 64;
+        return Base64.getEncoder().encodeToString(scalar);
+    }
+
+    static String publicKey(String privateKey) throws GeneralSecurityException {
+        return Base64.getEncoder().encodeToString(x25519(decodeKey(privateKey), BASEPOINT));
+    }
+
+    private static byte[] x25519(byte[] scalar, byte[] u) throws GeneralSecurityException {
+        // Keys are little-endian; the JDK wants the u-coordinate as a number
+        byte[] bigEndian = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            bigEndian[i] = u[31 - i];
+        }
+        bigEndian[0] &= 127;
+
+        KeyFactory factory = KeyFactory.getInstance("XDH");
+        PrivateKey privateKey = factory.generatePrivate(new XECPrivateKeySpec(NamedParameterSpec.X25519, scalar));
+        PublicKey publicKey = factory.generatePublic(
+            new XECPublicKeySpec(NamedParameterSpec.X25519, new BigInteger(1, bigEndian)));
+        KeyAgreement agreement = KeyAgreement.getInstance("XDH");
+        agreement.init(privateKey);
+        agreement.doPhase(publicKey, true);
+        return agreement.generateSecret();
+    }
+
+    private static byte[] kdf(byte[] shared, byte direction) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(shared, "HmacSHA256"));
+        mac.update("kuzavpn loopback".getBytes(StandardCharsets.US_ASCII));
+        mac.update(direction);
+        return mac.doFinal();
+    }
+
+    private static byte[] decodeKey(String base64) {
+        byte[] key = Base64.getDecoder().decode(base64.trim());
+        if (key.length != 32) {
+            throw new IllegalArgumentException("WireGuard keys are 32 bytes");
+        }
+        return key;
+    }
+
+    private static void writeIntLe(byte[] out, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            out[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static void writeLongLe(byte[] out, int offset, long value) {
+        for (int i = 0; i < 8; i++) {
+            out[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+}
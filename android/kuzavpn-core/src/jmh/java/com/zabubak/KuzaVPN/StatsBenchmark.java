@@ -0,0 +1,84 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The stats ring buffers: per-second throughput samples and the connect and roaming histories
+ * record() is on the tunnel thread every second and must stay allocation-free
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatsBenchmark {
+    private TunnelStatsEngine engine;
+    private ConnectTimingHistory connectHistory;
+    private RoamingHistory roamingHistory;
+    private long nowMs;
+    private long rxBytes;
+    private long txBytes;
+
+    @Setup
+    public void setUp() {
+        engine = new TunnelStatsEngine(120, 5_000);
+        engine.startSession(0);
+        for (int i = 0; i < 120; i++) {
+            record();
+        }
+
+        connectHistory = new ConnectTimingHistory(50);
+        roamingHistory = new RoamingHistory(50);
+        for (int i = 0; i < 50; i++) {
+            ConnectTiming timing = new ConnectTiming(i * 60_000L);
+            for (ConnectTiming.Phase phase : ConnectTiming.Phase.values()) {
+                timing.add(phase, (i * 37 + phase.ordinal() * 11) % 400);
+            }
+            timing.countAttempt();
+            if (i % 10 == 9) {
+                timing.failed("Handshake timeout");
+            } else {
+                timing.succeeded();
+            }
+            connectHistory.add(timing);
+            roamingHistory.add(new RoamingReport("wifi/wlan0", "cell/rmnet0", RoamingReport.MODE_REHANDSHAKE,
+                i % 8 != 7, (i * 53) % 900, i * 60_000L));
+        }
+    }
+
+    @Benchmark
+    public long record() {
+        nowMs += 1_000;
+        rxBytes += 1_250_000;
+        txBytes += 125_000;
+        engine.record(nowMs, rxBytes, txBytes);
+        return engine.getSessionRxBytes();
+    }
+
+    @Benchmark
+    public double averageRate() {
+        return engine.averageRxRate(30_000);
+    }
+
+    @Benchmark
+    public long connectPercentile() {
+        return connectHistory.percentile(ConnectTiming.Phase.HANDSHAKE, 90);
+    }
+
+    @Benchmark
+    public long roamingPercentile() {
+        return roamingHistory.percentile(90);
+    }
+}
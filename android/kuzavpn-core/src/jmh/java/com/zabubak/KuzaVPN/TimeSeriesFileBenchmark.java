@@ -0,0 +1,87 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The memory-mapped usage series: appending per-app samples and scanning a month of them
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeSeriesFileBenchmark {
+    // 30 days of hourly buckets for 40 apps
+    private static final int BUCKETS = 30 * 24;
+    private static final int APPS = 40;
+    // Trim the append file back once it holds this many records, so runs stay in a bounded file
+    private static final int APPEND_LIMIT = 1 << 16;
+
+    private File scanPath;
+    private File appendPath;
+    private TimeSeriesFile scanSeries;
+    private TimeSeriesFile appendSeries;
+    private int appendBucket;
+    private long total;
+
+    private final TimeSeriesFile.Visitor visitor = (bucket, key, rxBytes, txBytes) -> total += rxBytes + txBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        scanPath = File.createTempFile("kuzavpn-scan", ".kvts");
+        appendPath = File.createTempFile("kuzavpn-append", ".kvts");
+        scanSeries = new TimeSeriesFile(scanPath);
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            for (int app = 0; app < APPS; app++) {
+                scanSeries.append(bucket, 10_000 + app, 1_000_000L * (app + 1), 100_000L * (app + 1));
+            }
+        }
+        appendSeries = new TimeSeriesFile(appendPath);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        scanSeries.close();
+        appendSeries.close();
+        scanPath.delete();
+        appendPath.delete();
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        appendSeries.append(appendBucket++, 10_001, 1_500, 300);
+        if (appendSeries.size() >= APPEND_LIMIT) {
+            appendSeries.retainFrom(appendSeries.lastBucket());
+        }
+        return appendSeries.size();
+    }
+
+    @Benchmark
+    public long scanLastDay() {
+        total = 0;
+        scanSeries.scan(BUCKETS - 24, BUCKETS, visitor);
+        return total;
+    }
+
+    @Benchmark
+    public long scanMonth() {
+        total = 0;
+        scanSeries.scan(0, BUCKETS, visitor);
+        return total;
+    }
+}
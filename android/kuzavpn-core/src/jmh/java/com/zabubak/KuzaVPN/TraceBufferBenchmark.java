@@ -0,0 +1,46 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Recording into the trace ring, alone and with writers contending for the cursor
+ * Run with -prof gc: record() should show no allocation
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TraceBufferBenchmark {
+    private final TraceBuffer trace = new TraceBuffer(1024);
+    private long value;
+
+    @Benchmark
+    public void record() {
+        trace.record(TraceEvent.PHASE, value++, 3, 0);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        trace.record(TraceEvent.STATS_FAILED);
+    }
+
+    @Benchmark
+    public int dump() {
+        return trace.dump((sequence, event, timeNanos, a, b, c) -> {
+        });
+    }
+}
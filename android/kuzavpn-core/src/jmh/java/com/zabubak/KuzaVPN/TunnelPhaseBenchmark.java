@@ -0,0 +1,62 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The connect state machine walked through a full session: connect, pause, resume, roam, disconnect
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TunnelPhaseBenchmark {
+    private static final TunnelPhase[] SESSION = {
+        TunnelPhase.IDLE,
+        TunnelPhase.ESTABLISHING,
+        TunnelPhase.HANDSHAKING,
+        TunnelPhase.UP,
+        TunnelPhase.PAUSED,
+        TunnelPhase.HANDSHAKING,
+        TunnelPhase.UP,
+        TunnelPhase.HANDSHAKING,
+        TunnelPhase.UP,
+        TunnelPhase.TEARING_DOWN,
+        TunnelPhase.IDLE
+    };
+
+    @Benchmark
+    public int session() {
+        int allowed = 0;
+        for (int i = 1; i < SESSION.length; i++) {
+            if (SESSION[i - 1].canMoveTo(SESSION[i])) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+
+    @Benchmark
+    public int allTransitions() {
+        int allowed = 0;
+        for (TunnelPhase from : TunnelPhase.values()) {
+            for (TunnelPhase to : TunnelPhase.values()) {
+                if (from.canMoveTo(to)) {
+                    allowed++;
+                }
+            }
+        }
+        return allowed;
+    }
+}
@@ -0,0 +1,85 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Config parsing as a connect to a new server pays it, before WireGuard decodes the keys
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TunnelSpecBenchmark {
+    private static final String PRIVATE_KEY = "yAnz5TF+lXXJte14tji3zlMNq+hd2rYUIgJBgB3fBmk=";
+    private static final String PUBLIC_KEY = "xTIBA5rboUvnH4htodjb6e697QjLERt1NAB4mZqp8Dg=";
+
+    private String singleServer;
+    private String excludingLan;
+    private String multiPeer;
+    private String wgQuick;
+
+    @Setup
+    public void setUp() {
+        singleServer = "{\"privateKey\":\"" + PRIVATE_KEY + "\",\"publicKey\":\"" + PUBLIC_KEY + "\","
+            + "\"serverEndpoint\":\"vpn.example.com:51820\",\"address\":[\"10.8.0.2/32\",\"fd00::2/128\"],"
+            + "\"dns\":[\"1.1.1.1\",\"1.0.0.1\"],\"allowedIPs\":\"0.0.0.0/0, ::/0\",\"persistentKeepalive\":25}";
+        excludingLan = singleServer.substring(0, singleServer.length() - 1)
+            + ",\"excludeLan\":true,\"excludedRoutes\":[\"203.0.113.0/24\",\"198.51.100.0/24\"]}";
+
+        StringBuilder peers = new StringBuilder("{\"privateKey\":\"" + PRIVATE_KEY + "\",\"peers\":[");
+        for (int i = 0; i < 8; i++) {
+            if (i > 0) {
+                peers.append(',');
+            }
+            peers.append("{\"publicKey\":\"").append(PUBLIC_KEY).append("\",\"endpoint\":\"198.51.100.")
+                .append(i + 1).append(":51820\",\"allowedIPs\":[\"10.").append(i).append(".0.0/16\"]}");
+        }
+        multiPeer = peers.append("]}").toString();
+
+        wgQuick = "[Interface]\n"
+            + "PrivateKey = " + PRIVATE_KEY + "\n"
+            + "Address = 10.8.0.2/32, fd00::2/128\n"
+            + "DNS = 1.1.1.1, 1.0.0.1\n"
+            + "MTU = 1420\n"
+            + "\n"
+            + "[Peer]\n"
+            + "# Frankfurt\n"
+            + "PublicKey = " + PUBLIC_KEY + "\n"
+            + "AllowedIPs = 0.0.0.0/0, ::/0\n"
+            + "Endpoint = vpn.example.com:51820\n"
+            + "PersistentKeepalive = 25\n";
+    }
+
+    @Benchmark
+    public TunnelSpec parseJson() {
+        return TunnelSpec.parse(singleServer);
+    }
+
+    @Benchmark
+    public TunnelSpec parseJsonExcludingLan() {
+        return TunnelSpec.parse(excludingLan);
+    }
+
+    @Benchmark
+    public TunnelSpec parseJsonMultiPeer() {
+        return TunnelSpec.parse(multiPeer);
+    }
+
+    @Benchmark
+    public TunnelSpec parseWgQuick() {
+        return TunnelSpec.parse(wgQuick);
+    }
+}
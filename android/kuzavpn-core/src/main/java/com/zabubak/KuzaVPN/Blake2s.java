@@ -0,0 +1,165 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * BLAKE2s (RFC 7693), the hash WireGuard's handshake is built on, with the keyed
+ * MAC and the HMAC/HKDF construction the protocol derives its chaining keys with
+ * Neither the JDK nor Android ships it; handshakes are rare, so this favours
+ * clarity over speed
+ */
+final class Blake2s {
+    static final int HASH_SIZE = 32;
+    private static final int BLOCK_SIZE = 64;
+
+    private static final int[] IV = {
+        0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private static final byte[][] SIGMA = {
+        {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15},
+        {14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3},
+        {11, 8, 12, 0, 5, 2, 15, 13, 10, 14, 3, 6, 7, 1, 9, 4},
+        {7, 9, 3, 1, 13, 12, 11, 14, 2, 6, 5, 10, 4, 0, 15, 8},
+        {9, 0, 5, 7, 2, 4, 10, 15, 14, 1, 11, 12, 6, 8, 3, 13},
+        {2, 12, 6, 10, 0, 11, 8, 3, 4, 13, 7, 5, 15, 14, 1, 9},
+        {12, 5, 1, 15, 14, 13, 4, 10, 0, 7, 6, 3, 9, 2, 8, 11},
+        {13, 11, 7, 14, 12, 1, 3, 9, 5, 0, 15, 4, 8, 6, 2, 10},
+        {6, 15, 14, 9, 11, 3, 0, 8, 12, 2, 13, 7, 1, 4, 10, 5},
+        {10, 2, 8, 4, 7, 6, 1, 5, 15, 11, 9, 14, 3, 12, 13, 0}
+    };
+
+    private Blake2s() {
+    }
+
+    /**
+     * HASH(parts...) over the concatenation of parts
+     */
+    static byte[] hash(byte[]... parts) {
+        return digest(HASH_SIZE, null, parts);
+    }
+
+    /**
+     * MAC(key, parts...): keyed BLAKE2s truncated to 16 bytes, as mac1 uses it
+     */
+    static byte[] mac(byte[] key, byte[]... parts) {
+        return digest(16, key, parts);
+    }
+
+    /**
+     * HMAC(key, parts...) with BLAKE2s-256 (RFC 2104)
+     */
+    static byte[] hmac(byte[] key, byte[]... parts) {
+        byte[] padded = new byte[BLOCK_SIZE];
+        byte[] k = key.length > BLOCK_SIZE ? hash(key) : key;
+        System.arraycopy(k, 0, padded, 0, k.length);
+
+        byte[] inner = new byte[BLOCK_SIZE];
+        byte[] outer = new byte[BLOCK_SIZE];
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            inner[i] = (byte) (padded[i] ^ 0x36);
+            outer[i] = (byte) (padded[i] ^ 0x5c);
+        }
+        byte[][] innerParts = new byte[parts.length + 1][];
+        innerParts[0] = inner;
+        System.arraycopy(parts, 0, innerParts, 1, parts.length);
+        return hash(outer, hash(innerParts));
+    }
+
+    /**
+     * KDF_n(key, input): the first n HKDF outputs, as the Noise chaining key is advanced
+     */
+    static byte[][] kdf(byte[] key, byte[] input, int n) {
+        byte[] prk = hmac(key, input);
+        byte[][] out = new byte[n][];
+        byte[] previous = new byte[0];
+        for (int i = 0; i < n; i++) {
+            previous = hmac(prk, previous, new byte[] {(byte) (i + 1)});
+            out[i] = previous;
+        }
+        return out;
+    }
+
+    /**
+     * BLAKE2s with any digest length (1-32) and an optional key (up to 32 bytes), as RFC 7693 defines it
+     */
+    static byte[] digest(int outLength, byte[] key, byte[]... parts) {
+        int[] h = IV.clone();
+        int keyLength = key != null ? key.length : 0;
+        h[0] ^= 0x01010000 ^ (keyLength << 8) ^ outLength;
+
+        int total = 0;
+        for (byte[] part : parts) {
+            total += part.length;
+        }
+        // A key is padded to a block of its own and hashed first
+        byte[] data = new byte[(keyLength > 0 ? BLOCK_SIZE : 0) + total];
+        int offset = 0;
+        if (keyLength > 0) {
+            System.arraycopy(key, 0, data, 0, keyLength);
+            offset = BLOCK_SIZE;
+        }
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, data, offset, part.length);
+            offset += part.length;
+        }
+
+        int[] m = new int[16];
+        int blocks = Math.max((data.length + BLOCK_SIZE - 1) / BLOCK_SIZE, 1);
+        for (int block = 0; block < blocks; block++) {
+            int start = block * BLOCK_SIZE;
+            boolean last = block == blocks - 1;
+            for (int i = 0; i < 16; i++) {
+                int word = 0;
+                for (int b = 0; b < 4; b++) {
+                    int index = start + i * 4 + b;
+                    if (index < data.length) {
+                        word |= (data[index] & 0xff) << (8 * b);
+                    }
+                }
+                m[i] = word;
+            }
+            long counter = last ? data.length : (long) start + BLOCK_SIZE;
+            compress(h, m, counter, last);
+        }
+
+        byte[] out = new byte[outLength];
+        for (int i = 0; i < outLength; i++) {
+            out[i] = (byte) (h[i / 4] >>> (8 * (i % 4)));
+        }
+        return out;
+    }
+
+    private static void compress(int[] h, int[] m, long counter, boolean last) {
+        int[] v = new int[16];
+        System.arraycopy(h, 0, v, 0, 8);
+        System.arraycopy(IV, 0, v, 8, 8);
+        v[12] ^= (int) counter;
+        v[13] ^= (int) (counter >>> 32);
+        if (last) {
+            v[14] = ~v[14];
+        }
+        for (byte[] s : SIGMA) {
+            mix(v, 0, 4, 8, 12, m[s[0]], m[s[1]]);
+            mix(v, 1, 5, 9, 13, m[s[2]], m[s[3]]);
+            mix(v, 2, 6, 10, 14, m[s[4]], m[s[5]]);
+            mix(v, 3, 7, 11, 15, m[s[6]], m[s[7]]);
+            mix(v, 0, 5, 10, 15, m[s[8]], m[s[9]]);
+            mix(v, 1, 6, 11, 12, m[s[10]], m[s[11]]);
+            mix(v, 2, 7, 8, 13, m[s[12]], m[s[13]]);
+            mix(v, 3, 4, 9, 14, m[s[14]], m[s[15]]);
+        }
+        for (int i = 0; i < 8; i++) {
+            h[i] ^= v[i] ^ v[i + 8];
+        }
+    }
+
+    private static void mix(int[] v, int a, int b, int c, int d, int x, int y) {
+        v[a] += v[b] + x;
+        v[d] = Integer.rotateRight(v[d] ^ v[a], 16);
+        v[c] += v[d];
+        v[b] = Integer.rotateRight(v[b] ^ v[c], 12);
+        v[a] += v[b] + y;
+        v[d] = Integer.rotateRight(v[d] ^ v[a], 8);
+        v[c] += v[d];
+        v[b] = Integer.rotateRight(v[b] ^ v[c], 7);
+    }
+}
@@ -0,0 +1,87 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * The last N records of a kind, oldest overwritten first, with nearest-rank percentiles
+ * Backs ConnectTimingHistory and RoamingHistory
+ */
+public final class BoundedHistory<T> {
+    private final Object[] records;
+    private int head;
+    private int count;
+
+    public BoundedHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("History needs at least 1 slot");
+        }
+        this.records = new Object[capacity];
+    }
+
+    public synchronized void add(T record) {
+        records[head] = record;
+        head = (head + 1) % records.length;
+        if (count < records.length) {
+            count++;
+        }
+    }
+
+    /**
+     * @return the most recent record, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T getLast() {
+        if (count == 0) {
+            return null;
+        }
+        return (T) records[(head - 1 + records.length) % records.length];
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized int count(Predicate<T> filter) {
+        int matching = 0;
+        for (int i = 0; i < count; i++) {
+            if (filter.test((T) records[i])) {
+                matching++;
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Nearest-rank percentile of a value over the records that have one
+     * @param value      the record's value, or negative when it has none
+     * @param percentile 0-100
+     * @return the value, or -1 if no record has one
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized long percentile(ToLongFunction<T> value, double percentile) {
+        long[] values = new long[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            long v = value.applyAsLong((T) records[i]);
+            if (v >= 0) {
+                values[n++] = v;
+            }
+        }
+        if (n == 0) {
+            return -1;
+        }
+        Arrays.sort(values, 0, n);
+        return nearestRank(values, n, percentile);
+    }
+
+    /**
+     * Nearest-rank percentile of the first n values, which must be sorted and n > 0
+     */
+    static long nearestRank(long[] sorted, int n, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * n);
+        return sorted[Math.min(Math.max(rank, 1), n) - 1];
+    }
+}
@@ -0,0 +1,135 @@
+package com.zabubak.KuzaVPN;
+
+import java.math.BigInteger;
+
+/**
+ * ChaCha20-Poly1305 sealing (RFC 8439) with WireGuard's 64-bit counter nonce
+ * Android only offers it through JCA from API 28, and the handshake seals two short
+ * fields, so a plain implementation is enough here
+ */
+final class ChaChaPoly {
+    static final int TAG_SIZE = 16;
+
+    private static final BigInteger P1305 = BigInteger.ONE.shiftLeft(130).subtract(BigInteger.valueOf(5));
+    private static final BigInteger CLAMP = new BigInteger("0ffffffc0ffffffc0ffffffc0fffffff", 16);
+    private static final BigInteger MASK_128 = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+
+    private ChaChaPoly() {
+    }
+
+    /**
+     * AEAD(key, counter, plaintext, ad): ciphertext followed by the 16-byte tag
+     */
+    static byte[] seal(byte[] key, long counter, byte[] plaintext, byte[] ad) {
+        byte[] nonce = new byte[12];
+        for (int i = 0; i < 8; i++) {
+            nonce[4 + i] = (byte) (counter >>> (8 * i));
+        }
+
+        byte[] sealed = new byte[plaintext.length + TAG_SIZE];
+        for (int offset = 0; offset < plaintext.length; offset += 64) {
+            byte[] stream = block(key, 1 + offset / 64, nonce);
+            for (int i = offset; i < Math.min(offset + 64, plaintext.length); i++) {
+                sealed[i] = (byte) (plaintext[i] ^ stream[i - offset]);
+            }
+        }
+
+        byte[] oneTimeKey = block(key, 0, nonce);
+        byte[] tag = poly1305(oneTimeKey, macData(ad, sealed, plaintext.length));
+        System.arraycopy(tag, 0, sealed, plaintext.length, TAG_SIZE);
+        return sealed;
+    }
+
+    // ad | pad16 | ciphertext | pad16 | len(ad) | len(ciphertext), lengths little-endian
+    private static byte[] macData(byte[] ad, byte[] ciphertext, int ciphertextLength) {
+        int adPadded = (ad.length + 15) / 16 * 16;
+        int ctPadded = (ciphertextLength + 15) / 16 * 16;
+        byte[] data = new byte[adPadded + ctPadded + 16];
+        System.arraycopy(ad, 0, data, 0, ad.length);
+        System.arraycopy(ciphertext, 0, data, adPadded, ciphertextLength);
+        for (int i = 0; i < 8; i++) {
+            data[adPadded + ctPadded + i] = (byte) ((long) ad.length >>> (8 * i));
+            data[adPadded + ctPadded + 8 + i] = (byte) ((long) ciphertextLength >>> (8 * i));
+        }
+        return data;
+    }
+
+    private static byte[] poly1305(byte[] key, byte[] message) {
+        BigInteger r = littleEndian(key, 0, 16).and(CLAMP);
+        BigInteger s = littleEndian(key, 16, 16);
+        BigInteger accumulator = BigInteger.ZERO;
+        for (int offset = 0; offset < message.length; offset += 16) {
+            int length = Math.min(16, message.length - offset);
+            BigInteger n = littleEndian(message, offset, length).setBit(8 * length);
+            accumulator = accumulator.add(n).multiply(r).mod(P1305);
+        }
+        BigInteger tag = accumulator.add(s).and(MASK_128);
+
+        byte[] out = new byte[TAG_SIZE];
+        byte[] big = tag.toByteArray();
+        for (int i = 0; i < TAG_SIZE && i < big.length; i++) {
+            out[i] = big[big.length - 1 - i];
+        }
+        return out;
+    }
+
+    private static BigInteger littleEndian(byte[] bytes, int offset, int length) {
+        byte[] big = new byte[length + 1];
+        for (int i = 0; i < length; i++) {
+            big[length - i] = bytes[offset + i];
+        }
+        return new BigInteger(big);
+    }
+
+    private static byte[] block(byte[] key, int counter, byte[] nonce) {
+        int[] state = new int[16];
+        state[0] = 0x61707865;
+        state[1] = 0x3320646e;
+        state[2] = 0x79622d32;
+        state[3] = 0x6b206574;
+        for (int i = 0; i < 8; i++) {
+            state[4 + i] = readInt(key, i * 4);
+        }
+        state[12] = counter;
+        for (int i = 0; i < 3; i++) {
+            state[13 + i] = readInt(nonce, i * 4);
+        }
+
+        int[] x = state.clone();
+        for (int round = 0; round < 10; round++) {
+            quarterRound(x, 0, 4, 8, 12);
+            quarterRound(x, 1, 5, 9, 13);
+            quarterRound(x, 2, 6, 10, 14);
+            quarterRound(x, 3, 7, 11, 15);
+            quarterRound(x, 0, 5, 10, 15);
+            quarterRound(x, 1, 6, 11, 12);
+            quarterRound(x, 2, 7, 8, 13);
+            quarterRound(x, 3, 4, 9, 14);
+        }
+
+        byte[] out = new byte[64];
+        for (int i = 0; i < 16; i++) {
+            int word = x[i] + state[i];
+            for (int b = 0; b < 4; b++) {
+                out[i * 4 + b] = (byte) (word >>> (8 * b));
+            }
+        }
+        return out;
+    }
+
+    private static void quarterRound(int[] x, int a, int b, int c, int d) {
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 16);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 12);
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 8);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 7);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8
+            | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+}
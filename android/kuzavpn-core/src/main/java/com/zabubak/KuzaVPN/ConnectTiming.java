@@ -0,0 +1,91 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.Arrays;
+
+/**
+ * Where the time of one connect went, phase by phase
+ * Durations come from SystemClock.elapsedRealtime() except HANDSHAKE, which is
+ * derived from the backend's wall-clock handshake timestamp. Filled in on the
+ * tunnel thread, then handed to ConnectTimingHistory once complete
+ */
+public final class ConnectTiming {
+    public enum Phase {
+        RACE,       // handshake race between candidate servers, only when the config lists them
+        PARSE,      // JSON parse and parseWireGuardConfig
+        RESOLVE,    // endpoint DNS, normally answered from EndpointResolver's cache
+        ESTABLISH,  // VpnService.Builder.establish()
+        SET_STATE,  // GoBackend setState(UP), summed over attempts
+        RETRY_WAIT, // backoff sleeps between failed attempts
+        HANDSHAKE,  // from the successful setState(UP) to the first completed handshake
+        TOTAL       // from the connect request to the tunnel reported UP
+    }
+
+    private static final int PHASES = Phase.values().length;
+
+    public final long startedAtMs;
+    private final long[] durationsMs = new long[PHASES];
+    private int attempts;
+    private boolean success;
+    private String failure;
+
+    public ConnectTiming(long startedAtMs) {
+        this.startedAtMs = startedAtMs;
+        Arrays.fill(durationsMs, -1);
+    }
+
+    /**
+     * Add time spent in a phase; phases entered more than once accumulate
+     */
+    public void add(Phase phase, long elapsedMs) {
+        int index = phase.ordinal();
+        durationsMs[index] = Math.max(durationsMs[index], 0) + Math.max(elapsedMs, 0);
+    }
+
+    /**
+     * @return milliseconds spent in the phase, or -1 if the connect never reached it
+     */
+    public long get(Phase phase) {
+        return durationsMs[phase.ordinal()];
+    }
+
+    public void countAttempt() {
+        attempts++;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void succeeded() {
+        success = true;
+    }
+
+    public void failed(String reason) {
+        success = false;
+        failure = reason;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    /**
+     * Time spent on the device: config parsing, interface setup and backend bring-up
+     */
+    public long getLocalMs() {
+        return Math.max(get(Phase.PARSE), 0) + Math.max(get(Phase.ESTABLISH), 0)
+            + Math.max(get(Phase.SET_STATE), 0);
+    }
+
+    /**
+     * Time spent waiting on the network: a server race, endpoint DNS, retry backoff and the first handshake
+     */
+    public long getNetworkMs() {
+        return Math.max(get(Phase.RACE), 0) + Math.max(get(Phase.RESOLVE), 0) + Math.max(get(Phase.RETRY_WAIT), 0)
+            + Math.max(get(Phase.HANDSHAKE), 0);
+    }
+}
@@ -0,0 +1,53 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * The last N connect timings, with nearest-rank percentiles per phase
+ * Lets a slow connect be compared with the recent distribution to tell
+ * whether the network or our own setup got slower
+ */
+public final class ConnectTimingHistory {
+    private static final int DEFAULT_CAPACITY = 50;
+
+    private static final ConnectTimingHistory INSTANCE = new ConnectTimingHistory(DEFAULT_CAPACITY);
+
+    private final BoundedHistory<ConnectTiming> records;
+
+    public ConnectTimingHistory(int capacity) {
+        this.records = new BoundedHistory<>(capacity);
+    }
+
+    /**
+     * Process-wide history shared by KuzaVpnService and KuzaVpnModule
+     */
+    public static ConnectTimingHistory getInstance() {
+        return INSTANCE;
+    }
+
+    public void add(ConnectTiming timing) {
+        records.add(timing);
+    }
+
+    /**
+     * @return the most recent connect, or null if there has not been one
+     */
+    public ConnectTiming getLast() {
+        return records.getLast();
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    public int successCount() {
+        return records.count(ConnectTiming::isSuccess);
+    }
+
+    /**
+     * Nearest-rank percentile of a phase over successful connects that reached it
+     * @param percentile 0-100
+     * @return milliseconds, or -1 if no connect has a value for the phase
+     */
+    public long percentile(ConnectTiming.Phase phase, double percentile) {
+        return records.percentile(timing -> timing.isSuccess() ? timing.get(phase) : -1, percentile);
+    }
+}
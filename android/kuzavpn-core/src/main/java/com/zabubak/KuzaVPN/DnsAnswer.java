@@ -0,0 +1,106 @@
+package com.zabubak.KuzaVPN;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Addresses and TTL read from a raw DNS response (RFC 1035 wire format)
+ * Only the answer section is read; CNAME records count towards the TTL, since a
+ * resolver returns the whole chain and it expires with its shortest link
+ */
+public final class DnsAnswer {
+    static final int TYPE_A = 1;
+    static final int TYPE_AAAA = 28;
+    private static final int CLASS_IN = 1;
+    private static final int HEADER_SIZE = 12;
+
+    public final int rcode;
+    public final List<InetAddress> addresses;
+    // Smallest TTL in the answer section, or -1 when it had no records
+    public final long ttlSeconds;
+
+    DnsAnswer(int rcode, List<InetAddress> addresses, long ttlSeconds) {
+        this.rcode = rcode;
+        this.addresses = Collections.unmodifiableList(addresses);
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the message is truncated or malformed
+     */
+    public static DnsAnswer parse(byte[] message) {
+        if (message == null || message.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("DNS message too short");
+        }
+        int rcode = message[3] & 0x0f;
+        int questions = readUnsignedShort(message, 4);
+        int answers = readUnsignedShort(message, 6);
+
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < questions; i++) {
+            offset = skipName(message, offset) + 4;
+        }
+
+        List<InetAddress> addresses = new ArrayList<>();
+        long ttl = -1;
+        for (int i = 0; i < answers; i++) {
+            offset = skipName(message, offset);
+            requireBytes(message, offset, 10);
+            int type = readUnsignedShort(message, offset);
+            int recordClass = readUnsignedShort(message, offset + 2);
+            long recordTtl = ((message[offset + 4] & 0xffL) << 24) | ((message[offset + 5] & 0xffL) << 16)
+                | ((message[offset + 6] & 0xffL) << 8) | (message[offset + 7] & 0xffL);
+            int length = readUnsignedShort(message, offset + 8);
+            offset += 10;
+            requireBytes(message, offset, length);
+
+            if (recordClass == CLASS_IN) {
+                ttl = ttl < 0 ? recordTtl : Math.min(ttl, recordTtl);
+                if ((type == TYPE_A && length == 4) || (type == TYPE_AAAA && length == 16)) {
+                    byte[] raw = new byte[length];
+                    System.arraycopy(message, offset, raw, 0, length);
+                    try {
+                        addresses.add(InetAddress.getByAddress(raw));
+                    } catch (UnknownHostException e) {
+                        // Unreachable: the length was checked above
+                    }
+                }
+            }
+            offset += length;
+        }
+        return new DnsAnswer(rcode, addresses, ttl);
+    }
+
+    /**
+     * Offset just past a (possibly compressed) domain name
+     */
+    private static int skipName(byte[] message, int offset) {
+        while (true) {
+            requireBytes(message, offset, 1);
+            int length = message[offset] & 0xff;
+            if (length == 0) {
+                return offset + 1;
+            }
+            if ((length & 0xc0) == 0xc0) {
+                // A pointer ends the name
+                requireBytes(message, offset, 2);
+                return offset + 2;
+            }
+            offset += 1 + length;
+        }
+    }
+
+    private static int readUnsignedShort(byte[] message, int offset) {
+        requireBytes(message, offset, 2);
+        return ((message[offset] & 0xff) << 8) | (message[offset + 1] & 0xff);
+    }
+
+    private static void requireBytes(byte[] message, int offset, int count) {
+        if (offset + count > message.length) {
+            throw new IllegalArgumentException("Truncated DNS message");
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Domain rules compiled into a suffix trie over reversed labels
+ * "example.com" matches the domain and everything under it, "*.example.com" only
+ * names under it. A lookup walks the host's labels right to left, one hash probe
+ * per label, so its cost depends on the host's label count and not on how many
+ * rules there are; the most specific matching rule wins. Edges live in one
+ * open-addressing table keyed by (parent node, label hash), and labels are hashed
+ * and compared straight from the host's characters, so matching allocates nothing.
+ * Immutable once compiled and safe to share between threads
+ */
+public final class DomainMatcher {
+    private static final int MAX_NAME_LENGTH = 253;
+    private static final int MAX_LABEL_LENGTH = 63;
+
+    private final List<String> rules;
+    // Open-addressing edge table: (parent << 32 | label hash) -> child + 1, 0 when empty
+    private final long[] slotKeys;
+    private final int[] slotChildren;
+    private final int mask;
+    // Per node: the label on the edge into it, and the rule index ending there, -1 for none
+    private final String[] labels;
+    private final int[] domainRules;
+    private final int[] wildcardRules;
+
+    private DomainMatcher(List<String> rules, long[] slotKeys, int[] slotChildren, String[] labels,
+            int[] domainRules, int[] wildcardRules) {
+        this.rules = rules;
+        this.slotKeys = slotKeys;
+        this.slotChildren = slotChildren;
+        this.mask = slotKeys.length - 1;
+        this.labels = labels;
+        this.domainRules = domainRules;
+        this.wildcardRules = wildcardRules;
+    }
+
+    /**
+     * @param rules "example.com" or "*.example.com"; case and a trailing dot are ignored
+     * @throws IllegalArgumentException if a rule is not a valid domain name
+     */
+    public static DomainMatcher compile(Collection<String> rules) {
+        List<String> normalized = new ArrayList<>(rules.size());
+        List<String> nodeLabels = new ArrayList<>();
+        List<int[]> nodeRules = new ArrayList<>();
+        Map<String, Integer> edges = new HashMap<>();
+        nodeLabels.add("");
+        nodeRules.add(new int[] {-1, -1});
+
+        for (String rule : rules) {
+            String name = normalize(rule);
+            boolean wildcard = name.startsWith("*.");
+            if (wildcard) {
+                name = name.substring(2);
+            }
+            validate(rule, name);
+
+            int node = 0;
+            int end = name.length();
+            while (end > 0) {
+                int start = name.lastIndexOf('.', end - 1) + 1;
+                String label = name.substring(start, end);
+                String edge = node + "/" + label;
+                Integer child = edges.get(edge);
+                if (child == null) {
+                    child = nodeLabels.size();
+                    nodeLabels.add(label);
+                    nodeRules.add(new int[] {-1, -1});
+                    edges.put(edge, child);
+                }
+                node = child;
+                end = start - 1;
+            }
+
+            int[] ends = nodeRules.get(node);
+            int kind = wildcard ? 1 : 0;
+            if (ends[kind] < 0) {
+                // A repeated rule keeps its first index
+                ends[kind] = normalized.size();
+            }
+            normalized.add(wildcard ? "*." + name : name);
+        }
+
+        int nodes = nodeLabels.size();
+        int capacity = Integer.highestOneBit(Math.max(nodes * 2, 16) - 1) << 1;
+        long[] slotKeys = new long[capacity];
+        int[] slotChildren = new int[capacity];
+        for (Map.Entry<String, Integer> edge : edges.entrySet()) {
+            String key = edge.getKey();
+            int parent = Integer.parseInt(key.substring(0, key.indexOf('/')));
+            String label = key.substring(key.indexOf('/') + 1);
+            int hash = hash(label, 0, label.length());
+            int slot = slot(parent, hash, capacity - 1);
+            while (slotChildren[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            slotKeys[slot] = edgeKey(parent, hash);
+            slotChildren[slot] = edge.getValue() + 1;
+        }
+
+        int[] domainRules = new int[nodes];
+        int[] wildcardRules = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            domainRules[i] = nodeRules.get(i)[0];
+            wildcardRules[i] = nodeRules.get(i)[1];
+        }
+        return new DomainMatcher(Collections.unmodifiableList(normalized), slotKeys, slotChildren,
+            nodeLabels.toArray(new String[0]), domainRules, wildcardRules);
+    }
+
+    /**
+     * @return the index of the most specific rule matching host, or -1
+     */
+    public int match(CharSequence host) {
+        int end = host.length();
+        if (end > 0 && host.charAt(end - 1) == '.') {
+            end--;
+        }
+        int node = 0;
+        int matched = -1;
+        while (end > 0) {
+            int start = end;
+            while (start > 0 && host.charAt(start - 1) != '.') {
+                start--;
+            }
+            int child = child(node, hash(host, start, end), host, start, end);
+            if (child < 0) {
+                break;
+            }
+            node = child;
+            if (domainRules[node] >= 0) {
+                matched = domainRules[node];
+            }
+            // "*.example.com" needs at least one more label to the left
+            if (start > 0 && wildcardRules[node] >= 0) {
+                matched = wildcardRules[node];
+            }
+            end = start - 1;
+        }
+        return matched;
+    }
+
+    public boolean matches(CharSequence host) {
+        return match(host) >= 0;
+    }
+
+    /**
+     * A rule as compiled: lower case, no trailing dot
+     */
+    public String rule(int index) {
+        return rules.get(index);
+    }
+
+    public List<String> rules() {
+        return rules;
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    private int child(int parent, int hash, CharSequence host, int start, int end) {
+        long key = edgeKey(parent, hash);
+        int slot = slot(parent, hash, mask);
+        int child;
+        while ((child = slotChildren[slot]) != 0) {
+            if (slotKeys[slot] == key && sameLabel(labels[child - 1], host, start, end)) {
+                return child - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static boolean sameLabel(String label, CharSequence host, int start, int end) {
+        if (label.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < label.length(); i++) {
+            if (label.charAt(i) != lower(host.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long edgeKey(int parent, int hash) {
+        return ((long) parent << 32) | (hash & 0xffffffffL);
+    }
+
+    private static int slot(int parent, int hash, int mask) {
+        // Murmur3 finalizer over both halves, so sibling labels spread across the table
+        int h = hash ^ (parent * 0x9e3779b9);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + lower(text.charAt(i));
+        }
+        return hash;
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static String normalize(String rule) {
+        String name = rule.trim();
+        if (name.endsWith(".")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        StringBuilder lowered = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            lowered.append(lower(name.charAt(i)));
+        }
+        return lowered.toString();
+    }
+
+    private static void validate(String rule, String name) {
+        if (name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Invalid domain rule: " + rule);
+        }
+        int labelLength = 0;
+        for (int i = 0; i <= name.length(); i++) {
+            char c = i < name.length() ? name.charAt(i) : '.';
+            if (c == '.') {
+                if (labelLength == 0 || labelLength > MAX_LABEL_LENGTH) {
+                    throw new IllegalArgumentException("Invalid domain rule: " + rule);
+                }
+                labelLength = 0;
+            } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_') {
+                labelLength++;
+            } else {
+                throw new IllegalArgumentException("Invalid domain rule: " + rule);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.zabubak.KuzaVPN;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Host prefixes of the names behind domain rules, kept for their DNS TTL
+ * Each domain rule's name is looked up again when its answer expires. A wildcard
+ * rule has no name of its own: "*.example.com" does not cover example.com, so it
+ * covers nothing until a name under it is handed to update(), which is then kept
+ * fresh like a rule's name. An address that drops out of an answer stays routed for
+ * LINGER_MS, so connections opened on it are not pulled into the tunnel mid-flow
+ * and a CDN rotating through a pool settles instead of flapping. update() reports
+ * whether the prefix set changed, so routes are only reinstalled when they must be.
+ * Holds no resolver of its own; DomainRoutes feeds it lookups
+ */
+public final class DomainRouteTable {
+    static final long LINGER_MS = 10 * 60 * 1000L;
+    // Each prefix can cost a route; past this, further addresses stay in the tunnel
+    static final int MAX_PREFIXES = 256;
+
+    private static final class Name {
+        // Prefix -> when it stops being routed
+        final Map<String, Long> prefixes = new HashMap<>();
+        long refreshAtMs;
+    }
+
+    private final DomainMatcher matcher;
+    private final Map<String, Name> names = new LinkedHashMap<>();
+    // How many names hold each prefix
+    private final Map<String, Integer> prefixCounts = new HashMap<>();
+    private List<String> sortedPrefixes = Collections.emptyList();
+    private boolean sorted = true;
+
+    public DomainRouteTable(DomainMatcher matcher) {
+        this.matcher = matcher;
+        for (String rule : matcher.rules()) {
+            if (!rule.startsWith("*.")) {
+                names.put(rule, new Name());
+            }
+        }
+    }
+
+    public DomainMatcher matcher() {
+        return matcher;
+    }
+
+    /**
+     * Names whose answer is missing or expired
+     */
+    public synchronized List<String> dueNames(long nowMs) {
+        List<String> due = new ArrayList<>();
+        for (Map.Entry<String, Name> entry : names.entrySet()) {
+            if (entry.getValue().refreshAtMs <= nowMs) {
+                due.add(entry.getKey());
+            }
+        }
+        return due;
+    }
+
+    /**
+     * When the next answer or lingering address expires, Long.MAX_VALUE if never
+     */
+    public synchronized long nextRefreshAtMs() {
+        long next = Long.MAX_VALUE;
+        for (Name name : names.values()) {
+            next = Math.min(next, name.refreshAtMs);
+            for (long until : name.prefixes.values()) {
+                next = Math.min(next, until);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Store a lookup of name; a name that is neither a rule's nor under one is ignored
+     * @param ttlMs the answer's TTL, clamped as EndpointCache clamps it
+     * @return true if prefixes() changed
+     */
+    public synchronized boolean update(String name, List<InetAddress> addresses, long ttlMs, long nowMs) {
+        Name entry = names.get(name);
+        if (entry == null) {
+            if (!matcher.matches(name)) {
+                return false;
+            }
+            entry = new Name();
+            names.put(name, entry);
+        }
+        long ttl = Math.max(EndpointCache.MIN_TTL_MS, Math.min(ttlMs, EndpointCache.MAX_TTL_MS));
+        entry.refreshAtMs = nowMs + ttl;
+
+        boolean changed = false;
+        for (InetAddress address : addresses) {
+            String prefix = address.getHostAddress() + (address instanceof Inet4Address ? "/32" : "/128");
+            if (entry.prefixes.put(prefix, nowMs + ttl + LINGER_MS) == null) {
+                changed |= retain(prefix);
+            }
+        }
+        return expire(nowMs) || changed;
+    }
+
+    /**
+     * A lookup of name failed; keep what it had until it lingers out and retry after the minimum TTL
+     * @return true if prefixes() changed
+     */
+    public synchronized boolean failed(String name, long nowMs) {
+        Name entry = names.get(name);
+        if (entry != null) {
+            entry.refreshAtMs = nowMs + EndpointCache.MIN_TTL_MS;
+        }
+        return expire(nowMs);
+    }
+
+    /**
+     * Drop addresses that lingered out
+     * @return true if prefixes() changed
+     */
+    public synchronized boolean expire(long nowMs) {
+        boolean changed = false;
+        for (Name entry : names.values()) {
+            Iterator<Map.Entry<String, Long>> prefixes = entry.prefixes.entrySet().iterator();
+            while (prefixes.hasNext()) {
+                Map.Entry<String, Long> prefix = prefixes.next();
+                if (prefix.getValue() <= nowMs) {
+                    prefixes.remove();
+                    changed |= release(prefix.getKey());
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Host prefixes to keep off the tunnel, sorted, at most MAX_PREFIXES
+     */
+    public synchronized List<String> prefixes() {
+        if (!sorted) {
+            List<String> all = new ArrayList<>(new TreeSet<>(prefixCounts.keySet()));
+            sortedPrefixes = Collections.unmodifiableList(
+                all.size() > MAX_PREFIXES ? new ArrayList<>(all.subList(0, MAX_PREFIXES)) : all);
+            sorted = true;
+        }
+        return sortedPrefixes;
+    }
+
+    private boolean retain(String prefix) {
+        Integer count = prefixCounts.get(prefix);
+        prefixCounts.put(prefix, count == null ? 1 : count + 1);
+        if (count == null) {
+            sorted = false;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean release(String prefix) {
+        Integer count = prefixCounts.get(prefix);
+        if (count == null) {
+            return false;
+        }
+        if (count > 1) {
+            prefixCounts.put(prefix, count - 1);
+            return false;
+        }
+        prefixCounts.remove(prefix);
+        sorted = false;
+        return true;
+    }
+}
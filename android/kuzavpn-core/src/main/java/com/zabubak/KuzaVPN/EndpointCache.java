@@ -0,0 +1,262 @@
+package com.zabubak.KuzaVPN;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Endpoint answers kept for their DNS TTL, with the address that last completed a handshake
+ * and the ones that recently failed to. A failed address goes to the back of the line, so
+ * the reconnect after it tries the next one, which in an interleaved answer is the other
+ * family. Holds no resolver and no storage of its own: EndpointResolver feeds it lookups and
+ * hands every changed entry, encoded as one line, to the Store
+ */
+public final class EndpointCache {
+    // Bounds on how long an answer is trusted, whatever TTL the server sent
+    static final long MIN_TTL_MS = 30_000;
+    static final long MAX_TTL_MS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Receives each entry as it changes, in the form restore() reads back
+     */
+    public interface Store {
+        void save(String host, String encoded);
+    }
+
+    /**
+     * Cached answer for one host, preferred address first
+     */
+    private static final class Entry {
+        final List<InetAddress> addresses;
+        final long expiresAtMs;
+        InetAddress lastGood;
+        // Addresses that got no handshake, oldest failure first
+        final List<InetAddress> failed;
+
+        Entry(List<InetAddress> addresses, long expiresAtMs, InetAddress lastGood, List<InetAddress> failed) {
+            this.addresses = addresses;
+            this.expiresAtMs = expiresAtMs;
+            this.lastGood = lastGood;
+            this.failed = failed;
+        }
+
+        /**
+         * The last good address while it is still in the answer, else the first one that has not
+         * failed, else the one that failed longest ago
+         * An expired answer still yields its last good address: it is the best bet until the refresh lands
+         */
+        InetAddress preferred(boolean fresh) {
+            if (lastGood != null && (!fresh || addresses.contains(lastGood))) {
+                return lastGood;
+            }
+            for (InetAddress address : addresses) {
+                if (!failed.contains(address)) {
+                    return address;
+                }
+            }
+            for (InetAddress address : failed) {
+                if (addresses.contains(address)) {
+                    return address;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Store store;
+
+    public EndpointCache(Store store) {
+        this.store = store;
+    }
+
+    /**
+     * Load an entry saved by an earlier process; unreadable ones are dropped
+     */
+    public synchronized void restore(String host, String encoded) {
+        Entry entry = decode(encoded);
+        if (entry != null) {
+            entries.put(host, entry);
+        }
+    }
+
+    /**
+     * Address to dial for host, or null when nothing usable is cached
+     */
+    public synchronized InetAddress preferred(String host, long nowMs) {
+        Entry entry = entries.get(host);
+        return entry != null ? entry.preferred(nowMs < entry.expiresAtMs) : null;
+    }
+
+    /**
+     * Whether host has an answer that has not expired yet
+     */
+    public synchronized boolean isFresh(String host, long nowMs) {
+        Entry entry = entries.get(host);
+        return entry != null && nowMs < entry.expiresAtMs;
+    }
+
+    /**
+     * Store a lookup result, keeping the last good address and the failed ones it still holds
+     * @return the address to dial from it, or null if it had none
+     */
+    public synchronized InetAddress put(String host, List<InetAddress> addresses, long ttlMs, long nowMs) {
+        Entry previous = entries.get(host);
+        List<InetAddress> failed = new ArrayList<>();
+        if (previous != null) {
+            for (InetAddress address : previous.failed) {
+                if (addresses.contains(address)) {
+                    failed.add(address);
+                }
+            }
+        }
+        Entry entry = new Entry(Collections.unmodifiableList(new ArrayList<>(addresses)), nowMs + clampTtl(ttlMs),
+            previous != null ? previous.lastGood : null, failed);
+        entries.put(host, entry);
+        save(host, entry);
+        return entry.preferred(true);
+    }
+
+    /**
+     * Remember the address a handshake completed on, so it is tried first next time
+     */
+    public synchronized void markGood(String host, InetAddress address) {
+        Entry entry = entries.get(host);
+        if (entry == null || (address.equals(entry.lastGood) && !entry.failed.contains(address))) {
+            return;
+        }
+        entry.lastGood = address;
+        entry.failed.remove(address);
+        save(host, entry);
+    }
+
+    /**
+     * Move an address that got no handshake behind every other one, and stop preferring it
+     * if it was the last good one
+     */
+    public synchronized void markFailed(String host, InetAddress address) {
+        Entry entry = entries.get(host);
+        if (entry == null) {
+            return;
+        }
+        if (address.equals(entry.lastGood)) {
+            entry.lastGood = null;
+        }
+        entry.failed.remove(address);
+        if (entry.addresses.contains(address)) {
+            entry.failed.add(address);
+        }
+        save(host, entry);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    static long clampTtl(long ttlMs) {
+        return Math.max(MIN_TTL_MS, Math.min(MAX_TTL_MS, ttlMs));
+    }
+
+    /**
+     * Host part of "host:port", "[v6]:port" or a bare host
+     */
+    static String hostOf(String endpoint) {
+        String value = endpoint == null ? "" : endpoint.trim();
+        if (value.startsWith("[")) {
+            int close = value.indexOf(']');
+            return close > 0 ? value.substring(1, close) : value;
+        }
+        int colon = value.lastIndexOf(':');
+        // More than one colon without brackets is a bare IPv6 literal
+        if (colon > 0 && value.indexOf(':') == colon) {
+            return value.substring(0, colon);
+        }
+        return value;
+    }
+
+    /**
+     * IPv4 dotted quad or IPv6 literal, which resolve without a lookup
+     */
+    static boolean isIpLiteral(String host) {
+        if (host.indexOf(':') >= 0) {
+            return true;
+        }
+        int dots = 0;
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c == '.') {
+                dots++;
+            } else if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return dots == 3;
+    }
+
+    private void save(String host, Entry entry) {
+        if (store != null) {
+            store.save(host, encode(entry));
+        }
+    }
+
+    /**
+     * "expiresAtMs|lastGood|address,address|failed,failed"
+     */
+    private static String encode(Entry entry) {
+        StringBuilder encoded = new StringBuilder()
+            .append(entry.expiresAtMs).append('|')
+            .append(entry.lastGood != null ? entry.lastGood.getHostAddress() : "").append('|');
+        appendAddresses(encoded, entry.addresses);
+        encoded.append('|');
+        appendAddresses(encoded, entry.failed);
+        return encoded.toString();
+    }
+
+    private static void appendAddresses(StringBuilder encoded, List<InetAddress> addresses) {
+        for (int i = 0; i < addresses.size(); i++) {
+            if (i > 0) {
+                encoded.append(',');
+            }
+            encoded.append(addresses.get(i).getHostAddress());
+        }
+    }
+
+    /**
+     * Inverse of encode(); entries saved before failures were kept have no fourth field
+     */
+    private static Entry decode(String encoded) {
+        String[] parts = encoded.split("\\|", -1);
+        if (parts.length != 3 && parts.length != 4) {
+            return null;
+        }
+        try {
+            InetAddress lastGood = parts[1].isEmpty() ? null : literal(parts[1]);
+            return new Entry(Collections.unmodifiableList(literals(parts[2])), Long.parseLong(parts[0]), lastGood,
+                parts.length == 4 ? literals(parts[3]) : new ArrayList<>());
+        } catch (NumberFormatException | UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static List<InetAddress> literals(String joined) throws UnknownHostException {
+        List<InetAddress> addresses = new ArrayList<>();
+        for (String address : joined.split(",")) {
+            if (!address.isEmpty()) {
+                addresses.add(literal(address));
+            }
+        }
+        return addresses;
+    }
+
+    private static InetAddress literal(String address) throws UnknownHostException {
+        if (!isIpLiteral(address)) {
+            // Never let a corrupted entry turn into a DNS lookup
+            throw new UnknownHostException(address);
+        }
+        return InetAddress.getByName(address);
+    }
+}
@@ -0,0 +1,122 @@
+package com.zabubak.KuzaVPN;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A real WireGuard handshake initiation (Noise_IKpsk2), for racing servers before
+ * the backend commits to one
+ * A server that knows the client's key answers it with a handshake response, or a
+ * cookie reply when it is under load; anything else, including a wrong key, gets
+ * silence. The answer is recognised by the sender index it is addressed to and is
+ * not decrypted: the backend does its own handshake with whichever server wins.
+ * Curve25519 comes from the caller, so the core stays free of the WireGuard library
+ */
+public final class HandshakeInitiation {
+    public static final int SIZE = 148;
+    public static final int KEY_SIZE = 32;
+    static final int TYPE_INITIATION = 1;
+    static final int TYPE_RESPONSE = 2;
+    static final int TYPE_COOKIE_REPLY = 3;
+    static final int RESPONSE_SIZE = 92;
+    static final int COOKIE_REPLY_SIZE = 64;
+
+    private static final byte[] CONSTRUCTION = "Noise_IKpsk2_25519_ChaChaPoly_BLAKE2s".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IDENTIFIER = "WireGuard v1 zx2c4 Jason@zx2c4.com".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LABEL_MAC1 = "mac1----".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INITIAL_CHAIN_KEY = Blake2s.hash(CONSTRUCTION);
+    private static final byte[] INITIAL_HASH = Blake2s.hash(INITIAL_CHAIN_KEY, IDENTIFIER);
+    // TAI64 label of the Unix epoch
+    private static final long TAI64_BASE = 0x400000000000000aL;
+    // wireguard-go rounds timestamps down to this granularity so they do not leak the clock
+    private static final int TIMESTAMP_WHITENER = 0x1000000 - 1;
+
+    /**
+     * X25519, e.g. com.wireguard.crypto.Curve25519 on Android
+     */
+    public interface Curve {
+        byte[] publicKey(byte[] privateKey);
+
+        byte[] sharedSecret(byte[] privateKey, byte[] publicKey);
+    }
+
+    private HandshakeInitiation() {
+    }
+
+    /**
+     * @param staticPrivate     the client's private key
+     * @param responderPublic   the server's public key
+     * @param ephemeralPrivate  32 random bytes, used once
+     * @param timestampMs       wall clock for the TAI64N timestamp; the server only
+     *                          accepts one newer than the last it saw from this client
+     */
+    public static ByteBuffer create(Curve curve, byte[] staticPrivate, byte[] responderPublic, int senderIndex,
+            byte[] ephemeralPrivate, long timestampMs) {
+        byte[] ephemeral = clamp(ephemeralPrivate);
+        byte[] ephemeralPublic = curve.publicKey(ephemeral);
+        byte[] staticPublic = curve.publicKey(clamp(staticPrivate));
+
+        byte[] hash = Blake2s.hash(INITIAL_HASH, responderPublic);
+        byte[] chainKey = Blake2s.kdf(INITIAL_CHAIN_KEY, ephemeralPublic, 1)[0];
+        hash = Blake2s.hash(hash, ephemeralPublic);
+
+        byte[][] derived = Blake2s.kdf(chainKey, curve.sharedSecret(ephemeral, responderPublic), 2);
+        chainKey = derived[0];
+        byte[] encryptedStatic = ChaChaPoly.seal(derived[1], 0, staticPublic, hash);
+        hash = Blake2s.hash(hash, encryptedStatic);
+
+        derived = Blake2s.kdf(chainKey, curve.sharedSecret(clamp(staticPrivate), responderPublic), 2);
+        byte[] encryptedTimestamp = ChaChaPoly.seal(derived[1], 0, tai64n(timestampMs), hash);
+
+        ByteBuffer message = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        message.putInt(TYPE_INITIATION);
+        message.putInt(senderIndex);
+        message.put(ephemeralPublic);
+        message.put(encryptedStatic);
+        message.put(encryptedTimestamp);
+        byte[] macKey = Blake2s.hash(LABEL_MAC1, responderPublic);
+        byte[] signed = new byte[SIZE - 32];
+        System.arraycopy(message.array(), 0, signed, 0, signed.length);
+        message.put(Blake2s.mac(macKey, signed));
+        // mac2 stays zero: there is no cookie yet
+        message.clear();
+        return message;
+    }
+
+    /**
+     * Whether a datagram is a handshake response or cookie reply to the initiation sent
+     * with senderIndex
+     */
+    public static boolean isAnswer(ByteBuffer datagram, int senderIndex) {
+        int length = datagram.remaining();
+        if (length < 8) {
+            return false;
+        }
+        ByteBuffer view = datagram.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int start = view.position();
+        int type = view.getInt(start);
+        if (type == TYPE_RESPONSE && length == RESPONSE_SIZE) {
+            // type(4) sender(4) receiver(4) ...
+            return view.getInt(start + 8) == senderIndex;
+        }
+        return type == TYPE_COOKIE_REPLY && length == COOKIE_REPLY_SIZE && view.getInt(start + 4) == senderIndex;
+    }
+
+    static byte[] tai64n(long timestampMs) {
+        long seconds = Math.floorDiv(timestampMs, 1000);
+        int nanos = Math.floorMod(timestampMs, 1000) * 1_000_000 & ~TIMESTAMP_WHITENER;
+        return ByteBuffer.allocate(12).putLong(TAI64_BASE + seconds).putInt(nanos).array();
+    }
+
+    private static byte[] clamp(byte[] privateKey) {
+        if (privateKey.length != KEY_SIZE) {
+            throw new IllegalArgumentException("Curve25519 keys are " + KEY_SIZE + " bytes");
+        }
+        byte[] clamped = privateKey.clone();
+        clamped[0] &= (byte) 248;
+        clamped[31] &= 127;
+        clamped[31] |= 64;
+        return clamped;
+    }
+}
@@ -0,0 +1,222 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Happy-eyeballs for servers: handshake initiations to ranked candidates with staggered starts
+ * The best-ranked server goes first and each next one follows staggerMs later, or at
+ * once when the previous one is refused (RFC 8305 section 5). The first handshake
+ * answer wins and stops further starts; the others get a short window to answer so
+ * the margin can be measured, then every socket is closed. All attempts share one
+ * selector on the calling thread, like ServerLatencyProber
+ */
+public final class HandshakeRace {
+    // RFC 8305's recommended Connection Attempt Delay
+    public static final long DEFAULT_STAGGER_MS = 250;
+    // How long the losers may still answer once there is a winner
+    static final long MARGIN_WINDOW_MS = 50;
+    // wireguard-go drops a peer's initiations closer together than this (50 a second); the
+    // backend's own initiation to the winner follows the race and must not fall inside it
+    static final long INITIATION_GAP_MS = 20;
+    // The backend's initiation carries the current time and must be newer than the race's
+    public static final long TIMESTAMP_BACKDATE_MS = 50;
+    private static final int RECEIVE_BUFFER_SIZE = 256;
+
+    /**
+     * Builds the initiation for the contender at rank, addressed from senderIndex
+     */
+    public interface Initiator {
+        ByteBuffer initiation(int rank, int senderIndex);
+    }
+
+    private static final class Contender {
+        final int rank;
+        DatagramChannel channel;
+        int senderIndex;
+        long answeredAtNanos = -1;
+        boolean refused;
+
+        Contender(int rank) {
+            this.rank = rank;
+        }
+    }
+
+    private final ServerLatencyProber.ChannelPreparer channelPreparer;
+
+    /**
+     * @param channelPreparer protects and binds each socket, so attempts bypass any tunnel still up
+     */
+    public HandshakeRace(ServerLatencyProber.ChannelPreparer channelPreparer) {
+        this.channelPreparer = channelPreparer;
+    }
+
+    /**
+     * Run the race; blocks until it is decided or timeoutMs passes without an answer
+     * @param endpoints candidate endpoints by rank, as the report names them
+     * @param targets   their resolved addresses, null where resolution failed
+     */
+    public ServerRaceReport run(List<String> endpoints, List<InetSocketAddress> targets, Initiator initiator,
+            long staggerMs, long timeoutMs) throws IOException {
+        int count = targets.size();
+        Contender[] contenders = new Contender[count];
+        for (int i = 0; i < count; i++) {
+            contenders[i] = new Contender(i);
+        }
+        List<Contender> answered = new ArrayList<>(2);
+        ByteBuffer receiveBuffer = ByteBuffer.allocate(RECEIVE_BUFFER_SIZE);
+
+        long startedAt = System.nanoTime();
+        long deadline = startedAt + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long stagger = TimeUnit.MILLISECONDS.toNanos(staggerMs);
+        long nextStartAt = startedAt;
+        int next = 0;
+        int outstanding = 0;
+        long endedAt;
+
+        try (Selector selector = Selector.open()) {
+            while (true) {
+                long now = System.nanoTime();
+                while (answered.isEmpty() && next < count && now >= nextStartAt) {
+                    Contender contender = contenders[next++];
+                    if (start(selector, contender, targets.get(contender.rank), initiator)) {
+                        outstanding++;
+                        nextStartAt = now + stagger;
+                    } else {
+                        contender.refused = true;
+                        nextStartAt = now;
+                    }
+                }
+
+                long wakeAt = deadline;
+                if (!answered.isEmpty()) {
+                    long winnerAt = answered.get(0).answeredAtNanos;
+                    boolean decided = answered.size() > 1 || outstanding == 0;
+                    long until = winnerAt + TimeUnit.MILLISECONDS.toNanos(decided ? INITIATION_GAP_MS : MARGIN_WINDOW_MS);
+                    if (now >= until) {
+                        break;
+                    }
+                    wakeAt = Math.min(wakeAt, until);
+                } else if (outstanding == 0 && next >= count) {
+                    break;
+                } else if (next < count) {
+                    wakeAt = Math.min(wakeAt, nextStartAt);
+                }
+                if (now >= deadline) {
+                    break;
+                }
+
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wakeAt - now + 999_999)));
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Contender contender = (Contender) key.attachment();
+                    if (!key.isValid() || !key.isReadable()) {
+                        continue;
+                    }
+                    long receivedAt = System.nanoTime();
+                    try {
+                        receiveBuffer.clear();
+                        if (contender.channel.read(receiveBuffer) <= 0) {
+                            continue;
+                        }
+                        receiveBuffer.flip();
+                        if (!HandshakeInitiation.isAnswer(receiveBuffer, contender.senderIndex)) {
+                            continue;
+                        }
+                        contender.answeredAtNanos = receivedAt;
+                        answered.add(contender);
+                    } catch (PortUnreachableException e) {
+                        // Host is up, nothing listens on the WireGuard port
+                        contender.refused = true;
+                    } catch (IOException e) {
+                        contender.refused = true;
+                    }
+                    if (contender.refused && answered.isEmpty()) {
+                        // Do not sit out the stagger behind a server that already said no
+                        nextStartAt = receivedAt;
+                    }
+                    key.cancel();
+                    outstanding--;
+                }
+                selector.selectedKeys().clear();
+            }
+            endedAt = System.nanoTime();
+        } finally {
+            for (Contender contender : contenders) {
+                if (contender.channel != null) {
+                    try {
+                        contender.channel.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+
+        List<Integer> order = new ArrayList<>(count);
+        for (Contender contender : answered) {
+            order.add(contender.rank);
+        }
+        for (Contender contender : contenders) {
+            if (contender.answeredAtNanos < 0 && !contender.refused) {
+                order.add(contender.rank);
+            }
+        }
+
+        if (answered.isEmpty()) {
+            return new ServerRaceReport(null, -1, -1, null, -1, count, next, order, System.currentTimeMillis());
+        }
+        Contender winner = answered.get(0);
+        Contender runnerUp = answered.size() > 1 ? answered.get(1) : null;
+        long marginMs = -1;
+        if (runnerUp != null) {
+            marginMs = TimeUnit.NANOSECONDS.toMillis(runnerUp.answeredAtNanos - winner.answeredAtNanos);
+        } else if (outstanding > 0) {
+            marginMs = TimeUnit.NANOSECONDS.toMillis(endedAt - winner.answeredAtNanos);
+        }
+        return new ServerRaceReport(endpoints.get(winner.rank), winner.rank,
+            TimeUnit.NANOSECONDS.toMillis(winner.answeredAtNanos - startedAt),
+            runnerUp != null ? endpoints.get(runnerUp.rank) : null, marginMs, count, next, order,
+            System.currentTimeMillis());
+    }
+
+    /**
+     * Open a socket to the contender and send its initiation
+     * @return false if it could not be sent, which counts as refused
+     */
+    private boolean start(Selector selector, Contender contender, InetSocketAddress target, Initiator initiator) {
+        if (target == null || target.isUnresolved()) {
+            return false;
+        }
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open();
+            contender.channel = channel;
+            channel.configureBlocking(false);
+            if (channelPreparer != null) {
+                channelPreparer.prepare(channel);
+            }
+            // Connected so ICMP port-unreachable surfaces and stray datagrams are filtered
+            channel.connect(target);
+            contender.senderIndex = ThreadLocalRandom.current().nextInt();
+            channel.register(selector, SelectionKey.OP_READ, contender);
+            channel.write(initiator.initiation(contender.rank, contender.senderIndex));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return false;
+        }
+    }
+}
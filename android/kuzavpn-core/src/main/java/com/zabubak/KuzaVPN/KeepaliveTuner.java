@@ -0,0 +1,159 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * Learns how long a network's NAT keeps an idle UDP binding, and the persistent
+ * keepalive that follows from it
+ * Fed one observation per health check. Data coming back after the tunnel sat quiet
+ * for a whole interval shows the binding outlived it; after a few of those the
+ * interval widens, halfway to the shortest one seen failing, or by half again when
+ * none has. A receive stall or stale handshake after such a quiet stretch means
+ * the binding expired: that interval becomes the ceiling and the tuner falls back
+ * to the widest one confirmed good. Busy stretches teach nothing, since traffic
+ * already holds the binding open (and wireguard-go holds its keepalives back)
+ * Not thread-safe; the learned state round-trips through encode() and restore()
+ */
+public final class KeepaliveTuner {
+    public static final int MIN_INTERVAL_S = 10;
+    public static final int MAX_INTERVAL_S = 120;
+    static final int CONFIRMATIONS_TO_WIDEN = 3;
+    // Smaller steps than this are not worth a re-handshake
+    static final int MIN_STEP_S = 2;
+    // NATs get replaced and reconfigured; relearn from the configured value after this long
+    static final long FORGET_AFTER_MS = 30L * 24 * 60 * 60 * 1000;
+    // Less than this per check in both directions together is keepalives and handshakes only
+    static final long QUIET_BYTES = 512;
+
+    private int interval;
+    // Widest interval confirmed good, and narrowest seen failing; 0 when unknown
+    private int floor;
+    private int ceiling;
+    private int confirmations;
+    private long updatedAtMs;
+
+    // Start of the current quiet stretch, -1 while traffic flows, and the length of the
+    // last one until a reply or a failure settles what it showed; neither is persisted
+    private long quietSinceMs = -1;
+    private long unsettledQuietMs = -1;
+
+    private KeepaliveTuner(int interval, int floor, int ceiling, int confirmations, long updatedAtMs) {
+        this.interval = interval;
+        this.floor = floor;
+        this.ceiling = ceiling;
+        this.confirmations = confirmations;
+        this.updatedAtMs = updatedAtMs;
+    }
+
+    /**
+     * @param stored     what encode() returned last time on this network, or null
+     * @param configured the config's persistent keepalive in seconds, the starting point for a new network
+     */
+    public static KeepaliveTuner restore(String stored, int configured, long nowMs) {
+        if (stored != null) {
+            String[] fields = stored.split("\\|");
+            try {
+                if (fields.length == 5 && nowMs - Long.parseLong(fields[4]) < FORGET_AFTER_MS) {
+                    return new KeepaliveTuner(clamp(Integer.parseInt(fields[0])), Integer.parseInt(fields[1]),
+                        Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Long.parseLong(fields[4]));
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return new KeepaliveTuner(clamp(configured), 0, 0, 0, nowMs);
+    }
+
+    public String encode() {
+        return interval + "|" + floor + "|" + ceiling + "|" + confirmations + "|" + updatedAtMs;
+    }
+
+    /**
+     * Persistent keepalive to configure, in seconds
+     */
+    public int interval() {
+        return interval;
+    }
+
+    public int floor() {
+        return floor;
+    }
+
+    public int ceiling() {
+        return ceiling;
+    }
+
+    public static boolean isQuiet(long rxBytes, long txBytes) {
+        return rxBytes + txBytes < QUIET_BYTES;
+    }
+
+    /**
+     * Feed one health check
+     * @param rxBytes  bytes received since the previous check
+     * @param txBytes  bytes sent since the previous check
+     * @param failed   the check found a handshake that never completed, or nothing received
+     *                 after data-sized sends; unanswered keepalives alone are not a failure
+     * @return true if the learned state changed and should be saved
+     */
+    public boolean observe(long nowMs, long rxBytes, long txBytes, boolean failed) {
+        if (failed) {
+            long quietMs = unsettledQuietMs >= 0 ? unsettledQuietMs
+                : quietSinceMs >= 0 ? nowMs - quietSinceMs : 0;
+            quietSinceMs = -1;
+            unsettledQuietMs = -1;
+            return quietMs >= interval * 1000L && narrow(nowMs);
+        }
+        if (isQuiet(rxBytes, txBytes)) {
+            if (quietSinceMs < 0) {
+                quietSinceMs = nowMs;
+            }
+            return false;
+        }
+        if (quietSinceMs >= 0) {
+            // Traffic again; whether it gets answered shows if the binding survived
+            unsettledQuietMs = nowMs - quietSinceMs;
+            quietSinceMs = -1;
+        }
+        if (rxBytes <= 0 || unsettledQuietMs < 0) {
+            return false;
+        }
+        long quietMs = unsettledQuietMs;
+        unsettledQuietMs = -1;
+        return quietMs >= interval * 1000L && confirm(nowMs);
+    }
+
+    private boolean confirm(long nowMs) {
+        floor = Math.max(floor, interval);
+        if (ceiling > 0 && floor >= ceiling) {
+            // The failure that set the ceiling was something else, or the NAT changed
+            ceiling = 0;
+        }
+        updatedAtMs = nowMs;
+        if (++confirmations < CONFIRMATIONS_TO_WIDEN) {
+            return true;
+        }
+        confirmations = 0;
+        int next = ceiling > 0 ? (interval + ceiling) / 2 : interval + interval / 2;
+        if (ceiling > 0) {
+            // Keepalives drift with timer slack and doze; stay a margin under the failure
+            next = Math.min(next, ceiling - Math.max(MIN_STEP_S, ceiling / 10));
+        }
+        next = Math.min(next, MAX_INTERVAL_S);
+        if (next - interval >= MIN_STEP_S) {
+            interval = next;
+        }
+        return true;
+    }
+
+    private boolean narrow(long nowMs) {
+        ceiling = ceiling > 0 ? Math.min(ceiling, interval) : interval;
+        if (floor >= ceiling) {
+            floor = 0;
+        }
+        confirmations = 0;
+        updatedAtMs = nowMs;
+        interval = clamp(floor > 0 ? floor : ceiling / 2);
+        return true;
+    }
+
+    private static int clamp(int seconds) {
+        return Math.max(MIN_INTERVAL_S, Math.min(seconds, MAX_INTERVAL_S));
+    }
+}
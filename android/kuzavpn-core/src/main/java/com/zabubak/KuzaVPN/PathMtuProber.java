@@ -0,0 +1,197 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Finds the largest packet the path to an endpoint carries without fragmenting
+ * Binary search over the underlay packet size with Don't Fragment datagrams (set by
+ * the SocketPreparer). A probe that fails with EMSGSIZE, from the first hop's MTU or
+ * one lowered by an ICMP fragmentation-needed, is too big. Against an echo responder a
+ * probe only fits once its echo comes back, which also catches silent drops
+ */
+public class PathMtuProber {
+    // IPv4 or IPv6 header plus the UDP header
+    static final int IPV4_UDP_OVERHEAD = 28;
+    static final int IPV6_UDP_OVERHEAD = 48;
+    // WireGuard data message header (16) and Poly1305 tag (16)
+    static final int WIREGUARD_OVERHEAD = 32;
+    // Packets every link must carry (RFC 791, RFC 8200)
+    static final int IPV4_MIN_MTU = 576;
+    static final int IPV6_MIN_MTU = 1280;
+    private static final int PROBE_HEADER_SIZE = 8;
+
+    /**
+     * Hook for preparing probe sockets: Don't Fragment, VpnService.protect(), network binding
+     */
+    public interface SocketPreparer {
+        void prepare(DatagramSocket socket) throws IOException;
+    }
+
+    public static final class Result {
+        public final int pathMtu;
+        public final int tunnelMtu;
+        public final int probes;
+
+        Result(int pathMtu, int tunnelMtu, int probes) {
+            this.pathMtu = pathMtu;
+            this.tunnelMtu = tunnelMtu;
+            this.probes = probes;
+        }
+    }
+
+    private final long probeTimeoutMs;
+    private final int attempts;
+    private final boolean expectEcho;
+    private volatile SocketPreparer socketPreparer;
+
+    /**
+     * @param probeTimeoutMs how long each probe waits for its echo or an ICMP error
+     * @param attempts       sends per size before it counts as too big (echo mode only)
+     * @param expectEcho     whether the target echoes datagrams; without one, only errors reject a size
+     */
+    public PathMtuProber(long probeTimeoutMs, int attempts, boolean expectEcho) {
+        this.probeTimeoutMs = probeTimeoutMs;
+        this.attempts = Math.max(attempts, 1);
+        this.expectEcho = expectEcho;
+    }
+
+    public void setSocketPreparer(SocketPreparer socketPreparer) {
+        this.socketPreparer = socketPreparer;
+    }
+
+    /**
+     * Tunnel MTU for a path: the path MTU less the outer headers and WireGuard's framing
+     */
+    public static int tunnelMtu(int pathMtu, boolean ipv6) {
+        return pathMtu - (ipv6 ? IPV6_UDP_OVERHEAD : IPV4_UDP_OVERHEAD) - WIREGUARD_OVERHEAD;
+    }
+
+    /**
+     * @param target  resolved endpoint address
+     * @param ceiling largest packet to try, normally the local interface MTU
+     * @throws IOException if the socket fails, or in echo mode nothing at all comes back
+     */
+    public Result probe(InetSocketAddress target, int ceiling) throws IOException {
+        boolean ipv6 = target.getAddress() instanceof Inet6Address;
+        int headers = ipv6 ? IPV6_UDP_OVERHEAD : IPV4_UDP_OVERHEAD;
+        int floor = ipv6 ? IPV6_MIN_MTU : IPV4_MIN_MTU;
+        ceiling = Math.max(ceiling, floor);
+
+        int probes = 0;
+        int pathMtu;
+        try (DatagramSocket socket = new DatagramSocket()) {
+            SocketPreparer preparer = socketPreparer;
+            if (preparer != null) {
+                preparer.prepare(socket);
+            }
+            // Connected, so ICMP errors for this path surface on the socket
+            socket.connect(target);
+            socket.setSoTimeout((int) Math.max(probeTimeoutMs, 1));
+
+            // Most paths carry the full first-hop MTU; try that before searching
+            probes++;
+            if (fits(socket, ceiling - headers)) {
+                pathMtu = ceiling;
+            } else {
+                // Invariant: low fits (floor by definition, until proven otherwise), high + 1 does not
+                int low = floor;
+                int high = ceiling - 1;
+                boolean lowConfirmed = false;
+                while (low < high) {
+                    int middle = (low + high + 1) >>> 1;
+                    probes++;
+                    if (fits(socket, middle - headers)) {
+                        low = middle;
+                        lowConfirmed = true;
+                    } else {
+                        high = middle - 1;
+                    }
+                }
+                if (!lowConfirmed && expectEcho) {
+                    probes++;
+                    if (!fits(socket, floor - headers)) {
+                        throw new IOException("No echo from " + target);
+                    }
+                }
+                pathMtu = low;
+            }
+        }
+        return new Result(pathMtu, tunnelMtu(pathMtu, ipv6), probes);
+    }
+
+    /**
+     * Send one datagram of the given payload size and decide whether it made it
+     */
+    private boolean fits(DatagramSocket socket, int payloadSize) throws IOException {
+        byte[] payload = new byte[Math.max(payloadSize, PROBE_HEADER_SIZE)];
+        int nonce = ThreadLocalRandom.current().nextInt();
+        ByteBuffer.wrap(payload).putInt(nonce).putInt(payloadSize);
+        DatagramPacket packet = new DatagramPacket(payload, payloadSize);
+        DatagramPacket reply = new DatagramPacket(new byte[payloadSize + 1], payloadSize + 1);
+
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            try {
+                socket.send(packet);
+                long deadline = System.nanoTime() + probeTimeoutMs * 1_000_000L;
+                while (true) {
+                    reply.setLength(payloadSize + 1);
+                    socket.receive(reply);
+                    if (!expectEcho || isEcho(reply, nonce, payloadSize)) {
+                        return true;
+                    }
+                    // A late echo of an earlier probe; keep waiting for this one
+                    long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+                    if (remainingMs <= 0) {
+                        throw new SocketTimeoutException();
+                    }
+                    socket.setSoTimeout((int) remainingMs);
+                }
+            } catch (SocketTimeoutException e) {
+                if (!expectEcho) {
+                    // Nothing refused it on the way
+                    return true;
+                }
+            } catch (PortUnreachableException e) {
+                // The datagram reached the host in one piece
+                return true;
+            } catch (IOException e) {
+                if (isMessageTooLong(e)) {
+                    return false;
+                }
+                throw e;
+            } finally {
+                socket.setSoTimeout((int) Math.max(probeTimeoutMs, 1));
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEcho(DatagramPacket reply, int nonce, int payloadSize) {
+        if (reply.getLength() != payloadSize) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.wrap(reply.getData(), reply.getOffset(), PROBE_HEADER_SIZE);
+        return header.getInt() == nonce && header.getInt() == payloadSize;
+    }
+
+    /**
+     * EMSGSIZE, however the platform words it
+     */
+    static boolean isMessageTooLong(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && (message.contains("EMSGSIZE") || message.contains("Message too long"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,108 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * One WireGuard peer's counters between health checks, and what they show
+ * Persistent keepalives and handshake initiations count as sent bytes but are never
+ * answered with data, so only sends beyond what they explain count as traffic: an idle
+ * tunnel with keepalive on neither looks busy nor stalls. Not thread-safe
+ */
+public final class PeerHealth {
+    // WireGuard retries a handshake after REKEY_TIMEOUT (5 s) + KEEPALIVE_TIMEOUT (10 s)
+    // without a reply, so sending for longer than that with nothing received is a stall
+    static final long STALL_THRESHOLD_MS = 15_000;
+
+    // Sessions are rejected after REJECT_AFTER_TIME (180 s) without a new handshake; an idle
+    // peer without persistent keepalive lets it lapse, so this only counts while sending
+    static final long HANDSHAKE_STALE_MS = 180_000;
+
+    // An empty transport message, and a handshake initiation
+    static final long KEEPALIVE_BYTES = 32;
+    static final long INITIATION_BYTES = 148;
+
+    private long rxBytes;
+    private long txBytes;
+    private long sampledAtMs;
+    private long lastRxAtMs;
+
+    private long rxDelta;
+    private long txDelta;
+    private boolean flowing;
+    private boolean receiveStalled;
+    private boolean handshakeStale;
+
+    /**
+     * @param rxBytes the peer's counters when monitoring starts
+     */
+    public PeerHealth(long nowMs, long rxBytes, long txBytes) {
+        this.rxBytes = rxBytes;
+        this.txBytes = txBytes;
+        this.sampledAtMs = nowMs;
+        this.lastRxAtMs = nowMs;
+    }
+
+    /**
+     * Take the peer's counters at a health check
+     * @param handshakeAtMs    latest completed handshake, or 0 if none yet
+     * @param sinceMs          when monitoring started, the handshake age reference until one completes
+     * @param keepaliveSeconds persistent keepalive the backend runs with, 0 when off
+     */
+    public void update(long nowMs, long rx, long tx, long handshakeAtMs, long sinceMs, int keepaliveSeconds) {
+        // Re-handshakes, roams and keepalive retunes replace the backend device, which
+        // starts its counters over; a counter that went backwards restarted from zero
+        rxDelta = rx >= rxBytes ? rx - rxBytes : rx;
+        txDelta = tx >= txBytes ? tx - txBytes : tx;
+        long overhead = overheadBytes(nowMs - sampledAtMs, keepaliveSeconds);
+        rxBytes = rx;
+        txBytes = tx;
+        sampledAtMs = nowMs;
+
+        // Any reply, even a handshake response, shows the receive path works
+        if (rxDelta > 0) {
+            lastRxAtMs = nowMs;
+        }
+        boolean sendingData = txDelta > overhead;
+        flowing = sendingData || rxDelta > overhead;
+        receiveStalled = sendingData && nowMs - lastRxAtMs > STALL_THRESHOLD_MS;
+
+        long handshakeAge = nowMs - (handshakeAtMs > 0 ? handshakeAtMs : sinceMs);
+        handshakeStale = handshakeAge > HANDSHAKE_STALE_MS && (sendingData || keepaliveSeconds > 0);
+    }
+
+    /**
+     * Bytes one direction may carry over the interval without any data in it: the
+     * keepalives the interval holds, plus a handshake and its retry
+     */
+    static long overheadBytes(long elapsedMs, int keepaliveSeconds) {
+        long keepalives = keepaliveSeconds > 0 ? Math.max(elapsedMs, 0) / (keepaliveSeconds * 1000L) + 1 : 1;
+        return Math.max(KeepaliveTuner.QUIET_BYTES, keepalives * KEEPALIVE_BYTES + 2 * INITIATION_BYTES);
+    }
+
+    public long rxDelta() {
+        return rxDelta;
+    }
+
+    public long txDelta() {
+        return txDelta;
+    }
+
+    /**
+     * @return the last check saw data beyond keepalives and handshakes
+     */
+    public boolean isFlowing() {
+        return flowing;
+    }
+
+    /**
+     * @return data went out with nothing received for longer than a handshake retry
+     */
+    public boolean isReceiveStalled() {
+        return receiveStalled;
+    }
+
+    /**
+     * @return no handshake completed for longer than a session lives, while one was due
+     */
+    public boolean isHandshakeStale() {
+        return handshakeStale;
+    }
+}
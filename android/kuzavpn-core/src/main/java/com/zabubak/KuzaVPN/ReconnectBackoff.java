@@ -0,0 +1,44 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Jittered exponential backoff for tunnel reconnects
+ * Delays double from the base up to the cap, with "equal jitter" so that
+ * many clients dropped by the same server outage don't retry in lockstep
+ */
+public final class ReconnectBackoff {
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private int attempt;
+
+    public ReconnectBackoff(long baseDelayMs, long maxDelayMs) {
+        if (baseDelayMs <= 0 || maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("Invalid backoff bounds: " + baseDelayMs + ".." + maxDelayMs);
+        }
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Delay before the next attempt; each call counts as one attempt
+     */
+    public synchronized long nextDelayMs() {
+        long ceiling = baseDelayMs << Math.min(attempt, 30);
+        if (ceiling <= 0 || ceiling > maxDelayMs) {
+            ceiling = maxDelayMs;
+        }
+        attempt++;
+
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+
+    public synchronized int getAttempt() {
+        return attempt;
+    }
+
+    public synchronized void reset() {
+        attempt = 0;
+    }
+}
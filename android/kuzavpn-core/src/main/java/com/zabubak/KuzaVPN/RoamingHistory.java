@@ -0,0 +1,51 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * The last N roaming recoveries, with nearest-rank percentiles of the recovery time
+ */
+public final class RoamingHistory {
+    private static final int DEFAULT_CAPACITY = 50;
+
+    private static final RoamingHistory INSTANCE = new RoamingHistory(DEFAULT_CAPACITY);
+
+    private final BoundedHistory<RoamingReport> reports;
+
+    public RoamingHistory(int capacity) {
+        this.reports = new BoundedHistory<>(capacity);
+    }
+
+    /**
+     * Process-wide history shared by KuzaVpnService and KuzaVpnModule
+     */
+    public static RoamingHistory getInstance() {
+        return INSTANCE;
+    }
+
+    public void add(RoamingReport report) {
+        reports.add(report);
+    }
+
+    /**
+     * @return the most recent roam, or null if there has not been one
+     */
+    public RoamingReport getLast() {
+        return reports.getLast();
+    }
+
+    public int size() {
+        return reports.size();
+    }
+
+    public int recoveredCount() {
+        return reports.count(report -> report.recovered);
+    }
+
+    /**
+     * Nearest-rank percentile of the recovery time over recovered roams
+     * @param percentile 0-100
+     * @return milliseconds, or -1 if no roam has recovered yet
+     */
+    public long percentile(double percentile) {
+        return reports.percentile(report -> report.recovered ? report.recoveryMs : -1, percentile);
+    }
+}
@@ -0,0 +1,29 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * One move between underlying networks: how the tunnel followed and how long traffic was cut
+ * recoveryMs runs from losing the old network (or, on a clean handover, from the new one
+ * becoming default) to the first handshake on the new one
+ */
+public final class RoamingReport {
+    public static final String MODE_REHANDSHAKE = "rehandshake";
+    public static final String MODE_REBUILD = "rebuild";
+
+    public final String fromNetwork;
+    public final String toNetwork;
+    public final String mode;
+    public final boolean recovered;
+    // -1 when no handshake came within the wait
+    public final long recoveryMs;
+    public final long completedAtMs;
+
+    public RoamingReport(String fromNetwork, String toNetwork, String mode, boolean recovered,
+                         long recoveryMs, long completedAtMs) {
+        this.fromNetwork = fromNetwork;
+        this.toNetwork = toNetwork;
+        this.mode = mode;
+        this.recovered = recovered;
+        this.recoveryMs = recoveryMs;
+        this.completedAtMs = completedAtMs;
+    }
+}
@@ -0,0 +1,240 @@
+package com.zabubak.KuzaVPN;
+
+import java.math.BigInteger;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Set algebra over IPv4/IPv6 prefix lists for split tunneling
+ * Prefixes become address intervals, which are sorted, merged, subtracted and
+ * finally cut back into the smallest list of CIDR blocks covering exactly the
+ * result. "Everything except the LAN and these blocks" turns into the handful of
+ * routes VpnService.Builder.addRoute and the peer's allowed IPs need, instead of
+ * one route per input prefix. Sorting dominates, so a compile is O(n log n)
+ */
+public final class RouteCompiler {
+    /**
+     * Local networks kept off the tunnel when a config asks to exclude the LAN
+     */
+    public static final List<String> LOCAL_NETWORKS = Collections.unmodifiableList(Arrays.asList(
+        "10.0.0.0/8",       // RFC 1918
+        "172.16.0.0/12",    // RFC 1918
+        "192.168.0.0/16",   // RFC 1918
+        "169.254.0.0/16",   // IPv4 link-local
+        "224.0.0.0/4",      // IPv4 multicast
+        "fc00::/7",         // IPv6 unique local
+        "fe80::/10",        // IPv6 link-local
+        "ff00::/8"          // IPv6 multicast
+    ));
+
+    /**
+     * One CIDR block of the compiled route set
+     */
+    public static final class Route {
+        public final InetAddress address;
+        public final int prefixLength;
+
+        Route(InetAddress address, int prefixLength) {
+            this.address = address;
+            this.prefixLength = prefixLength;
+        }
+
+        @Override
+        public String toString() {
+            return address.getHostAddress() + "/" + prefixLength;
+        }
+    }
+
+    private static final class Family {
+        final int bits;
+        final int bytes;
+        final List<BigInteger[]> included = new ArrayList<>();
+        final List<BigInteger[]> excluded = new ArrayList<>();
+
+        Family(int bits) {
+            this.bits = bits;
+            this.bytes = bits / 8;
+        }
+    }
+
+    private final Family ipv4 = new Family(32);
+    private final Family ipv6 = new Family(128);
+
+    /**
+     * Route a prefix ("1.2.3.0/24", "2001:db8::/32", or a bare address) through the tunnel
+     * @throws IllegalArgumentException if the prefix is not a numeric CIDR
+     */
+    public RouteCompiler include(String cidr) {
+        addRange(cidr, true);
+        return this;
+    }
+
+    public RouteCompiler includeAll(Collection<String> cidrs) {
+        for (String cidr : cidrs) {
+            include(cidr);
+        }
+        return this;
+    }
+
+    /**
+     * Keep a prefix off the tunnel, even if an included prefix covers it
+     * @throws IllegalArgumentException if the prefix is not a numeric CIDR
+     */
+    public RouteCompiler exclude(String cidr) {
+        addRange(cidr, false);
+        return this;
+    }
+
+    public RouteCompiler excludeAll(Collection<String> cidrs) {
+        for (String cidr : cidrs) {
+            exclude(cidr);
+        }
+        return this;
+    }
+
+    /**
+     * Included minus excluded space as the fewest CIDR blocks, IPv4 first, each family in address order
+     */
+    public List<Route> compile() {
+        List<Route> routes = new ArrayList<>();
+        compileFamily(ipv4, routes);
+        compileFamily(ipv6, routes);
+        return routes;
+    }
+
+    private static void compileFamily(Family family, List<Route> routes) {
+        List<BigInteger[]> remaining = subtract(merge(family.included), merge(family.excluded));
+        for (BigInteger[] range : remaining) {
+            toCidrs(family, range[0], range[1], routes);
+        }
+    }
+
+    private void addRange(String cidr, boolean include) {
+        String text = cidr.trim();
+        int slash = text.indexOf('/');
+        String addressText = slash >= 0 ? text.substring(0, slash) : text;
+        if (addressText.isEmpty() || !addressText.matches("[0-9A-Fa-f.:]+")) {
+            // Anything else would make InetAddress.getByName do a DNS lookup
+            throw new IllegalArgumentException("Not a numeric prefix: " + cidr);
+        }
+
+        InetAddress address;
+        try {
+            address = InetAddress.getByName(addressText);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Not a numeric prefix: " + cidr, e);
+        }
+
+        Family family = address instanceof Inet4Address ? ipv4 : ipv6;
+        int prefixLength = family.bits;
+        if (slash >= 0) {
+            try {
+                prefixLength = Integer.parseInt(text.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad prefix length: " + cidr, e);
+            }
+            // An IPv4-mapped IPv6 literal comes back as IPv4; its prefix counts 96 extra bits
+            if (family == ipv4 && addressText.indexOf(':') >= 0) {
+                prefixLength -= 96;
+            }
+        }
+        if (prefixLength < 0 || prefixLength > family.bits) {
+            throw new IllegalArgumentException("Bad prefix length: " + cidr);
+        }
+
+        // Host bits set in the address are ignored, as the kernel would
+        int hostBits = family.bits - prefixLength;
+        BigInteger start = new BigInteger(1, address.getAddress()).shiftRight(hostBits).shiftLeft(hostBits);
+        BigInteger end = start.add(BigInteger.ONE.shiftLeft(hostBits)).subtract(BigInteger.ONE);
+        (include ? family.included : family.excluded).add(new BigInteger[] {start, end});
+    }
+
+    /**
+     * Sort and coalesce overlapping or adjacent intervals
+     */
+    private static List<BigInteger[]> merge(List<BigInteger[]> ranges) {
+        List<BigInteger[]> sorted = new ArrayList<>(ranges);
+        Collections.sort(sorted, (a, b) -> a[0].compareTo(b[0]));
+
+        List<BigInteger[]> merged = new ArrayList<>();
+        BigInteger[] current = null;
+        for (BigInteger[] range : sorted) {
+            if (current != null && range[0].compareTo(current[1].add(BigInteger.ONE)) <= 0) {
+                if (range[1].compareTo(current[1]) > 0) {
+                    current[1] = range[1];
+                }
+            } else {
+                current = new BigInteger[] {range[0], range[1]};
+                merged.add(current);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Remove sorted, disjoint excluded intervals from sorted, disjoint included ones in one pass
+     */
+    private static List<BigInteger[]> subtract(List<BigInteger[]> included, List<BigInteger[]> excluded) {
+        List<BigInteger[]> result = new ArrayList<>();
+        int next = 0;
+        for (BigInteger[] range : included) {
+            BigInteger start = range[0];
+            BigInteger end = range[1];
+
+            // Exclusions ending before this range cannot affect later ranges either
+            while (next < excluded.size() && excluded.get(next)[1].compareTo(start) < 0) {
+                next++;
+            }
+
+            int i = next;
+            while (start != null && i < excluded.size() && excluded.get(i)[0].compareTo(end) <= 0) {
+                BigInteger[] cut = excluded.get(i);
+                if (cut[0].compareTo(start) > 0) {
+                    result.add(new BigInteger[] {start, cut[0].subtract(BigInteger.ONE)});
+                }
+                if (cut[1].compareTo(end) >= 0) {
+                    start = null;
+                } else {
+                    start = cut[1].add(BigInteger.ONE);
+                    i++;
+                }
+            }
+            if (start != null) {
+                result.add(new BigInteger[] {start, end});
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cover [start, end] with the fewest aligned CIDR blocks, largest first
+     */
+    private static void toCidrs(Family family, BigInteger start, BigInteger end, List<Route> routes) {
+        while (start.compareTo(end) <= 0) {
+            int alignment = start.signum() == 0 ? family.bits : start.getLowestSetBit();
+            int fits = end.subtract(start).add(BigInteger.ONE).bitLength() - 1;
+            int hostBits = Math.min(Math.min(alignment, fits), family.bits);
+
+            routes.add(new Route(toAddress(family, start), family.bits - hostBits));
+            start = start.add(BigInteger.ONE.shiftLeft(hostBits));
+        }
+    }
+
+    private static InetAddress toAddress(Family family, BigInteger value) {
+        byte[] raw = value.toByteArray();
+        byte[] bytes = new byte[family.bytes];
+        // toByteArray may carry a leading sign byte or be shorter than the address
+        int copy = Math.min(raw.length, bytes.length);
+        System.arraycopy(raw, raw.length - copy, bytes, bytes.length - copy, copy);
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures UDP round-trip time to many WireGuard endpoints at once
+ * Each probe is a handshake initiation a server answers only when it knows the client's
+ * key, and only its handshake response or cookie reply counts. All probes share one NIO
+ * selector on the calling thread; each endpoint keeps a rolling window of RTTs (median
+ * and jitter) and results are cached for a TTL
+ */
+public class ServerLatencyProber {
+    private static final int RECEIVE_BUFFER_SIZE = 2048;
+
+    /**
+     * Builds the probe for an endpoint: a HandshakeInitiation sent from senderIndex
+     * Returning null leaves the endpoint out of this round; it keeps its last result
+     */
+    public interface PayloadFactory {
+        ByteBuffer create(String endpoint, int senderIndex);
+    }
+
+    /**
+     * Hook for preparing probe sockets, e.g. VpnService.protect() so probes bypass the tunnel
+     */
+    public interface ChannelPreparer {
+        void prepare(DatagramChannel channel) throws IOException;
+    }
+
+    /**
+     * Latest view of one endpoint
+     */
+    public static final class Result {
+        public final String endpoint;
+        public final boolean reachable;
+        public final double lastRttMs;
+        public final double medianRttMs;
+        public final double jitterMs;
+        public final int samples;
+        public final double lossRate;
+        public final long measuredAtMs;
+        public final boolean cached;
+
+        Result(String endpoint, boolean reachable, double lastRttMs, double medianRttMs, double jitterMs,
+               int samples, double lossRate, long measuredAtMs, boolean cached) {
+            this.endpoint = endpoint;
+            this.reachable = reachable;
+            this.lastRttMs = lastRttMs;
+            this.medianRttMs = medianRttMs;
+            this.jitterMs = jitterMs;
+            this.samples = samples;
+            this.lossRate = lossRate;
+            this.measuredAtMs = measuredAtMs;
+            this.cached = cached;
+        }
+
+        Result asCached() {
+            return new Result(endpoint, reachable, lastRttMs, medianRttMs, jitterMs, samples, lossRate, measuredAtMs, true);
+        }
+    }
+
+    /**
+     * Rolling RTT window for one endpoint
+     */
+    private static final class History {
+        final double[] rttsMs;
+        final double[] scratch;
+        int next;
+        int count;
+        int probes;
+        int losses;
+        double jitterMs;
+        double lastRttMs = -1;
+        Result latest;
+
+        History(int size) {
+            rttsMs = new double[size];
+            scratch = new double[size];
+        }
+
+        void recordRtt(double rttMs) {
+            probes++;
+            if (lastRttMs >= 0) {
+                // RFC 3550 interarrival jitter estimator
+                jitterMs += (Math.abs(rttMs - lastRttMs) - jitterMs) / 16.0;
+            }
+            lastRttMs = rttMs;
+            rttsMs[next] = rttMs;
+            next = (next + 1) % rttsMs.length;
+            if (count < rttsMs.length) {
+                count++;
+            }
+        }
+
+        void recordLoss() {
+            probes++;
+            losses++;
+        }
+
+        double median() {
+            if (count == 0) {
+                return -1;
+            }
+            System.arraycopy(rttsMs, 0, scratch, 0, count);
+            Arrays.sort(scratch, 0, count);
+            int middle = count / 2;
+            return count % 2 == 1 ? scratch[middle] : (scratch[middle - 1] + scratch[middle]) / 2.0;
+        }
+    }
+
+    private static final class Probe {
+        final String endpoint;
+        final DatagramChannel channel;
+        final int senderIndex;
+        long sentAtNanos;
+        boolean done;
+
+        Probe(String endpoint, DatagramChannel channel, int senderIndex) {
+            this.endpoint = endpoint;
+            this.channel = channel;
+            this.senderIndex = senderIndex;
+        }
+    }
+
+    private final int historySize;
+    private final long ttlMs;
+    private final Map<String, History> histories = new HashMap<>();
+    private volatile ChannelPreparer channelPreparer;
+
+    public ServerLatencyProber(int historySize, long ttlMs) {
+        this.historySize = historySize;
+        this.ttlMs = ttlMs;
+    }
+
+    public void setChannelPreparer(ChannelPreparer channelPreparer) {
+        this.channelPreparer = channelPreparer;
+    }
+
+    /**
+     * Probe every endpoint ("host:port") whose cached result is older than the TTL
+     * Blocks for at most timeoutMs; results come back in the order given
+     */
+    public List<Result> probe(List<String> endpoints, PayloadFactory payloadFactory, long timeoutMs)
+            throws IOException {
+        long now = System.currentTimeMillis();
+        Result[] results = new Result[endpoints.size()];
+        Map<String, Integer> pending = new HashMap<>();
+        Set<String> skipped = new HashSet<>();
+
+        synchronized (histories) {
+            for (int i = 0; i < endpoints.size(); i++) {
+                History history = histories.get(endpoints.get(i));
+                if (history != null && history.latest != null && now - history.latest.measuredAtMs < ttlMs) {
+                    results[i] = history.latest.asCached();
+                } else if (!pending.containsKey(endpoints.get(i))) {
+                    pending.put(endpoints.get(i), i);
+                }
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            Map<String, Double> rtts = runProbes(new ArrayList<>(pending.keySet()), payloadFactory, timeoutMs,
+                skipped);
+            long measuredAt = System.currentTimeMillis();
+
+            synchronized (histories) {
+                for (Map.Entry<String, Integer> entry : pending.entrySet()) {
+                    String endpoint = entry.getKey();
+                    if (skipped.contains(endpoint)) {
+                        continue;
+                    }
+                    History history = histories.get(endpoint);
+                    if (history == null) {
+                        history = new History(historySize);
+                        histories.put(endpoint, history);
+                    }
+
+                    Double rtt = rtts.get(endpoint);
+                    if (rtt != null) {
+                        history.recordRtt(rtt);
+                    } else {
+                        history.recordLoss();
+                    }
+
+                    history.latest = new Result(endpoint, rtt != null, rtt != null ? rtt : -1,
+                        history.median(), history.jitterMs, history.count,
+                        history.probes > 0 ? (double) history.losses / history.probes : 0,
+                        measuredAt, false);
+                }
+            }
+        }
+
+        synchronized (histories) {
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] != null) {
+                    continue;
+                }
+                History history = histories.get(endpoints.get(i));
+                if (history == null || history.latest == null) {
+                    // Left out of this round and never measured
+                    results[i] = new Result(endpoints.get(i), false, -1, -1, 0, 0, 0, 0, false);
+                } else {
+                    results[i] = skipped.contains(endpoints.get(i)) ? history.latest.asCached() : history.latest;
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Drop cached results so the next probe() measures everything again
+     */
+    public void invalidate() {
+        synchronized (histories) {
+            for (History history : histories.values()) {
+                history.latest = null;
+            }
+        }
+    }
+
+    /**
+     * @param skipped collects the endpoints the factory left out
+     */
+    private Map<String, Double> runProbes(List<String> endpoints, PayloadFactory payloadFactory, long timeoutMs,
+            Set<String> skipped) throws IOException {
+        Map<String, Double> rtts = new HashMap<>();
+        List<Probe> probes = new ArrayList<>(endpoints.size());
+        ByteBuffer receiveBuffer = ByteBuffer.allocate(RECEIVE_BUFFER_SIZE);
+
+        try (Selector selector = Selector.open()) {
+            for (String endpoint : endpoints) {
+                InetSocketAddress target = parseEndpoint(endpoint);
+                if (target == null || target.isUnresolved()) {
+                    continue;
+                }
+                int senderIndex = ThreadLocalRandom.current().nextInt();
+                ByteBuffer payload = payloadFactory.create(endpoint, senderIndex);
+                if (payload == null) {
+                    skipped.add(endpoint);
+                    continue;
+                }
+
+                DatagramChannel channel = DatagramChannel.open();
+                try {
+                    channel.configureBlocking(false);
+                    ChannelPreparer preparer = channelPreparer;
+                    if (preparer != null) {
+                        preparer.prepare(channel);
+                    }
+                    // Connected so ICMP port-unreachable surfaces and stray datagrams are filtered
+                    channel.connect(target);
+
+                    Probe probe = new Probe(endpoint, channel, senderIndex);
+                    channel.register(selector, SelectionKey.OP_READ, probe);
+                    probe.sentAtNanos = System.nanoTime();
+                    channel.write(payload);
+                    probes.add(probe);
+                } catch (IOException e) {
+                    channel.close();
+                }
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            int outstanding = probes.size();
+
+            while (outstanding > 0) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0 || selector.select(remainingMs) < 0) {
+                    break;
+                }
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Probe probe = (Probe) key.attachment();
+                    if (probe.done || !key.isReadable()) {
+                        continue;
+                    }
+
+                    long receivedAt = System.nanoTime();
+                    try {
+                        receiveBuffer.clear();
+                        if (probe.channel.read(receiveBuffer) <= 0) {
+                            continue;
+                        }
+                        receiveBuffer.flip();
+                        if (!HandshakeInitiation.isAnswer(receiveBuffer, probe.senderIndex)) {
+                            // Not an answer to this initiation; keep waiting for one
+                            continue;
+                        }
+                        rtts.put(probe.endpoint, (receivedAt - probe.sentAtNanos) / 1_000_000.0);
+                    } catch (PortUnreachableException e) {
+                        // Host answered, but nothing listens on the WireGuard port
+                    } catch (IOException e) {
+                        // Treat like loss
+                    }
+                    probe.done = true;
+                    key.cancel();
+                    outstanding--;
+                }
+                selector.selectedKeys().clear();
+            }
+        } finally {
+            for (Probe probe : probes) {
+                try {
+                    probe.channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return rtts;
+    }
+
+    static InetSocketAddress parseEndpoint(String endpoint) {
+        int colon = endpoint.lastIndexOf(':');
+        if (colon <= 0 || colon == endpoint.length() - 1) {
+            return null;
+        }
+        String host = endpoint.substring(0, colon);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        try {
+            return new InetSocketAddress(host, Integer.parseInt(endpoint.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The servers a connect races, read from the JSON config form
+ * "candidates" lists them best first (serverEndpoint, publicKey and an optional
+ * presharedKey each) and replaces the top-level server; "raceCount" caps how many
+ * take part and "raceStaggerMs" spaces their starts. configFor() gives back a plain
+ * single-server config for the one that won, so everything after the race (switches,
+ * reconnects, the saved headless config) sees an ordinary config
+ */
+public final class ServerRace {
+    public static final int DEFAULT_COUNT = 3;
+    // Past this, later starts would come after the first answers anyway
+    static final int MAX_COUNT = 8;
+
+    public static final class Candidate {
+        public final String endpoint;
+        public final String publicKey;
+        // Null when the server has none
+        public final String presharedKey;
+
+        Candidate(String endpoint, String publicKey, String presharedKey) {
+            this.endpoint = endpoint;
+            this.publicKey = publicKey;
+            this.presharedKey = presharedKey;
+        }
+    }
+
+    private final JSONObject source;
+    private final List<Candidate> contenders;
+    private final long staggerMs;
+
+    private ServerRace(JSONObject source, List<Candidate> contenders, long staggerMs) {
+        this.source = source;
+        this.contenders = Collections.unmodifiableList(contenders);
+        this.staggerMs = staggerMs;
+    }
+
+    /**
+     * @return null unless the config is the JSON form with "candidates"; wg-quick text
+     *         and "peers" configs name their servers themselves and are not raced
+     * @throws IllegalArgumentException if the JSON or a candidate cannot be parsed
+     */
+    public static ServerRace parse(String source) {
+        if (source == null || !source.trim().startsWith("{")) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(source.trim());
+            JSONArray candidates = json.optJSONArray("candidates");
+            if (candidates == null || candidates.length() == 0 || !json.optString("config", "").trim().isEmpty()
+                    || json.optJSONArray("peers") != null) {
+                return null;
+            }
+            int count = Math.max(1, Math.min(json.optInt("raceCount", DEFAULT_COUNT), MAX_COUNT));
+            List<Candidate> contenders = new ArrayList<>(count);
+            for (int i = 0; i < Math.min(count, candidates.length()); i++) {
+                JSONObject candidate = candidates.getJSONObject(i);
+                String endpoint = candidate.optString("serverEndpoint", candidate.optString("endpoint", "")).trim();
+                String presharedKey = candidate.optString("presharedKey", "").trim();
+                if (endpoint.isEmpty()) {
+                    throw new IllegalArgumentException("Candidate " + i + " has no endpoint");
+                }
+                contenders.add(new Candidate(endpoint, candidate.getString("publicKey").trim(),
+                    presharedKey.isEmpty() ? null : presharedKey));
+            }
+            long staggerMs = Math.max(0, json.optLong("raceStaggerMs", HandshakeRace.DEFAULT_STAGGER_MS));
+            return new ServerRace(json, contenders, staggerMs);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid WireGuard config: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The top raceCount candidates, best first
+     */
+    public List<Candidate> contenders() {
+        return contenders;
+    }
+
+    public long staggerMs() {
+        return staggerMs;
+    }
+
+    /**
+     * The config with the contender at rank as its only server and the race fields removed
+     */
+    public String configFor(int rank) {
+        Candidate candidate = contenders.get(rank);
+        try {
+            JSONObject config = new JSONObject(source.toString());
+            config.remove("candidates");
+            config.remove("raceCount");
+            config.remove("raceStaggerMs");
+            config.put("serverEndpoint", candidate.endpoint);
+            config.put("publicKey", candidate.publicKey);
+            if (candidate.presharedKey != null) {
+                config.put("presharedKey", candidate.presharedKey);
+            } else {
+                config.remove("presharedKey");
+            }
+            return config.toString();
+        } catch (JSONException e) {
+            // Unreachable: the source parsed once already
+            throw new IllegalStateException(e);
+        }
+    }
+}
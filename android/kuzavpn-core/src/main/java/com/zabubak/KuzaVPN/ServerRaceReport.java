@@ -0,0 +1,40 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a connect that raced several servers: who answered the handshake first and by how much
+ */
+public final class ServerRaceReport {
+    // Endpoint that answered first, null when none did
+    public final String winner;
+    // Its place in the candidate list, 0 being the best ranked; -1 without a winner
+    public final int winnerRank;
+    // From the start of the race to the winner's answer, stagger included; -1 without a winner
+    public final long winnerMs;
+    // Endpoint that answered second, null if none did before the losers were closed
+    public final String runnerUp;
+    // How much later the runner-up answered; without one, how long the losers still had (a lower
+    // bound), and -1 when no other contender was left in the race
+    public final long marginMs;
+    public final int contenders;
+    // Contenders whose initiation went out before the race was decided
+    public final int started;
+    // Contender ranks in the order a connect should try them
+    public final List<Integer> order;
+    public final long completedAtMs;
+
+    public ServerRaceReport(String winner, int winnerRank, long winnerMs, String runnerUp, long marginMs,
+            int contenders, int started, List<Integer> order, long completedAtMs) {
+        this.winner = winner;
+        this.winnerRank = winnerRank;
+        this.winnerMs = winnerMs;
+        this.runnerUp = runnerUp;
+        this.marginMs = marginMs;
+        this.contenders = contenders;
+        this.started = started;
+        this.order = Collections.unmodifiableList(order);
+        this.completedAtMs = completedAtMs;
+    }
+}
@@ -0,0 +1,21 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * Outcome of a server switch: whether the interface was reused and how long traffic had no tunnel
+ */
+public final class ServerSwitchReport {
+    public static final String MODE_HOT = "hot";
+    public static final String MODE_REBUILD = "rebuild";
+
+    public final String mode;
+    public final long gapMs;
+    public final String endpoint;
+    public final long completedAtMs;
+
+    public ServerSwitchReport(String mode, long gapMs, String endpoint, long completedAtMs) {
+        this.mode = mode;
+        this.gapMs = gapMs;
+        this.endpoint = endpoint;
+        this.completedAtMs = completedAtMs;
+    }
+}
@@ -0,0 +1,193 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only, memory-mapped file of fixed-size (bucket, key, rx, tx) records
+ * Records are 24 bytes and kept in bucket order, so a time range is found by
+ * binary search and scanned in place without reading the file into memory.
+ * The record count in the header is written after each record, which makes it
+ * the commit point: a crash mid-append loses at most that record. Compaction
+ * writes a side file and renames it over this one, so records never move in place
+ */
+public final class TimeSeriesFile implements Closeable {
+    private static final int MAGIC = 0x4B565453; // "KVTS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;  // magic, version, record count
+    private static final int COUNT_OFFSET = 8;
+    public static final int RECORD_BYTES = 24;   // int bucket, int key, long rx, long tx
+    private static final int GROW_RECORDS = 4096;
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    /**
+     * Receives records during a scan
+     */
+    public interface Visitor {
+        void visit(int bucket, int key, long rxBytes, long txBytes);
+    }
+
+    private final File path;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private long capacity;
+    private long count;
+
+    public TimeSeriesFile(File path) throws IOException {
+        this.path = path;
+        // Left behind by a compaction that never got renamed; the original is intact
+        File compacted = compactedPath();
+        if (compacted.exists() && !compacted.delete()) {
+            throw new IOException("Could not delete " + compacted);
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+
+        long existing = (file.length() - HEADER_BYTES) / RECORD_BYTES;
+        mapCapacity(Math.max(existing, GROW_RECORDS));
+
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            // New or unreadable file: start an empty series
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putLong(COUNT_OFFSET, 0);
+        }
+        count = Math.min(Math.max(map.getLong(COUNT_OFFSET), 0), capacity);
+    }
+
+    /**
+     * Append a record; buckets earlier than the last one are clamped to keep the file sorted
+     */
+    public synchronized void append(int bucket, int key, long rxBytes, long txBytes) throws IOException {
+        if (count == capacity) {
+            mapCapacity(capacity + GROW_RECORDS);
+        }
+        int position = recordOffset(count);
+        map.putInt(position, Math.max(bucket, lastBucket()));
+        map.putInt(position + 4, key);
+        map.putLong(position + 8, rxBytes);
+        map.putLong(position + 16, txBytes);
+        count++;
+        map.putLong(COUNT_OFFSET, count);
+    }
+
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * @return the newest record's bucket, or Integer.MIN_VALUE if the file is empty
+     */
+    public synchronized int lastBucket() {
+        return count == 0 ? Integer.MIN_VALUE : map.getInt(recordOffset(count - 1));
+    }
+
+    /**
+     * Visit records with fromBucket <= bucket < toBucket, oldest first
+     */
+    public synchronized void scan(int fromBucket, int toBucket, Visitor visitor) {
+        for (long i = lowerBound(fromBucket); i < count; i++) {
+            int position = recordOffset(i);
+            int bucket = map.getInt(position);
+            if (bucket >= toBucket) {
+                break;
+            }
+            visitor.visit(bucket, map.getInt(position + 4), map.getLong(position + 8), map.getLong(position + 16));
+        }
+    }
+
+    /**
+     * Drop every record before a bucket
+     * The kept records go to a side file that replaces this one by rename, so a crash
+     * mid-compaction leaves either the old series or the new one, both sorted
+     */
+    public synchronized void retainFrom(int bucket) throws IOException {
+        long first = lowerBound(bucket);
+        if (first == 0) {
+            return;
+        }
+        long kept = count - first;
+        File compacted = compactedPath();
+        try (RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+            FileChannel outChannel = out.getChannel();
+            outChannel.truncate(0);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(kept);
+            header.flip();
+            writeFully(outChannel, header, 0);
+
+            ByteBuffer records = map.duplicate();
+            records.limit(recordOffset(count));
+            records.position(recordOffset(first));
+            writeFully(outChannel, records, HEADER_BYTES);
+            outChannel.force(true);
+        }
+        if (!compacted.renameTo(path)) {
+            throw new IOException("Could not replace " + path + " with its compacted copy");
+        }
+
+        // The old mapping still points at the replaced file
+        channel.close();
+        file.close();
+        open();
+    }
+
+    /**
+     * Write dirty pages back to storage
+     */
+    public synchronized void force() {
+        map.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        channel.close();
+        file.close();
+    }
+
+    private long lowerBound(int bucket) {
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (map.getInt(recordOffset(mid)) < bucket) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private File compactedPath() {
+        return new File(path.getPath() + COMPACT_SUFFIX);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+
+    private static int recordOffset(long index) {
+        return (int) (HEADER_BYTES + index * RECORD_BYTES);
+    }
+
+    private void mapCapacity(long records) throws IOException {
+        // Mapping past the end grows the file
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + records * RECORD_BYTES);
+        capacity = records;
+    }
+}
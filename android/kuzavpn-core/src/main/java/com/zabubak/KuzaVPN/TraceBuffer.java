@@ -0,0 +1,136 @@
+package com.zabubak.KuzaVPN;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size ring of typed trace events: an event id from TraceEvent, a timestamp
+ * and three long fields, laid out in one preallocated array
+ * Writers claim a slot with a single atomic increment and never lock or allocate,
+ * so recording is cheap enough for the connect and health paths. Each slot carries
+ * a sequence stamp that readers check before and after copying it, so a dump
+ * taken while events are recorded skips slots being rewritten instead of
+ * returning torn events
+ */
+public final class TraceBuffer {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // Per slot: sequence stamp, time, event, a, b, c
+    private static final int SLOT_LONGS = 6;
+    // Stamp of a slot being written; sequences start at 0, so no event has it
+    private static final long WRITING = -1;
+
+    private static final TraceBuffer INSTANCE = new TraceBuffer(DEFAULT_CAPACITY);
+
+    /**
+     * Receives events during a dump, oldest first
+     */
+    public interface Visitor {
+        void visit(long sequence, int event, long timeNanos, long a, long b, long c);
+    }
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+
+    /**
+     * @param capacity events kept; rounded up to a power of two
+     */
+    public TraceBuffer(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Trace buffer needs at least 2 slots");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        slots = new AtomicLongArray(size * SLOT_LONGS);
+        for (int i = 0; i < size; i++) {
+            slots.set(i * SLOT_LONGS, WRITING);
+        }
+    }
+
+    /**
+     * Process-wide buffer shared by the service, its helpers and KuzaVpnModule
+     */
+    public static TraceBuffer getInstance() {
+        return INSTANCE;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public void record(int event) {
+        record(event, 0, 0, 0);
+    }
+
+    public void record(int event, long a) {
+        record(event, a, 0, 0);
+    }
+
+    public void record(int event, long a, long b) {
+        record(event, a, b, 0);
+    }
+
+    /**
+     * Append an event, overwriting the oldest once the ring is full
+     * Safe from any thread; a writer that stalls for a whole lap of the ring can mix
+     * its fields with the next owner of its slot, which the buffer's size makes moot
+     */
+    public void record(int event, long a, long b, long c) {
+        long sequence = cursor.getAndIncrement();
+        int base = (int) (sequence & mask) * SLOT_LONGS;
+        // Volatile, so readers see the slot as busy before any field changes
+        slots.set(base, WRITING);
+        slots.lazySet(base + 1, System.nanoTime());
+        slots.lazySet(base + 2, event);
+        slots.lazySet(base + 3, a);
+        slots.lazySet(base + 4, b);
+        slots.lazySet(base + 5, c);
+        // Release: the fields above are visible before the stamp that validates them
+        slots.lazySet(base, sequence);
+    }
+
+    /**
+     * Events recorded so far, including those already overwritten
+     */
+    public long recorded() {
+        return cursor.get();
+    }
+
+    /**
+     * Visit the events still in the ring, oldest first
+     * @return how many were visited
+     */
+    public int dump(Visitor visitor) {
+        long end = cursor.get();
+        long start = Math.max(0, end - capacity());
+        int visited = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int base = (int) (sequence & mask) * SLOT_LONGS;
+            if (slots.get(base) != sequence) {
+                // Still being written, or already overwritten by a newer lap
+                continue;
+            }
+            long timeNanos = slots.get(base + 1);
+            int event = (int) slots.get(base + 2);
+            long a = slots.get(base + 3);
+            long b = slots.get(base + 4);
+            long c = slots.get(base + 5);
+            if (slots.get(base) != sequence) {
+                continue;
+            }
+            visitor.visit(sequence, event, timeNanos, a, b, c);
+            visited++;
+        }
+        return visited;
+    }
+
+    /**
+     * Forget every event; concurrent writers may leave one or two behind
+     */
+    public void clear() {
+        for (int i = 0; i <= mask; i++) {
+            slots.set(i * SLOT_LONGS, WRITING);
+        }
+    }
+}
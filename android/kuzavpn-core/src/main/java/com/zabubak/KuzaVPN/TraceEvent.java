@@ -0,0 +1,78 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * Event ids recorded in TraceBuffer and what their a/b/c fields hold
+ * Ids are stable: dumps taken by older builds keep their meaning
+ */
+public final class TraceEvent {
+    public static final int CONNECT_START = 1;      // a: operation token
+    public static final int CONFIG_PARSED = 2;      // a: parse ms, b: peers
+    public static final int ENDPOINTS_RESOLVED = 3; // a: resolve ms, b: tunnel MTU
+    public static final int INTERFACE_UP = 4;       // a: establish ms, b: routes, c: MTU
+    public static final int SET_STATE = 5;          // a: attempt, b: setState ms, c: 1 if UP
+    public static final int CONNECTED = 6;          // a: total ms, b: attempts
+    public static final int FIRST_HANDSHAKE = 7;    // a: handshake ms, -1 if none came
+    public static final int CONNECT_FAILED = 8;     // a: total ms, b: attempts
+    public static final int CONNECT_CANCELLED = 9;  // a: operation token
+    public static final int PHASE = 10;             // a: from TunnelPhase ordinal, b: to ordinal
+    public static final int SERVER_SWITCH = 11;     // a: 1 hot, 0 rebuild, b: gap ms
+    public static final int ROAM = 12;              // a: 1 re-handshake, 0 rebuild, b: recovery ms, -1 if none
+    public static final int NETWORK_LOST = 13;
+    public static final int MTU_REBUILD = 14;       // a: measured tunnel MTU, b: interface MTU
+    public static final int UNHEALTHY = 15;         // a: 1 if receive stalled, b: 1 if handshake stale, c: checks
+    public static final int REHANDSHAKE = 16;       // a: 1 if accepted
+    public static final int RECONNECT = 17;         // a: 1 if UP again, b: attempt
+    public static final int RECOVERED = 18;         // a: unhealthy checks before recovery
+    public static final int QUOTA = 19;             // a: 1 soft, 2 hard, b: used bytes, c: limit bytes
+    public static final int PAUSED = 20;
+    public static final int RESUMED = 21;           // a: 1 if UP again
+    public static final int DISCONNECTED = 22;      // a: teardown ms
+    public static final int OPERATION_FAILED = 23;  // a: operation token
+    public static final int STATS_FAILED = 24;
+    public static final int ICON_PIPE_CLOSED = 25;
+    public static final int KEEPALIVE = 26;         // a: new keepalive s, b: previous s, c: 1 after a failure
+    public static final int DOMAIN_ROUTES = 27;     // a: domain prefixes kept off the tunnel
+    public static final int SERVER_RACE = 28;       // a: winner rank, -1 if none answered, b: winner ms, c: margin ms
+
+    private static final String[] NAMES = {
+        null,
+        "connectStart",
+        "configParsed",
+        "endpointsResolved",
+        "interfaceUp",
+        "setState",
+        "connected",
+        "firstHandshake",
+        "connectFailed",
+        "connectCancelled",
+        "phase",
+        "serverSwitch",
+        "roam",
+        "networkLost",
+        "mtuRebuild",
+        "unhealthy",
+        "rehandshake",
+        "reconnect",
+        "recovered",
+        "quota",
+        "paused",
+        "resumed",
+        "disconnected",
+        "operationFailed",
+        "statsFailed",
+        "iconPipeClosed",
+        "keepalive",
+        "domainRoutes",
+        "serverRace"
+    };
+
+    private TraceEvent() {
+    }
+
+    /**
+     * Name used in dumps, or "event<id>" for an id this build does not know
+     */
+    public static String name(int event) {
+        return event > 0 && event < NAMES.length ? NAMES[event] : "event" + event;
+    }
+}
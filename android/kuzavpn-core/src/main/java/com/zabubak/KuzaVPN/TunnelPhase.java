@@ -0,0 +1,46 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * Internal lifecycle of the tunnel as driven by TunnelExecutor
+ * IDLE → ESTABLISHING → HANDSHAKING → UP → TEARING_DOWN → IDLE, with UP ⇄ PAUSED
+ * while the data quota holds the tunnel down
+ */
+public enum TunnelPhase {
+    IDLE,
+    ESTABLISHING,
+    HANDSHAKING,
+    UP,
+    PAUSED,
+    TEARING_DOWN;
+
+    /**
+     * Whether the tunnel may move from this phase to the next one
+     */
+    public boolean canMoveTo(TunnelPhase next) {
+        if (next == TEARING_DOWN) {
+            // A teardown can interrupt anything, including a teardown that is being retried
+            return true;
+        }
+        switch (this) {
+            case IDLE:
+                return next == ESTABLISHING;
+            case ESTABLISHING:
+                // A connect superseded mid-way is restarted by the one replacing it
+                return next == HANDSHAKING || next == ESTABLISHING;
+            case HANDSHAKING:
+                // Retried reconnects stay in HANDSHAKING, a failed hot switch rebuilds
+                return next == UP || next == HANDSHAKING || next == ESTABLISHING;
+            case UP:
+                // Re-handshakes, reconnects and hot switches go back to HANDSHAKING,
+                // a server switch that needs a new interface goes back to ESTABLISHING
+                return next == HANDSHAKING || next == ESTABLISHING || next == PAUSED;
+            case PAUSED:
+                // Resuming handshakes on the kept interface, a new connect rebuilds it
+                return next == HANDSHAKING || next == ESTABLISHING;
+            case TEARING_DOWN:
+                return next == IDLE;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.zabubak.KuzaVPN;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A tunnel config as plain strings, before any key or address is decoded
+ * Parsed from wg-quick .conf text or the JSON form built by lib/VPNModule.ts
+ * (single server at the top level, or a "peers" array; a "config" key may carry
+ * wg-quick text; "excludedRoutes" and "excludeLan" carve prefixes out of every
+ * peer's allowed IPs through RouteCompiler). WireGuardConfigCompiler turns it into
+ * a WireGuard Config, which is where keys and addresses get validated. Domain rules
+ * ("excludedDomains") are not part of the spec: their addresses change with DNS, so
+ * the service resolves and routes them itself (see excludedDomains())
+ */
+public final class TunnelSpec {
+    // Used when the JSON form leaves a field out, matching what the app always sent
+    static final String DEFAULT_ADDRESS = "10.0.0.2/24";
+    static final String DEFAULT_DNS = "1.1.1.1, 8.8.8.8";
+    static final String DEFAULT_ALLOWED_IPS = "0.0.0.0/0, ::/0";
+    static final int DEFAULT_PERSISTENT_KEEPALIVE = 25;
+
+    public static final class Peer {
+        public final String publicKey;
+        // Null when the peer has none
+        public final String presharedKey;
+        public final String endpoint;
+        public final List<String> allowedIps;
+        // 0 when keepalive is off
+        public final int persistentKeepalive;
+
+        Peer(String publicKey, String presharedKey, String endpoint, List<String> allowedIps,
+                int persistentKeepalive) {
+            this.publicKey = publicKey;
+            this.presharedKey = presharedKey;
+            this.endpoint = endpoint;
+            this.allowedIps = Collections.unmodifiableList(allowedIps);
+            this.persistentKeepalive = persistentKeepalive;
+        }
+    }
+
+    public final String privateKey;
+    public final List<String> addresses;
+    // DNS servers and search domains, as wg-quick mixes them
+    public final List<String> dnsServers;
+    public final List<String> includedApplications;
+    public final List<String> excludedApplications;
+    // 0 when the config leaves them to the defaults
+    public final int mtu;
+    public final int listenPort;
+    public final List<Peer> peers;
+
+    TunnelSpec(String privateKey, List<String> addresses, List<String> dnsServers,
+            List<String> includedApplications, List<String> excludedApplications, int mtu, int listenPort,
+            List<Peer> peers) {
+        this.privateKey = privateKey;
+        this.addresses = Collections.unmodifiableList(addresses);
+        this.dnsServers = Collections.unmodifiableList(dnsServers);
+        this.includedApplications = Collections.unmodifiableList(includedApplications);
+        this.excludedApplications = Collections.unmodifiableList(excludedApplications);
+        this.mtu = mtu;
+        this.listenPort = listenPort;
+        this.peers = Collections.unmodifiableList(peers);
+    }
+
+    /**
+     * @param source wg-quick text or the JSON config form
+     * @throws IllegalArgumentException if the config cannot be parsed
+     */
+    public static TunnelSpec parse(String source) {
+        if (source == null || source.trim().isEmpty()) {
+            throw new IllegalArgumentException("VPN configuration is null or empty");
+        }
+        String trimmed = source.trim();
+        try {
+            return trimmed.startsWith("{") ? parseJson(new JSONObject(trimmed)) : parseWgQuick(trimmed);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid WireGuard config: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The "excludedDomains" rules of the JSON form, empty for wg-quick text
+     * @throws IllegalArgumentException if the JSON cannot be parsed
+     */
+    public static List<String> excludedDomains(String source) {
+        if (source == null || !source.trim().startsWith("{")) {
+            return Collections.emptyList();
+        }
+        try {
+            JSONArray rules = new JSONObject(source.trim()).optJSONArray("excludedDomains");
+            if (rules == null) {
+                return Collections.emptyList();
+            }
+            List<String> domains = new ArrayList<>(rules.length());
+            for (int i = 0; i < rules.length(); i++) {
+                String rule = rules.getString(i).trim();
+                if (!rule.isEmpty()) {
+                    domains.add(rule);
+                }
+            }
+            return domains;
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid WireGuard config: " + e.getMessage(), e);
+        }
+    }
+
+    private static TunnelSpec parseJson(JSONObject json) throws JSONException {
+        TunnelSpec spec = parseJsonPeers(json);
+
+        // Split tunneling: carve excluded prefixes out of every peer's allowed IPs
+        List<String> excludedRoutes = new ArrayList<>();
+        if (json.optBoolean("excludeLan", false)) {
+            excludedRoutes.addAll(RouteCompiler.LOCAL_NETWORKS);
+        }
+        JSONArray excluded = json.optJSONArray("excludedRoutes");
+        if (excluded != null) {
+            for (int i = 0; i < excluded.length(); i++) {
+                excludedRoutes.add(excluded.getString(i));
+            }
+        }
+        return excludedRoutes.isEmpty() ? spec : spec.excludeRoutes(excludedRoutes);
+    }
+
+    private static TunnelSpec parseJsonPeers(JSONObject json) throws JSONException {
+        String wgQuick = json.optString("config", "");
+        if (!wgQuick.trim().isEmpty()) {
+            return parseWgQuick(wgQuick.trim());
+        }
+
+        List<Peer> peers = new ArrayList<>();
+        JSONArray peerArray = json.optJSONArray("peers");
+        if (peerArray != null && peerArray.length() > 0) {
+            for (int i = 0; i < peerArray.length(); i++) {
+                // Peers inherit the top-level allowedIPs and keepalive unless they set their own
+                peers.add(parseJsonPeer(peerArray.getJSONObject(i), json));
+            }
+        } else {
+            peers.add(parseJsonPeer(json, json));
+        }
+
+        return new TunnelSpec(json.getString("privateKey"),
+            split(joinList(json, "address", DEFAULT_ADDRESS)),
+            split(joinList(json, "dns", DEFAULT_DNS)),
+            new ArrayList<>(), new ArrayList<>(),
+            json.has("mtu") ? json.getInt("mtu") : 0, 0, peers);
+    }
+
+    private static Peer parseJsonPeer(JSONObject peer, JSONObject defaults) throws JSONException {
+        String endpoint = peer.optString("endpoint", peer.optString("serverEndpoint", "")).trim();
+        String presharedKey = peer.optString("presharedKey", "").trim();
+        return new Peer(peer.getString("publicKey"),
+            presharedKey.isEmpty() ? null : presharedKey,
+            endpoint.isEmpty() ? null : endpoint,
+            split(joinList(peer, "allowedIPs", joinList(defaults, "allowedIPs", DEFAULT_ALLOWED_IPS))),
+            peer.optInt("persistentKeepalive", defaults.optInt("persistentKeepalive", DEFAULT_PERSISTENT_KEEPALIVE)));
+    }
+
+    /**
+     * The subset of wg-quick that the Android backend understands, like Config.parse
+     */
+    static TunnelSpec parseWgQuick(String text) {
+        String privateKey = null;
+        List<String> addresses = new ArrayList<>();
+        List<String> dnsServers = new ArrayList<>();
+        List<String> includedApplications = new ArrayList<>();
+        List<String> excludedApplications = new ArrayList<>();
+        int mtu = 0;
+        int listenPort = 0;
+        List<Peer> peers = new ArrayList<>();
+        boolean sawInterface = false;
+
+        // Fields of the [Peer] section being read
+        boolean inPeer = false;
+        String publicKey = null;
+        String presharedKey = null;
+        String endpoint = null;
+        List<String> allowedIps = new ArrayList<>();
+        int keepalive = 0;
+
+        BufferedReader reader = new BufferedReader(new StringReader(text));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                if (line.startsWith("[")) {
+                    if (inPeer) {
+                        peers.add(new Peer(requireKey(publicKey, "PublicKey"), presharedKey, endpoint, allowedIps,
+                            keepalive));
+                    }
+                    String section = line.toLowerCase(Locale.ROOT);
+                    if ("[interface]".equals(section)) {
+                        sawInterface = true;
+                        inPeer = false;
+                    } else if ("[peer]".equals(section)) {
+                        inPeer = true;
+                        publicKey = null;
+                        presharedKey = null;
+                        endpoint = null;
+                        allowedIps = new ArrayList<>();
+                        keepalive = 0;
+                    } else {
+                        throw new IllegalArgumentException("Unknown section " + line);
+                    }
+                    continue;
+                }
+                if (!sawInterface && !inPeer) {
+                    throw new IllegalArgumentException("Attribute outside a section: " + line);
+                }
+
+                int equals = line.indexOf('=');
+                if (equals <= 0) {
+                    throw new IllegalArgumentException("Malformed line: " + line);
+                }
+                String key = line.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+                String value = line.substring(equals + 1).trim();
+                if (inPeer) {
+                    switch (key) {
+                        case "publickey":
+                            publicKey = value;
+                            break;
+                        case "presharedkey":
+                            presharedKey = value;
+                            break;
+                        case "endpoint":
+                            endpoint = value;
+                            break;
+                        case "allowedips":
+                            allowedIps.addAll(split(value));
+                            break;
+                        case "persistentkeepalive":
+                            keepalive = "off".equalsIgnoreCase(value) ? 0 : parseInt(value, "PersistentKeepalive");
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown [Peer] attribute " + key);
+                    }
+                } else {
+                    switch (key) {
+                        case "privatekey":
+                            privateKey = value;
+                            break;
+                        case "address":
+                            addresses.addAll(split(value));
+                            break;
+                        case "dns":
+                            dnsServers.addAll(split(value));
+                            break;
+                        case "includedapplications":
+                            includedApplications.addAll(split(value));
+                            break;
+                        case "excludedapplications":
+                            excludedApplications.addAll(split(value));
+                            break;
+                        case "mtu":
+                            mtu = parseInt(value, "MTU");
+                            break;
+                        case "listenport":
+                            listenPort = parseInt(value, "ListenPort");
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown [Interface] attribute " + key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Unreachable: the reader is backed by a string
+            throw new IllegalArgumentException(e);
+        }
+        if (inPeer) {
+            peers.add(new Peer(requireKey(publicKey, "PublicKey"), presharedKey, endpoint, allowedIps, keepalive));
+        }
+        if (!sawInterface) {
+            throw new IllegalArgumentException("Missing [Interface] section");
+        }
+        return new TunnelSpec(requireKey(privateKey, "PrivateKey"), addresses, dnsServers, includedApplications,
+            excludedApplications, mtu, listenPort, peers);
+    }
+
+    /**
+     * Copy with each peer's allowed IPs minus the excluded prefixes, minimised
+     * @throws IllegalArgumentException if a prefix is not a numeric CIDR
+     */
+    public TunnelSpec excludeRoutes(List<String> excludedRoutes) {
+        List<Peer> routed = new ArrayList<>(peers.size());
+        for (Peer peer : peers) {
+            RouteCompiler routes = new RouteCompiler().excludeAll(excludedRoutes).includeAll(peer.allowedIps);
+            List<String> allowedIps = new ArrayList<>();
+            for (RouteCompiler.Route route : routes.compile()) {
+                allowedIps.add(route.toString());
+            }
+            routed.add(new Peer(peer.publicKey, peer.presharedKey, peer.endpoint, allowedIps,
+                peer.persistentKeepalive));
+        }
+        return new TunnelSpec(privateKey, addresses, dnsServers, includedApplications, excludedApplications, mtu,
+            listenPort, routed);
+    }
+
+    /**
+     * A JSON field given either as an array or a comma-separated string, as one wg-quick style list
+     */
+    private static String joinList(JSONObject json, String name, String fallback) throws JSONException {
+        JSONArray array = json.optJSONArray(name);
+        if (array != null) {
+            StringBuilder joined = new StringBuilder();
+            for (int i = 0; i < array.length(); i++) {
+                String value = array.getString(i).trim();
+                if (value.isEmpty()) {
+                    continue;
+                }
+                if (joined.length() > 0) {
+                    joined.append(", ");
+                }
+                joined.append(value);
+            }
+            return joined.length() > 0 ? joined.toString() : fallback;
+        }
+        String value = json.optString(name, "").trim();
+        return value.isEmpty() ? fallback : value;
+    }
+
+    private static List<String> split(String list) {
+        List<String> values = new ArrayList<>();
+        for (String value : list.split(",")) {
+            String trimmed = value.trim();
+            if (!trimmed.isEmpty()) {
+                values.add(trimmed);
+            }
+        }
+        return values;
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static String requireKey(String key, String name) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,13 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * Tunnel lifecycle states published by KuzaVpnService
+ */
+public enum TunnelState {
+    ESTABLISHING,
+    HANDSHAKING,
+    UP,
+    PAUSED,
+    FAILED,
+    DOWN
+}
@@ -0,0 +1,246 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * Throughput engine fed with the WireGuard backend's cumulative rx/tx counters
+ * Samples land in a fixed-size primitive ring buffer; instantaneous rate, EWMA
+ * smoothed rate and session totals are updated in place, so recording a sample
+ * never allocates
+ */
+public final class TunnelStatsEngine {
+    private static final int DEFAULT_CAPACITY = 120;          // 2 minutes at 1 Hz
+    private static final double DEFAULT_SMOOTHING_MS = 5_000; // EWMA time constant
+
+    private static final TunnelStatsEngine INSTANCE = new TunnelStatsEngine(DEFAULT_CAPACITY, DEFAULT_SMOOTHING_MS);
+
+    private final long[] sampleTimesMs;
+    private final long[] sampleRxBytes;
+    private final long[] sampleTxBytes;
+    private final double smoothingMs;
+
+    private int head;
+    private int count;
+    private boolean active;
+
+    private long sessionStartMs;
+    private long lastCounterRx;
+    private long lastCounterTx;
+    private long sessionRxBytes;
+    private long sessionTxBytes;
+
+    private double rxRate;
+    private double txRate;
+    private double smoothedRxRate;
+    private double smoothedTxRate;
+
+    private long latestHandshakeMs;
+
+    /**
+     * Everything a status read needs, taken under one lock so rx and tx agree
+     */
+    public static final class Snapshot {
+        public final boolean active;
+        public final long sessionStartMs;
+        public final long rxBytes;
+        public final long txBytes;
+        public final double rxRate;
+        public final double txRate;
+        public final double smoothedRxRate;
+        public final double smoothedTxRate;
+        public final long lastSampleMs;
+        public final long latestHandshakeMs;
+
+        Snapshot(TunnelStatsEngine engine) {
+            active = engine.active;
+            sessionStartMs = engine.sessionStartMs;
+            rxBytes = engine.sessionRxBytes;
+            txBytes = engine.sessionTxBytes;
+            rxRate = engine.rxRate;
+            txRate = engine.txRate;
+            smoothedRxRate = engine.smoothedRxRate;
+            smoothedTxRate = engine.smoothedTxRate;
+            lastSampleMs = engine.lastSampleMs();
+            latestHandshakeMs = engine.latestHandshakeMs;
+        }
+    }
+
+    public TunnelStatsEngine(int capacity, double smoothingMs) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Ring buffer needs at least 2 slots");
+        }
+        this.sampleTimesMs = new long[capacity];
+        this.sampleRxBytes = new long[capacity];
+        this.sampleTxBytes = new long[capacity];
+        this.smoothingMs = smoothingMs;
+    }
+
+    /**
+     * Process-wide engine shared by KuzaVpnService and KuzaVpnModule
+     */
+    public static TunnelStatsEngine getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start a new session; counters from the backend restart at zero per tunnel
+     */
+    public synchronized void startSession(long nowMs) {
+        head = 0;
+        count = 0;
+        active = true;
+        sessionStartMs = nowMs;
+        lastCounterRx = 0;
+        lastCounterTx = 0;
+        sessionRxBytes = 0;
+        sessionTxBytes = 0;
+        rxRate = 0;
+        txRate = 0;
+        smoothedRxRate = 0;
+        smoothedTxRate = 0;
+        latestHandshakeMs = 0;
+    }
+
+    public synchronized void endSession() {
+        active = false;
+        rxRate = 0;
+        txRate = 0;
+        smoothedRxRate = 0;
+        smoothedTxRate = 0;
+    }
+
+    /**
+     * Record the backend's cumulative counters
+     * A counter that goes backwards (tunnel re-created) is treated as restarted from zero
+     */
+    public synchronized void record(long nowMs, long counterRx, long counterTx) {
+        if (!active) {
+            return;
+        }
+
+        long rxDelta = counterRx >= lastCounterRx ? counterRx - lastCounterRx : counterRx;
+        long txDelta = counterTx >= lastCounterTx ? counterTx - lastCounterTx : counterTx;
+        lastCounterRx = counterRx;
+        lastCounterTx = counterTx;
+        sessionRxBytes += rxDelta;
+        sessionTxBytes += txDelta;
+
+        if (count > 0) {
+            int previous = (head - 1 + sampleTimesMs.length) % sampleTimesMs.length;
+            long elapsedMs = nowMs - sampleTimesMs[previous];
+            if (elapsedMs > 0) {
+                rxRate = rxDelta * 1000.0 / elapsedMs;
+                txRate = txDelta * 1000.0 / elapsedMs;
+
+                // Time-aware EWMA so an irregular cadence doesn't skew the average
+                double alpha = 1.0 - Math.exp(-elapsedMs / smoothingMs);
+                smoothedRxRate += alpha * (rxRate - smoothedRxRate);
+                smoothedTxRate += alpha * (txRate - smoothedTxRate);
+            }
+        }
+
+        sampleTimesMs[head] = nowMs;
+        sampleRxBytes[head] = sessionRxBytes;
+        sampleTxBytes[head] = sessionTxBytes;
+        head = (head + 1) % sampleTimesMs.length;
+        if (count < sampleTimesMs.length) {
+            count++;
+        }
+    }
+
+    /**
+     * Latest handshake of any peer, in epoch ms; 0 while none has completed
+     */
+    public synchronized void recordHandshake(long epochMs) {
+        if (active && epochMs > latestHandshakeMs) {
+            latestHandshakeMs = epochMs;
+        }
+    }
+
+    /**
+     * Copy the session's samples into the arrays, oldest first
+     * rx/tx are cumulative session bytes at each sample time
+     * @return how many samples were copied, at most the arrays' length
+     */
+    public synchronized int copySamples(long[] timesMs, long[] rxBytes, long[] txBytes) {
+        int copied = Math.min(count, Math.min(timesMs.length, Math.min(rxBytes.length, txBytes.length)));
+        int start = (head - copied + sampleTimesMs.length) % sampleTimesMs.length;
+        for (int i = 0; i < copied; i++) {
+            int slot = (start + i) % sampleTimesMs.length;
+            timesMs[i] = sampleTimesMs[slot];
+            rxBytes[i] = sampleRxBytes[slot];
+            txBytes[i] = sampleTxBytes[slot];
+        }
+        return copied;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Average receive rate over the last windowMs, read straight from the ring
+     */
+    public synchronized double averageRxRate(long windowMs) {
+        return averageRate(sampleRxBytes, windowMs);
+    }
+
+    private double averageRate(long[] totals, long windowMs) {
+        if (count < 2) {
+            return 0;
+        }
+        int newest = (head - 1 + sampleTimesMs.length) % sampleTimesMs.length;
+        int oldest = newest;
+        for (int i = 1; i < count; i++) {
+            int candidate = (newest - i + sampleTimesMs.length) % sampleTimesMs.length;
+            if (sampleTimesMs[newest] - sampleTimesMs[candidate] > windowMs) {
+                break;
+            }
+            oldest = candidate;
+        }
+        long elapsedMs = sampleTimesMs[newest] - sampleTimesMs[oldest];
+        return elapsedMs > 0 ? (totals[newest] - totals[oldest]) * 1000.0 / elapsedMs : 0;
+    }
+
+    public synchronized boolean isActive() {
+        return active;
+    }
+
+    public synchronized long getSessionStartMs() {
+        return sessionStartMs;
+    }
+
+    public synchronized long getSessionRxBytes() {
+        return sessionRxBytes;
+    }
+
+    public synchronized long getSessionTxBytes() {
+        return sessionTxBytes;
+    }
+
+    public synchronized double getRxRate() {
+        return rxRate;
+    }
+
+    public synchronized double getTxRate() {
+        return txRate;
+    }
+
+    public synchronized double getSmoothedRxRate() {
+        return smoothedRxRate;
+    }
+
+    public synchronized double getSmoothedTxRate() {
+        return smoothedTxRate;
+    }
+
+    public synchronized long getLastSampleMs() {
+        return lastSampleMs();
+    }
+
+    public int getCapacity() {
+        return sampleTimesMs.length;
+    }
+
+    private long lastSampleMs() {
+        return count > 0 ? sampleTimesMs[(head - 1 + sampleTimesMs.length) % sampleTimesMs.length] : 0;
+    }
+}
@@ -0,0 +1,63 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class Blake2sTest {
+    @Test
+    public void hashesAbcAsRfc7693AppendixB() {
+        assertArrayEquals(Hex.decode("508c5e8c327c14e2e1a72ba34eeb452f37458b209ed63a294d999b4c86675982"),
+            Blake2s.hash("abc".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * RFC 7693 Appendix E self-test: keyed and unkeyed digests of every length and input
+     * size in the table, hashed together into one value
+     */
+    @Test
+    public void passesRfc7693SelfTest() {
+        int[] digestLengths = {16, 20, 28, 32};
+        int[] inputLengths = {0, 3, 64, 65, 255, 1024};
+        byte[][] digests = new byte[digestLengths.length * inputLengths.length * 2][];
+        int next = 0;
+        for (int outLength : digestLengths) {
+            for (int inLength : inputLengths) {
+                byte[] input = selfTestSequence(inLength, inLength);
+                digests[next++] = Blake2s.digest(outLength, null, input);
+                digests[next++] = Blake2s.digest(outLength, selfTestSequence(outLength, outLength), input);
+            }
+        }
+
+        assertArrayEquals(Hex.decode("6a411f08ce25adcdfb02aba641451cec53c598b24f4fc787fbdc88797f4c1dfe"),
+            Blake2s.hash(digests));
+    }
+
+    @Test
+    public void hashesPartsAsOneInput() {
+        byte[] whole = selfTestSequence(200, 7);
+        byte[] head = new byte[70];
+        byte[] tail = new byte[130];
+        System.arraycopy(whole, 0, head, 0, head.length);
+        System.arraycopy(whole, head.length, tail, 0, tail.length);
+
+        assertArrayEquals(Blake2s.hash(whole), Blake2s.hash(head, tail));
+        assertArrayEquals(Blake2s.mac(head, whole), Blake2s.mac(head, head, tail));
+    }
+
+    // selftest_seq from RFC 7693 Appendix E
+    private static byte[] selfTestSequence(int length, int seed) {
+        int a = 0xDEAD4BAD * seed;
+        int b = 1;
+        byte[] out = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int t = a + b;
+            a = b;
+            b = t;
+            out[i] = (byte) (t >>> 24);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,38 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class BoundedHistoryTest {
+    @Test
+    public void oldestRecordsAreOverwritten() {
+        BoundedHistory<Long> history = new BoundedHistory<>(3);
+        assertNull(history.getLast());
+
+        for (long value = 1; value <= 5; value++) {
+            history.add(value);
+        }
+
+        assertEquals(3, history.size());
+        assertEquals(Long.valueOf(5), history.getLast());
+        assertEquals(3, history.count(value -> value >= 3));
+        assertEquals(3, history.percentile(Long::longValue, 0));
+    }
+
+    @Test
+    public void percentileIsNearestRankOverRecordsWithAValue() {
+        BoundedHistory<Long> history = new BoundedHistory<>(10);
+        for (long value : new long[] {40, -1, 10, 30, -1, 20}) {
+            history.add(value);
+        }
+
+        assertEquals(10, history.percentile(Long::longValue, 0));
+        assertEquals(10, history.percentile(Long::longValue, 25));
+        assertEquals(20, history.percentile(Long::longValue, 50));
+        assertEquals(30, history.percentile(Long::longValue, 51));
+        assertEquals(40, history.percentile(Long::longValue, 100));
+        assertEquals(-1, new BoundedHistory<Long>(2).percentile(Long::longValue, 50));
+    }
+}
@@ -0,0 +1,45 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+public class ChaChaPolyTest {
+    @Test
+    public void sealsAsTheJdkCipher() throws Exception {
+        Random random = new Random(7693);
+        int[] lengths = {0, 1, 15, 16, 17, 32, 63, 64, 65, 128, 200};
+        long[] counters = {0, 1, 0x0102030405060708L, -1L};
+        for (int length : lengths) {
+            for (long counter : counters) {
+                byte[] key = new byte[32];
+                byte[] plaintext = new byte[length];
+                byte[] ad = new byte[random.nextInt(40)];
+                random.nextBytes(key);
+                random.nextBytes(plaintext);
+                random.nextBytes(ad);
+
+                assertArrayEquals("length " + length + ", counter " + counter,
+                    jdkSeal(key, counter, plaintext, ad), ChaChaPoly.seal(key, counter, plaintext, ad));
+            }
+        }
+    }
+
+    // WireGuard's nonce: 32 zero bits, then the counter little-endian
+    private static byte[] jdkSeal(byte[] key, long counter, byte[] plaintext, byte[] ad) throws Exception {
+        byte[] nonce = new byte[12];
+        for (int i = 0; i < 8; i++) {
+            nonce[4 + i] = (byte) (counter >>> (8 * i));
+        }
+        Cipher cipher = Cipher.getInstance("ChaCha20-Poly1305");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "ChaCha20"), new IvParameterSpec(nonce));
+        cipher.updateAAD(ad);
+        return cipher.doFinal(plaintext);
+    }
+}
@@ -0,0 +1,67 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConnectTimingTest {
+    @Test
+    public void phasesAccumulateAndUnreachedOnesStayUnset() {
+        ConnectTiming timing = new ConnectTiming(1_000);
+        for (ConnectTiming.Phase phase : ConnectTiming.Phase.values()) {
+            assertEquals(phase.name(), -1, timing.get(phase));
+        }
+
+        timing.add(ConnectTiming.Phase.SET_STATE, 120);
+        timing.countAttempt();
+        timing.add(ConnectTiming.Phase.RETRY_WAIT, 1_000);
+        timing.add(ConnectTiming.Phase.SET_STATE, 80);
+        timing.countAttempt();
+        timing.add(ConnectTiming.Phase.RESOLVE, -5);
+
+        assertEquals(1_000, timing.startedAtMs);
+        assertEquals(200, timing.get(ConnectTiming.Phase.SET_STATE));
+        assertEquals(0, timing.get(ConnectTiming.Phase.RESOLVE));
+        assertEquals(-1, timing.get(ConnectTiming.Phase.HANDSHAKE));
+        assertEquals(2, timing.getAttempts());
+    }
+
+    @Test
+    public void localAndNetworkTimeSplitThePhases() {
+        ConnectTiming timing = new ConnectTiming(0);
+        timing.add(ConnectTiming.Phase.RACE, 300);
+        timing.add(ConnectTiming.Phase.PARSE, 2);
+        timing.add(ConnectTiming.Phase.RESOLVE, 40);
+        timing.add(ConnectTiming.Phase.ESTABLISH, 15);
+        timing.add(ConnectTiming.Phase.SET_STATE, 60);
+        timing.add(ConnectTiming.Phase.RETRY_WAIT, 1_000);
+        timing.add(ConnectTiming.Phase.HANDSHAKE, 90);
+        timing.add(ConnectTiming.Phase.TOTAL, 1_600);
+
+        assertEquals(2 + 15 + 60, timing.getLocalMs());
+        assertEquals(300 + 40 + 1_000 + 90, timing.getNetworkMs());
+
+        // Phases never reached count as nothing, not as -1
+        ConnectTiming parsedOnly = new ConnectTiming(0);
+        parsedOnly.add(ConnectTiming.Phase.PARSE, 3);
+        assertEquals(3, parsedOnly.getLocalMs());
+        assertEquals(0, parsedOnly.getNetworkMs());
+    }
+
+    @Test
+    public void outcomeIsTheLastOneReported() {
+        ConnectTiming timing = new ConnectTiming(0);
+        assertFalse(timing.isSuccess());
+        assertNull(timing.getFailure());
+
+        timing.succeeded();
+        assertTrue(timing.isSuccess());
+
+        timing.failed("No handshake");
+        assertFalse(timing.isSuccess());
+        assertEquals("No handshake", timing.getFailure());
+    }
+}
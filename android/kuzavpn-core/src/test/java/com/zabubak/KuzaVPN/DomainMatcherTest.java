@@ -0,0 +1,187 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DomainMatcherTest {
+    @Test
+    public void domainRuleCoversItselfAndEverythingUnderIt() {
+        DomainMatcher matcher = DomainMatcher.compile(List.of("example.com"));
+
+        assertTrue(matcher.matches("example.com"));
+        assertTrue(matcher.matches("www.example.com"));
+        assertTrue(matcher.matches("a.b.example.com"));
+        assertFalse(matcher.matches("com"));
+        assertFalse(matcher.matches("badexample.com"));
+        assertFalse(matcher.matches("example.com.evil.net"));
+        assertFalse(matcher.matches(""));
+    }
+
+    @Test
+    public void wildcardRuleCoversOnlyNamesUnderIt() {
+        DomainMatcher matcher = DomainMatcher.compile(List.of("*.example.com"));
+
+        assertFalse(matcher.matches("example.com"));
+        assertTrue(matcher.matches("www.example.com"));
+        assertTrue(matcher.matches("a.b.example.com"));
+        assertFalse(matcher.matches("www.example.net"));
+        assertEquals("*.example.com", matcher.rule(0));
+    }
+
+    @Test
+    public void mostSpecificRuleWins() {
+        DomainMatcher matcher = DomainMatcher.compile(
+            List.of("com", "example.com", "*.example.com", "cdn.example.com", "*.static.cdn.example.com"));
+
+        assertEquals(0, matcher.match("other.com"));
+        assertEquals(1, matcher.match("example.com"));
+        // At the same depth the wildcard is the narrower rule
+        assertEquals(2, matcher.match("www.example.com"));
+        assertEquals(3, matcher.match("cdn.example.com"));
+        assertEquals(3, matcher.match("img.cdn.example.com"));
+        assertEquals(3, matcher.match("static.cdn.example.com"));
+        assertEquals(4, matcher.match("a.static.cdn.example.com"));
+    }
+
+    @Test
+    public void caseAndTrailingDotsAreIgnored() {
+        DomainMatcher matcher = DomainMatcher.compile(List.of(" Example.COM. ", "*.Internal."));
+
+        assertEquals(List.of("example.com", "*.internal"), matcher.rules());
+        assertEquals(0, matcher.match("WWW.EXAMPLE.com"));
+        assertEquals(0, matcher.match("example.com."));
+        assertEquals(1, matcher.match("Host.Internal."));
+        assertFalse(matcher.matches("internal."));
+    }
+
+    @Test
+    public void repeatedRuleKeepsItsFirstIndex() {
+        DomainMatcher matcher = DomainMatcher.compile(List.of("example.com", "other.net", "EXAMPLE.com."));
+
+        assertEquals(3, matcher.size());
+        assertEquals(0, matcher.match("www.example.com"));
+        assertEquals(1, matcher.match("other.net"));
+    }
+
+    @Test
+    public void invalidRulesAreRejected() {
+        String tooLongLabel = String.join("", Collections.nCopies(64, "a")) + ".com";
+        String tooLongName = String.join(".", Collections.nCopies(128, "a"));
+        for (String bad : new String[] {"", " ", ".", "*.", "a..b", "bad domain.com", "*.*.example.com",
+                "example.com/24", tooLongLabel, tooLongName}) {
+            try {
+                DomainMatcher.compile(List.of(bad));
+                fail("Accepted " + bad);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assertEquals(1, DomainMatcher.compile(List.of(tooLongLabel.substring(1))).size());
+    }
+
+    @Test
+    public void siblingLabelsWithTheSameHashStayApart() {
+        List<String> colliding = collidingLabels(5);
+        List<String> rules = new ArrayList<>();
+        for (int i = 0; i < 4; i += 2) {
+            rules.add(colliding.get(i) + ".example.com");
+            rules.add("*." + colliding.get(i + 1) + ".example.com");
+        }
+        DomainMatcher matcher = DomainMatcher.compile(rules);
+
+        for (int i = 0; i < 4; i += 2) {
+            assertEquals(i, matcher.match(colliding.get(i) + ".example.com"));
+            assertEquals(-1, matcher.match(colliding.get(i + 1) + ".example.com"));
+            assertEquals(i + 1, matcher.match("www." + colliding.get(i + 1) + ".example.com"));
+        }
+        // Same hash as the rules' labels, but in none of them
+        assertFalse(matcher.matches(colliding.get(4) + ".example.com"));
+    }
+
+    @Test
+    public void agreesWithANaiveSuffixCheck() {
+        Random random = new Random(11);
+        // A small vocabulary, colliding labels included, so rules and hosts overlap often
+        List<String> vocabulary = new ArrayList<>(List.of("com", "net", "example", "cdn", "www", "a", "b", "x-y"));
+        vocabulary.addAll(collidingLabels(4));
+
+        for (int round = 0; round < 200; round++) {
+            List<String> rules = new ArrayList<>();
+            for (int i = random.nextInt(40) + 1; i > 0; i--) {
+                String name = randomName(random, vocabulary, 1 + random.nextInt(3));
+                rules.add(random.nextInt(3) == 0 ? "*." + name : name);
+            }
+            DomainMatcher matcher = DomainMatcher.compile(rules);
+
+            for (int i = 0; i < 200; i++) {
+                String host = randomName(random, vocabulary, 1 + random.nextInt(5));
+                assertEquals(host + " against " + rules, naiveMatch(rules, host), matcher.match(host));
+            }
+        }
+    }
+
+    /**
+     * The longest matching rule, a wildcard over its own domain rule, the first of repeats
+     */
+    private static int naiveMatch(List<String> rules, String host) {
+        int best = -1;
+        int bestLength = -1;
+        boolean bestWildcard = false;
+        for (int i = 0; i < rules.size(); i++) {
+            String rule = rules.get(i);
+            boolean wildcard = rule.startsWith("*.");
+            String name = wildcard ? rule.substring(2) : rule;
+            boolean under = host.endsWith("." + name);
+            if (!(wildcard ? under : under || host.equals(name))) {
+                continue;
+            }
+            if (name.length() > bestLength || (name.length() == bestLength && wildcard && !bestWildcard)) {
+                best = i;
+                bestLength = name.length();
+                bestWildcard = wildcard;
+            }
+        }
+        return best;
+    }
+
+    private static String randomName(Random random, List<String> vocabulary, int labels) {
+        String[] parts = new String[labels];
+        for (int i = 0; i < labels; i++) {
+            parts[i] = vocabulary.get(random.nextInt(vocabulary.size()));
+        }
+        return String.join(".", Arrays.asList(parts));
+    }
+
+    /**
+     * Distinct valid labels that all share one String hash, which is the matcher's label hash
+     */
+    private static List<String> collidingLabels(int count) {
+        String alphabet = "abcdefghijklmnopqrstuvwxyz0123456789";
+        int n = alphabet.length();
+        Map<Integer, List<String>> byHash = new HashMap<>();
+        char[] label = new char[4];
+        for (int i = 0; i < n * n * n * n; i++) {
+            for (int j = 0, rest = i; j < label.length; j++, rest /= n) {
+                label[j] = alphabet.charAt(rest % n);
+            }
+            String text = new String(label);
+            List<String> same = byHash.computeIfAbsent(text.hashCode(), hash -> new ArrayList<>());
+            same.add(text);
+            if (same.size() == count) {
+                return same;
+            }
+        }
+        throw new AssertionError("No " + count + " labels share a hash");
+    }
+}
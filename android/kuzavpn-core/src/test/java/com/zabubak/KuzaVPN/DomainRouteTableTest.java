@@ -0,0 +1,50 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DomainRouteTableTest {
+    private static final long NOW = 1_000_000;
+    private static final long TTL_MS = 60_000;
+
+    @Test
+    public void domainRuleResolvesItsOwnName() throws Exception {
+        DomainRouteTable table = new DomainRouteTable(DomainMatcher.compile(List.of("example.com")));
+
+        assertEquals(List.of("example.com"), table.dueNames(NOW));
+        assertTrue(table.update("example.com", addresses("192.0.2.1"), TTL_MS, NOW));
+        assertEquals(List.of("192.0.2.1/32"), table.prefixes());
+    }
+
+    @Test
+    public void wildcardRuleCoversNothingUntilANameUnderItResolves() throws Exception {
+        DomainRouteTable table = new DomainRouteTable(DomainMatcher.compile(List.of("*.example.com")));
+
+        assertEquals(Collections.emptyList(), table.dueNames(NOW));
+        assertEquals(Long.MAX_VALUE, table.nextRefreshAtMs());
+        // The apex is not under the wildcard
+        assertFalse(table.update("example.com", addresses("192.0.2.1"), TTL_MS, NOW));
+        assertEquals(Collections.emptyList(), table.prefixes());
+
+        assertTrue(table.update("cdn.example.com", addresses("192.0.2.2"), TTL_MS, NOW));
+        assertEquals(List.of("192.0.2.2/32"), table.prefixes());
+        // From then on the name is refreshed like a rule's own
+        assertEquals(List.of("cdn.example.com"), table.dueNames(NOW + TTL_MS));
+    }
+
+    private static List<InetAddress> addresses(String... literals) throws Exception {
+        InetAddress[] addresses = new InetAddress[literals.length];
+        for (int i = 0; i < literals.length; i++) {
+            addresses[i] = InetAddress.getByName(literals[i]);
+        }
+        return Arrays.asList(addresses);
+    }
+}
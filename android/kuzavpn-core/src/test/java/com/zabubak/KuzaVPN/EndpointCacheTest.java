@@ -0,0 +1,148 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class EndpointCacheTest {
+    private static final String HOST = "vpn.example.com";
+
+    private final Map<String, String> saved = new HashMap<>();
+    private final EndpointCache cache = new EndpointCache(saved::put);
+
+    @Test
+    public void answerIsFreshForItsClampedTtl() throws Exception {
+        cache.put(HOST, addresses("2001:db8::1", "192.0.2.1"), 60_000, 1_000);
+
+        assertTrue(cache.isFresh(HOST, 60_999));
+        assertFalse(cache.isFresh(HOST, 61_000));
+        assertFalse(cache.isFresh("other.example.com", 0));
+        assertNull(cache.preferred("other.example.com", 0));
+
+        // An expired answer is still dialed until the refresh lands
+        assertEquals(address("2001:db8::1"), cache.preferred(HOST, 120_000));
+
+        cache.put(HOST, addresses("192.0.2.1"), 0, 0);
+        assertFalse(cache.isFresh(HOST, EndpointCache.MIN_TTL_MS));
+        assertTrue(cache.isFresh(HOST, EndpointCache.MIN_TTL_MS - 1));
+        assertEquals(EndpointCache.MAX_TTL_MS, EndpointCache.clampTtl(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void lastGoodIsPreferredWhileItIsInTheAnswer() throws Exception {
+        cache.put(HOST, addresses("2001:db8::1", "192.0.2.1"), 60_000, 0);
+        cache.markGood(HOST, address("192.0.2.1"));
+        assertEquals(address("192.0.2.1"), cache.preferred(HOST, 0));
+
+        // Kept across a refresh that still holds it, dropped by one that doesn't
+        assertEquals(address("192.0.2.1"), cache.put(HOST, addresses("2001:db8::1", "192.0.2.1"), 60_000, 0));
+        assertEquals(address("2001:db8::1"), cache.put(HOST, addresses("2001:db8::1", "192.0.2.9"), 60_000, 0));
+    }
+
+    @Test
+    public void failedAddressFallsBehindTheOthers() throws Exception {
+        cache.put(HOST, addresses("2001:db8::1", "192.0.2.1", "2001:db8::2", "192.0.2.2"), 60_000, 0);
+
+        cache.markFailed(HOST, address("2001:db8::1"));
+        assertEquals(address("192.0.2.1"), cache.preferred(HOST, 0));
+
+        cache.markFailed(HOST, address("192.0.2.1"));
+        assertEquals(address("2001:db8::2"), cache.preferred(HOST, 0));
+
+        // The refresh markFailed starts comes back in the same order and must not undo it
+        cache.put(HOST, addresses("2001:db8::1", "192.0.2.1", "2001:db8::2", "192.0.2.2"), 60_000, 0);
+        assertEquals(address("2001:db8::2"), cache.preferred(HOST, 0));
+
+        cache.markFailed(HOST, address("2001:db8::2"));
+        cache.markFailed(HOST, address("192.0.2.2"));
+        // All failed: start over from the one that failed longest ago
+        assertEquals(address("2001:db8::1"), cache.preferred(HOST, 0));
+        cache.markFailed(HOST, address("2001:db8::1"));
+        assertEquals(address("192.0.2.1"), cache.preferred(HOST, 0));
+
+        // A handshake clears the failure and makes the address first choice
+        cache.markGood(HOST, address("2001:db8::2"));
+        assertEquals(address("2001:db8::2"), cache.preferred(HOST, 0));
+    }
+
+    @Test
+    public void failedLastGoodStopsBeingPreferred() throws Exception {
+        cache.put(HOST, addresses("2001:db8::1", "192.0.2.1"), 60_000, 0);
+        cache.markGood(HOST, address("2001:db8::1"));
+
+        cache.markFailed(HOST, address("2001:db8::1"));
+
+        assertEquals(address("192.0.2.1"), cache.preferred(HOST, 0));
+    }
+
+    @Test
+    public void savedEntriesRestoreIntoAnotherCache() throws Exception {
+        cache.put(HOST, addresses("2001:db8::1", "192.0.2.1", "192.0.2.2"), 60_000, 0);
+        cache.markFailed(HOST, address("2001:db8::1"));
+        cache.markGood(HOST, address("192.0.2.2"));
+        cache.put("other.example.com", addresses("198.51.100.7"), 60_000, 0);
+
+        EndpointCache restored = new EndpointCache(null);
+        for (Map.Entry<String, String> entry : saved.entrySet()) {
+            restored.restore(entry.getKey(), entry.getValue());
+        }
+
+        assertEquals(2, restored.size());
+        assertTrue(restored.isFresh(HOST, 59_999));
+        assertFalse(restored.isFresh(HOST, 60_000));
+        assertEquals(address("192.0.2.2"), restored.preferred(HOST, 0));
+        assertEquals(address("198.51.100.7"), restored.preferred("other.example.com", 0));
+
+        // The failure survives too, once the last good address is gone
+        restored.put(HOST, addresses("2001:db8::1", "192.0.2.1"), 60_000, 0);
+        assertEquals(address("192.0.2.1"), restored.preferred(HOST, 0));
+    }
+
+    @Test
+    public void unreadableEntriesAreDropped() throws Exception {
+        EndpointCache restored = new EndpointCache(null);
+        restored.restore("a", "garbage");
+        restored.restore("b", "x|192.0.2.1|192.0.2.1");
+        // Never a lookup from a corrupted entry
+        restored.restore("c", "1000||evil.example.com");
+        // Written before failures were kept
+        restored.restore(HOST, "1000|192.0.2.1|2001:db8::1,192.0.2.1");
+
+        assertEquals(1, restored.size());
+        assertEquals(address("192.0.2.1"), restored.preferred(HOST, 0));
+    }
+
+    @Test
+    public void hostAndLiteralParsing() {
+        assertEquals("vpn.example.com", EndpointCache.hostOf("vpn.example.com:51820"));
+        assertEquals("2001:db8::1", EndpointCache.hostOf("[2001:db8::1]:51820"));
+        assertEquals("2001:db8::1", EndpointCache.hostOf("2001:db8::1"));
+        assertEquals("vpn.example.com", EndpointCache.hostOf(" vpn.example.com "));
+        assertTrue(EndpointCache.isIpLiteral("192.0.2.1"));
+        assertTrue(EndpointCache.isIpLiteral("2001:db8::1"));
+        assertFalse(EndpointCache.isIpLiteral("1.2.3"));
+        assertFalse(EndpointCache.isIpLiteral("vpn.example.com"));
+    }
+
+    private static List<InetAddress> addresses(String... literals) throws UnknownHostException {
+        InetAddress[] addresses = new InetAddress[literals.length];
+        for (int i = 0; i < literals.length; i++) {
+            addresses[i] = address(literals[i]);
+        }
+        return Arrays.asList(addresses);
+    }
+
+    private static InetAddress address(String literal) throws UnknownHostException {
+        return InetAddress.getByName(literal);
+    }
+}
@@ -0,0 +1,71 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class HandshakeInitiationTest {
+    private static final JdkCurve CURVE = new JdkCurve();
+
+    /**
+     * Built independently from the WireGuard paper's message construction with Python's
+     * cryptography X25519 and ChaCha20Poly1305 and hashlib BLAKE2s: client key 0x11..,
+     * server key 0x22.., ephemeral 0x44.., sender index 0x01020304, 1700000000123 ms
+     */
+    @Test
+    public void matchesAnIndependentlyBuiltInitiation() {
+        byte[] serverPublic = CURVE.publicKey(filled(0x22));
+        assertArrayEquals(Hex.decode("0faa684ed28867b97f4a6a2dee5df8ce974e76b7018e3f22a1c4cf2678570f20"), serverPublic);
+
+        ByteBuffer initiation = HandshakeInitiation.create(CURVE, filled(0x11), serverPublic, 0x01020304,
+            filled(0x44), 1_700_000_000_123L);
+
+        assertArrayEquals(Hex.decode("0100000004030201ff2ee45601ec1b67310c7790404585ae697331eee1c1f8cf2419731c1f"
+            + "ff3e6b3b6f1324884f7dfcb616f1440bce015ad114bc97a5052c5972a42150ca66244ee95bf0cd2c60d3d9addef3"
+            + "29768c8c110ed41251d4d6d7792d1ea8319c569acab11c3aa84fade47a3f02a25bfc2c36109ec88de0555fcdd3f4"
+            + "dfd45300000000000000000000000000000000"), bytes(initiation));
+    }
+
+    @Test
+    public void timestampIsWhitenedToWireGuardGranularity() {
+        byte[] tai64n = HandshakeInitiation.tai64n(1_700_000_000_999L);
+        ByteBuffer fields = ByteBuffer.wrap(tai64n);
+
+        assertEquals(0x400000000000000aL + 1_700_000_000L, fields.getLong());
+        assertEquals(0, fields.getInt() & 0xffffff);
+    }
+
+    @Test
+    public void answersAreMatchedBySenderIndex() {
+        ByteBuffer response = ByteBuffer.allocate(HandshakeInitiation.RESPONSE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        response.putInt(HandshakeInitiation.TYPE_RESPONSE).putInt(9).putInt(42);
+        response.clear();
+        ByteBuffer cookie = ByteBuffer.allocate(HandshakeInitiation.COOKIE_REPLY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        cookie.putInt(HandshakeInitiation.TYPE_COOKIE_REPLY).putInt(42);
+        cookie.clear();
+
+        assertTrue(HandshakeInitiation.isAnswer(response, 42));
+        assertFalse(HandshakeInitiation.isAnswer(response, 9));
+        assertTrue(HandshakeInitiation.isAnswer(cookie, 42));
+        assertFalse(HandshakeInitiation.isAnswer(ByteBuffer.wrap(Arrays.copyOf(response.array(), 91)), 42));
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static byte[] filled(int value) {
+        byte[] key = new byte[HandshakeInitiation.KEY_SIZE];
+        Arrays.fill(key, (byte) value);
+        return key;
+    }
+}
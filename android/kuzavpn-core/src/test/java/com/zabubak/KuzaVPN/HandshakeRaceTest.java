@@ -0,0 +1,226 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class HandshakeRaceTest {
+    private static final long TIMEOUT_MS = 2_000;
+    private static final long SILENT = -1;
+
+    private final List<Candidate> candidates = new ArrayList<>();
+    private final List<DatagramChannel> opened = Collections.synchronizedList(new ArrayList<>());
+    private final HandshakeRace race = new HandshakeRace(opened::add);
+
+    @After
+    public void closeCandidates() {
+        for (Candidate candidate : candidates) {
+            candidate.close();
+        }
+    }
+
+    @Test
+    public void firstAnswerWinsAndTheRunnerUpSetsTheMargin() throws Exception {
+        // Rank 0 starts first but answers last; rank 1 starts 40 ms in and answers at once
+        Candidate slow = candidate(70);
+        Candidate fast = candidate(0);
+        Candidate neverStarted = candidate(0);
+
+        ServerRaceReport report = run(40, TIMEOUT_MS, slow, fast, neverStarted);
+
+        assertEquals(fast.endpoint, report.winner);
+        assertEquals(1, report.winnerRank);
+        assertTrue("winner after " + report.winnerMs + " ms", report.winnerMs >= 40 && report.winnerMs < 70);
+        assertEquals(slow.endpoint, report.runnerUp);
+        assertTrue("margin " + report.marginMs, report.marginMs >= 0 && report.marginMs <= HandshakeRace.MARGIN_WINDOW_MS);
+        // The winner stopped the starts before rank 2's turn
+        assertEquals(3, report.contenders);
+        assertEquals(2, report.started);
+        assertEquals(0, neverStarted.received.get());
+        assertEquals(Arrays.asList(1, 0, 2), report.order);
+        assertAllClosed();
+    }
+
+    @Test
+    public void silentLoserIsClosedAfterTheMarginWindow() throws Exception {
+        Candidate silent = candidate(SILENT);
+        Candidate fast = candidate(0);
+
+        ServerRaceReport report = run(20, TIMEOUT_MS, silent, fast);
+
+        assertEquals(fast.endpoint, report.winner);
+        assertNull(report.runnerUp);
+        // Only a lower bound: the loser was cut off, not beaten by this much
+        assertTrue("margin " + report.marginMs, report.marginMs >= HandshakeRace.MARGIN_WINDOW_MS
+            && report.marginMs < TIMEOUT_MS);
+        assertEquals(1, silent.received.get());
+        assertEquals(Arrays.asList(1, 0), report.order);
+        assertAllClosed();
+    }
+
+    @Test
+    public void refusedCandidateDoesNotHoldUpTheNext() throws Exception {
+        Candidate fast = candidate(0);
+
+        // A stagger longer than the whole race: rank 1 can only win if rank 0's refusal starts it
+        ServerRaceReport report = run(Arrays.asList(closedPort(), fast.endpoint), 5_000, TIMEOUT_MS);
+
+        assertEquals(fast.endpoint, report.winner);
+        assertTrue("winner after " + report.winnerMs + " ms", report.winnerMs < 1_000);
+        // Nobody was left to beat
+        assertNull(report.runnerUp);
+        assertEquals(-1, report.marginMs);
+        assertEquals(Collections.singletonList(1), report.order);
+        assertAllClosed();
+    }
+
+    @Test
+    public void raceWithoutAnAnswerHasNoWinner() throws Exception {
+        Candidate silent = candidate(SILENT);
+        Candidate alsoSilent = candidate(SILENT);
+        List<String> endpoints = Arrays.asList(silent.endpoint, closedPort(), "unresolved.invalid:51820",
+            alsoSilent.endpoint);
+
+        long startedAt = System.nanoTime();
+        ServerRaceReport report = run(endpoints, 10, 300);
+        long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+
+        assertNull(report.winner);
+        assertEquals(-1, report.winnerRank);
+        assertEquals(-1, report.winnerMs);
+        assertNull(report.runnerUp);
+        assertEquals(-1, report.marginMs);
+        assertEquals(4, report.started);
+        // The refused and unresolved ones are not worth a retry
+        assertEquals(Arrays.asList(0, 3), report.order);
+        assertEquals(1, silent.received.get());
+        assertEquals(1, alsoSilent.received.get());
+        assertTrue("took " + elapsedMs + " ms", elapsedMs >= 300 && elapsedMs < TIMEOUT_MS);
+        assertAllClosed();
+    }
+
+    private ServerRaceReport run(long staggerMs, long timeoutMs, Candidate... contenders) throws IOException {
+        List<String> endpoints = new ArrayList<>();
+        for (Candidate contender : contenders) {
+            endpoints.add(contender.endpoint);
+        }
+        return run(endpoints, staggerMs, timeoutMs);
+    }
+
+    private ServerRaceReport run(List<String> endpoints, long staggerMs, long timeoutMs) throws IOException {
+        List<InetSocketAddress> targets = new ArrayList<>();
+        for (String endpoint : endpoints) {
+            int colon = endpoint.lastIndexOf(':');
+            String host = endpoint.substring(0, colon);
+            int port = Integer.parseInt(endpoint.substring(colon + 1));
+            targets.add(host.endsWith(".invalid") ? null : new InetSocketAddress(host, port));
+        }
+        return race.run(endpoints, targets, HandshakeRaceTest::initiation, staggerMs, timeoutMs);
+    }
+
+    private void assertAllClosed() {
+        assertFalse(opened.isEmpty());
+        for (DatagramChannel channel : opened) {
+            assertFalse(channel.isOpen());
+        }
+    }
+
+    private Candidate candidate(long delayMs) throws SocketException {
+        Candidate candidate = new Candidate(delayMs);
+        candidates.add(candidate);
+        return candidate;
+    }
+
+    private static String closedPort() throws SocketException {
+        try (DatagramSocket closed = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            return "127.0.0.1:" + closed.getLocalPort();
+        }
+    }
+
+    /**
+     * Stands in for a real initiation: the candidates only read the sender index
+     */
+    private static ByteBuffer initiation(int rank, int senderIndex) {
+        ByteBuffer initiation = ByteBuffer.allocate(HandshakeInitiation.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        initiation.putInt(1).putInt(senderIndex);
+        initiation.clear();
+        return initiation;
+    }
+
+    /**
+     * Fake server on a loopback socket: answers every datagram with a handshake response
+     * to its sender index after delayMs, or never when SILENT
+     */
+    private static final class Candidate implements Runnable {
+        final String endpoint;
+        final AtomicInteger received = new AtomicInteger();
+        private final long delayMs;
+        private final DatagramSocket socket;
+        private final Thread thread;
+
+        Candidate(long delayMs) throws SocketException {
+            this.delayMs = delayMs;
+            socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            socket.setSoTimeout(50);
+            endpoint = "127.0.0.1:" + socket.getLocalPort();
+            thread = new Thread(this, "candidate-" + socket.getLocalPort());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[512];
+            while (!socket.isClosed()) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                try {
+                    socket.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    continue;
+                } catch (IOException e) {
+                    return;
+                }
+                received.incrementAndGet();
+                if (delayMs == SILENT) {
+                    continue;
+                }
+                int senderIndex = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).getInt(4);
+                ByteBuffer response = ByteBuffer.allocate(HandshakeInitiation.RESPONSE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                response.putInt(HandshakeInitiation.TYPE_RESPONSE);
+                response.putInt(0x5eed);
+                response.putInt(senderIndex);
+                try {
+                    Thread.sleep(delayMs);
+                    socket.send(new DatagramPacket(response.array(), response.capacity(), packet.getSocketAddress()));
+                } catch (InterruptedException | IOException e) {
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            socket.close();
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.zabubak.KuzaVPN;
+
+/**
+ * Hex test vectors to bytes
+ */
+final class Hex {
+    private Hex() {
+    }
+
+    static byte[] decode(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
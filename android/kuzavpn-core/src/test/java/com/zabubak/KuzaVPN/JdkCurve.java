@@ -0,0 +1,49 @@
+package com.zabubak.KuzaVPN;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.NamedParameterSpec;
+import java.security.spec.XECPrivateKeySpec;
+import java.security.spec.XECPublicKeySpec;
+
+import javax.crypto.KeyAgreement;
+
+/**
+ * X25519 from the JDK, standing in for the WireGuard library's Curve25519 on a plain JVM
+ */
+final class JdkCurve implements HandshakeInitiation.Curve {
+    private static final byte[] BASE_POINT = new byte[HandshakeInitiation.KEY_SIZE];
+
+    static {
+        BASE_POINT[0] = 9;
+    }
+
+    @Override
+    public byte[] publicKey(byte[] privateKey) {
+        return sharedSecret(privateKey, BASE_POINT);
+    }
+
+    @Override
+    public byte[] sharedSecret(byte[] privateKey, byte[] publicKey) {
+        try {
+            KeyFactory keys = KeyFactory.getInstance("XDH");
+            PrivateKey ours = keys.generatePrivate(new XECPrivateKeySpec(NamedParameterSpec.X25519, privateKey));
+            // RFC 7748 u-coordinates are little-endian
+            byte[] bigEndian = new byte[publicKey.length];
+            for (int i = 0; i < publicKey.length; i++) {
+                bigEndian[i] = publicKey[publicKey.length - 1 - i];
+            }
+            PublicKey theirs = keys.generatePublic(
+                new XECPublicKeySpec(NamedParameterSpec.X25519, new BigInteger(1, bigEndian)));
+            KeyAgreement agreement = KeyAgreement.getInstance("XDH");
+            agreement.init(ours);
+            agreement.doPhase(theirs, true);
+            return agreement.generateSecret();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
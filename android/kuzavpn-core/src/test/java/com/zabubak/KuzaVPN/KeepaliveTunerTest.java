@@ -0,0 +1,123 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class KeepaliveTunerTest {
+    private static final long CHECK_MS = 20_000;
+
+    private long now;
+
+    @Test
+    public void repliesAfterQuietStretchesWiden() {
+        KeepaliveTuner tuner = KeepaliveTuner.restore(null, 25, now);
+
+        for (int i = 1; i < KeepaliveTuner.CONFIRMATIONS_TO_WIDEN; i++) {
+            assertTrue(quietThenReply(tuner, 30_000));
+            assertEquals(25, tuner.interval());
+        }
+        assertTrue(quietThenReply(tuner, 30_000));
+
+        assertEquals(37, tuner.interval());
+        assertEquals(25, tuner.floor());
+        assertEquals(0, tuner.ceiling());
+    }
+
+    @Test
+    public void failureAfterQuietStretchNarrowsToWidestGood() {
+        KeepaliveTuner tuner = KeepaliveTuner.restore(null, 25, now);
+        for (int i = 0; i < KeepaliveTuner.CONFIRMATIONS_TO_WIDEN; i++) {
+            quietThenReply(tuner, 30_000);
+        }
+        assertEquals(37, tuner.interval());
+
+        quiet(tuner, 40_000);
+        tuner.observe(now += CHECK_MS, 0, 2_000, false);
+        assertTrue(tuner.observe(now += CHECK_MS, 0, 2_000, true));
+
+        assertEquals(37, tuner.ceiling());
+        assertEquals(25, tuner.interval());
+
+        // Widening again goes halfway to the failure, not past it
+        for (int i = 0; i < KeepaliveTuner.CONFIRMATIONS_TO_WIDEN; i++) {
+            quietThenReply(tuner, 30_000);
+        }
+        assertEquals((25 + 37) / 2, tuner.interval());
+    }
+
+    @Test
+    public void failureWithNoFloorHalvesDownToTheMinimum() {
+        KeepaliveTuner tuner = KeepaliveTuner.restore(null, 25, now);
+
+        quiet(tuner, 30_000);
+        assertTrue(tuner.observe(now += CHECK_MS, 0, 0, true));
+        assertEquals(12, tuner.interval());
+
+        quiet(tuner, 20_000);
+        assertTrue(tuner.observe(now += CHECK_MS, 0, 0, true));
+        assertEquals(KeepaliveTuner.MIN_INTERVAL_S, tuner.interval());
+    }
+
+    @Test
+    public void busyTrafficAndShortQuietTeachNothing() {
+        KeepaliveTuner tuner = KeepaliveTuner.restore(null, 25, now);
+        String before = tuner.encode();
+
+        // Traffic holds the binding open, so replies during it confirm nothing
+        for (int i = 0; i < 10; i++) {
+            assertFalse(tuner.observe(now += CHECK_MS, 40_000, 20_000, false));
+        }
+        // Nor does a quiet stretch shorter than the interval, either way it ends
+        quiet(tuner, 10_000);
+        assertFalse(tuner.observe(now += 5_000, 4_000, 2_000, false));
+        quiet(tuner, 10_000);
+        assertFalse(tuner.observe(now += 5_000, 0, 0, true));
+        // A failure during traffic with no quiet before it is not the NAT
+        assertFalse(tuner.observe(now += CHECK_MS, 0, 0, true));
+
+        assertEquals(before, tuner.encode());
+        assertTrue(KeepaliveTuner.isQuiet(200, 32));
+        assertFalse(KeepaliveTuner.isQuiet(400, 400));
+    }
+
+    @Test
+    public void learnedStateRoundTripsAndExpires() {
+        KeepaliveTuner tuner = KeepaliveTuner.restore(null, 25, now);
+        for (int i = 0; i < KeepaliveTuner.CONFIRMATIONS_TO_WIDEN; i++) {
+            quietThenReply(tuner, 30_000);
+        }
+        quiet(tuner, 40_000);
+        tuner.observe(now += CHECK_MS, 0, 0, true);
+        String stored = tuner.encode();
+
+        KeepaliveTuner restored = KeepaliveTuner.restore(stored, 25, now + 1_000);
+        assertEquals(tuner.interval(), restored.interval());
+        assertEquals(tuner.floor(), restored.floor());
+        assertEquals(tuner.ceiling(), restored.ceiling());
+        assertEquals(stored, restored.encode());
+
+        KeepaliveTuner forgotten = KeepaliveTuner.restore(stored, 25, now + KeepaliveTuner.FORGET_AFTER_MS);
+        assertEquals(25, forgotten.interval());
+        assertEquals(0, forgotten.ceiling());
+
+        assertEquals(25, KeepaliveTuner.restore("garbage", 25, now).interval());
+        assertEquals(KeepaliveTuner.MAX_INTERVAL_S, KeepaliveTuner.restore(null, 600, now).interval());
+    }
+
+    private void quiet(KeepaliveTuner tuner, long forMs) {
+        long end = now + forMs;
+        while (now < end) {
+            assertFalse(tuner.observe(now, 0, 32, false));
+            now += Math.min(CHECK_MS, end - now);
+        }
+        tuner.observe(now, 0, 32, false);
+    }
+
+    private boolean quietThenReply(KeepaliveTuner tuner, long quietMs) {
+        quiet(tuner, quietMs);
+        return tuner.observe(now += CHECK_MS, 6_000, 2_000, false);
+    }
+}
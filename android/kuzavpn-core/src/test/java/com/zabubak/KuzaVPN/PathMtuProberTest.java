@@ -0,0 +1,151 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PathMtuProberTest {
+    private static final long TIMEOUT_MS = 50;
+    private static final int CEILING = 1500;
+
+    private final List<Echo> echoes = new ArrayList<>();
+
+    @After
+    public void closeEchoes() {
+        for (Echo echo : echoes) {
+            echo.close();
+        }
+    }
+
+    @Test
+    public void fullCeilingTakesOneProbe() throws Exception {
+        Echo echo = echo(1500);
+
+        PathMtuProber.Result result = new PathMtuProber(TIMEOUT_MS, 2, true).probe(echo.address(), CEILING);
+
+        assertEquals(1500, result.pathMtu);
+        assertEquals(1500 - 28 - 32, result.tunnelMtu);
+        assertEquals(1, result.probes);
+    }
+
+    @Test
+    public void binarySearchLandsOnTheLargestPacketThatComesBack() throws Exception {
+        for (int limit : new int[] {1499, 1400, 1280, 1000, 577}) {
+            Echo echo = echo(limit);
+
+            PathMtuProber.Result result = new PathMtuProber(TIMEOUT_MS, 1, true).probe(echo.address(), CEILING);
+
+            assertEquals(limit, result.pathMtu);
+            assertEquals(PathMtuProber.tunnelMtu(limit, false), result.tunnelMtu);
+            // The full-size try, then a halving search over the 924 sizes between the IPv4 floor and the ceiling
+            assertTrue("probes " + result.probes, result.probes >= 1 + 9 && result.probes <= 1 + 10);
+        }
+    }
+
+    @Test
+    public void oversizeDatagramsAreRetriedThenDropped() throws Exception {
+        Echo echo = echo(1400);
+
+        PathMtuProber.Result result = new PathMtuProber(TIMEOUT_MS, 2, true).probe(echo.address(), CEILING);
+
+        assertEquals(1400, result.pathMtu);
+        int sends = 0;
+        for (Map.Entry<Integer, AtomicInteger> size : echo.received.entrySet()) {
+            int packetSize = size.getKey() + 28;
+            // Every attempt at a size the path drops goes out; a size that fits needs one
+            assertEquals("size " + packetSize, packetSize > 1400 ? 2 : 1, size.getValue().get());
+            sends += size.getValue().get();
+        }
+        assertEquals(result.probes, echo.received.size());
+        assertTrue(sends > result.probes);
+    }
+
+    @Test
+    public void silentTargetFailsInEchoMode() throws Exception {
+        try (DatagramSocket silent = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            new PathMtuProber(TIMEOUT_MS, 1, true)
+                .probe(new InetSocketAddress(InetAddress.getLoopbackAddress(), silent.getLocalPort()), CEILING);
+            fail("Expected no echo to be an error");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("No echo from"));
+        }
+    }
+
+    @Test
+    public void silentTargetFitsWithoutEcho() throws Exception {
+        try (DatagramSocket silent = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            PathMtuProber.Result result = new PathMtuProber(TIMEOUT_MS, 1, false)
+                .probe(new InetSocketAddress(InetAddress.getLoopbackAddress(), silent.getLocalPort()), CEILING);
+
+            assertEquals(CEILING, result.pathMtu);
+            assertEquals(1, result.probes);
+        }
+    }
+
+    private Echo echo(int pathMtu) throws SocketException {
+        Echo echo = new Echo(pathMtu);
+        echoes.add(echo);
+        return echo;
+    }
+
+    /**
+     * Loopback echo behind a simulated path MTU: datagrams whose IPv4 packet would be
+     * larger are dropped silently, as a black-holing router would
+     */
+    private static final class Echo implements Runnable {
+        // Sends seen per UDP payload size
+        final Map<Integer, AtomicInteger> received = new ConcurrentHashMap<>();
+        private final int maxPayload;
+        private final DatagramSocket socket;
+        private final Thread thread;
+
+        Echo(int pathMtu) throws SocketException {
+            maxPayload = pathMtu - 28;
+            socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            thread = new Thread(this, "echo-" + socket.getLocalPort());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        InetSocketAddress address() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[65_536];
+            while (!socket.isClosed()) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                try {
+                    socket.receive(packet);
+                    received.computeIfAbsent(packet.getLength(), size -> new AtomicInteger()).incrementAndGet();
+                    if (packet.getLength() <= maxPayload) {
+                        socket.send(new DatagramPacket(buffer, packet.getLength(), packet.getSocketAddress()));
+                    }
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            socket.close();
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PeerHealthTest {
+    private static final int KEEPALIVE_S = 25;
+
+    @Test
+    public void keepaliveOnlyTunnelIsIdleAndHealthy() {
+        PeerHealth peer = new PeerHealth(0, 0, 0);
+        long tx = 0;
+        long rx = 0;
+        long handshakeAt = 0;
+        // Ten minutes idle, checked every 20 s: a keepalive every 25 s and a rekey every two minutes
+        for (long now = 20_000; now <= 600_000; now += 20_000) {
+            tx += (now / 25_000 - (now - 20_000) / 25_000) * PeerHealth.KEEPALIVE_BYTES;
+            if (now % 120_000 == 0) {
+                tx += PeerHealth.INITIATION_BYTES;
+                rx += 92;
+                handshakeAt = now;
+            }
+            peer.update(now, rx, tx, handshakeAt, 0, KEEPALIVE_S);
+
+            assertFalse("flowing at " + now, peer.isFlowing());
+            assertFalse("stalled at " + now, peer.isReceiveStalled());
+            assertFalse("stale at " + now, peer.isHandshakeStale());
+        }
+    }
+
+    @Test
+    public void keepalivesPiledUpOverALateCheckAreStillIdle() {
+        PeerHealth peer = new PeerHealth(0, 0, 0);
+
+        // Doze held the check back ten minutes; 24 keepalives went out unanswered
+        peer.update(600_000, 0, 24 * PeerHealth.KEEPALIVE_BYTES, 590_000, 0, KEEPALIVE_S);
+
+        assertFalse(peer.isFlowing());
+        assertFalse(peer.isReceiveStalled());
+    }
+
+    @Test
+    public void dataWithNoReplyStalls() {
+        PeerHealth peer = new PeerHealth(0, 0, 0);
+
+        peer.update(5_000, 0, 4_000, 1_000, 0, KEEPALIVE_S);
+        assertTrue(peer.isFlowing());
+        assertFalse(peer.isReceiveStalled());
+
+        peer.update(20_000, 0, 8_000, 1_000, 0, KEEPALIVE_S);
+        assertTrue(peer.isReceiveStalled());
+
+        // A reply clears it
+        peer.update(25_000, 3_000, 12_000, 1_000, 0, KEEPALIVE_S);
+        assertFalse(peer.isReceiveStalled());
+        assertEquals(3_000, peer.rxDelta());
+        assertEquals(4_000, peer.txDelta());
+    }
+
+    @Test
+    public void restartedCountersCountFromZero() {
+        PeerHealth peer = new PeerHealth(0, 50_000, 80_000);
+
+        peer.update(5_000, 2_000, 1_000, 1_000, 0, KEEPALIVE_S);
+
+        assertEquals(2_000, peer.rxDelta());
+        assertEquals(1_000, peer.txDelta());
+    }
+
+    @Test
+    public void handshakeGoesStaleOnlyWhenOneIsDue() {
+        PeerHealth keptAlive = new PeerHealth(0, 0, 0);
+        keptAlive.update(200_000, 0, 256, 0, 0, KEEPALIVE_S);
+        assertTrue(keptAlive.isHandshakeStale());
+        assertFalse(keptAlive.isReceiveStalled());
+
+        // Without keepalive an idle session is left to lapse
+        PeerHealth idle = new PeerHealth(0, 0, 0);
+        idle.update(200_000, 0, 32, 0, 0, 0);
+        assertFalse(idle.isHandshakeStale());
+
+        idle.update(205_000, 0, 5_000, 0, 0, 0);
+        assertTrue(idle.isHandshakeStale());
+    }
+}
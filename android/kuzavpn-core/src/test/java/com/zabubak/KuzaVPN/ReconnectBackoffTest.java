@@ -0,0 +1,51 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ReconnectBackoffTest {
+    @Test
+    public void delaysDoubleWithEqualJitterUpToTheCap() {
+        ReconnectBackoff backoff = new ReconnectBackoff(1_000, 60_000);
+        long[] ceilings = {1_000, 2_000, 4_000, 8_000, 16_000, 32_000, 60_000, 60_000, 60_000};
+
+        for (int attempt = 0; attempt < ceilings.length; attempt++) {
+            long delay = backoff.nextDelayMs();
+            long ceiling = ceilings[attempt];
+            assertTrue("attempt " + attempt + ": " + delay, delay >= ceiling / 2 && delay <= ceiling);
+            assertEquals(attempt + 1, backoff.getAttempt());
+        }
+    }
+
+    @Test
+    public void jitterSpreadsRetries() {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 200; i++) {
+            long delay = new ReconnectBackoff(1_000, 60_000).nextDelayMs();
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue(min + ".." + max, max - min > 100);
+    }
+
+    @Test
+    public void resetStartsOverAndManyAttemptsStayCapped() {
+        ReconnectBackoff backoff = new ReconnectBackoff(1_000, 60_000);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(backoff.nextDelayMs() <= 60_000);
+        }
+
+        backoff.reset();
+
+        assertEquals(0, backoff.getAttempt());
+        assertTrue(backoff.nextDelayMs() <= 1_000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capBelowBaseIsRejected() {
+        new ReconnectBackoff(1_000, 500);
+    }
+}
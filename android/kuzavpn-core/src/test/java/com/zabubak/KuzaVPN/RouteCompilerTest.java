@@ -0,0 +1,162 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RouteCompilerTest {
+    @Test
+    public void overlappingAndAdjacentPrefixesMerge() {
+        List<RouteCompiler.Route> routes = new RouteCompiler()
+            .include("10.0.0.0/25")
+            .include("10.0.0.128/25")
+            .include("10.0.0.64/26")
+            .include("10.0.1.0/24")
+            .include("2001:db8::/33")
+            .include("2001:db8:8000::/33")
+            .compile();
+
+        assertEquals(Arrays.asList("10.0.0.0/23", "2001:db8:0:0:0:0:0:0/32"), strings(routes));
+    }
+
+    @Test
+    public void excludedSpaceIsCutOut() {
+        List<RouteCompiler.Route> routes = new RouteCompiler()
+            .include("0.0.0.0/0")
+            .exclude("128.0.0.0/1")
+            .exclude("0.0.0.0/2")
+            .exclude("64.0.0.0/3")
+            .compile();
+
+        assertEquals(Arrays.asList("96.0.0.0/3"), strings(routes));
+
+        // Excluding everything leaves nothing; excluding nothing that was included changes nothing
+        assertEquals(0, new RouteCompiler().include("10.0.0.0/8").exclude("0.0.0.0/0").compile().size());
+        assertEquals(Arrays.asList("10.0.0.0/8"),
+            strings(new RouteCompiler().include("10.0.0.0/8").exclude("2001:db8::/32").compile()));
+    }
+
+    @Test
+    public void fullTunnelMinusLanKeepsFamiliesApartAndInOrder() {
+        List<String> routes = strings(new RouteCompiler()
+            .include("::/0")
+            .include("0.0.0.0/0")
+            .excludeAll(RouteCompiler.LOCAL_NETWORKS)
+            .compile());
+
+        assertEquals("0.0.0.0/5", routes.get(0));
+        assertEquals("11.0.0.0/8", routes.get(2));
+        int firstV6 = 0;
+        while (routes.get(firstV6).indexOf(':') < 0) {
+            firstV6++;
+        }
+        assertEquals("0:0:0:0:0:0:0:0/1", routes.get(firstV6));
+        for (int i = firstV6; i < routes.size(); i++) {
+            assertTrue(routes.get(i), routes.get(i).indexOf(':') >= 0);
+        }
+    }
+
+    @Test
+    public void ipv4MappedPrefixesAreIpv4() {
+        List<RouteCompiler.Route> routes = new RouteCompiler()
+            .include("::ffff:10.0.0.0/104")
+            .exclude("::ffff:10.128.0.0/105")
+            .compile();
+
+        assertEquals(Arrays.asList("10.0.0.0/9"), strings(routes));
+    }
+
+    @Test
+    public void hostBitsAreIgnoredAndBareAddressesAreHosts() {
+        assertEquals(Arrays.asList("192.0.2.0/24", "198.51.100.7/32", "2001:db8:0:0:0:0:0:1/128"),
+            strings(new RouteCompiler().include("192.0.2.77/24").include("198.51.100.7").include("2001:db8::1")
+                .compile()));
+    }
+
+    @Test
+    public void malformedPrefixesAreRejected() {
+        for (String bad : new String[] {"vpn.example.com/24", "10.0.0.0/33", "2001:db8::/129", "10.0.0.0/x", "",
+                "::ffff:10.0.0.0/95"}) {
+            try {
+                new RouteCompiler().include(bad);
+                fail("Accepted " + bad);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void compiledRoutesAreTheExactMinimalCover() {
+        // A /24 universe is small enough to check address by address
+        Random random = new Random(7);
+        for (int round = 0; round < 500; round++) {
+            RouteCompiler compiler = new RouteCompiler();
+            BitSet expected = new BitSet(256);
+            BitSet excluded = new BitSet(256);
+            for (int i = random.nextInt(8); i >= 0; i--) {
+                int[] block = randomBlock(random);
+                compiler.include("10.0.0." + block[0] + "/" + block[1]);
+                expected.set(block[0], block[0] + (1 << (32 - block[1])));
+            }
+            for (int i = random.nextInt(8); i > 0; i--) {
+                int[] block = randomBlock(random);
+                compiler.exclude("10.0.0." + block[0] + "/" + block[1]);
+                excluded.set(block[0], block[0] + (1 << (32 - block[1])));
+            }
+            expected.andNot(excluded);
+
+            List<RouteCompiler.Route> routes = compiler.compile();
+
+            BitSet covered = new BitSet(256);
+            for (RouteCompiler.Route route : routes) {
+                int start = route.address.getAddress()[3] & 0xff;
+                int size = 1 << (32 - route.prefixLength);
+                if (covered.get(start, start + size).cardinality() > 0) {
+                    fail("Overlapping routes " + routes);
+                }
+                covered.set(start, start + size);
+            }
+            assertEquals(routes.toString(), expected, covered);
+            assertEquals(routes.toString(), minimalCover(expected, 0, 256), routes.size());
+        }
+    }
+
+    /**
+     * @return offset in the /24 and prefix length of a random aligned block inside it
+     */
+    private static int[] randomBlock(Random random) {
+        int prefixLength = 24 + random.nextInt(9);
+        int size = 1 << (32 - prefixLength);
+        return new int[] {random.nextInt(256 / size) * size, prefixLength};
+    }
+
+    /**
+     * Fewest aligned blocks that cover exactly the set bits of [start, start + size)
+     */
+    private static int minimalCover(BitSet addresses, int start, int size) {
+        int set = addresses.get(start, start + size).cardinality();
+        if (set == 0) {
+            return 0;
+        }
+        if (set == size) {
+            return 1;
+        }
+        return minimalCover(addresses, start, size / 2) + minimalCover(addresses, start + size / 2, size / 2);
+    }
+
+    private static List<String> strings(List<RouteCompiler.Route> routes) {
+        List<String> strings = new ArrayList<>();
+        for (RouteCompiler.Route route : routes) {
+            strings.add(route.toString());
+        }
+        return strings;
+    }
+}
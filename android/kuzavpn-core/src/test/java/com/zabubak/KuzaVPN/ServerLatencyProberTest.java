@@ -0,0 +1,270 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ServerLatencyProberTest {
+    private static final JdkCurve CURVE = new JdkCurve();
+    private static final byte[] CLIENT_PRIVATE = filled(0x11);
+    private static final byte[] SERVER_PRIVATE = filled(0x22);
+    private static final byte[] SERVER_PUBLIC = CURVE.publicKey(SERVER_PRIVATE);
+    private static final byte[] OTHER_SERVER_PUBLIC = CURVE.publicKey(filled(0x33));
+    private static final long TIMEOUT_MS = 500;
+
+    private final List<Responder> responders = new ArrayList<>();
+
+    @After
+    public void closeResponders() {
+        for (Responder responder : responders) {
+            responder.close();
+        }
+    }
+
+    @Test
+    public void keyedInitiationIsAnsweredAndTimed() throws Exception {
+        Responder server = responder(SERVER_PUBLIC, 40, false);
+        ServerLatencyProber prober = new ServerLatencyProber(8, 0);
+
+        ServerLatencyProber.Result result =
+            prober.probe(Collections.singletonList(server.endpoint), initiations(keys(server)), TIMEOUT_MS).get(0);
+
+        assertTrue(result.reachable);
+        assertTrue("rtt " + result.lastRttMs, result.lastRttMs >= 40 && result.lastRttMs < TIMEOUT_MS);
+        assertEquals(result.lastRttMs, result.medianRttMs, 0);
+        assertEquals(1, result.samples);
+        assertEquals(0, result.lossRate, 0);
+        assertEquals(1, server.answered.get());
+    }
+
+    @Test
+    public void initiationForAnotherKeyGetsSilence() throws Exception {
+        Responder server = responder(SERVER_PUBLIC, 0, false);
+        ServerLatencyProber prober = new ServerLatencyProber(8, 0);
+        Map<String, byte[]> wrongKey = Collections.singletonMap(server.endpoint, OTHER_SERVER_PUBLIC);
+
+        ServerLatencyProber.Result result =
+            prober.probe(Collections.singletonList(server.endpoint), initiations(wrongKey), TIMEOUT_MS).get(0);
+
+        assertFalse(result.reachable);
+        assertEquals(-1, result.medianRttMs, 0);
+        assertEquals(1, result.lossRate, 0);
+        assertEquals(1, server.received.get());
+        assertEquals(0, server.answered.get());
+    }
+
+    @Test
+    public void answerToAnotherSenderIndexDoesNotCount() throws Exception {
+        Responder server = responder(SERVER_PUBLIC, 0, true);
+        ServerLatencyProber prober = new ServerLatencyProber(8, 0);
+
+        ServerLatencyProber.Result result =
+            prober.probe(Collections.singletonList(server.endpoint), initiations(keys(server)), TIMEOUT_MS).get(0);
+
+        assertFalse(result.reachable);
+        assertEquals(1, server.answered.get());
+    }
+
+    @Test
+    public void batchIsProbedConcurrentlyAndReturnedInOrder() throws Exception {
+        Responder slow = responder(SERVER_PUBLIC, 200, false);
+        Responder fast = responder(SERVER_PUBLIC, 0, false);
+        Responder alsoSlow = responder(SERVER_PUBLIC, 200, false);
+        ServerLatencyProber prober = new ServerLatencyProber(8, 0);
+        List<String> endpoints = Arrays.asList(slow.endpoint, fast.endpoint, alsoSlow.endpoint);
+        // Warm the handshake crypto first, so a cold JIT doesn't count against the bound below
+        prober.probe(Collections.singletonList(fast.endpoint), initiations(keys(fast)), TIMEOUT_MS);
+
+        long startedAt = System.nanoTime();
+        List<ServerLatencyProber.Result> results =
+            prober.probe(endpoints, initiations(keys(slow, fast, alsoSlow)), TIMEOUT_MS);
+        long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+
+        assertEquals(3, results.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            assertEquals(endpoints.get(i), results.get(i).endpoint);
+            assertTrue(results.get(i).reachable);
+        }
+        assertTrue(results.get(1).lastRttMs < results.get(0).lastRttMs);
+        // Both 200 ms servers wait in one selector; one after the other would take 400 ms
+        assertTrue("took " + elapsedMs + " ms", elapsedMs < 400);
+    }
+
+    @Test
+    public void freshResultsComeFromCache() throws Exception {
+        Responder server = responder(SERVER_PUBLIC, 0, false);
+        ServerLatencyProber prober = new ServerLatencyProber(8, 60_000);
+        List<String> endpoints = Collections.singletonList(server.endpoint);
+
+        ServerLatencyProber.Result first = prober.probe(endpoints, initiations(keys(server)), TIMEOUT_MS).get(0);
+        ServerLatencyProber.Result second = prober.probe(endpoints, initiations(keys(server)), TIMEOUT_MS).get(0);
+
+        assertFalse(first.cached);
+        assertTrue(second.cached);
+        assertEquals(first.lastRttMs, second.lastRttMs, 0);
+        assertEquals(1, server.received.get());
+
+        prober.invalidate();
+        prober.probe(endpoints, initiations(keys(server)), TIMEOUT_MS);
+        assertEquals(2, server.received.get());
+    }
+
+    @Test
+    public void endpointLeftOutKeepsItsLastResult() throws Exception {
+        Responder server = responder(SERVER_PUBLIC, 0, false);
+        ServerLatencyProber prober = new ServerLatencyProber(8, 0);
+        List<String> endpoints = Collections.singletonList(server.endpoint);
+        ServerLatencyProber.PayloadFactory leaveOut = (endpoint, senderIndex) -> null;
+
+        ServerLatencyProber.Result unmeasured = prober.probe(endpoints, leaveOut, TIMEOUT_MS).get(0);
+        assertFalse(unmeasured.reachable);
+        assertEquals(0, unmeasured.samples);
+        assertEquals(0, unmeasured.measuredAtMs);
+
+        ServerLatencyProber.Result measured = prober.probe(endpoints, initiations(keys(server)), TIMEOUT_MS).get(0);
+        ServerLatencyProber.Result kept = prober.probe(endpoints, leaveOut, TIMEOUT_MS).get(0);
+
+        assertTrue(kept.cached);
+        assertTrue(kept.reachable);
+        assertEquals(measured.measuredAtMs, kept.measuredAtMs);
+        assertEquals(1, kept.samples);
+        assertEquals(0, kept.lossRate, 0);
+        assertEquals(1, server.received.get());
+    }
+
+    @Test
+    public void closedPortIsUnreachable() throws Exception {
+        int port;
+        try (DatagramSocket closed = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            port = closed.getLocalPort();
+        }
+        String endpoint = "127.0.0.1:" + port;
+        ServerLatencyProber prober = new ServerLatencyProber(8, 0);
+
+        ServerLatencyProber.Result result = prober.probe(Collections.singletonList(endpoint),
+            initiations(Collections.singletonMap(endpoint, SERVER_PUBLIC)), TIMEOUT_MS).get(0);
+
+        assertFalse(result.reachable);
+        assertEquals(1, result.lossRate, 0);
+    }
+
+    private Responder responder(byte[] publicKey, long delayMs, boolean wrongIndex) throws SocketException {
+        Responder responder = new Responder(publicKey, delayMs, wrongIndex);
+        responders.add(responder);
+        return responder;
+    }
+
+    private static Map<String, byte[]> keys(Responder... servers) {
+        Map<String, byte[]> keys = new HashMap<>();
+        for (Responder server : servers) {
+            keys.put(server.endpoint, server.publicKey);
+        }
+        return keys;
+    }
+
+    private static ServerLatencyProber.PayloadFactory initiations(Map<String, byte[]> serverKeys) {
+        AtomicInteger ephemeralSeed = new AtomicInteger(0x40);
+        return (endpoint, senderIndex) -> HandshakeInitiation.create(CURVE, CLIENT_PRIVATE,
+            serverKeys.get(endpoint), senderIndex, filled(ephemeralSeed.getAndIncrement()), System.currentTimeMillis());
+    }
+
+    private static byte[] filled(int value) {
+        byte[] key = new byte[HandshakeInitiation.KEY_SIZE];
+        Arrays.fill(key, (byte) value);
+        return key;
+    }
+
+    /**
+     * WireGuard server stand-in on a loopback socket: checks mac1 against its own key,
+     * as a real server does before anything else, and answers with a handshake response
+     * addressed to the initiation's sender index
+     */
+    private static final class Responder implements Runnable {
+        final byte[] publicKey;
+        final String endpoint;
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicInteger answered = new AtomicInteger();
+        private final byte[] mac1Key;
+        private final long delayMs;
+        private final boolean wrongIndex;
+        private final DatagramSocket socket;
+        private final Thread thread;
+
+        Responder(byte[] publicKey, long delayMs, boolean wrongIndex) throws SocketException {
+            this.publicKey = publicKey;
+            this.mac1Key = Blake2s.hash("mac1----".getBytes(StandardCharsets.US_ASCII), publicKey);
+            this.delayMs = delayMs;
+            this.wrongIndex = wrongIndex;
+            socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            socket.setSoTimeout(50);
+            endpoint = "127.0.0.1:" + socket.getLocalPort();
+            thread = new Thread(this, "responder-" + socket.getLocalPort());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[512];
+            while (!socket.isClosed()) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                try {
+                    socket.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    continue;
+                } catch (IOException e) {
+                    return;
+                }
+                received.incrementAndGet();
+                if (packet.getLength() != HandshakeInitiation.SIZE || !validMac1(buffer)) {
+                    continue;
+                }
+                int senderIndex = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).getInt(4);
+                ByteBuffer response = ByteBuffer.allocate(HandshakeInitiation.RESPONSE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                response.putInt(HandshakeInitiation.TYPE_RESPONSE);
+                response.putInt(0x5eed);
+                response.putInt(wrongIndex ? senderIndex + 1 : senderIndex);
+                try {
+                    Thread.sleep(delayMs);
+                    // Counted first: the prober may return before this thread runs again
+                    answered.incrementAndGet();
+                    socket.send(new DatagramPacket(response.array(), response.capacity(), packet.getSocketAddress()));
+                } catch (InterruptedException | IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private boolean validMac1(byte[] initiation) {
+            int signed = HandshakeInitiation.SIZE - 32;
+            byte[] expected = Blake2s.mac(mac1Key, Arrays.copyOf(initiation, signed));
+            return Arrays.equals(expected, Arrays.copyOfRange(initiation, signed, signed + expected.length));
+        }
+
+        void close() {
+            socket.close();
+            thread.interrupt();
+        }
+    }
+}
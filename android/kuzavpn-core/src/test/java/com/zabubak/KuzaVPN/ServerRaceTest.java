@@ -0,0 +1,71 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class ServerRaceTest {
+    private static final String CANDIDATES = "\"candidates\":["
+        + "{\"serverEndpoint\":\"a.example.com:51820\",\"publicKey\":\"keyA\",\"presharedKey\":\"pskA\"},"
+        + "{\"endpoint\":\" b.example.com:51820 \",\"publicKey\":\"keyB\"},"
+        + "{\"serverEndpoint\":\"c.example.com:51820\",\"publicKey\":\"keyC\"}]";
+
+    @Test
+    public void candidatesAreCappedByRaceCount() {
+        ServerRace race = ServerRace.parse("{\"privateKey\":\"k\"," + CANDIDATES + ",\"raceCount\":2}");
+
+        assertEquals(2, race.contenders().size());
+        assertEquals("a.example.com:51820", race.contenders().get(0).endpoint);
+        assertEquals("pskA", race.contenders().get(0).presharedKey);
+        assertEquals("b.example.com:51820", race.contenders().get(1).endpoint);
+        assertNull(race.contenders().get(1).presharedKey);
+        assertEquals(HandshakeRace.DEFAULT_STAGGER_MS, race.staggerMs());
+
+        ServerRace wide = ServerRace.parse("{" + CANDIDATES + ",\"raceCount\":99,\"raceStaggerMs\":-5}");
+        assertEquals(3, wide.contenders().size());
+        assertEquals(0, wide.staggerMs());
+    }
+
+    @Test
+    public void winnerConfigIsAPlainSingleServerConfig() {
+        ServerRace race = ServerRace.parse("{\"privateKey\":\"k\",\"presharedKey\":\"top\"," + CANDIDATES
+            + ",\"raceCount\":3,\"raceStaggerMs\":100}");
+
+        JSONObject first = new JSONObject(race.configFor(0));
+        assertEquals("a.example.com:51820", first.getString("serverEndpoint"));
+        assertEquals("keyA", first.getString("publicKey"));
+        assertEquals("pskA", first.getString("presharedKey"));
+        assertEquals("k", first.getString("privateKey"));
+        assertFalse(first.has("candidates"));
+        assertFalse(first.has("raceCount"));
+        assertFalse(first.has("raceStaggerMs"));
+
+        // A candidate without its own key must not inherit another server's
+        assertFalse(new JSONObject(race.configFor(1)).has("presharedKey"));
+    }
+
+    @Test
+    public void configsWithoutCandidatesAreNotRaced() {
+        assertNull(ServerRace.parse(null));
+        assertNull(ServerRace.parse("[Interface]\nPrivateKey = k\n"));
+        assertNull(ServerRace.parse("{\"privateKey\":\"k\",\"serverEndpoint\":\"a.example.com:51820\"}"));
+        assertNull(ServerRace.parse("{\"candidates\":[]}"));
+        assertNull(ServerRace.parse("{" + CANDIDATES + ",\"peers\":[]}"));
+    }
+
+    @Test
+    public void malformedCandidatesAreRejected() {
+        for (String bad : new String[] {"{\"candidates\":[{\"publicKey\":\"keyA\"}]}",
+                "{\"candidates\":[{\"serverEndpoint\":\"a.example.com:51820\"}]}", "{\"candidates\":[1]}", "{bad"}) {
+            try {
+                ServerRace.parse(bad);
+                fail("Accepted " + bad);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TimeSeriesFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void retainFromKeepsLaterRecordsInOrder() throws IOException {
+        File path = folder.newFile("series.bin");
+        try (TimeSeriesFile series = new TimeSeriesFile(path)) {
+            for (int bucket = 0; bucket < 10; bucket++) {
+                series.append(bucket, 100 + bucket, bucket * 10L, bucket * 20L);
+            }
+
+            series.retainFrom(6);
+
+            assertEquals(4, series.size());
+            assertEquals(9, series.lastBucket());
+            assertEquals(List.of(6, 7, 8, 9), buckets(series));
+            assertFalse(new File(path.getPath() + ".compact").exists());
+
+            // Appends land on the replacement file
+            series.append(10, 110, 100, 200);
+            assertEquals(List.of(6, 7, 8, 9, 10), buckets(series));
+        }
+
+        try (TimeSeriesFile reopened = new TimeSeriesFile(path)) {
+            assertEquals(List.of(6, 7, 8, 9, 10), buckets(reopened));
+        }
+    }
+
+    @Test
+    public void leftoverCompactionIsDiscardedOnOpen() throws IOException {
+        File path = folder.newFile("series.bin");
+        try (TimeSeriesFile series = new TimeSeriesFile(path)) {
+            series.append(1, 1, 1, 1);
+            series.append(2, 2, 2, 2);
+        }
+        File leftover = new File(path.getPath() + ".compact");
+        assertTrue(leftover.createNewFile());
+
+        try (TimeSeriesFile series = new TimeSeriesFile(path)) {
+            assertEquals(List.of(1, 2), buckets(series));
+        }
+        assertFalse(leftover.exists());
+    }
+
+    private static List<Integer> buckets(TimeSeriesFile series) {
+        List<Integer> buckets = new ArrayList<>();
+        series.scan(Integer.MIN_VALUE, Integer.MAX_VALUE, (bucket, key, rx, tx) -> buckets.add(bucket));
+        return buckets;
+    }
+}
@@ -0,0 +1,43 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TunnelPhaseTest {
+    @Test
+    public void transitionsMatchTheLifecycle() {
+        assertMoves(TunnelPhase.IDLE, EnumSet.of(TunnelPhase.ESTABLISHING));
+        assertMoves(TunnelPhase.ESTABLISHING, EnumSet.of(TunnelPhase.ESTABLISHING, TunnelPhase.HANDSHAKING));
+        assertMoves(TunnelPhase.HANDSHAKING,
+            EnumSet.of(TunnelPhase.ESTABLISHING, TunnelPhase.HANDSHAKING, TunnelPhase.UP));
+        assertMoves(TunnelPhase.UP, EnumSet.of(TunnelPhase.ESTABLISHING, TunnelPhase.HANDSHAKING, TunnelPhase.PAUSED));
+        assertMoves(TunnelPhase.PAUSED, EnumSet.of(TunnelPhase.ESTABLISHING, TunnelPhase.HANDSHAKING));
+        assertMoves(TunnelPhase.TEARING_DOWN, EnumSet.of(TunnelPhase.IDLE));
+    }
+
+    @Test
+    public void fullCycleIsReachableFromIdle() {
+        TunnelPhase[] cycle = {
+            TunnelPhase.IDLE, TunnelPhase.ESTABLISHING, TunnelPhase.HANDSHAKING, TunnelPhase.UP,
+            TunnelPhase.PAUSED, TunnelPhase.HANDSHAKING, TunnelPhase.UP, TunnelPhase.TEARING_DOWN, TunnelPhase.IDLE,
+        };
+        for (int i = 1; i < cycle.length; i++) {
+            assertTrue(cycle[i - 1] + " -> " + cycle[i], cycle[i - 1].canMoveTo(cycle[i]));
+        }
+    }
+
+    /**
+     * Every phase may tear down; beyond that, exactly the given phases are reachable
+     */
+    private static void assertMoves(TunnelPhase from, Set<TunnelPhase> allowed) {
+        for (TunnelPhase to : TunnelPhase.values()) {
+            boolean expected = to == TunnelPhase.TEARING_DOWN || allowed.contains(to);
+            assertEquals(from + " -> " + to, expected, from.canMoveTo(to));
+        }
+    }
+}
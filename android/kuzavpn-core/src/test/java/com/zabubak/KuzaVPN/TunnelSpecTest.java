@@ -0,0 +1,144 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TunnelSpecTest {
+    private static final String PRIVATE_KEY = "yAnz5TF+lXXJte14tji3zlMNq+hd2rYUIgJBgB3fBmk=";
+    private static final String PUBLIC_KEY = "xTIBA5rboUvnH4htodjb6e697QjLERt1NAB4mZqp8Dg=";
+
+    @Test
+    public void singleServerJsonFillsDefaults() {
+        TunnelSpec spec = TunnelSpec.parse("{\"privateKey\":\"" + PRIVATE_KEY + "\",\"publicKey\":\"" + PUBLIC_KEY
+            + "\",\"serverEndpoint\":\"vpn.example.com:51820\"}");
+
+        assertEquals(PRIVATE_KEY, spec.privateKey);
+        assertEquals(Arrays.asList("10.0.0.2/24"), spec.addresses);
+        assertEquals(Arrays.asList("1.1.1.1", "8.8.8.8"), spec.dnsServers);
+        assertEquals(0, spec.mtu);
+        assertEquals(1, spec.peers.size());
+        TunnelSpec.Peer peer = spec.peers.get(0);
+        assertEquals(PUBLIC_KEY, peer.publicKey);
+        assertNull(peer.presharedKey);
+        assertEquals("vpn.example.com:51820", peer.endpoint);
+        assertEquals(Arrays.asList("0.0.0.0/0", "::/0"), peer.allowedIps);
+        assertEquals(TunnelSpec.DEFAULT_PERSISTENT_KEEPALIVE, peer.persistentKeepalive);
+    }
+
+    @Test
+    public void peersInheritTopLevelListsUnlessTheySetTheirOwn() {
+        TunnelSpec spec = TunnelSpec.parse("{\"privateKey\":\"" + PRIVATE_KEY + "\","
+            + "\"address\":[\"10.8.0.2/32\",\" \",\"fd00::2/128\"],\"dns\":\"9.9.9.9\",\"mtu\":1380,"
+            + "\"allowedIPs\":\"10.0.0.0/8\",\"persistentKeepalive\":0,\"peers\":["
+            + "{\"publicKey\":\"" + PUBLIC_KEY + "\",\"endpoint\":\"198.51.100.1:51820\"},"
+            + "{\"publicKey\":\"" + PUBLIC_KEY + "\",\"endpoint\":\"198.51.100.2:51820\",\"presharedKey\":\"psk\","
+            + "\"allowedIPs\":[\"192.168.0.0/16\"],\"persistentKeepalive\":15}]}");
+
+        assertEquals(Arrays.asList("10.8.0.2/32", "fd00::2/128"), spec.addresses);
+        assertEquals(Arrays.asList("9.9.9.9"), spec.dnsServers);
+        assertEquals(1380, spec.mtu);
+        assertEquals(2, spec.peers.size());
+        assertEquals(Arrays.asList("10.0.0.0/8"), spec.peers.get(0).allowedIps);
+        assertEquals(0, spec.peers.get(0).persistentKeepalive);
+        assertEquals(Arrays.asList("192.168.0.0/16"), spec.peers.get(1).allowedIps);
+        assertEquals(15, spec.peers.get(1).persistentKeepalive);
+        assertEquals("psk", spec.peers.get(1).presharedKey);
+    }
+
+    @Test
+    public void wgQuickTextParsesWithCommentsAndCase() {
+        TunnelSpec spec = TunnelSpec.parse(wgQuick());
+
+        assertEquals(PRIVATE_KEY, spec.privateKey);
+        assertEquals(Arrays.asList("10.8.0.2/32", "fd00::2/128"), spec.addresses);
+        assertEquals(Arrays.asList("1.1.1.1", "example.internal"), spec.dnsServers);
+        assertEquals(Arrays.asList("com.example.browser"), spec.excludedApplications);
+        assertEquals(1420, spec.mtu);
+        assertEquals(51000, spec.listenPort);
+        assertEquals(2, spec.peers.size());
+        assertEquals("vpn.example.com:51820", spec.peers.get(0).endpoint);
+        assertEquals(Arrays.asList("0.0.0.0/0", "::/0"), spec.peers.get(0).allowedIps);
+        assertEquals(25, spec.peers.get(0).persistentKeepalive);
+        assertNull(spec.peers.get(1).endpoint);
+        assertEquals(0, spec.peers.get(1).persistentKeepalive);
+
+        // The JSON form may carry the same text
+        TunnelSpec wrapped = TunnelSpec.parse("{\"config\":" + JSONObject.quote(wgQuick()) + "}");
+        assertEquals(spec.peers.get(0).allowedIps, wrapped.peers.get(0).allowedIps);
+    }
+
+    @Test
+    public void excludedRoutesAreCarvedOutOfEveryPeer() {
+        TunnelSpec spec = TunnelSpec.parse("{\"privateKey\":\"" + PRIVATE_KEY + "\",\"publicKey\":\"" + PUBLIC_KEY
+            + "\",\"allowedIPs\":\"0.0.0.0/0\",\"excludeLan\":true,\"excludedRoutes\":[\"128.0.0.0/1\"]}");
+
+        assertEquals(Arrays.asList("0.0.0.0/5", "8.0.0.0/7", "11.0.0.0/8", "12.0.0.0/6", "16.0.0.0/4",
+            "32.0.0.0/3", "64.0.0.0/2"), spec.peers.get(0).allowedIps);
+
+        TunnelSpec unchanged = TunnelSpec.parse(wgQuick()).excludeRoutes(Collections.emptyList());
+        assertEquals(Arrays.asList("0.0.0.0/0", "0:0:0:0:0:0:0:0/0"), unchanged.peers.get(0).allowedIps);
+    }
+
+    @Test
+    public void excludedDomainsComeOnlyFromJson() {
+        assertEquals(Arrays.asList("example.com", "*.example.org"),
+            TunnelSpec.excludedDomains("{\"excludedDomains\":[\" example.com \",\"\",\"*.example.org\"]}"));
+        assertEquals(Collections.emptyList(), TunnelSpec.excludedDomains("{\"privateKey\":\"k\"}"));
+        assertEquals(Collections.emptyList(), TunnelSpec.excludedDomains(wgQuick()));
+        assertEquals(Collections.emptyList(), TunnelSpec.excludedDomains(null));
+    }
+
+    @Test
+    public void malformedConfigsAreRejected() {
+        String[] bad = {
+            null,
+            " ",
+            "{not json",
+            "{\"publicKey\":\"" + PUBLIC_KEY + "\"}",
+            "PrivateKey = " + PRIVATE_KEY,
+            "[Interface]\nPrivateKey = " + PRIVATE_KEY + "\n[Server]\n",
+            "[Interface]\nPrivateKey = " + PRIVATE_KEY + "\nColour = blue\n",
+            "[Interface]\nPrivateKey = " + PRIVATE_KEY + "\nMTU = big\n",
+            "[Interface]\nPrivateKey = " + PRIVATE_KEY + "\n[Peer]\nEndpoint = vpn.example.com:51820\n",
+            "[Interface]\nAddress = 10.8.0.2/32\n",
+            "{\"privateKey\":\"" + PRIVATE_KEY + "\",\"publicKey\":\"" + PUBLIC_KEY
+                + "\",\"excludedRoutes\":[\"vpn.example.com/24\"]}",
+        };
+        for (String config : bad) {
+            try {
+                TunnelSpec.parse(config);
+                fail("Accepted " + config);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    private static String wgQuick() {
+        return "[Interface]\n"
+            + "PrivateKey = " + PRIVATE_KEY + "\n"
+            + "Address = 10.8.0.2/32, fd00::2/128\n"
+            + "DNS = 1.1.1.1, example.internal  # resolver and search domain\n"
+            + "ExcludedApplications = com.example.browser\n"
+            + "mtu = 1420\n"
+            + "ListenPort = 51000\n"
+            + "\n"
+            + "[Peer]\n"
+            + "# Frankfurt\n"
+            + "PublicKey = " + PUBLIC_KEY + "\n"
+            + "AllowedIPs = 0.0.0.0/0\n"
+            + "AllowedIPs = ::/0\n"
+            + "Endpoint = vpn.example.com:51820\n"
+            + "PersistentKeepalive = 25\n"
+            + "[peer]\n"
+            + "PublicKey = " + PUBLIC_KEY + "\n"
+            + "AllowedIPs = 10.9.0.0/16\n"
+            + "PersistentKeepalive = off\n";
+    }
+}
@@ -0,0 +1,130 @@
+package com.zabubak.KuzaVPN;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TunnelStatsEngineTest {
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void ratesAndTotalsFollowTheCounters() {
+        TunnelStatsEngine engine = new TunnelStatsEngine(8, 5_000);
+        engine.startSession(1_000);
+
+        engine.record(1_000, 0, 0);
+        engine.record(2_000, 4_000, 1_000);
+        engine.record(4_000, 8_000, 5_000);
+
+        assertEquals(8_000, engine.getSessionRxBytes());
+        assertEquals(5_000, engine.getSessionTxBytes());
+        assertEquals(2_000, engine.getRxRate(), DELTA);
+        assertEquals(2_000, engine.getTxRate(), DELTA);
+        assertEquals(4_000, engine.getLastSampleMs());
+
+        // Time-aware EWMA: each step moves by 1 - e^(-elapsed / smoothing)
+        double afterFirst = (1 - Math.exp(-1_000 / 5_000.0)) * 4_000;
+        double afterSecond = afterFirst + (1 - Math.exp(-2_000 / 5_000.0)) * (2_000 - afterFirst);
+        assertEquals(afterSecond, engine.getSmoothedRxRate(), DELTA);
+    }
+
+    @Test
+    public void restartedCountersAddFromZero() {
+        TunnelStatsEngine engine = new TunnelStatsEngine(8, 5_000);
+        engine.startSession(0);
+        engine.record(0, 10_000, 10_000);
+        engine.record(1_000, 12_000, 11_000);
+
+        // The backend device was replaced and its counters began again
+        engine.record(2_000, 500, 100);
+
+        assertEquals(12_500, engine.getSessionRxBytes());
+        assertEquals(11_100, engine.getSessionTxBytes());
+    }
+
+    @Test
+    public void ringKeepsTheNewestSamplesOldestFirst() {
+        TunnelStatsEngine engine = new TunnelStatsEngine(4, 5_000);
+        engine.startSession(0);
+        for (int i = 0; i < 6; i++) {
+            engine.record(i * 1_000L, i * 100L, i * 10L);
+        }
+
+        long[] times = new long[8];
+        long[] rx = new long[8];
+        long[] tx = new long[8];
+        assertEquals(4, engine.copySamples(times, rx, tx));
+        assertEquals(2_000, times[0]);
+        assertEquals(5_000, times[3]);
+        assertEquals(200, rx[0]);
+        assertEquals(500, rx[3]);
+        assertEquals(50, tx[3]);
+
+        // A shorter destination gets the newest samples
+        long[] lastTwo = new long[2];
+        assertEquals(2, engine.copySamples(lastTwo, new long[2], new long[2]));
+        assertEquals(4_000, lastTwo[0]);
+        assertEquals(5_000, lastTwo[1]);
+    }
+
+    @Test
+    public void averageRateCoversOnlyTheWindow() {
+        TunnelStatsEngine engine = new TunnelStatsEngine(16, 5_000);
+        engine.startSession(0);
+        assertEquals(0, engine.averageRxRate(10_000), DELTA);
+
+        // 1000 B/s for ten seconds, then 5000 B/s for two
+        long rx = 0;
+        for (int second = 0; second <= 10; second++) {
+            engine.record(second * 1_000L, rx, 0);
+            rx += 1_000;
+        }
+        rx -= 1_000;
+        for (int second = 11; second <= 12; second++) {
+            rx += 5_000;
+            engine.record(second * 1_000L, rx, 0);
+        }
+
+        assertEquals(5_000, engine.averageRxRate(2_000), DELTA);
+        assertEquals((2 * 5_000 + 2 * 1_000) / 4.0, engine.averageRxRate(4_000), DELTA);
+    }
+
+    @Test
+    public void sessionsStartCleanAndIgnoreSamplesAfterTheEnd() {
+        TunnelStatsEngine engine = new TunnelStatsEngine(4, 5_000);
+        engine.record(0, 1_000, 1_000);
+        assertFalse(engine.isActive());
+        assertEquals(0, engine.getSessionRxBytes());
+
+        engine.startSession(5_000);
+        engine.record(5_000, 0, 0);
+        engine.record(6_000, 3_000, 0);
+        engine.recordHandshake(5_500);
+        engine.recordHandshake(5_200);
+        engine.endSession();
+        engine.record(7_000, 9_000, 0);
+        engine.recordHandshake(7_000);
+
+        TunnelStatsEngine.Snapshot snapshot = engine.snapshot();
+        assertFalse(snapshot.active);
+        assertEquals(5_000, snapshot.sessionStartMs);
+        assertEquals(3_000, snapshot.rxBytes);
+        assertEquals(0, snapshot.rxRate, DELTA);
+        assertEquals(0, snapshot.smoothedRxRate, DELTA);
+        assertEquals(6_000, snapshot.lastSampleMs);
+        assertEquals(5_500, snapshot.latestHandshakeMs);
+
+        engine.startSession(8_000);
+        assertTrue(engine.isActive());
+        assertEquals(0, engine.getSessionRxBytes());
+        assertEquals(0, engine.getLastSampleMs());
+        assertEquals(0, engine.snapshot().latestHandshakeMs);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ringNeedsTwoSlots() {
+        new TunnelStatsEngine(1, 5_000);
+    }
+}
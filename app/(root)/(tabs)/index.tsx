@@ -203,10 +203,10 @@ export default function Home() {
             getHomePageApps().map((app, index) => (
               <View key={app.packageName || index} className={`flex-row items-center justify-between px-6 py-4 ${index < getHomePageApps().length - 1 ? 'border-b border-gray-100' : ''}`}>
                 <View className="flex-row items-center">
-                  {app.iconBase64 ? (
+                  {app.iconUri ? (
                     <View className="w-10 h-10 rounded-lg mr-3 overflow-hidden">
                       <Image
-                        source={{ uri: `data:image/png;base64,${app.iconBase64}` }}
+                        source={{ uri: app.iconUri }}
                         className="w-full h-full"
                         resizeMode="cover"
                       />
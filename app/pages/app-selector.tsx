@@ -1,14 +1,20 @@
 import { useVPN } from '@/lib/vpn-context';
 import { AppInfo } from '@/lib/VPNModule';
 import { router } from 'expo-router';
-import React, { useState } from 'react';
+import React, { useEffect, useState } from 'react';
 import { FlatList, Image, StyleSheet, Switch, Text, TouchableOpacity, View } from 'react-native';
 import { SafeAreaView } from 'react-native-safe-area-context';
 
 export const AppSelectorScreen = () => {
-  const { availableApps, selectedApps, toggleAppSelection, isLoading, connectVPN, selectionMode } = useVPN();
+  const { availableApps, selectedApps, toggleAppSelection, isLoading, connectVPN, selectionMode, loadAvailableApps, cancelAppLoading } = useVPN();
   const [searchQuery, setSearchQuery] = useState('');
 
+  useEffect(() => {
+    // Refresh the list while the selector is open; stop streaming when it closes
+    loadAvailableApps();
+    return () => cancelAppLoading();
+  }, []);
+
   const filteredApps = availableApps.filter(app =>
     app.appName.toLowerCase().includes(searchQuery.toLowerCase())
   );
@@ -40,10 +46,10 @@ export const AppSelectorScreen = () => {
         }}
       >
         <View style={styles.appInfo}>
-          {item.iconBase64 ? (
+          {item.iconUri ? (
             <View style={styles.appIconContainer}>
               <Image
-                source={{ uri: `data:image/png;base64,${item.iconBase64}` }}
+                source={{ uri: item.iconUri }}
                 style={styles.appIconImage}
                 resizeMode="cover"
               />
@@ -1,5 +1,7 @@
+import { useVPN } from '@/lib/vpn-context';
+import { KuzaVPN, ServerLatency } from '@/lib/VPNModule';
 import { router } from 'expo-router';
-import React, { useState } from 'react';
+import React, { useEffect, useState } from 'react';
 import { FlatList, StyleSheet, Text, TouchableOpacity, View } from 'react-native';
 import { SafeAreaView } from 'react-native-safe-area-context';
 
@@ -8,11 +10,13 @@ interface Server {
   country: string;
   city: string;
   flag: string;
-  ping: number;
+  endpoint?: string; // WireGuard host:port, probed natively for latency
+  publicKey?: string; // Server's WireGuard key; the probe is a handshake only it can answer
   load: number;
 }
 
 const ServerSelectionScreen = () => {
+  const { switchServer, vpnConfig } = useVPN();
   const [selectedServer, setSelectedServer] = useState('germany-berlin');
 
   const servers: Server[] = [
@@ -21,7 +25,8 @@ const ServerSelectionScreen = () => {
       country: 'Germany',
       city: 'Berlin',
       flag: '🇩🇪',
-      ping: 12,
+      endpoint: '152.53.146.237:51820',
+      publicKey: 'WvzOJrORUIUP3BICmHXlG1dIDJW9Fl3RXMr2AnDv+AU=',
       load: 35,
     },
     {
@@ -29,7 +34,6 @@ const ServerSelectionScreen = () => {
       country: 'United States',
       city: 'New York',
       flag: '🇺🇸',
-      ping: 45,
       load: 67,
     },
     {
@@ -37,7 +41,6 @@ const ServerSelectionScreen = () => {
       country: 'United Kingdom',
       city: 'London',
       flag: '🇬🇧',
-      ping: 23,
       load: 42,
     },
     {
@@ -45,7 +48,6 @@ const ServerSelectionScreen = () => {
       country: 'Japan',
       city: 'Tokyo',
       flag: '🇯🇵',
-      ping: 89,
       load: 28,
     },
     {
@@ -53,7 +55,6 @@ const ServerSelectionScreen = () => {
       country: 'Canada',
       city: 'Toronto',
       flag: '🇨🇦',
-      ping: 56,
       load: 51,
     },
     {
@@ -61,7 +62,6 @@ const ServerSelectionScreen = () => {
       country: 'Australia',
       city: 'Sydney',
       flag: '🇦🇺',
-      ping: 134,
       load: 39,
     },
     {
@@ -69,7 +69,6 @@ const ServerSelectionScreen = () => {
       country: 'Singapore',
       city: 'Singapore',
       flag: '🇸🇬',
-      ping: 78,
       load: 44,
     },
     {
@@ -77,17 +76,48 @@ const ServerSelectionScreen = () => {
       country: 'Netherlands',
       city: 'Amsterdam',
       flag: '🇳🇱',
-      ping: 18,
       load: 33,
     },
   ];
 
+  const [latency, setLatency] = useState<Record<string, ServerLatency>>({});
+
+  useEffect(() => {
+    const endpoints = servers
+      .map(server => server.endpoint)
+      .filter((endpoint): endpoint is string => !!endpoint);
+    const probed = servers
+      .filter(server => server.endpoint && server.publicKey)
+      .map(server => ({ serverEndpoint: server.endpoint!, publicKey: server.publicKey! }));
+
+    KuzaVPN.prefetchEndpoints(endpoints);
+    if (!vpnConfig || probed.length === 0) return;
+
+    let active = true;
+    KuzaVPN.probeServers(probed, vpnConfig.privateKey).then(results => {
+      if (!active) return;
+      const byEndpoint: Record<string, ServerLatency> = {};
+      results.forEach(result => { byEndpoint[result.endpoint] = result; });
+      setLatency(byEndpoint);
+    });
+    return () => { active = false; };
+  }, [vpnConfig?.privateKey]);
+
+  const formatPing = (server: Server) => {
+    const result = server.endpoint ? latency[server.endpoint] : undefined;
+    if (!result || result.medianRttMs < 0) return '—';
+    return `${Math.round(result.medianRttMs)}ms`;
+  };
+
   const handleServerSelect = (serverId: string) => {
     setSelectedServer(serverId);
   };
 
-  const handleConnect = () => {
-    // Handle server connection
+  const handleConnect = async () => {
+    const server = servers.find(candidate => candidate.id === selectedServer);
+    if (server?.endpoint) {
+      await switchServer(server.endpoint);
+    }
     router.back();
   };
 
@@ -123,7 +153,7 @@ const ServerSelectionScreen = () => {
         <View style={styles.serverStats}>
           <View style={styles.statItem}>
             <Text style={[styles.statValue, isSelected && styles.selectedText]}>
-              {item.ping}ms
+              {formatPing(item)}
             </Text>
             <Text style={[styles.statLabel, isSelected && styles.selectedSubtext]}>
               Ping
@@ -1,18 +1,44 @@
-import { NativeModules, Platform } from 'react-native';
+import { NativeEventEmitter, Platform } from 'react-native';
+import NativeKuzaVPN from '../specs/NativeKuzaVPN';
 
-// Native module interface - must match KuzaVpnModule names
+// Typed view of the codegen spec in specs/NativeKuzaVPN.ts - keep the two in step
 interface KuzaVpnNativeModule {
   // VPN Control
   requestVpnPermission(): Promise<boolean>;
   startVPN(config: string, selectedApps: string[]): Promise<boolean>;
   stopVPN(): Promise<boolean>;
+  switchServer(config: string): Promise<ServerSwitchResult>;
   getVpnStatus(): Promise<any>;
+  getSnapshot(): VPNSnapshot;
+  subscribeStatus(intervalMs: number): Promise<boolean>;
+  unsubscribeStatus(): void;
 
   // App Management
   getInstalledApps(): Promise<AppInfo[]>;
+  startAppListing(pageSize: number): Promise<AppListingPage>;
+  cancelAppListing(listingId: number): void;
+
+  // Events
+  addListener(eventName: string): void;
+  removeListeners(count: number): void;
 
   // Statistics
   getBandwidthStats(): Promise<BandwidthStats>;
+  getThroughputHistory(): Promise<number[]>;
+  probeServers(servers: VPNServer[], privateKey: string, timeoutMs: number): Promise<ServerLatency[]>;
+  prefetchEndpoints(endpoints: string[]): Promise<boolean>;
+  getConnectTimings(): Promise<ConnectTimings>;
+  getRoamingStats(): Promise<RoamingStats>;
+  getLastServerRace(): Promise<ServerRaceResult | null>;
+  getTrace(): Promise<TraceDump>;
+  clearTrace(): Promise<boolean>;
+  setLogLevel(level: LogLevel): Promise<boolean>;
+  getTopApps(fromMs: number, toMs: number, limit: number): Promise<AppUsage[]>;
+
+  // Data quota
+  setQuota(limitBytes: number, softFraction: number, action: QuotaAction): Promise<QuotaStatus>;
+  getQuotaStatus(): Promise<QuotaStatus>;
+  resetQuota(): Promise<QuotaStatus>;
 }
 
 // Type definitions
@@ -20,7 +46,31 @@ export interface AppInfo {
   packageName: string;
   appName: string;
   isSystemApp: boolean;
-  iconBase64?: string;
+  // content:// URI served by the native icon cache, loaded lazily by <Image>
+  iconUri?: string;
+  // True while the native side is still resolving the real label
+  labelPending?: boolean;
+}
+
+interface AppListingPage {
+  listingId: number;
+  total?: number;
+  offset?: number;
+  apps: AppInfo[];
+  done: boolean;
+}
+
+interface AppLabelsEvent {
+  listingId: number;
+  labels: { packageName: string; appName: string }[];
+  done: boolean;
+}
+
+// One server of a connect that races several
+export interface VPNServer {
+  serverEndpoint: string;
+  publicKey: string;
+  presharedKey?: string;
 }
 
 export interface VPNConfig {
@@ -29,6 +79,17 @@ export interface VPNConfig {
   privateKey: string;
   allowedIPs: string[];
   dns: string[];
+  address?: string[]; // client tunnel addresses, e.g. ['10.0.0.2/24']
+  mtu?: number;
+  excludedRoutes?: string[]; // CIDR prefixes kept off the tunnel (split tunneling)
+  excludeLan?: boolean; // keep RFC 1918, link-local and multicast traffic local
+  excludedDomains?: string[]; // domains kept off the tunnel, e.g. 'netflix.com' (Android; '*.' wildcards are rejected)
+  // Servers to race at connect, best first; the first to answer a handshake is used instead of
+  // serverEndpoint/publicKey (Android)
+  candidates?: VPNServer[];
+  raceCount?: number;     // how many of the candidates race, default 3
+  raceStaggerMs?: number; // delay between their starts, default 250
+  wgQuickConfig?: string; // full wg-quick .conf text; takes precedence over the fields above
 }
 
 export interface BandwidthStats {
@@ -36,10 +97,165 @@ export interface BandwidthStats {
   bytesSent: number;
   totalBytes: number;
   lastUpdated: string;
+  // Tunnel throughput sampled from the WireGuard backend (bytes per second)
+  rxBytesPerSecond?: number;
+  txBytesPerSecond?: number;
+  rxBytesPerSecondSmoothed?: number;
+  txBytesPerSecondSmoothed?: number;
+  sessionStartedAt?: number;
+  isActive?: boolean;
+}
+
+export interface VPNStatusEvent {
+  status: 'connected' | 'disconnected' | 'connecting';
+  state: 'establishing' | 'handshaking' | 'up' | 'paused' | 'failed' | 'down';
+  detail?: string;
+}
+
+export interface VPNSnapshot extends VPNStatusEvent {
+  isActive: boolean;
+  bytesReceived: number;
+  bytesSent: number;
+  rxBytesPerSecond: number;
+  txBytesPerSecond: number;
+  rxBytesPerSecondSmoothed: number;
+  txBytesPerSecondSmoothed: number;
+  sessionStartedAt: number;
+  lastSampleAt: number;   // 0 before the first sample
+  handshakeAgeMs: number; // -1 until a handshake has completed
 }
 
-// Get native module with fallback for development
-const KuzaVpnNativeModule = NativeModules.KuzaVPN as KuzaVpnNativeModule | undefined;
+export interface ThroughputHistory {
+  timesMs: Float64Array;
+  rxBytes: Float64Array; // cumulative for the session at each sample
+  txBytes: Float64Array;
+}
+
+export interface ServerRaceResult {
+  winner?: string;      // endpoint that answered first; absent when none did
+  winnerRank: number;   // its index in candidates, -1 without a winner
+  winnerMs: number;     // race start to the winner's answer, stagger included
+  runnerUp?: string;
+  marginMs: number;     // runner-up's lag; without one a lower bound, -1 if uncontested
+  contenders: number;
+  started: number;      // contenders whose handshake went out before the race was decided
+  completedAt: number;
+}
+
+export interface ServerSwitchResult {
+  mode?: 'hot' | 'rebuild'; // hot = VPN interface reused, only the peer changed
+  gapMs?: number;
+  endpoint?: string;
+}
+
+// What the native service does with the tunnel once the monthly limit is reached
+export type QuotaAction = 'none' | 'pause' | 'disconnect';
+
+export interface QuotaStatus {
+  usedBytes: number;
+  limitBytes: number;
+  softFraction: number;
+  action: QuotaAction;
+  periodEndsAt: number;
+  exhausted: boolean;
+  paused: boolean;
+}
+
+export interface QuotaEvent {
+  level: 'soft' | 'hard';
+  usedBytes: number;
+  limitBytes: number;
+  action: QuotaAction;
+}
+
+// VPN traffic of one app over a period, from the native usage history
+export interface AppUsage {
+  uid: number;
+  packageName: string | null;
+  appName: string;
+  rxBytes: number;
+  txBytes: number;
+  totalBytes: number;
+}
+
+// Milliseconds per connect phase; -1 when the connect never reached the phase
+export interface ConnectTiming {
+  startedAt: number;
+  success: boolean;
+  attempts: number;
+  failure?: string;
+  parseMs: number;
+  resolveMs: number;
+  establishMs: number;
+  setStateMs: number;
+  retryWaitMs: number;
+  handshakeMs: number;
+  totalMs: number;
+  raceMs: number;    // server race, when the config has candidates
+  localMs: number;   // parse + establish + setState
+  networkMs: number; // server race + endpoint DNS + retry wait + first handshake
+}
+
+type ConnectPhase = 'race' | 'parse' | 'resolve' | 'establish' | 'setState' | 'retryWait' | 'handshake' | 'total';
+
+export interface ConnectTimings {
+  count: number;
+  successCount: number;
+  last?: ConnectTiming;
+  percentiles: Record<ConnectPhase, { p50: number; p90: number; p99: number }>;
+}
+
+export interface RoamingReport {
+  fromNetwork?: string;
+  toNetwork?: string;
+  mode: 'rehandshake' | 'rebuild';
+  recovered: boolean;
+  recoveryMs: number; // network change to first handshake on the new network, -1 if none came
+  completedAt: number;
+}
+
+export interface RoamingStats {
+  count: number;
+  recoveredCount: number;
+  p50Ms: number; // -1 until a roam has recovered
+  p90Ms: number;
+  p99Ms: number;
+  last?: RoamingReport;
+}
+
+export type LogLevel = 'verbose' | 'debug' | 'info' | 'warn' | 'error' | 'silent';
+
+export interface TraceEvent {
+  seq: number;
+  event: string; // e.g. 'connectStart', 'interfaceUp', 'roam'; see TraceEvent.java for a/b/c
+  at: number;    // wall clock ms
+  a: number;
+  b: number;
+  c: number;
+}
+
+export interface TraceDump {
+  capacity: number;
+  recorded: number; // events recorded since start, including overwritten ones
+  events: TraceEvent[];
+}
+
+export interface ServerLatency {
+  endpoint: string;
+  reachable: boolean;
+  rttMs: number;        // -1 when the last probe timed out
+  medianRttMs: number;  // rolling median over recent probes, -1 if none answered
+  jitterMs: number;
+  samples: number;
+  lossRate: number;
+  // Older than the cache TTL when the server was left out of this batch (the one the
+  // tunnel is up with is never probed); 0 if it was never measured
+  measuredAt: number;
+  cached: boolean;
+}
+
+// TurboModule on the new architecture, bridge module otherwise; null on platforms without it
+const KuzaVpnNativeModule = NativeKuzaVPN as unknown as KuzaVpnNativeModule | null;
 
 /**
  * KuzaVPN - Main VPN functionality class
@@ -78,25 +294,34 @@ export class KuzaVPN {
     }
 
     try {
-      // Convert config to JSON string for native modules
-      const configJson = JSON.stringify({
-        serverEndpoint: config.serverEndpoint,
-        publicKey: config.publicKey,
-        privateKey: config.privateKey,
-        allowedIPs: config.allowedIPs,
-        dns: config.dns
-      });
-
       // Extract package names for native modules
       const packageNames = selectedApps.map(app => app.packageName);
 
-      return await KuzaVpnNativeModule.startVPN(configJson, packageNames);
+      return await KuzaVpnNativeModule.startVPN(this.toConfigJson(config), packageNames);
     } catch (error) {
       console.error('Failed to start VPN:', error);
       throw error;
     }
   }
 
+  /**
+   * Move a running tunnel to another server
+   * Keeps the VPN interface (and apps' sockets) up when only the peer changes
+   */
+  static async switchServer(config: VPNConfig): Promise<ServerSwitchResult> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.switchServer !== 'function') {
+      console.log('VPN server switch simulated - development mode');
+      return {};
+    }
+
+    try {
+      return await KuzaVpnNativeModule.switchServer(this.toConfigJson(config));
+    } catch (error) {
+      console.error('Failed to switch server:', error);
+      throw error;
+    }
+  }
+
   /**
    * Stop VPN connection
    */
@@ -157,6 +382,87 @@ export class KuzaVPN {
     }
   }
 
+  /**
+   * Stream installed applications page by page
+   * The first page arrives almost immediately; later pages and resolved labels follow
+   * as native events. onUpdate always receives the full list so far.
+   *
+   * @returns a function that cancels the listing (call it when the screen closes)
+   */
+  static streamInstalledApps(
+    onUpdate: (apps: AppInfo[], complete: boolean) => void,
+    pageSize: number = 30
+  ): () => void {
+    let cancelled = false;
+
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.startAppListing !== 'function') {
+      // No paged API on this platform - fall back to the one-shot list
+      this.getInstalledApps().then(apps => {
+        if (!cancelled) onUpdate(apps, true);
+      });
+      return () => { cancelled = true; };
+    }
+
+    const nativeModule = KuzaVpnNativeModule;
+    const emitter = new NativeEventEmitter(KuzaVpnNativeModule as any);
+    let listingId: number | null = null;
+    let apps: AppInfo[] = [];
+    const pending: (() => void)[] = [];
+
+    const whenListed = (eventListingId: number, handler: () => void) => {
+      if (listingId === null) {
+        pending.push(() => { if (eventListingId === listingId) handler(); });
+      } else if (eventListingId === listingId) {
+        handler();
+      }
+    };
+
+    const subscriptions = [
+      emitter.addListener('KuzaVpnAppsPage', (page: AppListingPage) => whenListed(page.listingId, () => {
+        apps = [...apps, ...page.apps];
+        onUpdate(apps, false);
+      })),
+      emitter.addListener('KuzaVpnAppLabels', (event: AppLabelsEvent) => whenListed(event.listingId, () => {
+        const names = new Map(event.labels.map(label => [label.packageName, label.appName]));
+        apps = apps.map(app => names.has(app.packageName)
+          ? { ...app, appName: names.get(app.packageName)!, labelPending: false }
+          : app);
+        onUpdate(apps, event.done);
+        if (event.done) stop();
+      })),
+    ];
+
+    const stop = () => subscriptions.forEach(subscription => subscription.remove());
+
+    nativeModule.startAppListing(pageSize)
+      .then(first => {
+        if (cancelled) {
+          nativeModule.cancelAppListing(first.listingId);
+          return;
+        }
+        listingId = first.listingId;
+        apps = first.apps;
+        onUpdate(apps, first.done);
+        if (first.done) stop();
+        pending.splice(0).forEach(run => run());
+      })
+      .catch(error => {
+        console.error('Failed to stream installed apps:', error);
+        stop();
+        if (!cancelled) {
+          this.getInstalledApps().then(all => { if (!cancelled) onUpdate(all, true); });
+        }
+      });
+
+    return () => {
+      cancelled = true;
+      stop();
+      if (listingId !== null) {
+        nativeModule.cancelAppListing(listingId);
+      }
+    };
+  }
+
   /**
    * Get list of popular/recommended applications
    */
@@ -223,6 +529,315 @@ export class KuzaVPN {
     }
   }
 
+  /**
+   * Resolve server endpoints natively ahead of time, so connecting skips the DNS wait
+   */
+  static async prefetchEndpoints(endpoints: string[]): Promise<boolean> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.prefetchEndpoints !== 'function') {
+      return false;
+    }
+
+    try {
+      return await KuzaVpnNativeModule.prefetchEndpoints(endpoints);
+    } catch (error) {
+      console.error('Failed to prefetch endpoints:', error);
+      return false;
+    }
+  }
+
+  /**
+   * Measure latency to WireGuard servers in one native batch
+   * Each probe is a handshake from privateKey, so only servers that know the client answer
+   */
+  static async probeServers(
+    servers: VPNServer[],
+    privateKey: string,
+    timeoutMs: number = 1500
+  ): Promise<ServerLatency[]> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.probeServers !== 'function') {
+      return [];
+    }
+
+    try {
+      return await KuzaVpnNativeModule.probeServers(servers, privateKey, timeoutMs);
+    } catch (error) {
+      console.error('Failed to probe servers:', error);
+      return [];
+    }
+  }
+
+  /**
+   * Set the monthly data limit; enforced natively, even with the app in the background
+   */
+  static async setQuota(
+    limitBytes: number,
+    options: { softFraction?: number; action?: QuotaAction } = {}
+  ): Promise<QuotaStatus | null> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.setQuota !== 'function') {
+      return null;
+    }
+
+    try {
+      return await KuzaVpnNativeModule.setQuota(limitBytes, options.softFraction ?? 0.8, options.action ?? 'none');
+    } catch (error) {
+      console.error('Failed to set quota:', error);
+      return null;
+    }
+  }
+
+  static async getQuotaStatus(): Promise<QuotaStatus | null> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.getQuotaStatus !== 'function') {
+      return null;
+    }
+
+    try {
+      return await KuzaVpnNativeModule.getQuotaStatus();
+    } catch (error) {
+      console.error('Failed to get quota status:', error);
+      return null;
+    }
+  }
+
+  /**
+   * Start the quota period over; a tunnel paused at the limit resumes
+   */
+  static async resetQuota(): Promise<QuotaStatus | null> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.resetQuota !== 'function') {
+      return null;
+    }
+
+    try {
+      return await KuzaVpnNativeModule.resetQuota();
+    } catch (error) {
+      console.error('Failed to reset quota:', error);
+      return null;
+    }
+  }
+
+  /**
+   * Current tunnel state and throughput, read synchronously from the native snapshot
+   * Cheap enough to call while rendering; null where the native module is missing
+   */
+  static getSnapshot(): VPNSnapshot | null {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.getSnapshot !== 'function') {
+      return null;
+    }
+
+    try {
+      return KuzaVpnNativeModule.getSnapshot();
+    } catch (error) {
+      console.error('Failed to read VPN snapshot:', error);
+      return null;
+    }
+  }
+
+  /**
+   * Throughput samples of the current session (about two minutes at 1 Hz), oldest first
+   */
+  static async getThroughputHistory(): Promise<ThroughputHistory | null> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.getThroughputHistory !== 'function') {
+      return null;
+    }
+
+    try {
+      const flat = Float64Array.from(await KuzaVpnNativeModule.getThroughputHistory());
+      const count = flat.length / 3;
+      const history: ThroughputHistory = {
+        timesMs: new Float64Array(count),
+        rxBytes: new Float64Array(count),
+        txBytes: new Float64Array(count),
+      };
+      for (let i = 0; i < count; i++) {
+        history.timesMs[i] = flat[i * 3];
+        history.rxBytes[i] = flat[i * 3 + 1];
+        history.txBytes[i] = flat[i * 3 + 2];
+      }
+      return history;
+    } catch (error) {
+      console.error('Failed to get throughput history:', error);
+      return null;
+    }
+  }
+
+  /**
+   * Receive status changes as they happen and bandwidth stats every intervalMs, without polling
+   * Stats events after the first carry only the fields that changed, so they are merged here and
+   * onStats always gets the full object. Returns an unsubscribe function
+   */
+  static subscribeStatus(
+    onStatus: (event: VPNStatusEvent) => void,
+    onStats: (stats: BandwidthStats) => void,
+    intervalMs: number = 1000
+  ): () => void {
+    if (!KuzaVpnNativeModule) {
+      return () => {};
+    }
+
+    if (typeof KuzaVpnNativeModule.subscribeStatus !== 'function') {
+      // Older native side - poll instead
+      const poll = async () => {
+        const status: any = await this.getVPNStatus();
+        const statusString: VPNStatusEvent['status'] = typeof status === 'string' ? status : status.status || 'disconnected';
+        const state: VPNStatusEvent['state'] = typeof status === 'object' && status.state
+          ? status.state
+          : statusString === 'connected' ? 'up' : 'down';
+        onStatus({ status: statusString, state });
+        if (statusString === 'connected') {
+          onStats(await this.getBandwidthStats());
+        }
+      };
+      const interval = setInterval(poll, intervalMs);
+      poll();
+      return () => clearInterval(interval);
+    }
+
+    const nativeModule = KuzaVpnNativeModule;
+    const emitter = new NativeEventEmitter(KuzaVpnNativeModule as any);
+    let stats: BandwidthStats = { bytesReceived: 0, bytesSent: 0, totalBytes: 0, lastUpdated: '' };
+
+    const subscriptions = [
+      emitter.addListener('KuzaVpnStatus', onStatus),
+      emitter.addListener('KuzaVpnStats', (changes: Partial<BandwidthStats>) => {
+        stats = { ...stats, ...changes };
+        onStats(stats);
+      }),
+    ];
+
+    nativeModule.subscribeStatus(intervalMs).catch(error => {
+      console.error('Failed to subscribe to VPN status:', error);
+    });
+
+    return () => {
+      nativeModule.unsubscribeStatus();
+      subscriptions.forEach(subscription => subscription.remove());
+    };
+  }
+
+  /**
+   * Listen for soft/hard quota thresholds while the JS runtime is alive
+   * Returns an unsubscribe function
+   */
+  static onQuotaEvent(listener: (event: QuotaEvent) => void): () => void {
+    if (!KuzaVpnNativeModule) {
+      return () => {};
+    }
+    const subscription = new NativeEventEmitter(KuzaVpnNativeModule as any).addListener('KuzaVpnQuota', listener);
+    return () => subscription.remove();
+  }
+
+  /**
+   * Apps that used the VPN the most since the start of the current month
+   * Empty until the user grants usage access to KuzaVPN
+   */
+  static async getTopAppsThisMonth(limit: number = 10): Promise<AppUsage[]> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.getTopApps !== 'function') {
+      return [];
+    }
+
+    const now = new Date();
+    const monthStart = new Date(now.getFullYear(), now.getMonth(), 1);
+
+    try {
+      return await KuzaVpnNativeModule.getTopApps(monthStart.getTime(), now.getTime(), limit);
+    } catch (error) {
+      console.error('Failed to get top apps:', error);
+      return [];
+    }
+  }
+
+  /**
+   * How fast the tunnel came back after recent switches between Wi-Fi and cellular
+   */
+  static async getRoamingStats(): Promise<RoamingStats | null> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.getRoamingStats !== 'function') {
+      return null;
+    }
+
+    try {
+      return await KuzaVpnNativeModule.getRoamingStats();
+    } catch (error) {
+      console.error('Failed to get roaming stats:', error);
+      return null;
+    }
+  }
+
+  /**
+   * Which server won the last connect that raced candidates, and by what margin
+   */
+  static async getLastServerRace(): Promise<ServerRaceResult | null> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.getLastServerRace !== 'function') {
+      return null;
+    }
+
+    try {
+      return await KuzaVpnNativeModule.getLastServerRace();
+    } catch (error) {
+      console.error('Failed to get server race:', error);
+      return null;
+    }
+  }
+
+  /**
+   * Recent native trace events, oldest first
+   */
+  static async getTrace(): Promise<TraceDump | null> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.getTrace !== 'function') {
+      return null;
+    }
+
+    try {
+      return await KuzaVpnNativeModule.getTrace();
+    } catch (error) {
+      console.error('Failed to get trace:', error);
+      return null;
+    }
+  }
+
+  static async clearTrace(): Promise<boolean> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.clearTrace !== 'function') {
+      return false;
+    }
+
+    try {
+      return await KuzaVpnNativeModule.clearTrace();
+    } catch (error) {
+      console.error('Failed to clear trace:', error);
+      return false;
+    }
+  }
+
+  /**
+   * Lowest level the native side writes to logcat; 'warn' by default
+   */
+  static async setLogLevel(level: LogLevel): Promise<boolean> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.setLogLevel !== 'function') {
+      return false;
+    }
+
+    try {
+      return await KuzaVpnNativeModule.setLogLevel(level);
+    } catch (error) {
+      console.error('Failed to set log level:', error);
+      return false;
+    }
+  }
+
+  /**
+   * Per-phase timings of recent connects, for finding out where slow connects spend their time
+   */
+  static async getConnectTimings(): Promise<ConnectTimings | null> {
+    if (!KuzaVpnNativeModule || typeof KuzaVpnNativeModule.getConnectTimings !== 'function') {
+      return null;
+    }
+
+    try {
+      return await KuzaVpnNativeModule.getConnectTimings();
+    } catch (error) {
+      console.error('Failed to get connect timings:', error);
+      return null;
+    }
+  }
+
   /**
    * Create WireGuard configuration from server details
    */
@@ -238,10 +853,33 @@ export class KuzaVPN {
       publicKey: serverPublicKey,
       privateKey: clientPrivateKey,
       allowedIPs: ['0.0.0.0/0', '::/0'], // Route all traffic through VPN (IPv4 and IPv6)
-      dns
+      dns,
+      address: [clientIP]
     };
   }
 
+  /**
+   * Convert config to JSON string for native modules
+   */
+  private static toConfigJson(config: VPNConfig): string {
+    return JSON.stringify({
+      serverEndpoint: config.serverEndpoint,
+      publicKey: config.publicKey,
+      privateKey: config.privateKey,
+      allowedIPs: config.allowedIPs,
+      dns: config.dns,
+      address: config.address,
+      mtu: config.mtu,
+      excludedRoutes: config.excludedRoutes,
+      excludeLan: config.excludeLan,
+      excludedDomains: config.excludedDomains,
+      candidates: config.candidates,
+      raceCount: config.raceCount,
+      raceStaggerMs: config.raceStaggerMs,
+      config: config.wgQuickConfig
+    });
+  }
+
   /**
    * Get mock apps for development/testing
    * Used when native module is not available or returns empty results
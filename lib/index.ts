@@ -9,7 +9,7 @@
 export { KuzaVPN, KuzaVPN as default } from './VPNModule';
 
 // Type definitions
-export type { AppInfo, BandwidthStats, VPNConfig } from './VPNModule';
+export type { AppInfo, AppUsage, BandwidthStats, ConnectTiming, ConnectTimings, LogLevel, QuotaAction, QuotaEvent, QuotaStatus, RoamingReport, RoamingStats, ServerLatency, ServerSwitchResult, ThroughputHistory, TraceDump, TraceEvent, VPNConfig, VPNSnapshot, VPNStatusEvent } from './VPNModule';
 
 // Context provider for React components
 export { VPNProvider, useVPN } from './vpn-context';
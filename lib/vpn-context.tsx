@@ -1,4 +1,4 @@
-import React, { createContext, ReactNode, useContext, useEffect, useState } from 'react';
+import React, { createContext, ReactNode, useContext, useEffect, useRef, useState } from 'react';
 import { AppInfo, BandwidthStats, KuzaVPN, VPNConfig } from './VPNModule';
 
 interface VPNContextType {
@@ -17,9 +17,11 @@ interface VPNContextType {
   toggleAppSelection: (app: AppInfo) => void;
   setSelectedApps: (apps: AppInfo[]) => void;
   loadAvailableApps: () => Promise<void>;
+  cancelAppLoading: () => void;
   setEncryptAll: () => void;
   setCustomSelection: () => void;
   setVPNConfig: (config: VPNConfig) => void;
+  switchServer: (serverEndpoint: string) => Promise<void>;
   refreshBandwidthStats: () => Promise<void>;
 }
 
@@ -35,7 +37,10 @@ const DEFAULT_VPN_CONFIG: VPNConfig = {
 };
 
 export const VPNProvider = ({ children }: { children: ReactNode }) => {
-  const [vpnStatus, setVpnStatus] = useState<'connected' | 'disconnected' | 'connecting'>('disconnected');
+  // Seeded synchronously from the native snapshot, so the first render already shows the real state
+  const [vpnStatus, setVpnStatus] = useState<'connected' | 'disconnected' | 'connecting'>(
+    () => KuzaVPN.getSnapshot()?.status ?? 'disconnected'
+  );
   const [selectedApps, setSelectedAppsState] = useState<AppInfo[]>([]);
   const [availableApps, setAvailableApps] = useState<AppInfo[]>([]);
   const [isLoading, setIsLoading] = useState(false);
@@ -43,73 +48,67 @@ export const VPNProvider = ({ children }: { children: ReactNode }) => {
   const [bandwidthLimit] = useState(1.5 * 1024 * 1024 * 1024); // 1.5 GB converted to bytes
   const [vpnConfig, setVPNConfigState] = useState<VPNConfig | null>(DEFAULT_VPN_CONFIG);
   const [selectionMode, setSelectionMode] = useState<'encrypt-all' | 'custom'>('encrypt-all');
+  const cancelAppListing = useRef<(() => void) | null>(null);
+
+  // The limit is enforced by the native service, which keeps counting in the background
+  useEffect(() => {
+    KuzaVPN.setQuota(bandwidthLimit);
+  }, [bandwidthLimit]);
 
   useEffect(() => {
     loadAvailableApps();
-    // Check VPN status more frequently for better UI responsiveness
-    const interval = setInterval(checkVPNStatus, 1000); // Check every second
-    return () => clearInterval(interval);
+    // Status is pushed as it changes, stats once a second while connected
+    const unsubscribe = KuzaVPN.subscribeStatus(
+      event => setVpnStatus(event.status),
+      stats => setBandwidthStats(stats.isActive === false ? null : stats),
+      1000
+    );
+    return () => {
+      unsubscribe();
+      cancelAppLoading();
+    };
   }, []);
 
-  const loadAvailableApps = async () => {
-    try {
-      setIsLoading(true);
-      console.log('🔄 Loading available apps...');
-      const apps = await KuzaVPN.getInstalledApps();
-      console.log('📱 Loaded apps:', apps.length, 'apps');
-
-      // Log first few apps to check if icons are present
-      if (apps.length > 0) {
-        console.log('📱 Sample app data:', {
-          appName: apps[0].appName,
-          packageName: apps[0].packageName,
-          hasIcon: !!apps[0].iconBase64,
-          iconLength: apps[0].iconBase64 ? apps[0].iconBase64.length : 0
-        });
-      }
+  // Resolves as soon as the first page is on screen; the rest streams in
+  const loadAvailableApps = () => new Promise<void>((resolve) => {
+    cancelAppLoading();
+    setIsLoading(true);
+    console.log('🔄 Loading available apps...');
 
+    let firstUpdate = true;
+    cancelAppListing.current = KuzaVPN.streamInstalledApps((apps, complete) => {
       setAvailableApps(apps);
 
-      // If we don't have any selected apps yet, start with some popular ones
-      if (selectedApps.length === 0) {
+      if (firstUpdate) {
+        firstUpdate = false;
+        setIsLoading(false);
+        resolve();
+      }
+
+      if (complete) {
+        cancelAppListing.current = null;
+        console.log('📱 Loaded apps:', apps.length, 'apps');
+
+        // If we don't have any selected apps yet, start with some popular ones
         const popularApps = apps.filter(app =>
           ['chrome', 'firefox', 'instagram', 'whatsapp', 'snapchat', 'tiktok', 'youtube'].some(
             popular => app.appName.toLowerCase().includes(popular) || app.packageName.toLowerCase().includes(popular)
           )
         );
-        console.log('📱 Selected popular apps:', popularApps.length, 'apps');
-        setSelectedAppsState(popularApps.slice(0, 3)); // Start with 3 popular apps
-      }
-    } catch (error) {
-      console.error('Failed to load apps:', error);
-    } finally {
-      setIsLoading(false);
-    }
-  };
-
-  const checkVPNStatus = async () => {
-    try {
-      const status = await KuzaVPN.getVPNStatus();
-      // Handle both string and object responses
-      const statusString = typeof status === 'string' ? status : (status as any).status || 'disconnected';
-      setVpnStatus(statusString as 'connected' | 'disconnected' | 'connecting');
-
-      // Refresh bandwidth stats if connected
-      if (statusString === 'connected') {
-        refreshBandwidthStatsLocal();
+        setSelectedAppsState(prev => {
+          if (prev.length > 0) return prev;
+          console.log('📱 Selected popular apps:', popularApps.length, 'apps');
+          return popularApps.slice(0, 3); // Start with 3 popular apps
+        });
       }
-    } catch (error) {
-      console.error('Failed to check VPN status:', error);
-      setVpnStatus('disconnected');
-    }
-  };
+    });
+  });
 
-  const refreshBandwidthStatsLocal = async () => {
-    try {
-      const stats = await KuzaVPN.getBandwidthStats();
-      setBandwidthStats(stats);
-    } catch (error) {
-      console.error('Failed to get bandwidth stats:', error);
+  const cancelAppLoading = () => {
+    if (cancelAppListing.current) {
+      cancelAppListing.current();
+      cancelAppListing.current = null;
+      setIsLoading(false);
     }
   };
 
@@ -152,12 +151,6 @@ export const VPNProvider = ({ children }: { children: ReactNode }) => {
         setVpnStatus('connected');
         console.log('✅ VPN Connected to WireGuard server:', vpnConfig.serverEndpoint);
         console.log('📱 Apps routing through VPN:', appsToConnect.length === 0 ? 'ALL APPS' : appsToConnect.map(app => app.appName));
-
-        // Force immediate status check after connection
-        setTimeout(checkVPNStatus, 1000);
-
-        // Start bandwidth monitoring
-        refreshBandwidthStatsLocal();
       } else {
         console.error('❌ VPN connection failed');
         setVpnStatus('disconnected');
@@ -219,6 +212,28 @@ export const VPNProvider = ({ children }: { children: ReactNode }) => {
     setVPNConfigState(config);
   };
 
+  // Point the config at another server; a live tunnel is moved without dropping the interface
+  const switchServer = async (serverEndpoint: string) => {
+    if (!vpnConfig || vpnConfig.serverEndpoint === serverEndpoint) return;
+
+    const newConfig = { ...vpnConfig, serverEndpoint };
+    setVPNConfigState(newConfig);
+
+    if (vpnStatus !== 'connected') return;
+
+    try {
+      setIsLoading(true);
+      const result = await KuzaVPN.switchServer(newConfig);
+      console.log('🔁 Switched server:', serverEndpoint, result);
+    } catch (error) {
+      // A rejected switch leaves the old tunnel up; the status events report any real drop
+      console.error('Failed to switch server:', error);
+      setVPNConfigState(vpnConfig);
+    } finally {
+      setIsLoading(false);
+    }
+  };
+
   const refreshBandwidthStats = async () => {
     try {
       const stats = await KuzaVPN.getBandwidthStats();
@@ -243,9 +258,11 @@ export const VPNProvider = ({ children }: { children: ReactNode }) => {
       toggleAppSelection,
       setSelectedApps,
       loadAvailableApps,
+      cancelAppLoading,
       setEncryptAll,
       setCustomSelection,
       setVPNConfig,
+      switchServer,
       refreshBandwidthStats,
     }}>
       {children}
@@ -0,0 +1,55 @@
+import type { TurboModule } from 'react-native';
+import { TurboModuleRegistry } from 'react-native';
+
+/**
+ * Codegen spec for the KuzaVPN native module (android: KuzaVpnModule)
+ * Maps stay untyped here; lib/VPNModule.ts holds the typed view of every result
+ */
+export interface Spec extends TurboModule {
+  // VPN Control
+  requestVpnPermission(): Promise<boolean>;
+  startVPN(config: string, selectedApps: Array<string>): Promise<boolean>;
+  stopVPN(): Promise<boolean>;
+  switchServer(config: string): Promise<Object>;
+  getVpnStatus(): Promise<Object>;
+
+  // Synchronous reads from the native snapshot, no promise round-trip
+  getSnapshot(): Object;
+
+  // Push subscription
+  subscribeStatus(intervalMs: number): Promise<boolean>;
+  unsubscribeStatus(): void;
+
+  // App Management
+  getInstalledApps(): Promise<Array<Object>>;
+  startAppListing(pageSize: number): Promise<Object>;
+  cancelAppListing(listingId: number): void;
+
+  // Events
+  addListener(eventName: string): void;
+  removeListeners(count: number): void;
+
+  // Statistics
+  getBandwidthStats(): Promise<Object>;
+  // Flat [timeMs, rxBytes, txBytes, ...] triples, oldest first
+  getThroughputHistory(): Promise<Array<number>>;
+  // Servers as { serverEndpoint, publicKey }, probed with handshakes from privateKey
+  probeServers(servers: Array<Object>, privateKey: string, timeoutMs: number): Promise<Array<Object>>;
+  prefetchEndpoints(endpoints: Array<string>): Promise<boolean>;
+  getConnectTimings(): Promise<Object>;
+  getRoamingStats(): Promise<Object>;
+  getLastServerRace(): Promise<Object | null>;
+  getTopApps(fromMs: number, toMs: number, limit: number): Promise<Array<Object>>;
+
+  // Diagnostics
+  getTrace(): Promise<Object>;
+  clearTrace(): Promise<boolean>;
+  setLogLevel(level: string): Promise<boolean>;
+
+  // Data quota
+  setQuota(limitBytes: number, softFraction: number, action: string): Promise<Object>;
+  getQuotaStatus(): Promise<Object>;
+  resetQuota(): Promise<Object>;
+}
+
+export default TurboModuleRegistry.get<Spec>('KuzaVPN');